@@ -33,6 +33,7 @@ import io.confluent.ksql.rest.entity.KsqlTopicInfo;
 import io.confluent.ksql.rest.entity.KsqlTopicsList;
 import io.confluent.ksql.rest.entity.PropertiesList;
 import io.confluent.ksql.rest.entity.Queries;
+import io.confluent.ksql.rest.entity.QueryMetricsInfo;
 import io.confluent.ksql.rest.entity.SchemaMapper;
 import io.confluent.ksql.rest.entity.ServerInfo;
 import io.confluent.ksql.rest.entity.SourceDescription;
@@ -364,6 +365,36 @@ public abstract class Console implements Closeable {
   }
 
 
+  private static final List<String> QUERY_METRICS_HEADERS = Arrays.asList(
+      "Query ID", "Msgs In/s", "Msgs Out/s", "Deser Errors", "Expr Errors",
+      "Last Message", "p50 (ms)", "p99 (ms)", "Max (ms)", "Bytes In/s", "Threads",
+      "Throttled (ms)", "Store Memory", "Lag (records)", "Lag (ms)");
+
+  private static List<List<String>> queryMetricsRows(List<QueryMetricsInfo> queryMetrics) {
+    return queryMetrics.stream()
+        .map(metrics -> Arrays.asList(
+            Long.toString(metrics.getQueryId()),
+            String.format("%.2f", metrics.getMessagesInPerSecond()),
+            String.format("%.2f", metrics.getMessagesOutPerSecond()),
+            Long.toString(metrics.getDeserializationErrors()),
+            Long.toString(metrics.getExpressionErrors()),
+            metrics.getLastMessageTimestamp() == 0
+                ? "n/a"
+                : Long.toString(metrics.getLastMessageTimestamp()),
+            String.format("%.3f", metrics.getProcessingLatencyP50Ms()),
+            String.format("%.3f", metrics.getProcessingLatencyP99Ms()),
+            String.format("%.3f", metrics.getProcessingLatencyMaxMs()),
+            String.format("%.2f", metrics.getBytesInPerSecond()),
+            Integer.toString(metrics.getStreamThreads()),
+            Long.toString(metrics.getThrottledMs()),
+            metrics.getStateStoreBytes() == 0
+                ? "unlimited"
+                : Long.toString(metrics.getStateStoreBytes()),
+            Long.toString(metrics.getLagRecords()),
+            Long.toString(metrics.getLagMs())
+        )).collect(Collectors.toList());
+  }
+
   private void printTable(List<String> columnHeaders, List<List<String>> rowValues) {
     if (columnHeaders.size() == 0) {
       throw new RuntimeException("Cannot print table without columns");
@@ -427,12 +458,39 @@ public abstract class Console implements Closeable {
               runningQuery.getKafkaTopic(),
               runningQuery.getQueryString()
           )).collect(Collectors.toList());
+      List<QueryMetricsInfo> queryMetrics = runningQueries.stream()
+          .map(Queries.RunningQuery::getMetrics)
+          .filter(Objects::nonNull)
+          .collect(Collectors.toList());
+      if (!queryMetrics.isEmpty()) {
+        printTable(columnHeaders, rowValues);
+        columnHeaders = QUERY_METRICS_HEADERS;
+        rowValues = queryMetricsRows(queryMetrics);
+      }
     } else if (ksqlEntity instanceof SourceDescription) {
-      List<SourceDescription.FieldSchemaInfo> fields = ((SourceDescription) ksqlEntity).getSchema();
+      SourceDescription sourceDescription = (SourceDescription) ksqlEntity;
+      List<SourceDescription.FieldSchemaInfo> fields = sourceDescription.getSchema();
       columnHeaders = Arrays.asList("Field", "Type");
       rowValues = fields.stream()
           .map(field -> Arrays.asList(field.getName(), field.getType()))
           .collect(Collectors.toList());
+      List<SourceDescription.StateStoreInfo> stateStores = sourceDescription.getStateStores();
+      if (!stateStores.isEmpty()) {
+        printTable(columnHeaders, rowValues);
+        columnHeaders = Arrays.asList("State Store", "Size (bytes)", "Segments");
+        rowValues = stateStores.stream()
+            .map(stateStore -> Arrays.asList(
+                stateStore.getName(),
+                Long.toString(stateStore.getSizeBytes()),
+                Integer.toString(stateStore.getSegments())
+            )).collect(Collectors.toList());
+      }
+      List<QueryMetricsInfo> queryMetrics = sourceDescription.getQueryMetrics();
+      if (!queryMetrics.isEmpty()) {
+        printTable(columnHeaders, rowValues);
+        columnHeaders = QUERY_METRICS_HEADERS;
+        rowValues = queryMetricsRows(queryMetrics);
+      }
     } else if (ksqlEntity instanceof TopicDescription) {
       columnHeaders = new ArrayList<>();
       columnHeaders.add("Topic Name");
@@ -26,6 +26,7 @@ public class DdlConfig {
   public static final String STATE_STORE_NAME_PROPERTY = "STATESTORE";
   public static final String KEY_NAME_PROPERTY = "KEY";
   public static final String IS_WINDOWED_PROPERTY = "WINDOWED";
+  public static final String IS_BROADCAST_PROPERTY = "BROADCAST";
   public static final String TIMESTAMP_NAME_PROPERTY = "TIMESTAMP";
   public static final String PARTITION_BY_PROPERTY = "PARTITION_BY";
   public static final String SCHEMA_FILE_CONTENT_PROPERTY = "ksql.schema.file.content";
@@ -67,6 +67,166 @@ public class KsqlConfig extends AbstractConfig implements Cloneable {
   public static final String
       KSQL_TABLE_STATESTORE_NAME_SUFFIX_DEFAULT = "_ksql_statestore";
 
+  public static final String
+      KSQL_AGGREGATE_PREAGGREGATION_ENABLE_CONFIG = "ksql.aggregate.preaggregation.enable";
+  public static final boolean
+      KSQL_AGGREGATE_PREAGGREGATION_ENABLE_DEFAULT = false;
+
+  public static final String
+      KSQL_AGGREGATE_PREAGGREGATION_INTERVAL_MS_CONFIG = "ksql.aggregate.preaggregation.interval.ms";
+  public static final long
+      KSQL_AGGREGATE_PREAGGREGATION_INTERVAL_MS_DEFAULT = 1000L;
+
+  public static final String
+      KSQL_AGGREGATE_PREAGGREGATION_MAX_KEYS_CONFIG = "ksql.aggregate.preaggregation.max.keys";
+  public static final int
+      KSQL_AGGREGATE_PREAGGREGATION_MAX_KEYS_DEFAULT = 10000;
+
+  public static final String
+      KSQL_AGGREGATE_HOPPING_PANES_ENABLE_CONFIG = "ksql.aggregate.hopping.panes.enable";
+  public static final boolean
+      KSQL_AGGREGATE_HOPPING_PANES_ENABLE_DEFAULT = false;
+
+  public static final String
+      KSQL_PERSISTENT_QUERY_THREAD_BUDGET_CONFIG = "ksql.persistent.query.thread.budget";
+  public static final int
+      KSQL_PERSISTENT_QUERY_THREAD_BUDGET_DEFAULT = 0;
+
+  public static final String
+      KSQL_PERSISTENT_QUERY_SHARED_PRODUCER_ENABLE_CONFIG =
+      "ksql.persistent.query.shared.producer.enable";
+  public static final boolean
+      KSQL_PERSISTENT_QUERY_SHARED_PRODUCER_ENABLE_DEFAULT = false;
+
+  public static final String
+      KSQL_PERSISTENT_QUERY_SHARED_SOURCE_ENABLE_CONFIG =
+      "ksql.persistent.query.shared.source.enable";
+  public static final boolean
+      KSQL_PERSISTENT_QUERY_SHARED_SOURCE_ENABLE_DEFAULT = false;
+
+  public static final String
+      KSQL_PERSISTENT_QUERY_CONSUME_RECORDS_BUDGET_CONFIG =
+      "ksql.persistent.query.consume.records.budget";
+  public static final long
+      KSQL_PERSISTENT_QUERY_CONSUME_RECORDS_BUDGET_DEFAULT = 0L;
+
+  public static final String
+      KSQL_PERSISTENT_QUERY_CONSUME_BYTES_BUDGET_CONFIG =
+      "ksql.persistent.query.consume.bytes.budget";
+  public static final long
+      KSQL_PERSISTENT_QUERY_CONSUME_BYTES_BUDGET_DEFAULT = 0L;
+
+  public static final String
+      KSQL_PERSISTENT_QUERY_STATE_STORE_BYTES_BUDGET_CONFIG =
+      "ksql.persistent.query.state.store.bytes.budget";
+  public static final long
+      KSQL_PERSISTENT_QUERY_STATE_STORE_BYTES_BUDGET_DEFAULT = 0L;
+
+  public static final String
+      KSQL_QUERY_MAX_STREAM_THREADS_CONFIG = "ksql.query.max.stream.threads";
+  public static final int
+      KSQL_QUERY_MAX_STREAM_THREADS_DEFAULT = 0;
+
+  public static final String
+      KSQL_QUERY_MAX_CONSUME_RECORDS_PER_SECOND_CONFIG =
+      "ksql.query.max.consume.records.per.second";
+  public static final long
+      KSQL_QUERY_MAX_CONSUME_RECORDS_PER_SECOND_DEFAULT = 0L;
+
+  public static final String
+      KSQL_QUERY_MAX_CONSUME_BYTES_PER_SECOND_CONFIG = "ksql.query.max.consume.bytes.per.second";
+  public static final long
+      KSQL_QUERY_MAX_CONSUME_BYTES_PER_SECOND_DEFAULT = 0L;
+
+  public static final String
+      KSQL_QUERY_MAX_STATE_STORE_BYTES_CONFIG = "ksql.query.max.state.store.bytes";
+  public static final long
+      KSQL_QUERY_MAX_STATE_STORE_BYTES_DEFAULT = 0L;
+
+  public static final String
+      KSQL_QUERY_LAG_CHECK_INTERVAL_MS_CONFIG = "ksql.query.lag.check.interval.ms";
+  public static final long
+      KSQL_QUERY_LAG_CHECK_INTERVAL_MS_DEFAULT = 30000L;
+
+  public static final String
+      KSQL_QUERY_LAG_SCALING_ENABLE_CONFIG = "ksql.query.lag.scaling.enable";
+  public static final boolean
+      KSQL_QUERY_LAG_SCALING_ENABLE_DEFAULT = false;
+
+  public static final String
+      KSQL_QUERY_LAG_SCALING_THRESHOLD_RECORDS_CONFIG =
+      "ksql.query.lag.scaling.threshold.records";
+  public static final long
+      KSQL_QUERY_LAG_SCALING_THRESHOLD_RECORDS_DEFAULT = 10000L;
+
+  public static final String
+      KSQL_QUERY_LAG_SCALING_MAX_STREAM_THREADS_CONFIG =
+      "ksql.query.lag.scaling.max.stream.threads";
+  public static final int
+      KSQL_QUERY_LAG_SCALING_MAX_STREAM_THREADS_DEFAULT = 8;
+
+  public static final String
+      KSQL_QUERY_LAG_SCALING_COOLDOWN_MS_CONFIG = "ksql.query.lag.scaling.cooldown.ms";
+  public static final long
+      KSQL_QUERY_LAG_SCALING_COOLDOWN_MS_DEFAULT = 300000L;
+
+  public static final String
+      KSQL_TRANSIENT_QUERY_BUFFER_SIZE_CONFIG = "ksql.transient.query.buffer.size";
+  public static final int
+      KSQL_TRANSIENT_QUERY_BUFFER_SIZE_DEFAULT = 100;
+
+  public static final String
+      KSQL_TRANSIENT_QUERY_BUFFER_OVERFLOW_POLICY_CONFIG =
+      "ksql.transient.query.buffer.overflow.policy";
+  public static final String
+      KSQL_TRANSIENT_QUERY_BUFFER_OVERFLOW_POLICY_DEFAULT = "BLOCK";
+
+  public static final String
+      KSQL_TRANSIENT_QUERY_BUFFER_SAMPLE_RATE_CONFIG =
+      "ksql.transient.query.buffer.sample.rate";
+  public static final int
+      KSQL_TRANSIENT_QUERY_BUFFER_SAMPLE_RATE_DEFAULT = 10;
+
+  public static final String
+      KSQL_TRANSIENT_QUERY_SCAN_ENABLE_CONFIG = "ksql.transient.query.scan.enable";
+  public static final boolean
+      KSQL_TRANSIENT_QUERY_SCAN_ENABLE_DEFAULT = true;
+
+  public static final String
+      KSQL_PULL_QUERY_ENABLE_CONFIG = "ksql.pull.query.enable";
+  public static final boolean
+      KSQL_PULL_QUERY_ENABLE_DEFAULT = false;
+
+  public static final String
+      KSQL_QUERY_CLEANUP_THREADS_CONFIG = "ksql.query.cleanup.threads";
+  public static final int
+      KSQL_QUERY_CLEANUP_THREADS_DEFAULT = 2;
+
+  public static final String
+      KSQL_QUERY_CLEANUP_BATCH_INTERVAL_MS_CONFIG = "ksql.query.cleanup.batch.interval.ms";
+  public static final long
+      KSQL_QUERY_CLEANUP_BATCH_INTERVAL_MS_DEFAULT = 1000L;
+
+  public static final String
+      KSQL_QUERY_OPERATOR_SAMPLE_INTERVAL_CONFIG = "ksql.query.operator.sample.interval";
+  public static final int
+      KSQL_QUERY_OPERATOR_SAMPLE_INTERVAL_DEFAULT = 0;
+
+  public static final String
+      KSQL_QUERY_OPERATOR_PROFILE_CONFIG = "ksql.query.operator.profile";
+  public static final boolean
+      KSQL_QUERY_OPERATOR_PROFILE_DEFAULT = false;
+
+  public static final String
+      KSQL_EXPLAIN_ANALYZE_MAX_RECORDS_CONFIG = "ksql.explain.analyze.max.records";
+  public static final int
+      KSQL_EXPLAIN_ANALYZE_MAX_RECORDS_DEFAULT = 1000;
+
+  public static final String
+      KSQL_EXPLAIN_ANALYZE_MAX_DURATION_MS_CONFIG = "ksql.explain.analyze.max.duration.ms";
+  public static final long
+      KSQL_EXPLAIN_ANALYZE_MAX_DURATION_MS_DEFAULT = 10000L;
+
 
 
   Map<String, Object> ksqlConfigProps;
@@ -123,6 +283,246 @@ public class KsqlConfig extends AbstractConfig implements Cloneable {
             + "config value which will be added to a windows maintainMs to ensure data is not "
             + "deleted from the log prematurely. Allows for clock drift. Default is 1 day"
             )
+    .define(KSQL_AGGREGATE_PREAGGREGATION_ENABLE_CONFIG,
+            ConfigDef.Type.BOOLEAN,
+            KSQL_AGGREGATE_PREAGGREGATION_ENABLE_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "If true, non-windowed aggregations whose functions can be merged are partially "
+            + "aggregated per key before the repartition, so that only one partial result per key "
+            + "and flush interval is sent through the repartition topic."
+            )
+    .define(KSQL_AGGREGATE_PREAGGREGATION_INTERVAL_MS_CONFIG,
+            ConfigDef.Type.LONG,
+            KSQL_AGGREGATE_PREAGGREGATION_INTERVAL_MS_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "The wall clock interval at which partial aggregates are flushed to the repartition "
+            + "topic when pre-aggregation is enabled."
+            )
+    .define(KSQL_AGGREGATE_PREAGGREGATION_MAX_KEYS_CONFIG,
+            ConfigDef.Type.INT,
+            KSQL_AGGREGATE_PREAGGREGATION_MAX_KEYS_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "The maximum number of keys buffered by a pre-aggregation task before its partial "
+            + "aggregates are flushed, regardless of the flush interval."
+            )
+    .define(KSQL_AGGREGATE_HOPPING_PANES_ENABLE_CONFIG,
+            ConfigDef.Type.BOOLEAN,
+            KSQL_AGGREGATE_HOPPING_PANES_ENABLE_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "If true, hopping window aggregations whose functions can be merged update a single "
+            + "non-overlapping pane per record and assemble the window results from the panes, "
+            + "instead of updating every window that contains the record."
+            )
+    .define(KSQL_PERSISTENT_QUERY_THREAD_BUDGET_CONFIG,
+            ConfigDef.Type.INT,
+            KSQL_PERSISTENT_QUERY_THREAD_BUDGET_DEFAULT,
+            ConfigDef.Importance.MEDIUM,
+            "The total number of stream threads the persistent queries of a server may run. "
+            + "A new query gets the threads it asks for, or what is left of the budget if that "
+            + "is less, and can't start once the budget is used up. 0 means no limit."
+            )
+    .define(KSQL_PERSISTENT_QUERY_SHARED_PRODUCER_ENABLE_CONFIG,
+            ConfigDef.Type.BOOLEAN,
+            KSQL_PERSISTENT_QUERY_SHARED_PRODUCER_ENABLE_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "If true, the stream threads of all persistent queries that don't use exactly once "
+            + "processing write through a single producer, rather than one producer per thread."
+            )
+    .define(KSQL_PERSISTENT_QUERY_SHARED_SOURCE_ENABLE_CONFIG,
+            ConfigDef.Type.BOOLEAN,
+            KSQL_PERSISTENT_QUERY_SHARED_SOURCE_ENABLE_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "If true, persistent queries that are started together and read the same stream "
+            + "run as one topology that reads and deserializes the stream once. The queries "
+            + "then share their stream threads, and the stream keeps being read, until all of "
+            + "them are terminated. Queries with a consume rate limit don't share their source."
+            )
+    .define(KSQL_PERSISTENT_QUERY_CONSUME_RECORDS_BUDGET_CONFIG,
+            ConfigDef.Type.LONG,
+            KSQL_PERSISTENT_QUERY_CONSUME_RECORDS_BUDGET_DEFAULT,
+            ConfigDef.Importance.MEDIUM,
+            "The number of records per second the persistent queries of a server may read "
+            + "between them. Each running query, or group of queries sharing their source, "
+            + "gets an equal share and is slowed down when it reads faster. 0 means no limit."
+            )
+    .define(KSQL_PERSISTENT_QUERY_CONSUME_BYTES_BUDGET_CONFIG,
+            ConfigDef.Type.LONG,
+            KSQL_PERSISTENT_QUERY_CONSUME_BYTES_BUDGET_DEFAULT,
+            ConfigDef.Importance.MEDIUM,
+            "The number of bytes per second the persistent queries of a server may read "
+            + "between them. Each running query, or group of queries sharing their source, "
+            + "gets an equal share and is slowed down when it reads faster. 0 means no limit."
+            )
+    .define(KSQL_PERSISTENT_QUERY_STATE_STORE_BYTES_BUDGET_CONFIG,
+            ConfigDef.Type.LONG,
+            KSQL_PERSISTENT_QUERY_STATE_STORE_BYTES_BUDGET_DEFAULT,
+            ConfigDef.Importance.MEDIUM,
+            "The memory, in bytes, the state stores of the persistent queries of a server may "
+            + "use between them. A new query with state stores gets the memory it is limited "
+            + "to, or what is left of the budget if that is less or it has no limit, and can't "
+            + "start once the budget is used up. 0 means no limit."
+            )
+    .define(KSQL_QUERY_MAX_STREAM_THREADS_CONFIG,
+            ConfigDef.Type.INT,
+            KSQL_QUERY_MAX_STREAM_THREADS_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "The most stream threads a persistent query may run, whatever the number of stream "
+            + "threads it asks for. Can be set for a single query with the MAX_STREAM_THREADS "
+            + "property of its WITH clause. 0 means no limit."
+            )
+    .define(KSQL_QUERY_MAX_CONSUME_RECORDS_PER_SECOND_CONFIG,
+            ConfigDef.Type.LONG,
+            KSQL_QUERY_MAX_CONSUME_RECORDS_PER_SECOND_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "The number of records per second a persistent query may read from its sources. "
+            + "Can be set for a single query with the MAX_CONSUME_RECORDS_PER_SECOND property "
+            + "of its WITH clause. 0 means no limit."
+            )
+    .define(KSQL_QUERY_MAX_CONSUME_BYTES_PER_SECOND_CONFIG,
+            ConfigDef.Type.LONG,
+            KSQL_QUERY_MAX_CONSUME_BYTES_PER_SECOND_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "The number of bytes per second a persistent query may read from its sources. "
+            + "Can be set for a single query with the MAX_CONSUME_BYTES_PER_SECOND property "
+            + "of its WITH clause. 0 means no limit."
+            )
+    .define(KSQL_QUERY_MAX_STATE_STORE_BYTES_CONFIG,
+            ConfigDef.Type.LONG,
+            KSQL_QUERY_MAX_STATE_STORE_BYTES_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "The memory, in bytes, the record cache and the RocksDB block caches and write "
+            + "buffers of the state stores of a persistent query may use. Can be set for a "
+            + "single query with the MAX_STATE_STORE_BYTES property of its WITH clause. "
+            + "0 means no limit."
+            )
+    .define(KSQL_QUERY_LAG_CHECK_INTERVAL_MS_CONFIG,
+            ConfigDef.Type.LONG,
+            KSQL_QUERY_LAG_CHECK_INTERVAL_MS_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "How often the consumer lag of each persistent query is checked: the records "
+            + "between its committed offset and the end of each of its source partitions, and "
+            + "the age of the oldest of them. 0 disables the checks."
+            )
+    .define(KSQL_QUERY_LAG_SCALING_ENABLE_CONFIG,
+            ConfigDef.Type.BOOLEAN,
+            KSQL_QUERY_LAG_SCALING_ENABLE_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "If true, a persistent query whose lag is above "
+            + KSQL_QUERY_LAG_SCALING_THRESHOLD_RECORDS_CONFIG + " and still growing is "
+            + "restarted with another stream thread, and one that has caught up is restarted "
+            + "with one fewer, down to the threads it started with. Queries sharing their "
+            + "source are not scaled."
+            )
+    .define(KSQL_QUERY_LAG_SCALING_THRESHOLD_RECORDS_CONFIG,
+            ConfigDef.Type.LONG,
+            KSQL_QUERY_LAG_SCALING_THRESHOLD_RECORDS_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "The lag, in records, above which a persistent query is given more stream threads "
+            + "when it keeps growing. Below a tenth of it, the query gives threads back."
+            )
+    .define(KSQL_QUERY_LAG_SCALING_MAX_STREAM_THREADS_CONFIG,
+            ConfigDef.Type.INT,
+            KSQL_QUERY_LAG_SCALING_MAX_STREAM_THREADS_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "The most stream threads a persistent query is scaled up to for its lag. Its own "
+            + "thread limit, its number of source partitions and the thread budget of the "
+            + "server cap it further."
+            )
+    .define(KSQL_QUERY_LAG_SCALING_COOLDOWN_MS_CONFIG,
+            ConfigDef.Type.LONG,
+            KSQL_QUERY_LAG_SCALING_COOLDOWN_MS_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "The least time between two restarts of a persistent query to scale it, so the "
+            + "query can rebalance and show the effect of its new threads first."
+            )
+    .define(KSQL_TRANSIENT_QUERY_BUFFER_SIZE_CONFIG,
+            ConfigDef.Type.INT,
+            KSQL_TRANSIENT_QUERY_BUFFER_SIZE_DEFAULT,
+            ConfigDef.Range.atLeast(1),
+            ConfigDef.Importance.LOW,
+            "The number of result rows of a transient query buffered for the client."
+            )
+    .define(KSQL_TRANSIENT_QUERY_BUFFER_OVERFLOW_POLICY_CONFIG,
+            ConfigDef.Type.STRING,
+            KSQL_TRANSIENT_QUERY_BUFFER_OVERFLOW_POLICY_DEFAULT,
+            ConfigDef.ValidString.in("BLOCK", "DROP_OLDEST", "DROP_NEWEST", "SAMPLE"),
+            ConfigDef.Importance.LOW,
+            "What a transient query does with a result row when its buffer is full because the "
+            + "client reads slowly. BLOCK waits for the client, which holds up the stream "
+            + "thread. DROP_OLDEST drops the oldest buffered row, DROP_NEWEST drops the new row "
+            + "and SAMPLE keeps one in every " + KSQL_TRANSIENT_QUERY_BUFFER_SAMPLE_RATE_CONFIG
+            + " new rows in place of the oldest buffered row."
+            )
+    .define(KSQL_TRANSIENT_QUERY_BUFFER_SAMPLE_RATE_CONFIG,
+            ConfigDef.Type.INT,
+            KSQL_TRANSIENT_QUERY_BUFFER_SAMPLE_RATE_DEFAULT,
+            ConfigDef.Range.atLeast(1),
+            ConfigDef.Importance.LOW,
+            "With the SAMPLE overflow policy, one in how many rows arriving while the buffer "
+            + "of a transient query is full is kept."
+            )
+    .define(KSQL_TRANSIENT_QUERY_SCAN_ENABLE_CONFIG,
+            ConfigDef.Type.BOOLEAN,
+            KSQL_TRANSIENT_QUERY_SCAN_ENABLE_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "If true, transient queries that only filter and project a single stream read its "
+            + "topic with a plain consumer instead of starting a Kafka Streams application, "
+            + "which saves the consumer group rebalance and the stream threads."
+            )
+    .define(KSQL_PULL_QUERY_ENABLE_CONFIG,
+            ConfigDef.Type.BOOLEAN,
+            KSQL_PULL_QUERY_ENABLE_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "If true, persistent queries that create tables, other than session windowed ones, "
+            + "also keep the table in a queryable state store, which pull queries look rows up "
+            + "in by ROWKEY. Only tables created while this is enabled can be pulled from. "
+            + "Each such table adds a state store and a changelog topic to its query."
+            )
+    .define(KSQL_QUERY_CLEANUP_THREADS_CONFIG,
+            ConfigDef.Type.INT,
+            KSQL_QUERY_CLEANUP_THREADS_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "The number of background threads that close terminated persistent queries and "
+            + "finished transient queries and remove their local state."
+            )
+    .define(KSQL_QUERY_CLEANUP_BATCH_INTERVAL_MS_CONFIG,
+            ConfigDef.Type.LONG,
+            KSQL_QUERY_CLEANUP_BATCH_INTERVAL_MS_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "How often the internal topics of the queries closed in the background are deleted, "
+            + "with a single topic listing and deletion request for all of them."
+            )
+    .define(KSQL_QUERY_OPERATOR_SAMPLE_INTERVAL_CONFIG,
+            ConfigDef.Type.INT,
+            KSQL_QUERY_OPERATOR_SAMPLE_INTERVAL_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "If positive, each filter, projection, re-key and join of a query counts the rows "
+            + "it takes in and passes on, and times one in this many rows. The counts and "
+            + "timings are shown under each node of the execution plan of the query. 0 disables "
+            + "the instrumentation."
+            )
+    .define(KSQL_QUERY_OPERATOR_PROFILE_CONFIG,
+            ConfigDef.Type.BOOLEAN,
+            KSQL_QUERY_OPERATOR_PROFILE_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "Whether the instrumented operators of a query also measure the CPU time and the "
+            + "bytes allocated for the rows they time. Much more costly than timing alone."
+            )
+    .define(KSQL_EXPLAIN_ANALYZE_MAX_RECORDS_CONFIG,
+            ConfigDef.Type.INT,
+            KSQL_EXPLAIN_ANALYZE_MAX_RECORDS_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "The number of records EXPLAIN ANALYZE reads from the start of the sources of a "
+            + "query before it reports how the query ran on them."
+            )
+    .define(KSQL_EXPLAIN_ANALYZE_MAX_DURATION_MS_CONFIG,
+            ConfigDef.Type.LONG,
+            KSQL_EXPLAIN_ANALYZE_MAX_DURATION_MS_DEFAULT,
+            ConfigDef.Importance.LOW,
+            "The longest time EXPLAIN ANALYZE runs a query for, if its sources have fewer "
+            + "records than " + KSQL_EXPLAIN_ANALYZE_MAX_RECORDS_CONFIG + ". The request waits "
+            + "for the analysis, and a server runs one analysis at a time."
+            )
     ;
   }
 
@@ -199,4 +599,20 @@ public class KsqlConfig extends AbstractConfig implements Cloneable {
     return new KsqlConfig(clonedProperties);
   }
 
+  /**
+   * Returns a copy of this config with the given KSQL properties overwritten. Properties outside
+   * the KSQL namespace are ignored as they are applied to the streams configuration directly.
+   */
+  public KsqlConfig cloneWithPropertyOverwrite(Map<String, Object> props) {
+    Map<String, Object> clonedProperties = new HashMap<>();
+    clonedProperties.putAll(ksqlConfigProps);
+    clonedProperties.putAll(ksqlStreamConfigProps);
+    for (Map.Entry<String, Object> entry : props.entrySet()) {
+      if (entry.getKey().toLowerCase().startsWith(KSQL_CONFIG_PREPERTY_PREFIX)) {
+        clonedProperties.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return new KsqlConfig(clonedProperties);
+  }
+
 }
@@ -24,11 +24,23 @@ public class KsqlConstants {
   public static final String SINK_WINDOW_CHANGE_LOG_ADDITIONAL_RETENTION =
       "WINDOW_CHANGE_LOG_ADDITIONAL_RETENTION";
   public static final String SINK_TIMESTAMP_COLUMN_NAME = "TIMESTAMP";
+  public static final String SINK_EMIT_FINAL = "EMIT_FINAL";
+  public static final String SINK_GRACE_PERIOD_MS = "GRACE_PERIOD_MS";
+  public static final String WINDOW_RETENTION_MS = "RETENTION";
+  public static final String WINDOW_SEGMENTS = "SEGMENTS";
+  public static final String JOIN_CACHE_SIZE = "JOIN_CACHE_SIZE";
+  public static final String MAX_STREAM_THREADS = "MAX_STREAM_THREADS";
+  public static final String MAX_CONSUME_RECORDS_PER_SECOND = "MAX_CONSUME_RECORDS_PER_SECOND";
+  public static final String MAX_CONSUME_BYTES_PER_SECOND = "MAX_CONSUME_BYTES_PER_SECOND";
+  public static final String MAX_STATE_STORE_BYTES = "MAX_STATE_STORE_BYTES";
 
   public static int defaultSinkNumberOfPartitions = 4;
   public static short defaultSinkNumberOfReplications = 1;
   // TODO: Find out the best default value.
   public static long defaultSinkWindowChangeLogAdditionalRetention = 1000000;
+  // Kafka Streams' defaults for window stores.
+  public static long defaultWindowRetentionMs = 24 * 60 * 60 * 1000L;
+  public static int defaultWindowSegments = 3;
 
   public static String defaultAutoOffsetRestConfig = "latest";
   public static long defaultCommitIntervalMsConfig = 2000;
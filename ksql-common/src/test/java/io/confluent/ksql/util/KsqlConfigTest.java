@@ -41,5 +41,20 @@ public class KsqlConfigTest {
 
   }
 
+  @Test
+  public void shouldOverwriteOnlyKsqlPropertiesWhenCloning() {
+    KsqlConfig ksqlConfig = new KsqlConfig(new HashMap<>());
+    Map<String, Object> overrides = new HashMap<>();
+    overrides.put(KsqlConfig.KSQL_AGGREGATE_PREAGGREGATION_ENABLE_CONFIG, "true");
+    overrides.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG, 7);
+
+    KsqlConfig cloned = ksqlConfig.cloneWithPropertyOverwrite(overrides);
+
+    assertThat(cloned.get(KsqlConfig.KSQL_AGGREGATE_PREAGGREGATION_ENABLE_CONFIG), equalTo(true));
+    assertThat(cloned.get(StreamsConfig.NUM_STREAM_THREADS_CONFIG),
+               equalTo(ksqlConfig.get(StreamsConfig.NUM_STREAM_THREADS_CONFIG)));
+    assertThat(ksqlConfig.get(KsqlConfig.KSQL_AGGREGATE_PREAGGREGATION_ENABLE_CONFIG), equalTo(false));
+  }
+
 
 }
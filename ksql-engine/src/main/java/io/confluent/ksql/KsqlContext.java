@@ -96,7 +96,7 @@ public class KsqlContext {
     for (QueryMetadata queryMetadata: queryMetadataList) {
       if (queryMetadata instanceof PersistentQueryMetadata) {
         PersistentQueryMetadata persistentQueryMetadata = (PersistentQueryMetadata) queryMetadata;
-        persistentQueryMetadata.getKafkaStreams().start();
+        persistentQueryMetadata.start();
         ksqlEngine.getPersistentQueries()
             .put(persistentQueryMetadata.getId(), persistentQueryMetadata);
       } else {
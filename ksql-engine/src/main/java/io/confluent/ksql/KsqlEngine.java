@@ -47,13 +47,20 @@ import io.confluent.ksql.parser.tree.QuerySpecification;
 import io.confluent.ksql.parser.tree.SetProperty;
 import io.confluent.ksql.parser.tree.Statement;
 import io.confluent.ksql.parser.tree.Table;
+import io.confluent.ksql.physical.ExplainAnalyzer;
+import io.confluent.ksql.physical.PullQueryExecutor;
+import io.confluent.ksql.physical.QueryLagMonitor;
+import io.confluent.ksql.physical.SharedStreamsRuntime;
 import io.confluent.ksql.planner.plan.PlanNode;
 import io.confluent.ksql.serde.DataSource;
 import io.confluent.ksql.util.DataSourceExtractor;
 import io.confluent.ksql.util.KafkaTopicClient;
 import io.confluent.ksql.util.KsqlConfig;
+import io.confluent.ksql.util.KsqlException;
 import io.confluent.ksql.util.Pair;
 import io.confluent.ksql.util.PersistentQueryMetadata;
+import io.confluent.ksql.util.PullQueryResult;
+import io.confluent.ksql.util.QueryCleanupService;
 import io.confluent.ksql.util.QueryMetadata;
 
 import org.antlr.v4.runtime.CharStream;
@@ -74,6 +81,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
 
 public class KsqlEngine implements Closeable {
 
@@ -90,6 +98,10 @@ public class KsqlEngine implements Closeable {
   private final KafkaTopicClient topicClient;
   private final DDLCommandExec ddlCommandExec;
   private final QueryEngine queryEngine;
+  private final SharedStreamsRuntime sharedStreamsRuntime;
+  private final Semaphore explainAnalyzePermit = new Semaphore(1);
+  private final QueryCleanupService queryCleanupService;
+  private final QueryLagMonitor queryLagMonitor;
 
   private final Map<Long, PersistentQueryMetadata> persistentQueries;
   private final Set<QueryMetadata> liveQueries;
@@ -105,10 +117,14 @@ public class KsqlEngine implements Closeable {
     this.topicClient = topicClient;
     this.ddlCommandExec = new DDLCommandExec(metaStore);
     this.queryEngine = new QueryEngine(this, new CommandFactories(topicClient));
+    this.sharedStreamsRuntime = new SharedStreamsRuntime(ksqlConfig);
+    this.queryCleanupService = new QueryCleanupService(topicClient, ksqlConfig);
 
     this.persistentQueries = new HashMap<>();
     this.liveQueries = new HashSet<>();
     this.functionRegistry = new FunctionRegistry();
+    this.queryLagMonitor = new QueryLagMonitor(
+        ksqlConfig, sharedStreamsRuntime, () -> getPersistentQueries().values());
   }
 
   /**
@@ -188,6 +204,30 @@ public class KsqlEngine implements Closeable {
   }
 
 
+  /**
+   * Runs the query over the first records of its sources in a throwaway streams application
+   * and reports the cost of each node of its execution plan. Nothing is written to the sink of
+   * the query, if it has one. The caller waits for the analysis, for up to
+   * {@link KsqlConfig#KSQL_EXPLAIN_ANALYZE_MAX_DURATION_MS_CONFIG}, so only one runs at a time:
+   * a request made while another one runs fails rather than holding up another caller.
+   */
+  public String explainAnalyze(final Query query,
+                               final Map<String, Object> overriddenProperties) throws Exception {
+    List<Pair<String, PlanNode>> logicalPlans =
+        queryEngine.buildLogicalPlans(metaStore, Arrays.asList(new Pair<>("", query)));
+    if (!explainAnalyzePermit.tryAcquire()) {
+      throw new KsqlException("Another EXPLAIN ANALYZE is running on this server. "
+                              + "Retry once it is done.");
+    }
+    try {
+      return new ExplainAnalyzer(ksqlConfig, topicClient, functionRegistry,
+                                 overriddenProperties, sharedStreamsRuntime)
+          .analyze(logicalPlans.get(0).getRight());
+    } finally {
+      explainAnalyzePermit.release();
+    }
+  }
+
   public List<Pair<String, Statement>> parseQueries(final String queriesString,
                                                     final Map<String, Object> overriddenProperties,
                                                     final MetaStore tempMetaStore) {
@@ -360,6 +400,27 @@ public class KsqlEngine implements Closeable {
     return new Query(query.getWith(), newQuerySpecification, query.getOrderBy(), query.getLimit());
   }
 
+  /**
+   * Runs a pull query, {@code SELECT ... FROM table WHERE ROWKEY = 'key'}, against the state of
+   * the persistent query creating the table, without starting a topology.
+   *
+   * @param routeToOwner if true and the key is owned by another server, that server is returned
+   *     for the query to be sent to; otherwise the key is looked up on this server.
+   */
+  public PullQueryResult executePullQuery(final String queryString, final boolean routeToOwner) {
+    final List<Pair<String, Statement>> statements =
+        parseQueries(queryString, Collections.emptyMap(), metaStore);
+    if (statements.size() != 1 || !(statements.get(0).getRight() instanceof Query)) {
+      throw new KsqlException("A pull query must be a single SELECT statement.");
+    }
+    final PlanNode logicalPlan =
+        queryEngine.buildLogicalPlans(metaStore, statements).get(0).getRight();
+    final PullQueryExecutor executor = new PullQueryExecutor(
+        functionRegistry,
+        PullQueryExecutor.parseHostInfo(ksqlConfig.get(StreamsConfig.APPLICATION_SERVER_CONFIG)));
+    return executor.execute(logicalPlan, getPersistentQueries().values(), routeToOwner);
+  }
+
   public Set<QueryMetadata> getLiveQueries() {
     return liveQueries;
   }
@@ -387,7 +448,7 @@ public class KsqlEngine implements Closeable {
     }
     liveQueries.remove(queryMetadata);
     if (closeStreams) {
-      queryMetadata.close();
+      queryCleanupService.submit(queryMetadata);
     }
     return true;
   }
@@ -411,11 +472,22 @@ public class KsqlEngine implements Closeable {
     return ksqlConfig;
   }
 
+  public SharedStreamsRuntime getSharedStreamsRuntime() {
+    return sharedStreamsRuntime;
+  }
+
+  public QueryCleanupService getQueryCleanupService() {
+    return queryCleanupService;
+  }
+
   @Override
   public void close() throws IOException {
+    queryLagMonitor.close();
     for (QueryMetadata queryMetadata : liveQueries) {
       queryMetadata.close();
     }
+    queryCleanupService.close();
+    sharedStreamsRuntime.close();
     topicClient.close();
   }
 
@@ -426,7 +498,6 @@ public class KsqlEngine implements Closeable {
         if (queryMetadata instanceof PersistentQueryMetadata) {
           PersistentQueryMetadata persistentQueryMetadata = (PersistentQueryMetadata) queryMetadata;
           persistentQueryMetadata.close();
-
         }
       }
     } catch (Exception e) {
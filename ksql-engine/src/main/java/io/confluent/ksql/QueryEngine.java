@@ -34,10 +34,13 @@ import io.confluent.ksql.parser.tree.SelectItem;
 import io.confluent.ksql.parser.tree.SingleColumn;
 import io.confluent.ksql.parser.tree.Statement;
 import io.confluent.ksql.physical.PhysicalPlanBuilder;
+import io.confluent.ksql.physical.SharedSourceStreamsBuilder;
 import io.confluent.ksql.planner.LogicalPlanner;
 import io.confluent.ksql.planner.plan.KsqlStructuredDataOutputNode;
 import io.confluent.ksql.planner.plan.PlanNode;
+import io.confluent.ksql.planner.plan.StructuredDataSourceNode;
 import io.confluent.ksql.util.KsqlConfig;
+import io.confluent.ksql.util.KsqlConstants;
 import io.confluent.ksql.util.KsqlException;
 import io.confluent.ksql.util.Pair;
 import io.confluent.ksql.util.QueryMetadata;
@@ -48,8 +51,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 class QueryEngine {
@@ -124,8 +130,13 @@ class QueryEngine {
   ) throws Exception {
 
     List<QueryMetadata> physicalPlans = new ArrayList<>();
+    Set<Integer> builtInSharedSourceGroup = new HashSet<>();
+    final boolean shareSources = isSharedSourceEnabled(overriddenStreamsProperties);
 
     for (int i = 0; i < logicalPlans.size(); i++) {
+      if (builtInSharedSourceGroup.contains(i)) {
+        continue;
+      }
 
       Pair<String, PlanNode> statementPlanPair = logicalPlans.get(i);
       if (statementPlanPair.getRight() == null) {
@@ -134,6 +145,16 @@ class QueryEngine {
           throw new KsqlException("expecting a statement implementing DDLStatement but got: " + statement.getClass());
         }
         handleDdlStatement((DDLStatement)statement, overriddenStreamsProperties);
+        continue;
+      }
+
+      final List<Integer> group = shareSources
+          ? getSharedSourceGroup(logicalPlans, i)
+          : Collections.singletonList(i);
+      if (group.size() > 1) {
+        buildSharedSourcePhysicalPlans(physicalPlans, addUniqueTimeSuffix, logicalPlans, group,
+                                       overriddenStreamsProperties, updateMetastore);
+        builtInSharedSourceGroup.addAll(group);
       } else {
         buildQueryPhysicalPlan(physicalPlans, addUniqueTimeSuffix, statementPlanPair,
                                overriddenStreamsProperties, updateMetastore);
@@ -143,6 +164,121 @@ class QueryEngine {
     return physicalPlans;
   }
 
+  private boolean isSharedSourceEnabled(final Map<String, Object> overriddenStreamsProperties) {
+    final Object enabled = getConfig(overriddenStreamsProperties,
+                                     KsqlConfig.KSQL_PERSISTENT_QUERY_SHARED_SOURCE_ENABLE_CONFIG);
+    // a source read once for a group can't be held to the consume rate quota of each query
+    return Boolean.parseBoolean(String.valueOf(enabled))
+           && !isPositive(getConfig(overriddenStreamsProperties,
+                                    KsqlConfig.KSQL_QUERY_MAX_CONSUME_RECORDS_PER_SECOND_CONFIG))
+           && !isPositive(getConfig(overriddenStreamsProperties,
+                                    KsqlConfig.KSQL_QUERY_MAX_CONSUME_BYTES_PER_SECOND_CONFIG));
+  }
+
+  private Object getConfig(final Map<String, Object> overriddenStreamsProperties,
+                           final String config) {
+    return overriddenStreamsProperties.containsKey(config)
+           ? overriddenStreamsProperties.get(config)
+           : ksqlEngine.getKsqlConfig().get(config);
+  }
+
+  private static boolean isPositive(final Object limit) {
+    return limit != null && Long.parseLong(String.valueOf(limit)) > 0;
+  }
+
+  /**
+   * Finds the queries that can share their source with the query at the given index: the
+   * persistent queries that follow it without DDL statements in between, read the same stream
+   * as their only source, take their timestamps from the same column, and have no consume rate
+   * quota of their own.
+   *
+   * @return the indexes of the group, starting with the given index
+   */
+  static List<Integer> getSharedSourceGroup(final List<Pair<String, PlanNode>> logicalPlans,
+                                            final int index) {
+    final List<Integer> group = new ArrayList<>();
+    group.add(index);
+    final String sourceKey = getSharedSourceKey(logicalPlans.get(index).getRight());
+    if (sourceKey == null) {
+      return group;
+    }
+    for (int i = index + 1;
+         i < logicalPlans.size() && logicalPlans.get(i).getRight() != null;
+         i++) {
+      if (sourceKey.equals(getSharedSourceKey(logicalPlans.get(i).getRight()))) {
+        group.add(i);
+      }
+    }
+    return group;
+  }
+
+  private static String getSharedSourceKey(final PlanNode logicalPlan) {
+    if (!(logicalPlan instanceof KsqlStructuredDataOutputNode)) {
+      return null;
+    }
+    final Map<String, Object> outputProperties =
+        ((KsqlStructuredDataOutputNode) logicalPlan).getOutputProperties();
+    if (isPositive(outputProperties.get(KsqlConstants.MAX_CONSUME_RECORDS_PER_SECOND))
+        || isPositive(outputProperties.get(KsqlConstants.MAX_CONSUME_BYTES_PER_SECOND))) {
+      return null;
+    }
+    final List<StructuredDataSourceNode> sourceNodes = new ArrayList<>();
+    collectSourceNodes(logicalPlan, sourceNodes);
+    if (sourceNodes.size() != 1
+        || sourceNodes.get(0).getDataSourceType() != StructuredDataSource.DataSourceType.KSTREAM) {
+      return null;
+    }
+    final StructuredDataSourceNode sourceNode = sourceNodes.get(0);
+    return sourceNode.getStructuredDataSource().getName() + "/"
+           + (sourceNode.getTimestampField() == null
+              ? "" : sourceNode.getTimestampField().name());
+  }
+
+  private static void collectSourceNodes(final PlanNode planNode,
+                                         final List<StructuredDataSourceNode> sourceNodes) {
+    if (planNode instanceof StructuredDataSourceNode) {
+      sourceNodes.add((StructuredDataSourceNode) planNode);
+      return;
+    }
+    if (planNode.getSources() != null) {
+      for (PlanNode source : planNode.getSources()) {
+        collectSourceNodes(source, sourceNodes);
+      }
+    }
+  }
+
+  private void buildSharedSourcePhysicalPlans(final List<QueryMetadata> physicalPlans,
+                                              final boolean addUniqueTimeSuffix,
+                                              final List<Pair<String, PlanNode>> logicalPlans,
+                                              final List<Integer> group,
+                                              final Map<String, Object> overriddenStreamsProperties,
+                                              final boolean updateMetastore) {
+    final KsqlConfig ksqlConfigClone = ksqlEngine.getKsqlConfig()
+        .cloneWithPropertyOverwrite(overriddenStreamsProperties);
+
+    final PhysicalPlanBuilder physicalPlanBuilder = new PhysicalPlanBuilder(
+        new SharedSourceStreamsBuilder(),
+        ksqlConfigClone,
+        ksqlEngine.getTopicClient(),
+        new MetastoreUtil(),
+        ksqlEngine.getFunctionRegistry(),
+        addUniqueTimeSuffix,
+        overriddenStreamsProperties,
+        updateMetastore,
+        ksqlEngine.getMetaStore(),
+        queryIdCounter,
+        ksqlEngine.getSharedStreamsRuntime());
+
+    final List<Pair<String, PlanNode>> statementPlanPairs = new ArrayList<>();
+    for (int index : group) {
+      statementPlanPairs.add(logicalPlans.get(index));
+    }
+    log.info("Building {} queries reading {} as one topology.", group.size(),
+             logicalPlans.get(group.get(0)).getRight().getTheSourceNode()
+                 .getStructuredDataSource().getName());
+    physicalPlans.addAll(physicalPlanBuilder.buildSharedSourcePhysicalPlans(statementPlanPairs));
+  }
+
   private void buildQueryPhysicalPlan(final List<QueryMetadata> physicalPlans,
                                       final boolean addUniqueTimeSuffix,
                                       final Pair<String, PlanNode> statementPlanPair,
@@ -150,7 +286,8 @@ class QueryEngine {
                                       final boolean updateMetastore) throws Exception {
 
     final StreamsBuilder builder = new StreamsBuilder();
-    final KsqlConfig ksqlConfigClone = ksqlEngine.getKsqlConfig().clone();
+    final KsqlConfig ksqlConfigClone = ksqlEngine.getKsqlConfig()
+        .cloneWithPropertyOverwrite(overriddenStreamsProperties);
 
     // Build a physical plan, in this case a Kafka Streams DSL
     final PhysicalPlanBuilder physicalPlanBuilder = new PhysicalPlanBuilder(builder,
@@ -162,7 +299,8 @@ class QueryEngine {
         overriddenStreamsProperties,
         updateMetastore,
         ksqlEngine.getMetaStore(),
-        queryIdCounter);
+        queryIdCounter,
+        ksqlEngine.getSharedStreamsRuntime());
 
     physicalPlans.add(physicalPlanBuilder.buildPhysicalPlan(statementPlanPair));
   }
@@ -42,6 +42,7 @@ import io.confluent.ksql.parser.tree.SelectItem;
 import io.confluent.ksql.parser.tree.SingleColumn;
 import io.confluent.ksql.parser.tree.Table;
 import io.confluent.ksql.parser.tree.WindowExpression;
+import io.confluent.ksql.parser.tree.WithinExpression;
 import io.confluent.ksql.planner.DefaultTraversalVisitor;
 import io.confluent.ksql.planner.plan.JoinNode;
 import io.confluent.ksql.planner.plan.PlanNodeId;
@@ -101,6 +102,20 @@ public class Analyzer extends DefaultTraversalVisitor<Node, AnalysisContext> {
     if (node.getWindowExpression().isPresent()) {
       analyzeWindowExpression(node.getWindowExpression().get());
     }
+    if (!node.getWindowExpression().isPresent()) {
+      // A stream-stream join keeps the windows of both streams in its stores for RETENTION
+      final boolean isWindowedJoin =
+          analysis.getJoin() != null && analysis.getJoin().getWithinMs().isPresent();
+      if (!isWindowedJoin
+          && analysis.getIntoProperties().containsKey(KsqlConstants.WINDOW_RETENTION_MS)) {
+        throw new KsqlException("RETENTION in WITH clause is only supported for windowed "
+                                + "aggregations and stream-stream joins with WITHIN.");
+      }
+      if (analysis.getIntoProperties().containsKey(KsqlConstants.WINDOW_SEGMENTS)) {
+        throw new KsqlException("SEGMENTS in WITH clause is only supported for windowed "
+                                + "aggregations.");
+      }
+    }
 
     if (node.getHaving().isPresent()) {
       analyzeHaving(node.getHaving().get());
@@ -246,6 +261,21 @@ public class Analyzer extends DefaultTraversalVisitor<Node, AnalysisContext> {
       throw new KsqlException("Only equality join criteria is supported.");
     }
 
+    boolean isStreamStreamJoin =
+        leftDataSource.getDataSourceType() == StructuredDataSource.DataSourceType.KSTREAM
+        && rightDataSource.getDataSourceType() == StructuredDataSource.DataSourceType.KSTREAM;
+    if (isStreamStreamJoin && !node.getWithin().isPresent()) {
+      throw new KsqlException(String.format(
+          "Stream-stream joins must have a WITHIN clause: %s JOIN %s", leftSideName,
+          rightSideName));
+    }
+    if (!isStreamStreamJoin && node.getWithin().isPresent()) {
+      throw new KsqlException(String.format(
+          "WITHIN is only supported for stream-stream joins: %s JOIN %s", leftSideName,
+          rightSideName));
+    }
+    Optional<Long> withinMs = node.getWithin().map(WithinExpression::toMillis);
+
     StructuredDataSourceNode
         leftSourceKafkaTopicNode =
         new StructuredDataSourceNode(new PlanNodeId("KafkaTopic_Left"),
@@ -260,7 +290,7 @@ public class Analyzer extends DefaultTraversalVisitor<Node, AnalysisContext> {
     JoinNode joinNode =
         new JoinNode(new PlanNodeId("Join"), joinType, leftSourceKafkaTopicNode,
             rightSourceKafkaTopicNode, leftKeyFieldName, rightKeyFieldName, leftAlias,
-            rightAlias);
+            rightAlias, withinMs, Optional.empty());
     analysis.setJoin(joinNode);
     return null;
   }
@@ -535,6 +565,97 @@ public class Analyzer extends DefaultTraversalVisitor<Node, AnalysisContext> {
             .getProperties().get(KsqlConstants.SINK_NUMBER_OF_REPLICAS).toString());
       }
     }
+
+    if (node.getProperties().get(KsqlConstants.SINK_EMIT_FINAL) != null) {
+      String emitFinal = node.getProperties().get(KsqlConstants.SINK_EMIT_FINAL).toString()
+          .replace("'", "");
+      if (!emitFinal.equalsIgnoreCase("true") && !emitFinal.equalsIgnoreCase("false")) {
+        throw new KsqlException("Invalid value for EMIT_FINAL in WITH clause: " + emitFinal);
+      }
+      analysis.getIntoProperties().put(KsqlConstants.SINK_EMIT_FINAL,
+                                       Boolean.parseBoolean(emitFinal));
+    }
+
+    if (node.getProperties().get(KsqlConstants.SINK_GRACE_PERIOD_MS) != null) {
+      String gracePeriod = node.getProperties().get(KsqlConstants.SINK_GRACE_PERIOD_MS).toString();
+      long gracePeriodMs;
+      try {
+        gracePeriodMs = Long.parseLong(gracePeriod);
+      } catch (NumberFormatException e) {
+        throw new KsqlException("Invalid grace period in WITH clause: " + gracePeriod);
+      }
+      if (gracePeriodMs < 0) {
+        throw new KsqlException("Grace period in WITH clause cannot be negative: " + gracePeriod);
+      }
+      analysis.getIntoProperties().put(KsqlConstants.SINK_GRACE_PERIOD_MS, gracePeriodMs);
+    }
+
+    if (node.getProperties().get(KsqlConstants.WINDOW_RETENTION_MS) != null) {
+      String retention = node.getProperties().get(KsqlConstants.WINDOW_RETENTION_MS).toString();
+      long retentionMs;
+      try {
+        retentionMs = Long.parseLong(retention);
+      } catch (NumberFormatException e) {
+        throw new KsqlException("Invalid window retention in WITH clause: " + retention);
+      }
+      if (retentionMs <= 0) {
+        throw new KsqlException("Window retention in WITH clause must be positive: " + retention);
+      }
+      analysis.getIntoProperties().put(KsqlConstants.WINDOW_RETENTION_MS, retentionMs);
+    }
+
+    if (node.getProperties().get(KsqlConstants.WINDOW_SEGMENTS) != null) {
+      String segments = node.getProperties().get(KsqlConstants.WINDOW_SEGMENTS).toString();
+      int numberOfSegments;
+      try {
+        numberOfSegments = Integer.parseInt(segments);
+      } catch (NumberFormatException e) {
+        throw new KsqlException("Invalid number of window segments in WITH clause: " + segments);
+      }
+      // Kafka Streams needs at least two segments to roll a window store.
+      if (numberOfSegments < 2) {
+        throw new KsqlException("Number of window segments in WITH clause must be at least 2: "
+                                + segments);
+      }
+      analysis.getIntoProperties().put(KsqlConstants.WINDOW_SEGMENTS, numberOfSegments);
+    }
+
+    if (node.getProperties().get(KsqlConstants.JOIN_CACHE_SIZE) != null) {
+      String cacheSize = node.getProperties().get(KsqlConstants.JOIN_CACHE_SIZE).toString();
+      int cacheRows;
+      try {
+        cacheRows = Integer.parseInt(cacheSize);
+      } catch (NumberFormatException e) {
+        throw new KsqlException("Invalid join cache size in WITH clause: " + cacheSize);
+      }
+      if (cacheRows <= 0) {
+        throw new KsqlException("Join cache size in WITH clause must be positive: " + cacheSize);
+      }
+      analysis.getIntoProperties().put(KsqlConstants.JOIN_CACHE_SIZE, cacheRows);
+    }
+
+    setIntoLimit(node, KsqlConstants.MAX_STREAM_THREADS, "stream threads");
+    setIntoLimit(node, KsqlConstants.MAX_CONSUME_RECORDS_PER_SECOND, "records per second");
+    setIntoLimit(node, KsqlConstants.MAX_CONSUME_BYTES_PER_SECOND, "bytes per second");
+    setIntoLimit(node, KsqlConstants.MAX_STATE_STORE_BYTES, "state store bytes");
+  }
+
+  private void setIntoLimit(final Table node, final String property, final String description) {
+    if (node.getProperties().get(property) == null) {
+      return;
+    }
+    String value = node.getProperties().get(property).toString();
+    long limit;
+    try {
+      limit = Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      throw new KsqlException("Invalid maximum " + description + " in WITH clause: " + value);
+    }
+    if (limit <= 0) {
+      throw new KsqlException("Maximum " + description + " in WITH clause must be positive: "
+                              + value);
+    }
+    analysis.getIntoProperties().put(property, limit);
   }
 
   private void setIntoTopicName(final Table node) {
@@ -599,6 +720,15 @@ public class Analyzer extends DefaultTraversalVisitor<Node, AnalysisContext> {
     validSet.add(KsqlConstants.SINK_TIMESTAMP_COLUMN_NAME.toUpperCase());
     validSet.add(KsqlConstants.SINK_NUMBER_OF_PARTITIONS.toUpperCase());
     validSet.add(KsqlConstants.SINK_NUMBER_OF_REPLICAS.toUpperCase());
+    validSet.add(KsqlConstants.SINK_EMIT_FINAL.toUpperCase());
+    validSet.add(KsqlConstants.SINK_GRACE_PERIOD_MS.toUpperCase());
+    validSet.add(KsqlConstants.WINDOW_RETENTION_MS.toUpperCase());
+    validSet.add(KsqlConstants.WINDOW_SEGMENTS.toUpperCase());
+    validSet.add(KsqlConstants.JOIN_CACHE_SIZE.toUpperCase());
+    validSet.add(KsqlConstants.MAX_STREAM_THREADS.toUpperCase());
+    validSet.add(KsqlConstants.MAX_CONSUME_RECORDS_PER_SECOND.toUpperCase());
+    validSet.add(KsqlConstants.MAX_CONSUME_BYTES_PER_SECOND.toUpperCase());
+    validSet.add(KsqlConstants.MAX_STATE_STORE_BYTES.toUpperCase());
 
     for (String withVariable: withClauseVariables) {
       if (!validSet.contains(withVariable.toUpperCase())) {
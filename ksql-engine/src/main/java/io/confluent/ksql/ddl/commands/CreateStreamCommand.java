@@ -18,16 +18,21 @@ package io.confluent.ksql.ddl.commands;
 
 import java.util.Map;
 
+import io.confluent.ksql.ddl.DdlConfig;
 import io.confluent.ksql.metastore.KsqlStream;
 import io.confluent.ksql.metastore.MetaStore;
 import io.confluent.ksql.parser.tree.CreateStream;
 import io.confluent.ksql.util.KafkaTopicClient;
+import io.confluent.ksql.util.KsqlException;
 
 
 public class CreateStreamCommand extends AbstractCreateStreamCommand {
   public CreateStreamCommand(CreateStream createStream, Map<String, Object> overriddenProperties,
                              KafkaTopicClient kafkaTopicClient) {
     super(createStream, overriddenProperties, kafkaTopicClient);
+    if (createStream.getProperties().containsKey(DdlConfig.IS_BROADCAST_PROPERTY)) {
+      throw new KsqlException("Only tables can be broadcast: " + createStream.getName());
+    }
   }
 
   @Override
@@ -22,6 +22,7 @@ import io.confluent.ksql.metastore.MetaStore;
 import io.confluent.ksql.parser.tree.CreateTable;
 import io.confluent.ksql.parser.tree.Expression;
 import io.confluent.ksql.util.KafkaTopicClient;
+import io.confluent.ksql.util.KsqlException;
 import io.confluent.ksql.util.StringUtil;
 
 import java.util.Map;
@@ -29,6 +30,7 @@ import java.util.Map;
 public class CreateTableCommand extends AbstractCreateStreamCommand {
 
   private String stateStoreName;
+  private boolean isBroadcast;
 
   public CreateTableCommand(CreateTable createTable, Map<String, Object> overriddenProperties,
                             KafkaTopicClient kafkaTopicClient) {
@@ -42,6 +44,20 @@ public class CreateTableCommand extends AbstractCreateStreamCommand {
       this.stateStoreName = createTable.getName().toString() + "_statestore";
     }
 
+    this.isBroadcast = false;
+    if (properties.containsKey(DdlConfig.IS_BROADCAST_PROPERTY)) {
+      String isBroadcastProp = StringUtil.cleanQuotes(
+          properties.get(DdlConfig.IS_BROADCAST_PROPERTY).toString()).toUpperCase();
+      if (!isBroadcastProp.equals("TRUE") && !isBroadcastProp.equals("FALSE")) {
+        throw new KsqlException("BROADCAST property is not set correctly: " + isBroadcastProp);
+      }
+      isBroadcast = Boolean.parseBoolean(isBroadcastProp);
+      if (isBroadcast && isWindowed) {
+        throw new KsqlException("Windowed tables can not be broadcast: "
+                                + createTable.getName());
+      }
+    }
+
 
   }
 
@@ -57,7 +73,7 @@ public class CreateTableCommand extends AbstractCreateStreamCommand {
         (timestampColumnName.length() == 0) ? null :
             schema.field(timestampColumnName),
         metaStore.getTopic(topicName),
-        stateStoreName, isWindowed);
+        stateStoreName, isWindowed, isBroadcast);
 
     // TODO: Need to check if the topic exists.
     // Add the topic to the metastore
@@ -16,6 +16,9 @@
 
 package io.confluent.ksql.function;
 
+import io.confluent.ksql.parser.tree.Expression;
+import io.confluent.ksql.util.KsqlException;
+
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.streams.kstream.Merger;
 
@@ -52,6 +55,21 @@ public abstract class KsqlAggregateFunction<V, A> {
 
   public abstract A aggregate(V currentVal, A currentAggVal);
 
+  /**
+   * Creates the instance of this function that aggregates the value column at
+   * argIndexInValue. Functions that take literal parameters in addition to the aggregated
+   * column, e.g. TOPK(col, k), override this to read them from the call's arguments.
+   */
+  public KsqlAggregateFunction<V, A> getInstance(final Integer argIndexInValue,
+                                                 final List<Expression> functionArguments) {
+    try {
+      return getClass().getDeclaredConstructor(Integer.class).newInstance(argIndexInValue);
+    } catch (final Exception e) {
+      throw new KsqlException("Failed to create an instance of aggregate function "
+                              + functionName, e);
+    }
+  }
+
   public A getIntialValue() {
     return intialValue;
   }
@@ -64,6 +82,36 @@ public abstract class KsqlAggregateFunction<V, A> {
     return returnType;
   }
 
+  /**
+   * The schema of the value kept in the aggregate state store. This is the return type unless
+   * the function keeps a different intermediate state, in which case it also overrides
+   * {@link #getResult(Object)}.
+   */
+  public Schema getAggregateType() {
+    return returnType;
+  }
+
+  /**
+   * Converts the aggregate state into the value returned to the query.
+   */
+  public Object getResult(final A currentAggVal) {
+    return currentAggVal;
+  }
+
+  /**
+   * Whether the function can be computed in two phases: partial aggregates built with
+   * {@link #aggregate} over disjoint subsets of the input are combined with
+   * {@link #getMerger()} to give the same result as aggregating all input at once.
+   * Decomposable functions allow rows to be pre-aggregated before they are repartitioned.
+   */
+  public boolean isDecomposable() {
+    return false;
+  }
+
+  public boolean hasIntermediateState() {
+    return !getAggregateType().equals(getReturnType());
+  }
+
   public List<Schema> getArguments() {
     return arguments;
   }
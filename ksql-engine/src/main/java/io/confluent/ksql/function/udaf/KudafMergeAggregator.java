@@ -0,0 +1,65 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.function.udaf;
+
+import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.function.KsqlAggregateFunction;
+import io.confluent.ksql.function.UdafAggregator;
+
+import org.apache.kafka.streams.kstream.Merger;
+
+import java.util.Map;
+
+/**
+ * Second phase of a two-phase aggregation: the input rows are partial aggregate rows, laid out
+ * like the aggregate row itself, and are combined into the aggregate with each function's
+ * merger.
+ */
+public class KudafMergeAggregator implements UdafAggregator {
+
+  private final Map<Integer, KsqlAggregateFunction> aggValToAggFunctionMap;
+  private final Map<Integer, Integer> aggValToValColumnMap;
+  private final UdafAggregator partialAggregator;
+
+  public KudafMergeAggregator(Map<Integer, KsqlAggregateFunction> aggValToAggFunctionMap,
+                              Map<Integer, Integer> aggValToValColumnMap) {
+    this.aggValToAggFunctionMap = aggValToAggFunctionMap;
+    this.aggValToValColumnMap = aggValToValColumnMap;
+    this.partialAggregator = new KudafAggregator(aggValToAggFunctionMap, aggValToValColumnMap);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public GenericRow apply(String key, GenericRow partialAggRowValue, GenericRow aggRowValue) {
+    aggValToValColumnMap.keySet().forEach(columnIndex ->
+        aggRowValue.getColumns().set(columnIndex, partialAggRowValue.getColumns().get(columnIndex))
+    );
+
+    aggValToAggFunctionMap.forEach((functionIndex, ksqlAggregateFunction) ->
+        aggRowValue.getColumns().set(functionIndex, ksqlAggregateFunction.getMerger()
+            .apply(key,
+                aggRowValue.getColumns().get(functionIndex),
+                partialAggRowValue.getColumns().get(functionIndex)))
+    );
+    return aggRowValue;
+  }
+
+  @Override
+  public Merger<String, GenericRow> getMerger() {
+    return partialAggregator.getMerger();
+  }
+}
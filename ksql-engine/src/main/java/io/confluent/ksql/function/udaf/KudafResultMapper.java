@@ -0,0 +1,53 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.function.udaf;
+
+import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.function.KsqlAggregateFunction;
+import org.apache.kafka.streams.kstream.ValueMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts the aggregate state columns of an aggregate row into the values returned to the
+ * query, for aggregate functions whose state differs from their result.
+ */
+public class KudafResultMapper implements ValueMapper<GenericRow, GenericRow> {
+
+  private final Map<Integer, KsqlAggregateFunction> aggValToAggFunctionMap;
+
+  public KudafResultMapper(Map<Integer, KsqlAggregateFunction> aggValToAggFunctionMap) {
+    this.aggValToAggFunctionMap = aggValToAggFunctionMap;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public GenericRow apply(GenericRow aggRowValue) {
+    if (aggRowValue == null) {
+      return null;
+    }
+    List<Object> columns = new ArrayList<>(aggRowValue.getColumns());
+    aggValToAggFunctionMap.forEach((index, function) -> {
+      if (function.hasIntermediateState()) {
+        columns.set(index, function.getResult(columns.get(index)));
+      }
+    });
+    return new GenericRow(columns);
+  }
+}
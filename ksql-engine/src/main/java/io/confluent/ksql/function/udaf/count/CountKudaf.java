@@ -34,6 +34,11 @@ public class CountKudaf extends KsqlAggregateFunction<Object, Long> {
     return currentAggVal + 1;
   }
 
+  @Override
+  public boolean isDecomposable() {
+    return true;
+  }
+
   @Override
   public Merger<String, Long> getMerger() {
     return (aggKey, aggOne, aggTwo) -> aggOne + aggTwo;
@@ -39,6 +39,11 @@ public class LongMaxKudaf extends KsqlAggregateFunction<Long, Long> {
     return currentAggVal;
   }
 
+  @Override
+  public boolean isDecomposable() {
+    return true;
+  }
+
   @Override
   public Merger<String, Long> getMerger() {
     return (aggKey, aggOne, aggTwo) -> {
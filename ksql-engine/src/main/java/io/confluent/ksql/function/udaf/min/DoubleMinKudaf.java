@@ -39,6 +39,11 @@ public class DoubleMinKudaf extends KsqlAggregateFunction<Double, Double> {
     return currentAggVal;
   }
 
+  @Override
+  public boolean isDecomposable() {
+    return true;
+  }
+
   @Override
   public Merger<String, Double> getMerger() {
     return (aggKey, aggOne, aggTwo) -> {
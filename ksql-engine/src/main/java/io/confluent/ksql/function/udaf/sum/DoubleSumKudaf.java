@@ -35,6 +35,11 @@ public class DoubleSumKudaf extends KsqlAggregateFunction<Double, Double> {
     return currentVal + currentAggVal;
   }
 
+  @Override
+  public boolean isDecomposable() {
+    return true;
+  }
+
   @Override
   public Merger<String, Double> getMerger() {
     return (aggKey, aggOne, aggTwo) -> aggOne + aggTwo;
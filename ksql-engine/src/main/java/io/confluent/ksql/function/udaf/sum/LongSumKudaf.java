@@ -34,6 +34,11 @@ public class LongSumKudaf extends KsqlAggregateFunction<Long, Long> {
     return currentVal + currentAggVal;
   }
 
+  @Override
+  public boolean isDecomposable() {
+    return true;
+  }
+
   @Override
   public Merger<String, Long> getMerger() {
     return (aggKey, aggOne, aggTwo) -> aggOne + aggTwo;
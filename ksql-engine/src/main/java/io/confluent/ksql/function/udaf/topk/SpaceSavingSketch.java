@@ -0,0 +1,346 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.function.udaf.topk;
+
+import io.confluent.ksql.util.KsqlException;
+import org.apache.kafka.connect.data.Schema;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded frequent-items summary based on the space-saving algorithm. At most capacity items
+ * are tracked; when a new item arrives and the summary is full it replaces the item with the
+ * smallest count and inherits that count as its error bound.
+ *
+ * <p>Counters are kept in a list of buckets of equal count, ordered by count (the stream-summary
+ * structure), so counting an item and evicting the least frequent one take constant time.
+ *
+ * <p>The summary is encoded as a compact binary record (item, count, error per entry, least
+ * frequent first) which is Base64 encoded so that it can be kept in a STRING column of the
+ * aggregate row, whatever the value format of the query.
+ */
+class SpaceSavingSketch {
+
+  private static final byte FORMAT_VERSION = 1;
+
+  private final int capacity;
+  private final Schema itemSchema;
+  private final Map<Object, Counter> counters;
+  // Bucket of the smallest count, the head of the list of buckets ordered by count
+  private Bucket minBucket;
+  private Bucket maxBucket;
+
+  SpaceSavingSketch(final int capacity, final Schema itemSchema) {
+    this.capacity = capacity;
+    this.itemSchema = itemSchema;
+    this.counters = new HashMap<>();
+  }
+
+  int getCapacity() {
+    return capacity;
+  }
+
+  int size() {
+    return counters.size();
+  }
+
+  void offer(final Object item) {
+    final Counter counter = counters.get(item);
+    if (counter != null) {
+      increment(counter);
+      return;
+    }
+    if (counters.size() < capacity) {
+      final Counter added = new Counter(item, 0, 0);
+      counters.put(item, added);
+      insertBefore(minBucket, added, 1);
+      return;
+    }
+    final Counter min = minBucket.counters.iterator().next();
+    counters.remove(min.item);
+    final Counter replacement = new Counter(item, min.count, min.count);
+    min.bucket.counters.remove(min);
+    min.bucket.counters.add(replacement);
+    replacement.bucket = min.bucket;
+    counters.put(item, replacement);
+    increment(replacement);
+  }
+
+  /**
+   * Merges the other summary into this one. Counts of items present in both are added, and the
+   * result is trimmed back to capacity keeping the items with the largest counts.
+   */
+  void merge(final SpaceSavingSketch other) {
+    final Map<Object, long[]> merged = new HashMap<>();
+    for (Counter counter : counters.values()) {
+      merged.put(counter.item, new long[]{counter.count, counter.error});
+    }
+    for (Counter counter : other.counters.values()) {
+      final long[] existing = merged.get(counter.item);
+      if (existing == null) {
+        merged.put(counter.item, new long[]{counter.count, counter.error});
+      } else {
+        existing[0] += counter.count;
+        existing[1] += counter.error;
+      }
+    }
+    final List<Map.Entry<Object, long[]>> entries = new ArrayList<>(merged.entrySet());
+    entries.sort(Comparator.comparingLong(e -> e.getValue()[0]));
+    counters.clear();
+    minBucket = null;
+    maxBucket = null;
+    for (Map.Entry<Object, long[]> entry
+        : entries.subList(Math.max(0, entries.size() - capacity), entries.size())) {
+      append(entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+    }
+  }
+
+  /**
+   * @return up to k items, most frequent first.
+   */
+  List<Object> topK(final int k) {
+    final List<Object> items = new ArrayList<>();
+    for (Bucket bucket = maxBucket; bucket != null && items.size() < k; bucket = bucket.prev) {
+      final Iterator<Counter> bucketCounters = bucket.counters.iterator();
+      while (bucketCounters.hasNext() && items.size() < k) {
+        items.add(bucketCounters.next().item);
+      }
+    }
+    return items;
+  }
+
+  long count(final Object item) {
+    final Counter counter = counters.get(item);
+    return counter == null ? 0 : counter.count;
+  }
+
+  String encode() {
+    try {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + 32 * counters.size());
+      final DataOutputStream out = new DataOutputStream(bytes);
+      out.writeByte(FORMAT_VERSION);
+      out.writeInt(capacity);
+      out.writeInt(counters.size());
+      for (Bucket bucket = minBucket; bucket != null; bucket = bucket.next) {
+        for (Counter counter : bucket.counters) {
+          writeItem(out, counter.item);
+          out.writeLong(counter.count);
+          out.writeLong(counter.error);
+        }
+      }
+      out.flush();
+      return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    } catch (IOException e) {
+      throw new KsqlException("Failed to encode TOPK state", e);
+    }
+  }
+
+  static SpaceSavingSketch decode(final String encoded, final Schema itemSchema) {
+    try {
+      final DataInputStream in = new DataInputStream(
+          new ByteArrayInputStream(Base64.getDecoder().decode(encoded)));
+      final byte version = in.readByte();
+      if (version != FORMAT_VERSION) {
+        throw new KsqlException("Unknown TOPK state format version: " + version);
+      }
+      final SpaceSavingSketch sketch = new SpaceSavingSketch(in.readInt(), itemSchema);
+      final int size = in.readInt();
+      final List<Object> items = new ArrayList<>(size);
+      final List<long[]> counts = new ArrayList<>(size);
+      boolean ordered = true;
+      for (int i = 0; i < size; i++) {
+        items.add(sketch.readItem(in));
+        counts.add(new long[]{in.readLong(), in.readLong()});
+        ordered &= i == 0 || counts.get(i - 1)[0] <= counts.get(i)[0];
+      }
+      if (ordered) {
+        for (int i = 0; i < size; i++) {
+          sketch.append(items.get(i), counts.get(i)[0], counts.get(i)[1]);
+        }
+      } else {
+        // States written before entries were encoded least frequent first
+        final SpaceSavingSketch unordered = new SpaceSavingSketch(sketch.capacity, itemSchema);
+        for (int i = 0; i < size; i++) {
+          unordered.counters.put(items.get(i), new Counter(items.get(i), counts.get(i)[0],
+                                                           counts.get(i)[1]));
+        }
+        sketch.merge(unordered);
+      }
+      return sketch;
+    } catch (IOException | IllegalArgumentException e) {
+      throw new KsqlException("Failed to decode TOPK state", e);
+    }
+  }
+
+  /**
+   * Adds a counter at the most frequent end; its count must be at least that of the others.
+   */
+  private void append(final Object item, final long count, final long error) {
+    final Counter counter = new Counter(item, count, error);
+    counters.put(item, counter);
+    if (maxBucket != null && maxBucket.count == count) {
+      maxBucket.counters.add(counter);
+      counter.bucket = maxBucket;
+    } else {
+      final Bucket bucket = new Bucket(count);
+      bucket.counters.add(counter);
+      counter.bucket = bucket;
+      bucket.prev = maxBucket;
+      if (maxBucket == null) {
+        minBucket = bucket;
+      } else {
+        maxBucket.next = bucket;
+      }
+      maxBucket = bucket;
+    }
+  }
+
+  private void increment(final Counter counter) {
+    final Bucket from = counter.bucket;
+    final long count = counter.count + 1;
+    from.counters.remove(counter);
+    if (from.next != null && from.next.count == count) {
+      counter.count = count;
+      counter.bucket = from.next;
+      from.next.counters.add(counter);
+    } else {
+      insertBefore(from.next, counter, count);
+    }
+    if (from.counters.isEmpty()) {
+      unlink(from);
+    }
+  }
+
+  /**
+   * Puts the counter with the given count in a new bucket linked in before the given bucket,
+   * or at the most frequent end if that is null, unless the bucket has that count already.
+   */
+  private void insertBefore(final Bucket next, final Counter counter, final long count) {
+    counter.count = count;
+    if (next != null && next.count == count) {
+      next.counters.add(counter);
+      counter.bucket = next;
+      return;
+    }
+    final Bucket bucket = new Bucket(count);
+    bucket.counters.add(counter);
+    counter.bucket = bucket;
+    bucket.next = next;
+    bucket.prev = next == null ? maxBucket : next.prev;
+    if (bucket.prev == null) {
+      minBucket = bucket;
+    } else {
+      bucket.prev.next = bucket;
+    }
+    if (next == null) {
+      maxBucket = bucket;
+    } else {
+      next.prev = bucket;
+    }
+  }
+
+  private void unlink(final Bucket bucket) {
+    if (bucket.prev == null) {
+      minBucket = bucket.next;
+    } else {
+      bucket.prev.next = bucket.next;
+    }
+    if (bucket.next == null) {
+      maxBucket = bucket.prev;
+    } else {
+      bucket.next.prev = bucket.prev;
+    }
+  }
+
+  private void writeItem(final DataOutputStream out, final Object item) throws IOException {
+    switch (itemSchema.type()) {
+      case INT32:
+        out.writeInt((Integer) item);
+        break;
+      case INT64:
+        out.writeLong((Long) item);
+        break;
+      case FLOAT64:
+        out.writeDouble((Double) item);
+        break;
+      case STRING:
+        final byte[] utf8 = item.toString().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+        break;
+      default:
+        throw new KsqlException("TOPK does not support items of type: " + itemSchema.type());
+    }
+  }
+
+  private Object readItem(final DataInputStream in) throws IOException {
+    switch (itemSchema.type()) {
+      case INT32:
+        return in.readInt();
+      case INT64:
+        return in.readLong();
+      case FLOAT64:
+        return in.readDouble();
+      case STRING:
+        final byte[] utf8 = new byte[in.readInt()];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+      default:
+        throw new KsqlException("TOPK does not support items of type: " + itemSchema.type());
+    }
+  }
+
+  private static final class Counter {
+
+    private final Object item;
+    private final long error;
+    private long count;
+    private Bucket bucket;
+
+    private Counter(final Object item, final long count, final long error) {
+      this.item = item;
+      this.count = count;
+      this.error = error;
+    }
+  }
+
+  private static final class Bucket {
+
+    private final long count;
+    private final Set<Counter> counters = new LinkedHashSet<>();
+    private Bucket prev;
+    private Bucket next;
+
+    private Bucket(final long count) {
+      this.count = count;
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.function.udaf.topk;
+
+import io.confluent.ksql.function.KsqlAggregateFunction;
+import io.confluent.ksql.parser.tree.Expression;
+import io.confluent.ksql.parser.tree.LongLiteral;
+import io.confluent.ksql.util.KsqlException;
+import io.confluent.ksql.util.SchemaUtil;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.streams.kstream.Merger;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TOPK(col, k): the k most frequent values of col, most frequent first. The frequencies are
+ * approximated with a bounded {@link SpaceSavingSketch}, so state per group stays constant
+ * regardless of the number of distinct values.
+ *
+ * <p>The state of a group is kept encoded in the aggregate row, so it is read and written as a
+ * string on every update. Each stream thread keeps the sketches of the states it encoded last,
+ * so that the next update of a group, and the result of its new state, find the sketch instead
+ * of decoding it again.
+ */
+public class TopkKudaf extends KsqlAggregateFunction<Object, String> {
+
+  static final int DEFAULT_K = 10;
+  // Number of counters tracked per requested result. More counters tighten the error bound
+  // on the reported items at the cost of a larger state.
+  static final int COUNTERS_PER_RESULT = 10;
+  private static final int CACHED_SKETCHES = 128;
+
+  private final Schema itemSchema;
+  private final int k;
+  private final ThreadLocal<Map<String, SpaceSavingSketch>> sketches =
+      ThreadLocal.withInitial(() -> new LinkedHashMap<String, SpaceSavingSketch>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, SpaceSavingSketch> eldest) {
+          return size() > CACHED_SKETCHES;
+        }
+      });
+
+  TopkKudaf(final Integer argIndexInValue, final Schema itemSchema, final int k) {
+    super(argIndexInValue,
+          new SpaceSavingSketch(k * COUNTERS_PER_RESULT, itemSchema).encode(),
+          SchemaBuilder.array(itemSchema).build(),
+          Arrays.asList(itemSchema),
+          "TOPK", TopkKudaf.class);
+    this.itemSchema = itemSchema;
+    this.k = k;
+  }
+
+  @Override
+  public TopkKudaf getInstance(final Integer argIndexInValue,
+                               final List<Expression> functionArguments) {
+    if (functionArguments.size() != 2) {
+      throw new KsqlException("TOPK expects two arguments: the column and the number of "
+                              + "values to return.");
+    }
+    final Expression kExpression = functionArguments.get(1);
+    if (!(kExpression instanceof LongLiteral) || ((LongLiteral) kExpression).getValue() <= 0) {
+      throw new KsqlException("The second argument of TOPK must be a positive integer literal "
+                              + "but was: " + kExpression);
+    }
+    return new TopkKudaf(argIndexInValue, itemSchema,
+                         (int) ((LongLiteral) kExpression).getValue());
+  }
+
+  @Override
+  public String aggregate(final Object currentVal, final String currentAggVal) {
+    if (currentVal == null) {
+      return currentAggVal;
+    }
+    final SpaceSavingSketch sketch = take(currentAggVal);
+    sketch.offer(currentVal);
+    return encode(sketch);
+  }
+
+  @Override
+  public boolean isDecomposable() {
+    return true;
+  }
+
+  @Override
+  public Merger<String, String> getMerger() {
+    return (aggKey, aggOne, aggTwo) -> {
+      final SpaceSavingSketch merged = take(aggOne);
+      merged.merge(take(aggTwo));
+      return encode(merged);
+    };
+  }
+
+  @Override
+  public Schema getAggregateType() {
+    return Schema.STRING_SCHEMA;
+  }
+
+  @Override
+  public Object getResult(final String currentAggVal) {
+    final SpaceSavingSketch sketch = sketches.get().get(currentAggVal);
+    final List<Object> topK = (sketch != null
+                               ? sketch
+                               : SpaceSavingSketch.decode(currentAggVal, itemSchema)).topK(k);
+    final Object[] result =
+        (Object[]) Array.newInstance(SchemaUtil.getJavaType(itemSchema), topK.size());
+    return topK.toArray(result);
+  }
+
+  /**
+   * @return the sketch of the given state, to be updated, which is no longer cached as that of
+   *     the state
+   */
+  private SpaceSavingSketch take(final String state) {
+    final SpaceSavingSketch sketch = sketches.get().remove(state);
+    return sketch != null ? sketch : SpaceSavingSketch.decode(state, itemSchema);
+  }
+
+  private String encode(final SpaceSavingSketch sketch) {
+    final String state = sketch.encode();
+    sketches.get().put(state, sketch);
+    return state;
+  }
+
+  int getK() {
+    return k;
+  }
+}
@@ -20,6 +20,7 @@ import org.apache.kafka.streams.kstream.ValueTransformerSupplier;
 import org.apache.kafka.streams.processor.ProcessorContext;
 
 import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.util.QueryMetrics;
 
 public class AddTimestampColumn implements ValueTransformerSupplier<GenericRow, GenericRow> {
   @Override
@@ -33,6 +34,7 @@ public class AddTimestampColumn implements ValueTransformerSupplier<GenericRow,
 
       @Override
       public GenericRow transform(GenericRow row) {
+        QueryMetrics.startProcessing();
         if (row != null) {
           row.getColumns().add(0, processorContext.timestamp());
         }
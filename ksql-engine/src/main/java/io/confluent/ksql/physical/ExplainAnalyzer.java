@@ -0,0 +1,266 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.physical;
+
+import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.function.FunctionRegistry;
+import io.confluent.ksql.metastore.MetastoreUtil;
+import io.confluent.ksql.planner.plan.KsqlBareOutputNode;
+import io.confluent.ksql.planner.plan.PlanNode;
+import io.confluent.ksql.serde.DataSource;
+import io.confluent.ksql.structured.QueuedSchemaKStream;
+import io.confluent.ksql.structured.SchemaKTable;
+import io.confluent.ksql.util.KafkaTopicClient;
+import io.confluent.ksql.util.KsqlConfig;
+import io.confluent.ksql.util.KsqlException;
+import io.confluent.ksql.util.QueryMetrics;
+import io.confluent.ksql.util.QueuedQueryMetadata;
+import io.confluent.ksql.util.StateStoreUsage;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.Topology;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a query for EXPLAIN ANALYZE over the first records of its sources, in a streams
+ * application of its own that writes no sink and is removed with its internal topics and local
+ * state once it is done, and reports the cost of each node of its execution plan. The stream
+ * threads and state store memory of the application are taken from the budgets of the server
+ * while it runs, as for a persistent query.
+ */
+public class ExplainAnalyzer {
+
+  private static final String PRODUCER_TOPIC_METRICS = "producer-topic-metrics";
+  private static final long POLL_MS = 100;
+
+  private final KsqlConfig ksqlConfig;
+  private final KafkaTopicClient kafkaTopicClient;
+  private final FunctionRegistry functionRegistry;
+  private final Map<String, Object> overriddenProperties;
+  private final SharedStreamsRuntime sharedStreamsRuntime;
+
+  public ExplainAnalyzer(final KsqlConfig ksqlConfig,
+                         final KafkaTopicClient kafkaTopicClient,
+                         final FunctionRegistry functionRegistry,
+                         final Map<String, Object> overriddenProperties,
+                         final SharedStreamsRuntime sharedStreamsRuntime) {
+    this.ksqlConfig = ksqlConfig;
+    this.kafkaTopicClient = kafkaTopicClient;
+    this.functionRegistry = functionRegistry;
+    this.overriddenProperties = overriddenProperties;
+    this.sharedStreamsRuntime = sharedStreamsRuntime;
+  }
+
+  /**
+   * @param logicalPlan the plan of the query without a sink, as it would run as a transient query
+   * @return the execution plan of the query with the rows, selectivity, time, CPU time and
+   *     allocations of each instrumented node, followed by what the query wrote to internal
+   *     topics and state stores
+   */
+  public String analyze(final PlanNode logicalPlan) throws InterruptedException {
+    if (!(logicalPlan instanceof KsqlBareOutputNode)) {
+      throw new KsqlException("Only queries without a sink can be analyzed.");
+    }
+    final Map<String, Object> properties = new HashMap<>(overriddenProperties);
+    properties.put(KsqlConfig.KSQL_QUERY_OPERATOR_SAMPLE_INTERVAL_CONFIG, 1);
+    properties.put(KsqlConfig.KSQL_QUERY_OPERATOR_PROFILE_CONFIG, true);
+    final KsqlConfig analyzeConfig = ksqlConfig.cloneWithPropertyOverwrite(properties);
+    final int maxRecords = Integer.parseInt(String.valueOf(
+        analyzeConfig.get(KsqlConfig.KSQL_EXPLAIN_ANALYZE_MAX_RECORDS_CONFIG)));
+    final long maxDurationMs = Long.parseLong(String.valueOf(
+        analyzeConfig.get(KsqlConfig.KSQL_EXPLAIN_ANALYZE_MAX_DURATION_MS_CONFIG)));
+
+    final StreamsBuilder builder = new StreamsBuilder();
+    final QueryMetrics queryMetrics = new QueryMetrics();
+    final Map<String, Object> props = new HashMap<>();
+    props.put(QueryMetrics.PROPERTY, queryMetrics);
+    final QueuedSchemaKStream resultStream = (QueuedSchemaKStream) logicalPlan.buildStream(
+        builder, analyzeConfig, kafkaTopicClient, new MetastoreUtil(), functionRegistry, props);
+
+    final String applicationId = ksqlConfig.get(KsqlConfig.KSQL_SERVICE_ID_CONFIG).toString()
+        + ksqlConfig.get(KsqlConfig.KSQL_TRANSIENT_QUERY_NAME_PREFIX_CONFIG).toString()
+        + "explain_analyze_" + ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+    final Map<String, Object> streamsProperties =
+        PhysicalPlanBuilder.streamsProperties(applicationId, analyzeConfig, overriddenProperties);
+    // The query is run over the first records of its sources, whatever the offset reset
+    streamsProperties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+    final Topology topology = builder.build();
+    final KafkaStreams streams;
+    try {
+      streams = new KafkaStreams(topology, new StreamsConfig(
+          allocate(topology, applicationId, streamsProperties)));
+    } catch (RuntimeException e) {
+      sharedStreamsRuntime.release(applicationId);
+      throw e;
+    }
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    streams.setUncaughtExceptionHandler((thread, e) -> failure.compareAndSet(null, e));
+
+    final BlockingQueue<KeyValue<String, GenericRow>> rowQueue = resultStream.getQueue();
+    final QueuedQueryMetadata queryMetadata = new QueuedQueryMetadata(
+        "",
+        streams,
+        (KsqlBareOutputNode) logicalPlan,
+        resultStream.getExecutionPlan(""),
+        rowQueue,
+        resultStream.getQueryLimit(),
+        resultStream.getSourceSchemaKStreams().get(0) instanceof SchemaKTable
+            ? DataSource.DataSourceType.KTABLE : DataSource.DataSourceType.KSTREAM,
+        applicationId,
+        kafkaTopicClient,
+        analyzeConfig);
+
+    final long startMs = System.currentTimeMillis();
+    long resultRows = 0;
+    final Map<String, long[]> internalTopicWrites;
+    try {
+      streams.start();
+      final List<KeyValue<String, GenericRow>> rows = new ArrayList<>();
+      while (queryMetrics.getMessagesIn() < maxRecords
+             && System.currentTimeMillis() - startMs < maxDurationMs
+             && !queryMetadata.isLimitReached()
+             && failure.get() == null) {
+        if (rowQueue.poll(POLL_MS, TimeUnit.MILLISECONDS) != null) {
+          resultRows++;
+        }
+        resultRows += rowQueue.drainTo(rows);
+        rows.clear();
+      }
+      internalTopicWrites = internalTopicWrites(streams.metrics());
+      streams.close();
+    } catch (RuntimeException | InterruptedException e) {
+      queryMetadata.close();
+      sharedStreamsRuntime.release(applicationId);
+      throw e;
+    }
+    final long durationMs = System.currentTimeMillis() - startMs;
+    final List<StateStoreUsage> stateStores;
+    try {
+      stateStores = StateStoreUsage.forQuery(analyzeConfig, applicationId);
+      queryMetadata.close();
+    } finally {
+      sharedStreamsRuntime.release(applicationId);
+    }
+
+    if (failure.get() != null) {
+      throw new KsqlException("The query failed while it was analyzed: "
+                              + failure.get().getMessage(), failure.get());
+    }
+    return report(resultStream, queryMetrics.getMessagesIn(), maxRecords, resultRows,
+                  durationMs, internalTopicWrites, stateStores);
+  }
+
+  /**
+   * Takes the stream threads and state store memory of the application from the budgets of the
+   * server, which must be released once it is closed.
+   *
+   * @return the streams properties, with the threads and memory granted
+   */
+  private Map<String, Object> allocate(final Topology topology,
+                                       final String applicationId,
+                                       final Map<String, Object> streamsProperties) {
+    final Object requestedThreads = streamsProperties.get(StreamsConfig.NUM_STREAM_THREADS_CONFIG);
+    streamsProperties.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG,
+        sharedStreamsRuntime.allocateThreads(applicationId, requestedThreads == null
+            ? 1 : Integer.parseInt(requestedThreads.toString())));
+    final int stateStores = PhysicalPlanBuilder.stateStoreCount(topology);
+    if (stateStores > 0) {
+      final long stateStoreBytes = sharedStreamsRuntime.allocateStateStoreBytes(applicationId, 0);
+      if (stateStoreBytes > 0) {
+        PhysicalPlanBuilder.limitStateStoreMemory(
+            streamsProperties, stateStoreBytes, stateStores);
+      }
+    }
+    return streamsProperties;
+  }
+
+  private static String report(final QueuedSchemaKStream resultStream,
+                               final long sourceRecords,
+                               final int maxRecords,
+                               final long resultRows,
+                               final long durationMs,
+                               final Map<String, long[]> internalTopicWrites,
+                               final List<StateStoreUsage> stateStores) {
+    final StringBuilder report = new StringBuilder();
+    report.append(String.format("Ran over %d source records in %d ms, producing %d rows.%n",
+                                sourceRecords, durationMs, resultRows));
+    if (sourceRecords > maxRecords) {
+      // The count is checked as the rows of the query are read, by which time the stream
+      // threads may have processed the rest of the records they last polled
+      report.append(String.format("The query read %d records more than the %d asked for, as "
+                                  + "it is stopped between polls of its sources.%n",
+                                  sourceRecords - maxRecords, maxRecords));
+    }
+    report.append(String.format("%n"));
+    report.append(resultStream.getExecutionPlan(""));
+    report.append(String.format("%nInternal topic writes:%n"));
+    if (internalTopicWrites.isEmpty()) {
+      report.append(String.format("  none%n"));
+    }
+    for (Map.Entry<String, long[]> writes : internalTopicWrites.entrySet()) {
+      report.append(String.format("  %s: %d records, %d bytes%n",
+                                  writes.getKey(), writes.getValue()[0], writes.getValue()[1]));
+    }
+    report.append(String.format("%nState stores:%n"));
+    if (stateStores.isEmpty()) {
+      report.append(String.format("  none%n"));
+    }
+    for (StateStoreUsage stateStore : stateStores) {
+      report.append(String.format("  %s: %d bytes, %d segments%n", stateStore.getStoreName(),
+                                  stateStore.getSizeBytes(), stateStore.getSegments()));
+    }
+    return report.toString();
+  }
+
+  /**
+   * @return the records and bytes sent to each topic by the producers of the query, which only
+   *     writes to its repartition and changelog topics.
+   */
+  static Map<String, long[]> internalTopicWrites(
+      final Map<MetricName, ? extends Metric> metrics) {
+    final Map<String, long[]> writes = new TreeMap<>();
+    for (Map.Entry<MetricName, ? extends Metric> metric : metrics.entrySet()) {
+      final MetricName name = metric.getKey();
+      final String topic = name.tags().get("topic");
+      if (!PRODUCER_TOPIC_METRICS.equals(name.group()) || topic == null
+          || !(metric.getValue().metricValue() instanceof Number)) {
+        continue;
+      }
+      final long value = ((Number) metric.getValue().metricValue()).longValue();
+      if (name.name().equals("record-send-total")) {
+        writes.computeIfAbsent(topic, t -> new long[2])[0] += value;
+      } else if (name.name().equals("byte-total")) {
+        writes.computeIfAbsent(topic, t -> new long[2])[1] += value;
+      }
+    }
+    return writes;
+  }
+}
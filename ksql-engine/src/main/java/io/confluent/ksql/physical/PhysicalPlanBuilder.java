@@ -16,6 +16,7 @@
 
 package io.confluent.ksql.physical;
 
+import io.confluent.ksql.GenericRow;
 import io.confluent.ksql.function.FunctionRegistry;
 import io.confluent.ksql.metastore.KsqlStream;
 import io.confluent.ksql.metastore.KsqlTable;
@@ -28,6 +29,7 @@ import io.confluent.ksql.planner.plan.KsqlBareOutputNode;
 import io.confluent.ksql.planner.plan.KsqlStructuredDataOutputNode;
 import io.confluent.ksql.planner.plan.OutputNode;
 import io.confluent.ksql.planner.plan.PlanNode;
+import io.confluent.ksql.structured.ScanPipeline;
 import io.confluent.ksql.structured.SchemaKStream;
 import io.confluent.ksql.structured.SchemaKTable;
 import io.confluent.ksql.util.KafkaTopicClient;
@@ -35,19 +37,40 @@ import io.confluent.ksql.util.KsqlConfig;
 import io.confluent.ksql.util.KsqlException;
 import io.confluent.ksql.util.Pair;
 import io.confluent.ksql.util.PersistentQueryMetadata;
+import io.confluent.ksql.util.QueryLimit;
+import io.confluent.ksql.util.QueryMetrics;
 import io.confluent.ksql.util.QueryMetadata;
+import io.confluent.ksql.util.QueryQuota;
 import io.confluent.ksql.util.QueuedQueryMetadata;
+import io.confluent.ksql.util.RingBufferQueue;
+import io.confluent.ksql.util.ScanQueryMetadata;
+import io.confluent.ksql.util.SharedKafkaStreams;
+import io.confluent.ksql.util.SharedSourceMetrics;
+import io.confluent.ksql.util.StreamsAllocation;
+import io.confluent.ksql.util.Throttle;
 import io.confluent.ksql.util.timestamp.KsqlTimestampExtractor;
 
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.TopologyDescription;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 public class PhysicalPlanBuilder {
 
@@ -61,6 +84,7 @@ public class PhysicalPlanBuilder {
   private final MetaStore metaStore;
   private final boolean updateMetastore;
   private final AtomicLong queryIdCounter;
+  private final SharedStreamsRuntime sharedStreamsRuntime;
 
   public PhysicalPlanBuilder(final StreamsBuilder builder,
                              final KsqlConfig ksqlConfig,
@@ -72,6 +96,22 @@ public class PhysicalPlanBuilder {
                              final boolean updateMetastore,
                              final MetaStore metaStore,
                              final AtomicLong queryIdCounter) {
+    this(builder, ksqlConfig, kafkaTopicClient, metastoreUtil, functionRegistry,
+         addUniqueTimeSuffix, overriddenStreamsProperties, updateMetastore, metaStore,
+         queryIdCounter, new SharedStreamsRuntime(0, false));
+  }
+
+  public PhysicalPlanBuilder(final StreamsBuilder builder,
+                             final KsqlConfig ksqlConfig,
+                             final KafkaTopicClient kafkaTopicClient,
+                             final MetastoreUtil metastoreUtil,
+                             final FunctionRegistry functionRegistry,
+                             final boolean addUniqueTimeSuffix,
+                             final Map<String, Object> overriddenStreamsProperties,
+                             final boolean updateMetastore,
+                             final MetaStore metaStore,
+                             final AtomicLong queryIdCounter,
+                             final SharedStreamsRuntime sharedStreamsRuntime) {
     this.builder = builder;
     this.ksqlConfig = ksqlConfig;
     this.kafkaTopicClient = kafkaTopicClient;
@@ -82,15 +122,32 @@ public class PhysicalPlanBuilder {
     this.metaStore = metaStore;
     this.updateMetastore = updateMetastore;
     this.queryIdCounter = queryIdCounter;
+    this.sharedStreamsRuntime = sharedStreamsRuntime;
   }
 
   public QueryMetadata buildPhysicalPlan(final Pair<String, PlanNode> statementPlanPair) throws Exception {
+    if (isScanEnabled()) {
+      final Optional<ScanPipeline> scanPipeline =
+          ScanPipeline.of(statementPlanPair.getRight(), functionRegistry);
+      if (scanPipeline.isPresent()) {
+        return buildPlanForScanQuery(scanPipeline.get(),
+                                     (KsqlBareOutputNode) statementPlanPair.getRight(),
+                                     statementPlanPair.getLeft());
+      }
+    }
+    final Map<String, Object> props = new HashMap<>();
+    final QueryMetrics queryMetrics = new QueryMetrics();
+    if (statementPlanPair.getRight() instanceof KsqlStructuredDataOutputNode) {
+      queryMetrics.setQuota(
+          queryQuota((KsqlStructuredDataOutputNode) statementPlanPair.getRight()));
+      props.put(QueryMetrics.PROPERTY, queryMetrics);
+    }
     final SchemaKStream resultStream = statementPlanPair.getRight().buildStream(builder,
         ksqlConfig,
         kafkaTopicClient,
         metastoreUtil,
         functionRegistry,
-        new HashMap<>());
+        props);
     final OutputNode outputNode = resultStream.outputNode();
     boolean isBareQuery = outputNode instanceof KsqlBareOutputNode;
 
@@ -117,7 +174,8 @@ public class PhysicalPlanBuilder {
     } else if (outputNode instanceof KsqlStructuredDataOutputNode) {
 
       return buildPlanForStructuredOutputNode(resultStream,
-          (KsqlStructuredDataOutputNode) outputNode, serviceId, persistanceQueryPrefix, statementPlanPair.getLeft());
+          (KsqlStructuredDataOutputNode) outputNode, serviceId, persistanceQueryPrefix, statementPlanPair.getLeft(),
+          queryMetrics);
 
     } else {
       throw new KsqlException("Sink data source of type: " + outputNode.getClass() + " is not supported.");
@@ -136,92 +194,452 @@ public class PhysicalPlanBuilder {
     }
 
     KafkaStreams streams = buildStreams(builder, applicationId, ksqlConfig, overriddenStreamsProperties);
+    registerTableRowCaches(schemaKStream, applicationId);
 
     SchemaKStream sourceSchemaKstream = schemaKStream.getSourceSchemaKStreams().get(0);
 
-    return new QueuedQueryMetadata(
+    final QueuedQueryMetadata queryMetadata = new QueuedQueryMetadata(
         statement,
         streams,
         bareOutputNode,
         schemaKStream.getExecutionPlan(""),
         schemaKStream.getQueue(),
+        schemaKStream.getQueryLimit(),
         (sourceSchemaKstream instanceof SchemaKTable) ?
             DataSource.DataSourceType.KTABLE : DataSource.DataSourceType.KSTREAM,
         applicationId,
         kafkaTopicClient,
         ksqlConfig
     );
+    queryMetadata.setInternalTopicNames(internalTopicNames(builder.build(), applicationId));
+    return queryMetadata;
+  }
+
+
+  /**
+   * Builds a transient query that reads the topic of its source with a plain consumer, without a
+   * streams application and so without a consumer group rebalance or internal topics.
+   */
+  private QueryMetadata buildPlanForScanQuery(final ScanPipeline scanPipeline,
+                                              final KsqlBareOutputNode bareOutputNode,
+                                              final String statement) {
+    final String serviceId = ksqlConfig.get(KsqlConfig.KSQL_SERVICE_ID_CONFIG).toString();
+    final String transientQueryPrefix =
+        ksqlConfig.get(KsqlConfig.KSQL_TRANSIENT_QUERY_NAME_PREFIX_CONFIG).toString();
+    final String applicationId = getBareQueryApplicationId(serviceId, transientQueryPrefix);
+
+    final BlockingQueue<KeyValue<String, GenericRow>> rowQueue =
+        RingBufferQueue.forTransientQuery(ksqlConfig);
+    final QueryLimit queryLimit = QueryLimit.of(bareOutputNode.getLimit());
+    final TopicScanner scanner = new TopicScanner(
+        scanPipeline,
+        streamsProperties(applicationId, ksqlConfig, overriddenStreamsProperties),
+        rowQueue,
+        queryLimit,
+        applicationId);
+
+    return new ScanQueryMetadata(
+        statement,
+        scanner,
+        bareOutputNode,
+        scanPipeline.getExecutionPlan(),
+        rowQueue,
+        queryLimit,
+        applicationId,
+        kafkaTopicClient,
+        ksqlConfig);
+  }
+
+  /**
+   * @return the execution plan of a persistent query, which is rendered again each time if its
+   *     operators are instrumented, to show their current counts and timings.
+   */
+  private static Supplier<String> executionPlan(final SchemaKStream schemaKStream) {
+    if (schemaKStream.isOperatorSampled()) {
+      return () -> schemaKStream.getExecutionPlan("");
+    }
+    final String executionPlan = schemaKStream.getExecutionPlan("");
+    return () -> executionPlan;
   }
 
+  private boolean isScanEnabled() {
+    return Boolean.parseBoolean(
+        String.valueOf(ksqlConfig.get(KsqlConfig.KSQL_TRANSIENT_QUERY_SCAN_ENABLE_CONFIG)));
+  }
 
   private QueryMetadata buildPlanForStructuredOutputNode(final SchemaKStream schemaKStream,
                                                          final KsqlStructuredDataOutputNode outputNode,
                                                          final String serviceId,
                                                          final String persistanceQueryPrefix,
-                                                         final String statement) {
+                                                         final String statement,
+                                                         final QueryMetrics queryMetrics) {
 
     long queryId = queryIdCounter.getAndIncrement();
-    String applicationId = serviceId + persistanceQueryPrefix + queryId;
-    if (addUniqueTimeSuffix) {
-      applicationId = addTimeSuffix(applicationId);
+    String applicationId = getPersistentQueryApplicationId(serviceId, persistanceQueryPrefix,
+                                                           queryId);
+
+    StructuredDataSource sinkDataSource = getSinkDataSource(schemaKStream, outputNode);
+
+    final Topology topology = builder.build();
+    final QueryQuota quota = queryMetrics.getQuota();
+    final List<QueryQuota> quotas = Collections.singletonList(quota);
+    KafkaStreams streams = buildPersistentStreams(topology, applicationId, quotas);
+    registerSink(outputNode, sinkDataSource);
+    registerTableRowCaches(schemaKStream, applicationId);
+
+    final PersistentQueryMetadata persistentQuery = new PersistentQueryMetadata(statement,
+        streams, outputNode, executionPlan(schemaKStream), queryId,
+        (schemaKStream instanceof SchemaKTable) ? DataSource
+            .DataSourceType.KTABLE : DataSource.DataSourceType
+            .KSTREAM,
+        applicationId,
+        kafkaTopicClient,
+        ksqlConfig,
+        queryMetrics);
+    persistentQuery.setStreamsFactory(threads -> newPersistentStreams(
+        topology, applicationId, threads, quota.getStateStoreBytes()));
+    persistentQuery.setStreamsAllocation(streamsAllocation(topology, applicationId, quotas));
+    persistentQuery.setInternalTopicNames(internalTopicNames(topology, applicationId));
+    return persistentQuery;
+  }
+
+  /**
+   * Builds persistent queries that read the same stream into one topology, in which the stream
+   * is read and deserialized once, and runs them as one streams application. The builder of
+   * this plan builder must be a {@link SharedSourceStreamsBuilder}.
+   */
+  public List<QueryMetadata> buildSharedSourcePhysicalPlans(
+      final List<Pair<String, PlanNode>> statementPlanPairs) {
+    if (!(builder instanceof SharedSourceStreamsBuilder)) {
+      throw new KsqlException("Queries sharing their source need a shared source builder.");
     }
+    final SharedSourceStreamsBuilder sharedSourceBuilder = (SharedSourceStreamsBuilder) builder;
+    final String serviceId = ksqlConfig.get(KsqlConfig.KSQL_SERVICE_ID_CONFIG).toString();
+    final String persistanceQueryPrefix =
+        ksqlConfig.get(KsqlConfig.KSQL_PERSISTENT_QUERY_NAME_PREFIX_CONFIG).toString();
 
-    if (metaStore.getTopic(outputNode.getKafkaTopicName()) == null) {
-      metaStore.putTopic(outputNode.getKsqlTopic());
+    final List<SchemaKStream> resultStreams = new ArrayList<>();
+    final List<AtomicBoolean> gates = new ArrayList<>();
+    final List<QueryMetrics> queryMetrics = new ArrayList<>();
+    final SharedSourceMetrics sharedSourceMetrics = new SharedSourceMetrics();
+    for (Pair<String, PlanNode> statementPlanPair : statementPlanPairs) {
+      if (!(statementPlanPair.getRight() instanceof KsqlStructuredDataOutputNode)) {
+        throw new KsqlException("Only persistent queries can share their source: "
+                                + statementPlanPair.getLeft());
+      }
+      final QueryMetrics metrics = new QueryMetrics();
+      metrics.setQuota(queryQuota((KsqlStructuredDataOutputNode) statementPlanPair.getRight()));
+      final AtomicBoolean gate = sharedSourceBuilder.nextQuery(metrics);
+      sharedSourceMetrics.addMember(metrics, gate);
+      gates.add(gate);
+      queryMetrics.add(metrics);
+      final Map<String, Object> props = new HashMap<>();
+      props.put(QueryMetrics.PROPERTY, metrics);
+      resultStreams.add(statementPlanPair.getRight().buildStream(builder,
+          ksqlConfig,
+          kafkaTopicClient,
+          metastoreUtil,
+          functionRegistry,
+          props));
+    }
+
+    final List<Long> queryIds = new ArrayList<>();
+    for (int i = 0; i < resultStreams.size(); i++) {
+      queryIds.add(queryIdCounter.getAndIncrement());
     }
-    StructuredDataSource sinkDataSource;
+    final String applicationId = getPersistentQueryApplicationId(serviceId,
+                                                                 persistanceQueryPrefix,
+                                                                 queryIds.get(0));
+    final List<QueryQuota> quotas = new ArrayList<>();
+    for (QueryMetrics metrics : queryMetrics) {
+      quotas.add(metrics.getQuota());
+    }
+    // The source rows of the group are read under the quota of the group, which has no limits of
+    // its own but takes the share of the server throttles the application gets
+    final List<QueryQuota> allocatedQuotas = new ArrayList<>(quotas);
+    allocatedQuotas.add(sharedSourceMetrics.getQuota());
+    final Topology topology = builder.build();
+    final SharedKafkaStreams streams = new SharedKafkaStreams(
+        buildPersistentStreams(topology, applicationId, quotas), resultStreams.size(),
+        streamsAllocation(topology, applicationId, allocatedQuotas));
+
+    final List<QueryMetadata> queries = new ArrayList<>();
+    for (int i = 0; i < resultStreams.size(); i++) {
+      final SchemaKStream schemaKStream = resultStreams.get(i);
+      final KsqlStructuredDataOutputNode outputNode =
+          (KsqlStructuredDataOutputNode) schemaKStream.outputNode();
+      registerSink(outputNode, getSinkDataSource(schemaKStream, outputNode));
+      registerTableRowCaches(schemaKStream, applicationId);
+      queries.add(new PersistentQueryMetadata(statementPlanPairs.get(i).getLeft(),
+          streams,
+          gates.get(i),
+          outputNode,
+          executionPlan(schemaKStream),
+          queryIds.get(i),
+          (schemaKStream instanceof SchemaKTable) ? DataSource.DataSourceType.KTABLE
+                                                  : DataSource.DataSourceType.KSTREAM,
+          applicationId,
+          kafkaTopicClient,
+          ksqlConfig,
+          queryMetrics.get(i)));
+    }
+    // The last query to leave the application stops it and deletes the topics of all of them
+    final Set<String> internalTopicNames = internalTopicNames(topology, applicationId);
+    for (QueryMetadata query : queries) {
+      query.setInternalTopicNames(internalTopicNames);
+    }
+    return queries;
+  }
+
+  private StructuredDataSource getSinkDataSource(final SchemaKStream schemaKStream,
+                                                 final KsqlStructuredDataOutputNode outputNode) {
     if (schemaKStream instanceof SchemaKTable) {
       SchemaKTable schemaKTable = (SchemaKTable) schemaKStream;
-      sinkDataSource =
-          new KsqlTable(outputNode.getId().toString(),
-              outputNode.getSchema(),
-              schemaKStream.getKeyField(),
-              outputNode.getTimestampField(),
-              outputNode.getKsqlTopic(),
-              outputNode.getId().toString() +
-                  ksqlConfig.get(KsqlConfig.KSQL_TABLE_STATESTORE_NAME_SUFFIX_CONFIG),
-              schemaKTable.isWindowed());
-    } else {
-      sinkDataSource =
-          new KsqlStream(outputNode.getId().toString(),
-              outputNode.getSchema(),
-              schemaKStream.getKeyField(),
-              outputNode.getTimestampField(),
-              outputNode.getKsqlTopic());
+      return new KsqlTable(outputNode.getId().toString(),
+          outputNode.getSchema(),
+          schemaKStream.getKeyField(),
+          outputNode.getTimestampField(),
+          outputNode.getKsqlTopic(),
+          outputNode.getId().toString() +
+              ksqlConfig.get(KsqlConfig.KSQL_TABLE_STATESTORE_NAME_SUFFIX_CONFIG),
+          schemaKTable.isWindowed());
     }
+    return new KsqlStream(outputNode.getId().toString(),
+        outputNode.getSchema(),
+        schemaKStream.getKeyField(),
+        outputNode.getTimestampField(),
+        outputNode.getKsqlTopic());
+  }
 
+  private void registerSink(final KsqlStructuredDataOutputNode outputNode,
+                            final StructuredDataSource sinkDataSource) {
+    if (metaStore.getTopic(outputNode.getKafkaTopicName()) == null) {
+      metaStore.putTopic(outputNode.getKsqlTopic());
+    }
     if (updateMetastore) {
       metaStore.putSource(sinkDataSource.cloneWithTimeKeyColumns());
     }
-    KafkaStreams streams = buildStreams(builder, applicationId, ksqlConfig, overriddenStreamsProperties);
+  }
 
-    return new PersistentQueryMetadata(statement,
-        streams, outputNode, schemaKStream
-        .getExecutionPlan(""), queryId,
-        (schemaKStream instanceof SchemaKTable) ? DataSource
-            .DataSourceType.KTABLE : DataSource.DataSourceType
-            .KSTREAM,
-        applicationId,
-        kafkaTopicClient,
-        ksqlConfig);
+  private static void registerTableRowCaches(final SchemaKStream schemaKStream,
+                                             final String applicationId) {
+    if (schemaKStream instanceof SchemaKTable
+        && ((SchemaKTable) schemaKStream).getRowCache() != null) {
+      ((SchemaKTable) schemaKStream).getRowCache().register(applicationId);
+    }
+    for (SchemaKStream source : schemaKStream.getSourceSchemaKStreams()) {
+      registerTableRowCaches(source, applicationId);
+    }
+  }
+
+  private QueryQuota queryQuota(final KsqlStructuredDataOutputNode outputNode) {
+    return QueryQuota.of(ksqlConfig, outputNode.getOutputProperties());
   }
 
   private String getBareQueryApplicationId(String serviceId, String transientQueryPrefix) {
     return  serviceId + transientQueryPrefix +
-        Math.abs(ThreadLocalRandom.current().nextLong());
+        ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+  }
+
+  private String getPersistentQueryApplicationId(final String serviceId,
+                                                final String persistanceQueryPrefix,
+                                                final long queryId) {
+    final String applicationId = serviceId + persistanceQueryPrefix + queryId;
+    return addUniqueTimeSuffix ? addTimeSuffix(applicationId) : applicationId;
   }
 
   private String addTimeSuffix(String original) {
     return String.format("%s_%d", original, System.currentTimeMillis());
   }
 
+  /**
+   * Builds the streams of persistent queries, with their stream threads and state store memory
+   * capped by their quotas and, if enabled, the producer shared by all persistent queries. The
+   * threads and memory are only taken from the budgets of the server when the streams are
+   * started, see {@link #streamsAllocation}.
+   */
+  private KafkaStreams buildPersistentStreams(final Topology topology,
+                                              final String applicationId,
+                                              final List<QueryQuota> quotas) {
+    return newPersistentStreams(topology, applicationId,
+                                requestedThreads(applicationId, quotas),
+                                requestedStateStoreBytes(topology, quotas));
+  }
+
+  /**
+   * @return the allocation of the stream threads, state store memory and consume rate share of
+   *     the streams built by {@link #buildPersistentStreams} from the budgets of the server. If
+   *     the budgets grant less than the streams were built with, they are rebuilt with what was
+   *     granted.
+   */
+  private StreamsAllocation streamsAllocation(final Topology topology,
+                                              final String applicationId,
+                                              final List<QueryQuota> quotas) {
+    final int requestedThreads = requestedThreads(applicationId, quotas);
+    final long requestedStateStoreBytes = requestedStateStoreBytes(topology, quotas);
+    return new StreamsAllocation(streams -> {
+      final int threads = sharedStreamsRuntime.allocateThreads(applicationId, requestedThreads);
+      try {
+        long stateStoreBytes = 0;
+        if (stateStoreCount(topology) > 0) {
+          stateStoreBytes = sharedStreamsRuntime.allocateStateStoreBytes(
+              applicationId, requestedStateStoreBytes);
+        }
+        final Throttle recordThrottle = sharedStreamsRuntime.allocateRecordThrottle(applicationId);
+        final Throttle byteThrottle = sharedStreamsRuntime.allocateByteThrottle(applicationId);
+        for (QueryQuota quota : quotas) {
+          quota.setStreamThreads(threads);
+          quota.setStateStoreBytes(stateStoreBytes);
+          quota.setServerThrottles(recordThrottle, byteThrottle);
+        }
+        if (threads == requestedThreads && stateStoreBytes == requestedStateStoreBytes) {
+          return streams;
+        }
+        return newPersistentStreams(topology, applicationId, threads, stateStoreBytes);
+      } catch (RuntimeException e) {
+        sharedStreamsRuntime.release(applicationId);
+        throw e;
+      }
+    }, () -> sharedStreamsRuntime.release(applicationId));
+  }
+
+  // The stream threads of the queries, capped by their quotas
+  private int requestedThreads(final String applicationId, final List<QueryQuota> quotas) {
+    final Object requestedThreads =
+        streamsProperties(applicationId, ksqlConfig, overriddenStreamsProperties)
+            .get(StreamsConfig.NUM_STREAM_THREADS_CONFIG);
+    int cappedThreads =
+        requestedThreads == null ? 1 : Integer.parseInt(requestedThreads.toString());
+    for (QueryQuota quota : quotas) {
+      cappedThreads = quota.capStreamThreads(cappedThreads);
+    }
+    return cappedThreads;
+  }
+
+  private static long requestedStateStoreBytes(final Topology topology,
+                                               final List<QueryQuota> quotas) {
+    return stateStoreCount(topology) > 0 ? maxStateStoreBytes(quotas) : 0;
+  }
+
+  /**
+   * @return new streams of a persistent query, with the given stream threads and state store
+   *     memory, 0 for no limit, already taken from the budgets of the server
+   */
+  private KafkaStreams newPersistentStreams(final Topology topology,
+                                            final String applicationId,
+                                            final int threads,
+                                            final long stateStoreBytes) {
+    final Map<String, Object> streamsProperties =
+        streamsProperties(applicationId, ksqlConfig, overriddenStreamsProperties);
+    streamsProperties.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG, threads);
+    if (stateStoreBytes > 0) {
+      limitStateStoreMemory(streamsProperties, stateStoreBytes, stateStoreCount(topology));
+    }
+    return new KafkaStreams(topology, new StreamsConfig(streamsProperties),
+                            sharedStreamsRuntime.clientSupplier(streamsProperties));
+  }
+
+  // The lowest state store memory limit of the queries, 0 if none of them has one
+  private static long maxStateStoreBytes(final List<QueryQuota> quotas) {
+    long maxBytes = 0;
+    for (QueryQuota quota : quotas) {
+      if (quota.getMaxStateStoreBytes() > 0) {
+        maxBytes = maxBytes == 0 ? quota.getMaxStateStoreBytes()
+                                 : Math.min(maxBytes, quota.getMaxStateStoreBytes());
+      }
+    }
+    return maxBytes;
+  }
+
+  /**
+   * @return the names the internal topics of the topology get in the application: the
+   *     repartition topics it writes and reads and the changelog topics of its state stores,
+   *     some of which don't exist if their stores don't log their changes
+   */
+  static Set<String> internalTopicNames(final Topology topology, final String applicationId) {
+    final Set<String> topicNames = new HashSet<>();
+    for (TopologyDescription.Subtopology subtopology : topology.describe().subtopologies()) {
+      for (TopologyDescription.Node node : subtopology.nodes()) {
+        if (node instanceof TopologyDescription.Processor) {
+          for (String store : ((TopologyDescription.Processor) node).stores()) {
+            topicNames.add(applicationId + "-" + store
+                           + KsqlConfig.STREAM_INTERNAL_CHANGELOG_TOPIC_SUFFIX);
+          }
+        } else if (node instanceof TopologyDescription.Source) {
+          // The topics of a source are described as a list, "[topic1, topic2]"
+          final String topics = ((TopologyDescription.Source) node).topics();
+          for (String topic : topics.replaceAll("[\\[\\]]", "").split(",")) {
+            addRepartitionTopic(topicNames, applicationId, topic.trim());
+          }
+        } else if (node instanceof TopologyDescription.Sink) {
+          addRepartitionTopic(
+              topicNames, applicationId, ((TopologyDescription.Sink) node).topic());
+        }
+      }
+    }
+    return topicNames;
+  }
+
+  private static void addRepartitionTopic(final Set<String> topicNames,
+                                          final String applicationId,
+                                          final String topic) {
+    if (!topic.endsWith(KsqlConfig.STREAM_INTERNAL_REPARTITION_TOPIC_SUFFIX)) {
+      return;
+    }
+    topicNames.add(topic.startsWith(applicationId + "-") ? topic : applicationId + "-" + topic);
+  }
+
+  static int stateStoreCount(final Topology topology) {
+    final TopologyDescription description = topology.describe();
+    final Set<String> stateStores = new HashSet<>();
+    for (TopologyDescription.Subtopology subtopology : description.subtopologies()) {
+      for (TopologyDescription.Node node : subtopology.nodes()) {
+        if (node instanceof TopologyDescription.Processor) {
+          stateStores.addAll(((TopologyDescription.Processor) node).stores());
+        }
+      }
+    }
+    for (TopologyDescription.GlobalStore globalStore : description.globalStores()) {
+      stateStores.addAll(globalStore.processor().stores());
+    }
+    return stateStores.size();
+  }
+
+  /**
+   * Splits the given state store memory between the record cache of the query, which gets a
+   * quarter of it at most, and the RocksDB stores of the query.
+   */
+  static void limitStateStoreMemory(final Map<String, Object> streamsProperties,
+                                    final long stateStoreBytes,
+                                    final int stateStores) {
+    final Object configuredCacheBytes =
+        streamsProperties.get(StreamsConfig.CACHE_MAX_BYTES_BUFFERING_CONFIG);
+    final long cacheBytes = configuredCacheBytes == null
+        ? stateStoreBytes / 4
+        : Math.min(Long.parseLong(configuredCacheBytes.toString()), stateStoreBytes / 4);
+    streamsProperties.put(StreamsConfig.CACHE_MAX_BYTES_BUFFERING_CONFIG, cacheBytes);
+    streamsProperties.put(StreamsConfig.ROCKSDB_CONFIG_SETTER_CLASS_CONFIG,
+                          StateStoreMemoryConfigSetter.class);
+    streamsProperties.put(StateStoreMemoryConfigSetter.STORE_BYTES_CONFIG,
+                          (stateStoreBytes - cacheBytes) / stateStores);
+  }
+
   private KafkaStreams buildStreams(
       final StreamsBuilder builder,
       final String applicationId,
       final KsqlConfig ksqlConfig,
       final Map<String, Object> overriddenProperties
   ) {
-    Map<String, Object> newStreamsProperties = ksqlConfig.getKsqlStreamConfigProps();
+    return new KafkaStreams(builder.build(), new StreamsConfig(
+        streamsProperties(applicationId, ksqlConfig, overriddenProperties)));
+  }
+
+  static Map<String, Object> streamsProperties(
+      final String applicationId,
+      final KsqlConfig ksqlConfig,
+      final Map<String, Object> overriddenProperties
+  ) {
+    Map<String, Object> newStreamsProperties = new HashMap<>(ksqlConfig.getKsqlStreamConfigProps());
     newStreamsProperties.putAll(overriddenProperties);
     newStreamsProperties.put(StreamsConfig.APPLICATION_ID_CONFIG, applicationId);
     newStreamsProperties.put(
@@ -240,7 +658,7 @@ public class PhysicalPlanBuilder {
       newStreamsProperties.put(
           StreamsConfig.DEFAULT_TIMESTAMP_EXTRACTOR_CLASS_CONFIG, KsqlTimestampExtractor.class);
     }
-    return new KafkaStreams(builder.build(), new StreamsConfig(newStreamsProperties));
+    return newStreamsProperties;
   }
 
 }
@@ -0,0 +1,387 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.physical;
+
+import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.function.FunctionRegistry;
+import io.confluent.ksql.metastore.KsqlTable;
+import io.confluent.ksql.parser.tree.ComparisonExpression;
+import io.confluent.ksql.parser.tree.DereferenceExpression;
+import io.confluent.ksql.parser.tree.Expression;
+import io.confluent.ksql.parser.tree.Literal;
+import io.confluent.ksql.parser.tree.LogicalBinaryExpression;
+import io.confluent.ksql.parser.tree.LongLiteral;
+import io.confluent.ksql.parser.tree.QualifiedNameReference;
+import io.confluent.ksql.parser.tree.StringLiteral;
+import io.confluent.ksql.planner.plan.OutputNode;
+import io.confluent.ksql.planner.plan.PlanNode;
+import io.confluent.ksql.planner.plan.StructuredDataSourceNode;
+import io.confluent.ksql.structured.ScanPipeline;
+import io.confluent.ksql.util.KsqlException;
+import io.confluent.ksql.util.PersistentQueryMetadata;
+import io.confluent.ksql.util.PullQueryResult;
+import io.confluent.ksql.util.SchemaUtil;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.errors.InvalidStateStoreException;
+import org.apache.kafka.streams.state.HostInfo;
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+import org.apache.kafka.streams.state.ReadOnlyWindowStore;
+import org.apache.kafka.streams.state.StreamsMetadata;
+import org.apache.kafka.streams.state.WindowStoreIterator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * Answers pull queries, {@code SELECT ... FROM table WHERE ROWKEY = 'key'}, by looking the key
+ * up in the state store the persistent query creating the table keeps it in, without building a
+ * topology. The windows of a key in a windowed table are fetched from its window store,
+ * optionally in a range of window starts given with ROWTIME and a page size given with LIMIT. Keys of
+ * partitions hosted by another server are answered with that server, found through the metadata
+ * of the persistent query, for the caller to send the query to.
+ */
+public class PullQueryExecutor {
+
+  private final FunctionRegistry functionRegistry;
+  private final HostInfo localHost;
+
+  /**
+   * @param localHost the host and port this server is reachable at by other servers, as set in
+   *     {@code application.server}, or null if it isn't set, in which case every key is looked up
+   *     locally.
+   */
+  public PullQueryExecutor(final FunctionRegistry functionRegistry, final HostInfo localHost) {
+    this.functionRegistry = functionRegistry;
+    this.localHost = localHost;
+  }
+
+  public static HostInfo parseHostInfo(final Object applicationServer) {
+    if (applicationServer == null || applicationServer.toString().isEmpty()) {
+      return null;
+    }
+    final String hostAndPort = applicationServer.toString();
+    final int colon = hostAndPort.lastIndexOf(':');
+    if (colon < 0) {
+      throw new KsqlException("Invalid application server, expected host:port: " + hostAndPort);
+    }
+    try {
+      return new HostInfo(hostAndPort.substring(0, colon),
+                          Integer.parseInt(hostAndPort.substring(colon + 1)));
+    } catch (NumberFormatException e) {
+      throw new KsqlException("Invalid application server, expected host:port: " + hostAndPort);
+    }
+  }
+
+  /**
+   * @param routeToOwner if false, the key is looked up on this server even if its partition is
+   *     owned by another one, as for a query forwarded by another server
+   */
+  public PullQueryResult execute(final PlanNode logicalPlan,
+                                 final Collection<PersistentQueryMetadata> persistentQueries,
+                                 final boolean routeToOwner) {
+    final ScanPipeline pipeline = ScanPipeline.forTable(logicalPlan, functionRegistry)
+        .orElseThrow(() -> new KsqlException(
+            "Pull queries must select from a single table, without joins or aggregations: "
+            + "SELECT ... FROM table WHERE ROWKEY = 'key'."));
+    final Lookup lookup = getLookup(pipeline.getFilterExpression());
+
+    final StructuredDataSourceNode sourceNode = pipeline.getSourceNode();
+    final KsqlTable table = (KsqlTable) sourceNode.getStructuredDataSource();
+    final Optional<Integer> limit = ((OutputNode) logicalPlan).getLimit();
+    if (!table.isWindowed() && limit.isPresent()) {
+      throw new KsqlException("Pull queries only support LIMIT on windowed tables, to page "
+                              + "through the windows of a key.");
+    }
+    if (!table.isWindowed() && lookup.hasWindowStartRange) {
+      // The store of a non-windowed table doesn't keep row timestamps to compare ROWTIME with
+      throw new KsqlException("Pull queries only support " + SchemaUtil.ROWTIME_NAME
+                              + " comparisons on windowed tables, to fetch the windows of a "
+                              + "key in a range of window starts.");
+    }
+    final KafkaStreams streams = getTableStreams(table, persistentQueries);
+    final String storeName = table.getStateStoreName();
+
+    if (routeToOwner && localHost != null) {
+      final StreamsMetadata metadata =
+          streams.metadataForKey(storeName, lookup.key, Serdes.String().serializer());
+      if (metadata == null || StreamsMetadata.NOT_AVAILABLE.equals(metadata)) {
+        throw new KsqlException("The state of table " + table.getName()
+                                + " is not available yet, retry the query.");
+      }
+      if (!localHost.equals(metadata.hostInfo())) {
+        return PullQueryResult.ownedBy(metadata.hostInfo());
+      }
+    }
+
+    try {
+      if (table.isWindowed()) {
+        if (lookup.windowStartFrom > lookup.windowStartTo) {
+          return PullQueryResult.rows(pipeline.getResultSchema(), Collections.emptyList());
+        }
+        final ReadOnlyWindowStore<String, GenericRow> store =
+            streams.store(storeName, QueryableStoreTypes.<String, GenericRow>windowStore());
+        return PullQueryResult.rows(
+            pipeline.getResultSchema(),
+            new WindowRows(pipeline, lookup.key,
+                           store.fetch(lookup.key, lookup.windowStartFrom, lookup.windowStartTo),
+                           limit.orElse(Integer.MAX_VALUE)));
+      }
+      final ReadOnlyKeyValueStore<String, GenericRow> store =
+          streams.store(storeName, QueryableStoreTypes.<String, GenericRow>keyValueStore());
+      final GenericRow value = store.get(lookup.key);
+      final GenericRow row = value == null
+          ? null
+          : pipeline.apply(getRowTime(sourceNode, value), lookup.key, value);
+      return PullQueryResult.rows(
+          pipeline.getResultSchema(),
+          row == null ? Collections.emptyList() : Collections.singletonList(row));
+    } catch (InvalidStateStoreException e) {
+      throw new KsqlException("The state of table " + table.getName()
+                              + " is not available yet, retry the query.", e);
+    }
+  }
+
+  /**
+   * The rows of the windows of a key, read from the store iterator as they are iterated, up to
+   * the LIMIT of the query, which pages through the windows: the next page starts after the
+   * ROWTIME, the window start, of the last row of a page.
+   */
+  private static final class WindowRows implements PullQueryResult.Rows {
+
+    private final ScanPipeline pipeline;
+    private final String key;
+    private final WindowStoreIterator<GenericRow> windows;
+    private int remaining;
+    private GenericRow next;
+
+    private WindowRows(final ScanPipeline pipeline,
+                       final String key,
+                       final WindowStoreIterator<GenericRow> windows,
+                       final int limit) {
+      this.pipeline = pipeline;
+      this.key = key;
+      this.windows = windows;
+      this.remaining = limit;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null && remaining > 0 && windows.hasNext()) {
+        final KeyValue<Long, GenericRow> window = windows.next();
+        if (window.value != null) {
+          next = pipeline.apply(window.key, key, window.value);
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public GenericRow next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final GenericRow row = next;
+      next = null;
+      remaining--;
+      return row;
+    }
+
+    @Override
+    public void close() {
+      windows.close();
+    }
+  }
+
+  /**
+   * The store doesn't keep the timestamps of the rows, so as for tables materialized from their
+   * topic ROWTIME is the TIMESTAMP column, or null if the table has none.
+   */
+  private static Long getRowTime(final StructuredDataSourceNode sourceNode,
+                                 final GenericRow value) {
+    final int timestampColumnIndex = sourceNode.getTimestampColumnIndex();
+    if (timestampColumnIndex < 0) {
+      return null;
+    }
+    final Object timestamp = value.getColumns().get(timestampColumnIndex);
+    return timestamp instanceof Long ? (Long) timestamp : null;
+  }
+
+  private static KafkaStreams getTableStreams(
+      final KsqlTable table,
+      final Collection<PersistentQueryMetadata> persistentQueries) {
+    for (PersistentQueryMetadata query : persistentQueries) {
+      if (query.getOutputNode().getId().toString().equals(table.getName())) {
+        return query.getKafkaStreams();
+      }
+    }
+    throw new KsqlException("Table " + table.getName() + " is not created by a running "
+                            + "persistent query, so it has no state to pull from.");
+  }
+
+  /**
+   * The key a pull query looks up and, for windowed tables, the range of window starts it
+   * fetches the windows of the key in, both bounds inclusive. The range is empty if the start
+   * is after the end, and is every window start unless the query compares ROWTIME.
+   */
+  static final class Lookup {
+
+    final String key;
+    final long windowStartFrom;
+    final long windowStartTo;
+    final boolean hasWindowStartRange;
+
+    Lookup(final String key,
+           final long windowStartFrom,
+           final long windowStartTo,
+           final boolean hasWindowStartRange) {
+      this.key = key;
+      this.windowStartFrom = windowStartFrom;
+      this.windowStartTo = windowStartTo;
+      this.hasWindowStartRange = hasWindowStartRange;
+    }
+  }
+
+  /**
+   * Reads the lookup of a pull query from its WHERE clause, which must be an equality on
+   * ROWKEY, optionally AND-ed with comparisons of ROWTIME, the window start of windowed tables,
+   * to numbers.
+   */
+  static Lookup getLookup(final Expression filterExpression) {
+    final List<Expression> conjuncts = new ArrayList<>();
+    if (filterExpression != null) {
+      collectConjuncts(filterExpression, conjuncts);
+    }
+    String key = null;
+    long from = 0;
+    long to = Long.MAX_VALUE;
+    boolean hasWindowStartRange = false;
+    for (Expression conjunct : conjuncts) {
+      if (!(conjunct instanceof ComparisonExpression)) {
+        throw invalidLookup();
+      }
+      ComparisonExpression comparison = (ComparisonExpression) conjunct;
+      if (!isColumn(comparison.getLeft())) {
+        comparison = new ComparisonExpression(comparison.getType().flip(),
+                                              comparison.getRight(),
+                                              comparison.getLeft());
+      }
+      if (isColumn(comparison.getLeft(), SchemaUtil.ROWKEY_NAME)
+          && comparison.getType() == ComparisonExpression.Type.EQUAL
+          && key == null) {
+        key = getKey(comparison.getRight());
+      } else if (isColumn(comparison.getLeft(), SchemaUtil.ROWTIME_NAME)
+                 && comparison.getRight() instanceof LongLiteral) {
+        final long value = ((LongLiteral) comparison.getRight()).getValue();
+        hasWindowStartRange = true;
+        switch (comparison.getType()) {
+          case EQUAL:
+            from = Math.max(from, value);
+            to = Math.min(to, value);
+            break;
+          case GREATER_THAN:
+            if (value == Long.MAX_VALUE) {
+              // No window starts after it: leave the range empty rather than overflow
+              to = -1;
+            } else {
+              from = Math.max(from, value + 1);
+            }
+            break;
+          case GREATER_THAN_OR_EQUAL:
+            from = Math.max(from, value);
+            break;
+          case LESS_THAN:
+            to = Math.min(to, value == Long.MIN_VALUE ? -1 : value - 1);
+            break;
+          case LESS_THAN_OR_EQUAL:
+            to = Math.min(to, value);
+            break;
+          default:
+            throw invalidLookup();
+        }
+      } else {
+        throw invalidLookup();
+      }
+    }
+    if (key == null) {
+      throw invalidLookup();
+    }
+    return new Lookup(key, from, to, hasWindowStartRange);
+  }
+
+  /**
+   * Row keys are strings, so a whole number literal looks up the key it is written as, as a
+   * persistent query keying rows by a numeric column would have keyed them.
+   */
+  private static String getKey(final Expression keyExpression) {
+    if (keyExpression instanceof StringLiteral) {
+      return ((StringLiteral) keyExpression).getValue();
+    }
+    if (keyExpression instanceof LongLiteral) {
+      return String.valueOf(((LongLiteral) keyExpression).getValue());
+    }
+    if (keyExpression instanceof Literal) {
+      throw new KsqlException("Pull queries can only look up a string or whole number "
+                              + SchemaUtil.ROWKEY_NAME + ", not " + keyExpression + ".");
+    }
+    throw invalidLookup();
+  }
+
+  private static void collectConjuncts(final Expression expression,
+                                       final List<Expression> conjuncts) {
+    if (expression instanceof LogicalBinaryExpression
+        && ((LogicalBinaryExpression) expression).getType() == LogicalBinaryExpression.Type.AND) {
+      collectConjuncts(((LogicalBinaryExpression) expression).getLeft(), conjuncts);
+      collectConjuncts(((LogicalBinaryExpression) expression).getRight(), conjuncts);
+    } else {
+      conjuncts.add(expression);
+    }
+  }
+
+  private static KsqlException invalidLookup() {
+    return new KsqlException("Pull queries must look up a single key, and may limit the windows "
+                             + "of a windowed table to a range of window starts: WHERE "
+                             + SchemaUtil.ROWKEY_NAME + " = 'key' [AND "
+                             + SchemaUtil.ROWTIME_NAME + " >= start AND "
+                             + SchemaUtil.ROWTIME_NAME + " < end].");
+  }
+
+  private static boolean isColumn(final Expression expression, final String columnName) {
+    return columnName.equalsIgnoreCase(getColumnName(expression));
+  }
+
+  private static boolean isColumn(final Expression expression) {
+    return getColumnName(expression) != null;
+  }
+
+  private static String getColumnName(final Expression expression) {
+    if (expression instanceof DereferenceExpression) {
+      return ((DereferenceExpression) expression).getFieldName();
+    }
+    if (expression instanceof QualifiedNameReference) {
+      return ((QualifiedNameReference) expression).getName().getSuffix();
+    }
+    return null;
+  }
+}
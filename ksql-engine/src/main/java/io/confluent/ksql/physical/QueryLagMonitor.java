@@ -0,0 +1,377 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+
+package io.confluent.ksql.physical;
+
+import io.confluent.ksql.planner.plan.PlanNode;
+import io.confluent.ksql.planner.plan.StructuredDataSourceNode;
+import io.confluent.ksql.util.KsqlConfig;
+import io.confluent.ksql.util.PersistentQueryMetadata;
+import io.confluent.ksql.util.QueryLag;
+import io.confluent.ksql.util.QueryQuota;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.streams.StreamsConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Checks the consumer lag of the persistent queries of a server every interval, and, if
+ * enabled, scales the stream threads of the queries that fall behind.
+ *
+ * <p>The lag of a query is read with a consumer of its own in the consumer group of its
+ * streams application. The consumer never subscribes, so it doesn't join the group, and never
+ * commits: it reads the offsets the query committed and the end offsets of its source
+ * partitions, and the records at the committed offsets of the partitions that are behind, for
+ * the age of the oldest record the query has yet to process. It fetches as little as the
+ * brokers allow for that, the first batch of each partition, and takes one record at a time.
+ * The lag is set on the metrics of the query, from where it is shown over JMX and REST.
+ *
+ * <p>Kafka Streams can't change the number of threads of running streams, so a query is scaled
+ * by restarting it with more or fewer threads. A query whose lag is above the threshold and
+ * has grown since the last check gets another thread, up to the most it may be scaled to, and
+ * one whose lag is below a tenth of the threshold gives one back, down to the threads it
+ * started with. A query is restarted at most once per cool down, and each instance of it
+ * restarts on its own schedule, so the instances of a query on different servers don't all
+ * stop at once.
+ */
+public class QueryLagMonitor implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(QueryLagMonitor.class);
+
+  private static final long FETCH_TIMEOUT_MS = 1000;
+  private static final long SHUTDOWN_TIMEOUT_MS = 30000;
+
+  private final KsqlConfig ksqlConfig;
+  private final SharedStreamsRuntime sharedStreamsRuntime;
+  private final Supplier<Collection<PersistentQueryMetadata>> persistentQueries;
+  private final boolean scalingEnabled;
+  private final long thresholdRecords;
+  private final int maxStreamThreads;
+  private final long cooldownMs;
+  private final ScheduledExecutorService executor;
+  private final Map<String, MonitoredApplication> applications = new HashMap<>();
+  private volatile boolean closed;
+
+  public QueryLagMonitor(final KsqlConfig ksqlConfig,
+                         final SharedStreamsRuntime sharedStreamsRuntime,
+                         final Supplier<Collection<PersistentQueryMetadata>> persistentQueries) {
+    this.ksqlConfig = ksqlConfig;
+    this.sharedStreamsRuntime = sharedStreamsRuntime;
+    this.persistentQueries = persistentQueries;
+    this.scalingEnabled =
+        (Boolean) ksqlConfig.get(KsqlConfig.KSQL_QUERY_LAG_SCALING_ENABLE_CONFIG);
+    this.thresholdRecords =
+        (Long) ksqlConfig.get(KsqlConfig.KSQL_QUERY_LAG_SCALING_THRESHOLD_RECORDS_CONFIG);
+    this.maxStreamThreads =
+        (Integer) ksqlConfig.get(KsqlConfig.KSQL_QUERY_LAG_SCALING_MAX_STREAM_THREADS_CONFIG);
+    this.cooldownMs = (Long) ksqlConfig.get(KsqlConfig.KSQL_QUERY_LAG_SCALING_COOLDOWN_MS_CONFIG);
+    this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "ksql-query-lag-monitor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    final long intervalMs =
+        (Long) ksqlConfig.get(KsqlConfig.KSQL_QUERY_LAG_CHECK_INTERVAL_MS_CONFIG);
+    if (intervalMs > 0) {
+      executor.scheduleWithFixedDelay(
+          this::checkQueries, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void checkQueries() {
+    final Collection<PersistentQueryMetadata> queries;
+    try {
+      queries = persistentQueries.get();
+    } catch (RuntimeException e) {
+      // The queries are changing, they are checked again next interval
+      log.debug("Could not list the persistent queries to check their lag.", e);
+      return;
+    }
+    final Map<String, List<PersistentQueryMetadata>> queriesByApplication = new HashMap<>();
+    for (PersistentQueryMetadata query : queries) {
+      queriesByApplication
+          .computeIfAbsent(query.getQueryApplicationId(), applicationId -> new ArrayList<>())
+          .add(query);
+    }
+    synchronized (applications) {
+      final Set<String> stoppedApplications = new HashSet<>(applications.keySet());
+      stoppedApplications.removeAll(queriesByApplication.keySet());
+      for (String applicationId : stoppedApplications) {
+        applications.remove(applicationId).consumer.close();
+      }
+    }
+    for (Map.Entry<String, List<PersistentQueryMetadata>> entry
+        : queriesByApplication.entrySet()) {
+      if (closed) {
+        return;
+      }
+      try {
+        checkApplication(entry.getKey(), entry.getValue());
+      } catch (WakeupException e) {
+        return;
+      } catch (RuntimeException e) {
+        log.warn("Could not check the lag of the queries of application {}.",
+                 entry.getKey(), e);
+      }
+    }
+  }
+
+  private void checkApplication(final String applicationId,
+                                final List<PersistentQueryMetadata> queries) {
+    final MonitoredApplication application;
+    synchronized (applications) {
+      application = applications.computeIfAbsent(
+          applicationId, id -> new MonitoredApplication(newConsumer(id), queries.get(0)));
+    }
+    final Set<String> sourceTopics = new HashSet<>();
+    for (PersistentQueryMetadata query : queries) {
+      sourceTopics.addAll(sourceTopics(query.getOutputNode()));
+    }
+    final List<TopicPartition> partitions = new ArrayList<>();
+    for (String topic : sourceTopics) {
+      final List<PartitionInfo> partitionInfos = application.consumer.partitionsFor(topic);
+      if (partitionInfos != null) {
+        for (PartitionInfo partitionInfo : partitionInfos) {
+          partitions.add(new TopicPartition(partitionInfo.topic(), partitionInfo.partition()));
+        }
+      }
+    }
+    final QueryLag lag = checkLag(application.consumer, partitions);
+    for (PersistentQueryMetadata query : queries) {
+      query.getQueryMetrics().setLag(lag);
+    }
+    if (scalingEnabled && queries.size() == 1) {
+      scale(queries.get(0), application, lag, partitions.size());
+    }
+    application.previousLagRecords = lag.getLagRecords();
+  }
+
+  static QueryLag checkLag(final Consumer<byte[], byte[]> consumer,
+                           final List<TopicPartition> partitions) {
+    final Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+    final Map<TopicPartition, Long> partitionLagRecords = new HashMap<>();
+    final Map<TopicPartition, Long> committedOffsets = new HashMap<>();
+    for (TopicPartition partition : partitions) {
+      final OffsetAndMetadata committed = consumer.committed(partition);
+      final Long endOffset = endOffsets.get(partition);
+      // Partitions the query hasn't committed yet are not known to be behind
+      if (committed == null || endOffset == null) {
+        continue;
+      }
+      final long lagRecords = Math.max(0, endOffset - committed.offset());
+      partitionLagRecords.put(partition, lagRecords);
+      if (lagRecords > 0) {
+        committedOffsets.put(partition, committed.offset());
+      }
+    }
+    final long now = System.currentTimeMillis();
+    final long oldestTimestamp = oldestTimestamp(consumer, committedOffsets);
+    return new QueryLag(partitionLagRecords,
+                        oldestTimestamp == Long.MAX_VALUE ? 0 : Math.max(0, now - oldestTimestamp),
+                        now);
+  }
+
+  /**
+   * @return the timestamp of the oldest of the records at the given offsets, or
+   *     {@link Long#MAX_VALUE} if none could be read in time
+   */
+  private static long oldestTimestamp(final Consumer<byte[], byte[]> consumer,
+                                      final Map<TopicPartition, Long> offsets) {
+    long oldestTimestamp = Long.MAX_VALUE;
+    if (offsets.isEmpty()) {
+      return oldestTimestamp;
+    }
+    consumer.assign(offsets.keySet());
+    for (Map.Entry<TopicPartition, Long> offset : offsets.entrySet()) {
+      consumer.seek(offset.getKey(), offset.getValue());
+    }
+    final Set<TopicPartition> pending = new HashSet<>(offsets.keySet());
+    final long deadline = System.currentTimeMillis() + FETCH_TIMEOUT_MS;
+    try {
+      long remaining = FETCH_TIMEOUT_MS;
+      while (!pending.isEmpty() && remaining > 0) {
+        final ConsumerRecords<byte[], byte[]> records = consumer.poll(remaining);
+        for (TopicPartition partition : records.partitions()) {
+          if (pending.remove(partition)) {
+            oldestTimestamp = Math.min(oldestTimestamp,
+                                       records.records(partition).get(0).timestamp());
+            consumer.pause(Collections.singleton(partition));
+          }
+        }
+        remaining = deadline - System.currentTimeMillis();
+      }
+    } finally {
+      consumer.assign(Collections.emptySet());
+    }
+    return oldestTimestamp;
+  }
+
+  private void scale(final PersistentQueryMetadata query,
+                     final MonitoredApplication application,
+                     final QueryLag lag,
+                     final int sourcePartitions) {
+    if (query.isRecovering()) {
+      if (query.recover()) {
+        application.lastScaledMs = System.currentTimeMillis();
+        log.info("Started query {} again with the stream threads it had before its restart "
+                 + "failed.", query.getId());
+      }
+      return;
+    }
+    final QueryQuota quota = query.getQueryMetrics().getQuota();
+    if (quota == null || !query.isRestartable()
+        || System.currentTimeMillis() - application.lastScaledMs < cooldownMs) {
+      return;
+    }
+    final int threads = quota.getStreamThreads();
+    // Threads beyond the number of source partitions would have no tasks to run
+    final int maxThreads =
+        Math.min(quota.capStreamThreads(maxStreamThreads), Math.max(1, sourcePartitions));
+    final int scaledThreads = scaledThreads(threads, application.initialThreads, maxThreads,
+                                            lag.getLagRecords(), application.previousLagRecords,
+                                            thresholdRecords);
+    if (scaledThreads == threads) {
+      return;
+    }
+    final int grantedThreads =
+        sharedStreamsRuntime.reallocateThreads(query.getQueryApplicationId(), scaledThreads);
+    if (grantedThreads == threads) {
+      return;
+    }
+    log.info("Restarting query {} with {} stream threads instead of {}, as its lag is {}.",
+             query.getId(), grantedThreads, threads, lag);
+    try {
+      query.restart(grantedThreads);
+    } catch (RuntimeException e) {
+      // The query runs, or is recovered, with the threads it had
+      sharedStreamsRuntime.reallocateThreads(query.getQueryApplicationId(), threads);
+      throw e;
+    }
+    application.lastScaledMs = System.currentTimeMillis();
+  }
+
+  /**
+   * @return the number of stream threads a query running the given number of them should be
+   *     scaled to, given its lag now and at the last check, -1 if it wasn't checked before
+   */
+  static int scaledThreads(final int threads,
+                           final int minThreads,
+                           final int maxThreads,
+                           final long lagRecords,
+                           final long previousLagRecords,
+                           final long thresholdRecords) {
+    if (lagRecords > thresholdRecords && previousLagRecords >= 0
+        && lagRecords > previousLagRecords && threads < maxThreads) {
+      return threads + 1;
+    }
+    if (lagRecords < thresholdRecords / 10 && threads > minThreads) {
+      return threads - 1;
+    }
+    return threads;
+  }
+
+  private static Set<String> sourceTopics(final PlanNode planNode) {
+    final Set<String> topics = new HashSet<>();
+    if (planNode instanceof StructuredDataSourceNode) {
+      topics.add(((StructuredDataSourceNode) planNode).getStructuredDataSource().getKsqlTopic()
+                     .getKafkaTopicName());
+    }
+    if (planNode.getSources() != null) {
+      for (PlanNode source : planNode.getSources()) {
+        topics.addAll(sourceTopics(source));
+      }
+    }
+    return topics;
+  }
+
+  private Consumer<byte[], byte[]> newConsumer(final String applicationId) {
+    final Map<String, Object> consumerConfig = new StreamsConfig(
+        PhysicalPlanBuilder.streamsProperties(applicationId, ksqlConfig, Collections.emptyMap()))
+        .getRestoreConsumerConfigs(applicationId + "-lag-monitor");
+    consumerConfig.put(ConsumerConfig.GROUP_ID_CONFIG, applicationId);
+    consumerConfig.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+    consumerConfig.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+    // Only the first record at each committed offset is read: the brokers still return the
+    // whole batch it is in, but no more of the partition
+    consumerConfig.put(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG, 1);
+    consumerConfig.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 1);
+    return new KafkaConsumer<>(
+        consumerConfig, new ByteArrayDeserializer(), new ByteArrayDeserializer());
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    synchronized (applications) {
+      for (MonitoredApplication application : applications.values()) {
+        application.consumer.wakeup();
+      }
+    }
+    executor.shutdownNow();
+    try {
+      if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        log.warn("The query lag monitor did not stop in time.");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (applications) {
+      for (MonitoredApplication application : applications.values()) {
+        application.consumer.close();
+      }
+      applications.clear();
+    }
+  }
+
+  private static final class MonitoredApplication {
+
+    private final Consumer<byte[], byte[]> consumer;
+    private final int initialThreads;
+    private long previousLagRecords = -1;
+    private long lastScaledMs;
+
+    private MonitoredApplication(final Consumer<byte[], byte[]> consumer,
+                                 final PersistentQueryMetadata query) {
+      this.consumer = consumer;
+      final QueryQuota quota = query.getQueryMetrics().getQuota();
+      this.initialThreads = quota == null ? 1 : Math.max(1, quota.getStreamThreads());
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.physical;
+
+import io.confluent.ksql.util.QueryMetrics;
+
+import org.apache.kafka.streams.Consumed;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.KStream;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Builds the topology of a group of persistent queries reading the same stream. The stream is
+ * read and deserialized by a single source node, which branches out to the queries of the group.
+ * Each query is built behind its own gate, which is closed when the query is terminated. The
+ * source keeps being read until the last query of the group is terminated, even if the queries
+ * left only read a fraction of it.
+ *
+ * <p>The source is built with the serdes of the first query of the group, so the metrics of
+ * the queries must count its rows for the whole group, see
+ * {@link io.confluent.ksql.util.SharedSourceMetrics}.
+ */
+public class SharedSourceStreamsBuilder extends StreamsBuilder {
+
+  private final Map<String, KStream> sources = new HashMap<>();
+  private AtomicBoolean gate;
+  private QueryMetrics queryMetrics;
+
+  /**
+   * Starts the next query of the group.
+   *
+   * @param queryMetrics the metrics of the query, which its rows are processed against once they
+   *     pass its gate, or null for none
+   * @return the gate of the query
+   */
+  AtomicBoolean nextQuery(final QueryMetrics queryMetrics) {
+    gate = new AtomicBoolean(true);
+    this.queryMetrics = queryMetrics;
+    return gate;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public synchronized <K, V> KStream<K, V> stream(final String topic,
+                                                  final Consumed<K, V> consumed) {
+    KStream<K, V> source = sources.get(topic);
+    if (source == null) {
+      source = super.stream(topic, consumed);
+      sources.put(topic, source);
+    }
+    if (gate == null) {
+      return source;
+    }
+    final AtomicBoolean queryGate = gate;
+    final QueryMetrics metrics = queryMetrics;
+    return source.filter((key, value) -> {
+      if (!queryGate.get()) {
+        return false;
+      }
+      QueryMetrics.setCurrent(metrics);
+      return true;
+    });
+  }
+}
@@ -0,0 +1,355 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.physical;
+
+import io.confluent.ksql.util.KsqlConfig;
+import io.confluent.ksql.util.KsqlException;
+import io.confluent.ksql.util.FairShareThrottle;
+import io.confluent.ksql.util.Throttle;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.streams.KafkaClientSupplier;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.processor.internals.DefaultKafkaClientSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resources shared by the Kafka Streams runtimes of all persistent queries of a server.
+ *
+ * <p>Stream threads are handed out from a server wide budget, so that the number of threads,
+ * and with them consumers and connections, stays bounded however many queries are running.
+ * Each query is still a Kafka Streams application of its own, so it can be started, stopped and
+ * cleaned up on its own; its threads go back to the budget when it is released. The memory of
+ * the state stores of the queries is handed out from a budget of its own the same way, and the
+ * records and bytes all queries read per second are throttled together.
+ *
+ * <p>Queries that don't need exactly once processing can also share a producer, instead of
+ * every stream thread of every query running a producer with its own I/O thread and
+ * connections. Only queries with the same producer configs share one.
+ */
+public class SharedStreamsRuntime {
+
+  private static final Logger log = LoggerFactory.getLogger(SharedStreamsRuntime.class);
+
+  private static final String SHARED_PRODUCER_CLIENT_ID = "ksql-shared-producer";
+
+  private final int threadBudget;
+  private final boolean shareProducer;
+  private final long stateStoreBytesBudget;
+  private final FairShareThrottle recordThrottle;
+  private final FairShareThrottle byteThrottle;
+  private final Map<String, Integer> allocatedThreads = new HashMap<>();
+  private final Map<String, Long> allocatedStateStoreBytes = new HashMap<>();
+  private final Map<Map<String, Object>, UncloseableProducer> sharedProducers = new HashMap<>();
+
+  public SharedStreamsRuntime(final KsqlConfig ksqlConfig) {
+    this((Integer) ksqlConfig.get(KsqlConfig.KSQL_PERSISTENT_QUERY_THREAD_BUDGET_CONFIG),
+         (Boolean) ksqlConfig.get(KsqlConfig.KSQL_PERSISTENT_QUERY_SHARED_PRODUCER_ENABLE_CONFIG),
+         (Long) ksqlConfig.get(KsqlConfig.KSQL_PERSISTENT_QUERY_CONSUME_RECORDS_BUDGET_CONFIG),
+         (Long) ksqlConfig.get(KsqlConfig.KSQL_PERSISTENT_QUERY_CONSUME_BYTES_BUDGET_CONFIG),
+         (Long) ksqlConfig.get(KsqlConfig.KSQL_PERSISTENT_QUERY_STATE_STORE_BYTES_BUDGET_CONFIG));
+  }
+
+  SharedStreamsRuntime(final int threadBudget, final boolean shareProducer) {
+    this(threadBudget, shareProducer, 0, 0, 0);
+  }
+
+  SharedStreamsRuntime(final int threadBudget,
+                       final boolean shareProducer,
+                       final long recordsPerSecondBudget,
+                       final long bytesPerSecondBudget,
+                       final long stateStoreBytesBudget) {
+    this.threadBudget = threadBudget;
+    this.shareProducer = shareProducer;
+    this.recordThrottle =
+        recordsPerSecondBudget > 0 ? new FairShareThrottle(recordsPerSecondBudget) : null;
+    this.byteThrottle =
+        bytesPerSecondBudget > 0 ? new FairShareThrottle(bytesPerSecondBudget) : null;
+    this.stateStoreBytesBudget = stateStoreBytesBudget;
+  }
+
+  /**
+   * Allocates stream threads to the query with the given application id.
+   *
+   * @return the number of threads the query may run, which is the requested number or what is
+   *     left of the budget if that is less
+   * @throws KsqlException if the budget is used up
+   */
+  public synchronized int allocateThreads(final String queryApplicationId,
+                                          final int requestedThreads) {
+    if (threadBudget <= 0) {
+      allocatedThreads.put(queryApplicationId, requestedThreads);
+      return requestedThreads;
+    }
+    final int available = threadBudget - getAllocatedThreads();
+    if (available <= 0) {
+      throw new KsqlException(String.format(
+          "All %d stream threads of the persistent query thread budget (%s) are in use. "
+          + "Terminate a query or raise the budget to start another one.",
+          threadBudget, KsqlConfig.KSQL_PERSISTENT_QUERY_THREAD_BUDGET_CONFIG));
+    }
+    final int granted = Math.min(requestedThreads, available);
+    if (granted < requestedThreads) {
+      log.warn("Query {} runs {} of the {} stream threads it asked for, as the rest of the "
+               + "thread budget is in use.", queryApplicationId, granted, requestedThreads);
+    }
+    allocatedThreads.put(queryApplicationId, granted);
+    return granted;
+  }
+
+  /**
+   * Changes the number of stream threads allocated to the query with the given application id,
+   * as when it is restarted with more or fewer threads.
+   *
+   * @return the number of threads the query may now run, which is the requested number or what
+   *     is left of the budget with its current threads returned to it, if that is less
+   */
+  public synchronized int reallocateThreads(final String queryApplicationId,
+                                            final int requestedThreads) {
+    final Integer current = allocatedThreads.remove(queryApplicationId);
+    try {
+      return allocateThreads(queryApplicationId, requestedThreads);
+    } catch (KsqlException e) {
+      if (current != null) {
+        allocatedThreads.put(queryApplicationId, current);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Allocates state store memory to the query with the given application id.
+   *
+   * @param requestedBytes the memory the query is limited to, 0 if it isn't
+   * @return the memory the state stores of the query may use, which is the requested memory or
+   *     what is left of the budget if that is less or nothing was requested, 0 for no limit
+   * @throws KsqlException if the budget is used up
+   */
+  public synchronized long allocateStateStoreBytes(final String queryApplicationId,
+                                                   final long requestedBytes) {
+    if (stateStoreBytesBudget <= 0) {
+      allocatedStateStoreBytes.put(queryApplicationId, requestedBytes);
+      return requestedBytes;
+    }
+    final long available = stateStoreBytesBudget - getAllocatedStateStoreBytes();
+    if (available <= 0) {
+      throw new KsqlException(String.format(
+          "All %d bytes of the persistent query state store memory budget (%s) are in use. "
+          + "Terminate a query or raise the budget to start another one.",
+          stateStoreBytesBudget, KsqlConfig.KSQL_PERSISTENT_QUERY_STATE_STORE_BYTES_BUDGET_CONFIG));
+    }
+    final long granted = requestedBytes > 0 ? Math.min(requestedBytes, available) : available;
+    if (granted < requestedBytes) {
+      log.warn("Query {} gets {} of the {} state store bytes it asked for, as the rest of the "
+               + "memory budget is in use.", queryApplicationId, granted, requestedBytes);
+    }
+    allocatedStateStoreBytes.put(queryApplicationId, granted);
+    return granted;
+  }
+
+  /**
+   * Gives the query with the given application id its share of the records per second budget,
+   * which shrinks as other queries start, see {@link FairShareThrottle}.
+   *
+   * @return the throttle of the share, {@code null} if the budget is unlimited
+   */
+  public Throttle allocateRecordThrottle(final String queryApplicationId) {
+    return recordThrottle == null ? null : recordThrottle.addShare(queryApplicationId);
+  }
+
+  /**
+   * Gives the query with the given application id its share of the bytes per second budget,
+   * which shrinks as other queries start, see {@link FairShareThrottle}.
+   *
+   * @return the throttle of the share, {@code null} if the budget is unlimited
+   */
+  public Throttle allocateByteThrottle(final String queryApplicationId) {
+    return byteThrottle == null ? null : byteThrottle.addShare(queryApplicationId);
+  }
+
+  /**
+   * Returns the threads, state store memory and consume rate shares of the query with the given
+   * application id to the budgets.
+   */
+  public synchronized void release(final String queryApplicationId) {
+    allocatedThreads.remove(queryApplicationId);
+    allocatedStateStoreBytes.remove(queryApplicationId);
+    if (recordThrottle != null) {
+      recordThrottle.removeShare(queryApplicationId);
+    }
+    if (byteThrottle != null) {
+      byteThrottle.removeShare(queryApplicationId);
+    }
+  }
+
+  public synchronized int getAllocatedThreads() {
+    int allocated = 0;
+    for (int threads : allocatedThreads.values()) {
+      allocated += threads;
+    }
+    return allocated;
+  }
+
+  public int getThreadBudget() {
+    return threadBudget;
+  }
+
+  public synchronized long getAllocatedStateStoreBytes() {
+    long allocated = 0;
+    for (long bytes : allocatedStateStoreBytes.values()) {
+      allocated += bytes;
+    }
+    return allocated;
+  }
+
+  public long getStateStoreBytesBudget() {
+    return stateStoreBytesBudget;
+  }
+
+  /**
+   * @return the client supplier for a query with the given streams properties.
+   */
+  public KafkaClientSupplier clientSupplier(final Map<String, Object> streamsProperties) {
+    if (!shareProducer
+        || StreamsConfig.EXACTLY_ONCE.equals(
+            streamsProperties.get(StreamsConfig.PROCESSING_GUARANTEE_CONFIG))) {
+      return new DefaultKafkaClientSupplier();
+    }
+    final Producer<byte[], byte[]> producer = sharedProducer(streamsProperties);
+    return new DefaultKafkaClientSupplier() {
+      @Override
+      public Producer<byte[], byte[]> getProducer(final Map<String, Object> config) {
+        return producer;
+      }
+    };
+  }
+
+  // The producer shared by the queries whose producer configs are the given ones
+  private synchronized Producer<byte[], byte[]> sharedProducer(
+      final Map<String, Object> streamsProperties) {
+    final Map<String, Object> producerConfig = new StreamsConfig(streamsProperties)
+        .getProducerConfigs(SHARED_PRODUCER_CLIENT_ID + "-" + (sharedProducers.size() + 1));
+    final Map<String, Object> key = new HashMap<>(producerConfig);
+    key.remove(ProducerConfig.CLIENT_ID_CONFIG);
+    return sharedProducers.computeIfAbsent(key, config -> new UncloseableProducer(
+        new KafkaProducer<>(producerConfig, new ByteArraySerializer(),
+                            new ByteArraySerializer())));
+  }
+
+  synchronized int getSharedProducerCount() {
+    return sharedProducers.size();
+  }
+
+  public synchronized void close() {
+    for (UncloseableProducer producer : sharedProducers.values()) {
+      producer.delegate.close();
+    }
+    sharedProducers.clear();
+  }
+
+  /**
+   * Producer handed to the stream threads of all queries. Stream threads close their producer
+   * when they shut down, which must not close it for the other queries.
+   */
+  private static final class UncloseableProducer implements Producer<byte[], byte[]> {
+
+    private final Producer<byte[], byte[]> delegate;
+
+    private UncloseableProducer(final Producer<byte[], byte[]> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void initTransactions() {
+      throw new UnsupportedOperationException("The shared producer is not transactional.");
+    }
+
+    @Override
+    public void beginTransaction() {
+      throw new UnsupportedOperationException("The shared producer is not transactional.");
+    }
+
+    @Override
+    public void sendOffsetsToTransaction(final Map<TopicPartition, OffsetAndMetadata> offsets,
+                                         final String consumerGroupId) {
+      throw new UnsupportedOperationException("The shared producer is not transactional.");
+    }
+
+    @Override
+    public void commitTransaction() {
+      throw new UnsupportedOperationException("The shared producer is not transactional.");
+    }
+
+    @Override
+    public void abortTransaction() {
+      throw new UnsupportedOperationException("The shared producer is not transactional.");
+    }
+
+    @Override
+    public Future<RecordMetadata> send(final ProducerRecord<byte[], byte[]> record) {
+      return delegate.send(record);
+    }
+
+    @Override
+    public Future<RecordMetadata> send(final ProducerRecord<byte[], byte[]> record,
+                                       final Callback callback) {
+      return delegate.send(record, callback);
+    }
+
+    @Override
+    public void flush() {
+      delegate.flush();
+    }
+
+    @Override
+    public List<PartitionInfo> partitionsFor(final String topic) {
+      return delegate.partitionsFor(topic);
+    }
+
+    @Override
+    public Map<MetricName, ? extends Metric> metrics() {
+      return delegate.metrics();
+    }
+
+    @Override
+    public void close() {
+      // closed with the runtime
+    }
+
+    @Override
+    public void close(final long timeout, final TimeUnit unit) {
+      // closed with the runtime
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+
+package io.confluent.ksql.physical;
+
+import org.apache.kafka.streams.state.RocksDBConfigSetter;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.Options;
+
+import java.util.Map;
+
+/**
+ * Sizes the block cache and write buffers of the RocksDB stores of a query to the memory each
+ * store may use, given by {@link #STORE_BYTES_CONFIG} in the streams properties of the query.
+ *
+ * <p>A store gets half of its memory for its block cache and half for its two write buffers,
+ * rather than the 50MB cache and three 16MB buffers Kafka Streams gives every store. The memory
+ * of a store is per instance, of which there is one per partition a thread of the query owns,
+ * so it bounds the memory of the query only as far as the number of those is known.
+ */
+public class StateStoreMemoryConfigSetter implements RocksDBConfigSetter {
+
+  /**
+   * Streams property with the memory, in bytes, each RocksDB store of the query may use.
+   */
+  public static final String STORE_BYTES_CONFIG = "ksql.query.state.store.bytes.per.store";
+
+  private static final long MIN_WRITE_BUFFER_BYTES = 64 * 1024L;
+  private static final long MIN_BLOCK_CACHE_BYTES = 64 * 1024L;
+  private static final int WRITE_BUFFERS = 2;
+
+  @Override
+  public void setConfig(final String storeName,
+                        final Options options,
+                        final Map<String, Object> configs) {
+    final Object storeBytes = configs.get(STORE_BYTES_CONFIG);
+    if (storeBytes == null) {
+      return;
+    }
+    final long bytes = Long.parseLong(storeBytes.toString());
+    final BlockBasedTableConfig tableConfig = new BlockBasedTableConfig();
+    tableConfig.setBlockCacheSize(Math.max(MIN_BLOCK_CACHE_BYTES, bytes / 2));
+    tableConfig.setBlockSize(4096L);
+    options.setTableFormatConfig(tableConfig);
+    options.setWriteBufferSize(Math.max(MIN_WRITE_BUFFER_BYTES, bytes / 2 / WRITE_BUFFERS));
+    options.setMaxWriteBufferNumber(WRITE_BUFFERS);
+  }
+}
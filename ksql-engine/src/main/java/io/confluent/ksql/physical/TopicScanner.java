@@ -0,0 +1,248 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.physical;
+
+import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.planner.plan.StructuredDataSourceNode;
+import io.confluent.ksql.structured.ScanPipeline;
+import io.confluent.ksql.util.KsqlException;
+import io.confluent.ksql.util.QueryLimit;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.streams.KeyValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Function;
+
+/**
+ * Reads the topic of a stream with a plain consumer and passes its rows through the filter and
+ * projection of a transient query, for queries that don't need a Kafka Streams application.
+ * The consumer is assigned all partitions of the topic and joins no group, so it commits no
+ * offsets and creates no internal topics.
+ */
+public class TopicScanner implements Runnable {
+
+  private static final Logger log = LoggerFactory.getLogger(TopicScanner.class);
+
+  private static final long POLL_TIMEOUT_MS = 100;
+
+  private final ScanPipeline pipeline;
+  private final Map<String, Object> consumerProperties;
+  private final Function<Map<String, Object>, Consumer<String, byte[]>> consumerFactory;
+  private final BlockingQueue<KeyValue<String, GenericRow>> rowQueue;
+  private final QueryLimit limit;
+  private final String threadName;
+
+  private volatile boolean closed;
+  private volatile Consumer<String, byte[]> consumer;
+  private Thread thread;
+  private Thread.UncaughtExceptionHandler uncaughtExceptionHandler;
+
+  public TopicScanner(final ScanPipeline pipeline,
+                      final Map<String, Object> streamsProperties,
+                      final BlockingQueue<KeyValue<String, GenericRow>> rowQueue,
+                      final QueryLimit limit,
+                      final String threadName) {
+    this(pipeline, streamsProperties, rowQueue, limit, threadName,
+         properties -> new KafkaConsumer<>(
+             properties, new StringDeserializer(), new ByteArrayDeserializer()));
+  }
+
+  TopicScanner(final ScanPipeline pipeline,
+               final Map<String, Object> streamsProperties,
+               final BlockingQueue<KeyValue<String, GenericRow>> rowQueue,
+               final QueryLimit limit,
+               final String threadName,
+               final Function<Map<String, Object>, Consumer<String, byte[]>> consumerFactory) {
+    this.pipeline = pipeline;
+    this.consumerProperties = consumerProperties(streamsProperties);
+    // The scan reads without a consumer group, so there are never committed offsets to resume
+    // from: with no reset policy to fall back on it could not start anywhere.
+    if ("none".equalsIgnoreCase(offsetReset(consumerProperties))) {
+      throw new KsqlException("Can't scan topic of query " + threadName + " with "
+                              + ConsumerConfig.AUTO_OFFSET_RESET_CONFIG
+                              + "=none: the scan has no committed offsets to start from.");
+    }
+    this.rowQueue = rowQueue;
+    this.limit = limit;
+    this.threadName = threadName;
+    this.consumerFactory = consumerFactory;
+  }
+
+  public void setUncaughtExceptionHandler(final Thread.UncaughtExceptionHandler handler) {
+    this.uncaughtExceptionHandler = handler;
+  }
+
+  public synchronized void start() {
+    if (thread != null) {
+      throw new KsqlException("The scan of query " + threadName + " has already been started.");
+    }
+    thread = new Thread(this, threadName);
+    thread.setDaemon(true);
+    if (uncaughtExceptionHandler != null) {
+      thread.setUncaughtExceptionHandler(uncaughtExceptionHandler);
+    }
+    thread.start();
+  }
+
+  @Override
+  public void run() {
+    final StructuredDataSourceNode sourceNode = pipeline.getSourceNode();
+    final String topic =
+        sourceNode.getStructuredDataSource().getKsqlTopic().getKafkaTopicName();
+    final Deserializer<GenericRow> deserializer = sourceNode.getSourceRowSerde().deserializer();
+    final int timestampColumnIndex = sourceNode.getTimestampColumnIndex();
+
+    try (Consumer<String, byte[]> consumer = consumerFactory.apply(consumerProperties)) {
+      this.consumer = consumer;
+      if (closed) {
+        return;
+      }
+      assignAll(consumer, topic);
+
+      while (!closed) {
+        for (ConsumerRecord<String, byte[]> record : consumer.poll(POLL_TIMEOUT_MS)) {
+          final GenericRow value = deserialize(deserializer, topic, record);
+          if (value == null) {
+            continue;
+          }
+          final GenericRow row = pipeline.apply(
+              timestamp(record, value, timestampColumnIndex), record.key(), value);
+          if (row == null) {
+            continue;
+          }
+          if (!limit.tryAdmit()) {
+            // The reader closes the query once it has read the rows within the limit
+            return;
+          }
+          limit.deliver(rowQueue, new KeyValue<>(record.key(), row));
+          if (limit.isReached()) {
+            return;
+          }
+        }
+      }
+    } catch (WakeupException e) {
+      if (!closed) {
+        throw e;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      deserializer.close();
+    }
+  }
+
+  /**
+   * Stops the scan and waits for its thread to finish.
+   */
+  public void close() {
+    closed = true;
+    final Consumer<String, byte[]> consumer = this.consumer;
+    if (consumer != null) {
+      consumer.wakeup();
+    }
+    final Thread thread;
+    synchronized (this) {
+      thread = this.thread;
+    }
+    if (thread == null || thread == Thread.currentThread()) {
+      return;
+    }
+    thread.interrupt();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void assignAll(final Consumer<String, byte[]> consumer, final String topic) {
+    final List<PartitionInfo> partitionInfos = consumer.partitionsFor(topic);
+    if (partitionInfos == null || partitionInfos.isEmpty()) {
+      throw new KsqlException("Topic does not exist: " + topic);
+    }
+    final List<TopicPartition> partitions = new ArrayList<>();
+    for (PartitionInfo partitionInfo : partitionInfos) {
+      partitions.add(new TopicPartition(topic, partitionInfo.partition()));
+    }
+    consumer.assign(partitions);
+    if ("latest".equalsIgnoreCase(offsetReset(consumerProperties))) {
+      consumer.seekToEnd(partitions);
+    } else {
+      consumer.seekToBeginning(partitions);
+    }
+  }
+
+  private static GenericRow deserialize(final Deserializer<GenericRow> deserializer,
+                                        final String topic,
+                                        final ConsumerRecord<String, byte[]> record) {
+    try {
+      return deserializer.deserialize(topic, record.value());
+    } catch (RuntimeException e) {
+      log.warn("Skipping record at offset {} of partition {} of topic {} that could not be "
+               + "deserialized.", record.offset(), record.partition(), topic, e);
+      return null;
+    }
+  }
+
+  /**
+   * The same timestamp the stream of the source would give the row: the timestamp column if
+   * the source has one, the timestamp of the record otherwise.
+   */
+  private static long timestamp(final ConsumerRecord<String, byte[]> record,
+                                final GenericRow value,
+                                final int timestampColumnIndex) {
+    if (timestampColumnIndex < 0) {
+      return record.timestamp();
+    }
+    final Object timestamp = value.getColumns().get(timestampColumnIndex);
+    return timestamp instanceof Long ? (Long) timestamp : 0;
+  }
+
+  private static String offsetReset(final Map<String, Object> consumerProperties) {
+    final Object offsetReset = consumerProperties.get(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG);
+    return offsetReset == null ? null : offsetReset.toString().trim();
+  }
+
+  private static Map<String, Object> consumerProperties(
+      final Map<String, Object> streamsProperties) {
+    final Map<String, Object> properties = new HashMap<>();
+    for (Map.Entry<String, Object> entry : streamsProperties.entrySet()) {
+      if (ConsumerConfig.configNames().contains(entry.getKey())) {
+        properties.put(entry.getKey(), entry.getValue());
+      }
+    }
+    properties.remove(ConsumerConfig.GROUP_ID_CONFIG);
+    properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+    return properties;
+  }
+}
@@ -26,6 +26,7 @@ import io.confluent.ksql.metastore.StructuredDataSource;
 import io.confluent.ksql.parser.tree.Expression;
 import io.confluent.ksql.planner.plan.AggregateNode;
 import io.confluent.ksql.planner.plan.FilterNode;
+import io.confluent.ksql.planner.plan.JoinNode;
 import io.confluent.ksql.planner.plan.KsqlBareOutputNode;
 import io.confluent.ksql.planner.plan.KsqlStructuredDataOutputNode;
 import io.confluent.ksql.planner.plan.OutputNode;
@@ -41,6 +42,10 @@ import org.apache.kafka.connect.data.Field;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.data.SchemaBuilder;
 
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
 public class LogicalPlanner {
 
   private Analysis analysis;
@@ -57,7 +62,7 @@ public class LogicalPlanner {
   public PlanNode buildPlan() {
     PlanNode currentNode;
     if (analysis.getJoin() != null) {
-      currentNode = analysis.getJoin();
+      currentNode = buildJoinNode(analysis.getJoin());
     } else {
       currentNode = buildSourceNode();
     }
@@ -74,6 +79,60 @@ public class LogicalPlanner {
     return buildOutputNode(currentNode.getSchema(), currentNode);
   }
 
+  private JoinNode buildJoinNode(final JoinNode analyzedJoinNode) {
+    JoinNode joinNode = pruneJoinSources(analyzedJoinNode);
+    final Object tableCacheSize = analysis.getIntoProperties()
+        .get(KsqlConstants.JOIN_CACHE_SIZE);
+    if (tableCacheSize != null) {
+      joinNode = joinNode.withTableCacheSize((Integer) tableCacheSize);
+    }
+    final Object retentionMs = analysis.getIntoProperties()
+        .get(KsqlConstants.WINDOW_RETENTION_MS);
+    if (retentionMs == null || !joinNode.getWithinMs().isPresent()) {
+      return joinNode;
+    }
+    return joinNode.withRetentionMs((Long) retentionMs);
+  }
+
+  /**
+   * Drops the columns that the query doesn't use from both sides of the join as soon as they
+   * are read, so they are neither repartitioned nor kept in the join stores. The rows of a
+   * broadcast table are read whole into the global store, so that side is left as it is.
+   */
+  private JoinNode pruneJoinSources(final JoinNode joinNode) {
+    final RequiredColumns requiredColumns = RequiredColumns.of(analysis, aggregateAnalysis);
+    final PlanNode left = pruneSource(requiredColumns,
+                                      (StructuredDataSourceNode) joinNode.getLeft(),
+                                      joinNode.getLeftAlias(),
+                                      joinNode.getLeftKeyFieldName());
+    final PlanNode right = joinNode.isBroadcastJoin()
+                           ? joinNode.getRight()
+                           : pruneSource(requiredColumns,
+                                         (StructuredDataSourceNode) joinNode.getRight(),
+                                         joinNode.getRightAlias(),
+                                         joinNode.getRightKeyFieldName());
+    if (left == joinNode.getLeft() && right == joinNode.getRight()) {
+      return joinNode;
+    }
+    return joinNode.withSources(left, right);
+  }
+
+  private static StructuredDataSourceNode pruneSource(final RequiredColumns requiredColumns,
+                                                      final StructuredDataSourceNode source,
+                                                      final String alias,
+                                                      final String joinKeyFieldName) {
+    final Set<String> alwaysRequired = new HashSet<>();
+    alwaysRequired.add(joinKeyFieldName);
+    if (source.getKeyField() != null) {
+      alwaysRequired.add(source.getKeyField().name());
+    }
+    if (source.getTimestampField() != null) {
+      alwaysRequired.add(source.getTimestampField().name());
+    }
+    return source.withFields(
+        requiredColumns.fieldsOf(source.getSchema(), alias, alwaysRequired));
+  }
+
   private OutputNode buildOutputNode(final Schema inputSchema, final PlanNode sourcePlanNode) {
     StructuredDataSource intoDataSource = analysis.getInto();
 
@@ -130,7 +189,11 @@ public class LogicalPlanner {
                              aggregateAnalysis.getRequiredColumnsList(),
                              aggregateAnalysis.getNonAggResultColumns(),
                              aggregateAnalysis.getFinalSelectExpressions(),
-                             aggregateAnalysis.getHavingExpression());
+                             aggregateAnalysis.getHavingExpression(),
+                             Optional.ofNullable((Long) analysis.getIntoProperties()
+                                 .get(KsqlConstants.WINDOW_RETENTION_MS)),
+                             Optional.ofNullable((Integer) analysis.getIntoProperties()
+                                 .get(KsqlConstants.WINDOW_SEGMENTS)));
   }
 
   private ProjectNode buildProjectNode(final Schema inputSchema, final PlanNode sourcePlanNode) {
@@ -162,10 +225,16 @@ public class LogicalPlanner {
     Pair<StructuredDataSource, String> dataSource = analysis.getFromDataSource(0);
     Schema fromSchema = SchemaUtil.buildSchemaWithAlias(dataSource.left.getSchema(), dataSource.right);
 
-    if (dataSource.left instanceof KsqlStream
-        || dataSource.left instanceof KsqlTable) {
+    if (dataSource.left instanceof KsqlStream) {
       return new StructuredDataSourceNode(new PlanNodeId("KsqlTopic"), dataSource.left, fromSchema);
     }
+    if (dataSource.left instanceof KsqlTable) {
+      // a table is materialized as soon as it is read, so only keep the columns that are used
+      final StructuredDataSourceNode tableNode =
+          new StructuredDataSourceNode(new PlanNodeId("KsqlTopic"), dataSource.left, fromSchema);
+      return pruneSource(RequiredColumns.of(analysis, aggregateAnalysis), tableNode,
+                         dataSource.right, SchemaUtil.ROWKEY_NAME);
+    }
     throw new RuntimeException("Data source is not supported yet.");
   }
 
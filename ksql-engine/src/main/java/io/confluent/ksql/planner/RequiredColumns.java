@@ -0,0 +1,106 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+
+package io.confluent.ksql.planner;
+
+import io.confluent.ksql.analyzer.AggregateAnalysis;
+import io.confluent.ksql.analyzer.Analysis;
+import io.confluent.ksql.parser.tree.DereferenceExpression;
+import io.confluent.ksql.parser.tree.Expression;
+import io.confluent.ksql.parser.tree.Node;
+import io.confluent.ksql.parser.tree.QualifiedNameReference;
+import io.confluent.ksql.util.SchemaUtil;
+import org.apache.kafka.connect.data.Field;
+import org.apache.kafka.connect.data.Schema;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The columns of the sources of a query that are referenced anywhere in the query, so that
+ * columns which are not can be dropped as soon as the source is read.
+ */
+public class RequiredColumns extends DefaultTraversalVisitor<Node, Object> {
+
+  private final Set<String> references = new HashSet<>();
+
+  private RequiredColumns() {
+  }
+
+  public static RequiredColumns of(final Analysis analysis,
+                                   final AggregateAnalysis aggregateAnalysis) {
+    final RequiredColumns requiredColumns = new RequiredColumns();
+    final List<Expression> expressions = new ArrayList<>(analysis.getSelectExpressions());
+    if (analysis.getWhereExpression() != null) {
+      expressions.add(analysis.getWhereExpression());
+    }
+    if (analysis.getGroupByExpressions() != null) {
+      expressions.addAll(analysis.getGroupByExpressions());
+    }
+    if (analysis.getHavingExpression() != null) {
+      expressions.add(analysis.getHavingExpression());
+    }
+    expressions.addAll(aggregateAnalysis.getAggregateFunctionArguments());
+    expressions.addAll(aggregateAnalysis.getRequiredColumnsList());
+    for (Expression expression : expressions) {
+      requiredColumns.process(expression, null);
+    }
+    return requiredColumns;
+  }
+
+  /**
+   * @return the names of the fields of the source schema that are referenced either qualified
+   *     by alias or unqualified, in schema order. The field names in schema may themselves be
+   *     qualified by alias. ROWTIME, ROWKEY and the given always required fields are always
+   *     included.
+   */
+  public List<String> fieldsOf(final Schema schema,
+                               final String alias,
+                               final Set<String> alwaysRequired) {
+    final String prefix = alias + ".";
+    final List<String> fields = new ArrayList<>();
+    for (Field field : schema.fields()) {
+      final String name = field.name();
+      final String bareName = name.startsWith(prefix) ? name.substring(prefix.length()) : name;
+      if (bareName.equals(SchemaUtil.ROWTIME_NAME)
+          || bareName.equals(SchemaUtil.ROWKEY_NAME)
+          || alwaysRequired.contains(bareName)
+          || references.contains(bareName)
+          || references.contains(prefix + bareName)) {
+        fields.add(name);
+      }
+    }
+    return fields;
+  }
+
+  @Override
+  protected Node visitDereferenceExpression(final DereferenceExpression node,
+                                            final Object context) {
+    references.add(node.toString());
+    return null;
+  }
+
+  @Override
+  protected Node visitQualifiedNameReference(final QualifiedNameReference node,
+                                             final Object context) {
+    references.add(node.getName().getSuffix());
+    references.add(node.getName().toString());
+    return null;
+  }
+}
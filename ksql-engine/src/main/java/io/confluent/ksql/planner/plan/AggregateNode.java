@@ -23,11 +23,15 @@ import com.google.common.collect.ImmutableList;
 import io.confluent.ksql.GenericRow;
 import io.confluent.ksql.function.FunctionRegistry;
 import io.confluent.ksql.function.KsqlAggregateFunction;
+import io.confluent.ksql.function.UdafAggregator;
 import io.confluent.ksql.function.udaf.KudafAggregator;
 import io.confluent.ksql.function.udaf.KudafInitializer;
+import io.confluent.ksql.function.udaf.KudafMergeAggregator;
+import io.confluent.ksql.function.udaf.KudafResultMapper;
 import io.confluent.ksql.metastore.MetastoreUtil;
 import io.confluent.ksql.parser.tree.Expression;
 import io.confluent.ksql.parser.tree.FunctionCall;
+import io.confluent.ksql.parser.tree.HoppingWindowExpression;
 import io.confluent.ksql.parser.tree.WindowExpression;
 import io.confluent.ksql.structured.SchemaKGroupedStream;
 import io.confluent.ksql.structured.SchemaKStream;
@@ -53,6 +57,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -75,6 +80,10 @@ public class AggregateNode extends PlanNode {
 
   private final Expression havingExpressions;
 
+  private final Optional<Long> windowRetentionMs;
+
+  private final Optional<Integer> windowSegments;
+
   @JsonCreator
   public AggregateNode(@JsonProperty("id") final PlanNodeId id,
                        @JsonProperty("source") final PlanNode source,
@@ -93,7 +102,9 @@ public class AggregateNode extends PlanNode {
                        @JsonProperty("finalSelectExpressions") final List<Expression>
                              finalSelectExpressions,
                        @JsonProperty("havingExpressions") final Expression
-                             havingExpressions) {
+                             havingExpressions,
+                       @JsonProperty("windowRetentionMs") final Optional<Long> windowRetentionMs,
+                       @JsonProperty("windowSegments") final Optional<Integer> windowSegments) {
     super(id);
 
     this.source = source;
@@ -107,6 +118,8 @@ public class AggregateNode extends PlanNode {
     this.nonAggResultColumns = nonAggResultColumns;
     this.finalSelectExpressions = finalSelectExpressions;
     this.havingExpressions = havingExpressions;
+    this.windowRetentionMs = windowRetentionMs;
+    this.windowSegments = windowSegments;
   }
 
   @Override
@@ -140,6 +153,14 @@ public class AggregateNode extends PlanNode {
     return windowExpression;
   }
 
+  public Optional<Long> getWindowRetentionMs() {
+    return windowRetentionMs;
+  }
+
+  public Optional<Integer> getWindowSegments() {
+    return windowSegments;
+  }
+
   public List<Expression> getAggregateFunctionArguments() {
     return aggregateFunctionArguments;
   }
@@ -193,15 +214,6 @@ public class AggregateNode extends PlanNode {
 
     final SchemaKStream aggregateArgExpanded = rekeyedSchemaKStream.select(aggArgExpansionList);
 
-    final Serde<GenericRow> genericRowSerde =
-        SerDeUtil.getRowSerDe(streamSourceNode.getStructuredDataSource()
-                .getKsqlTopic()
-                .getKsqlTopicSerDe(),
-            aggregateArgExpanded.getSchema());
-
-    final SchemaKGroupedStream schemaKGroupedStream =
-        aggregateArgExpanded.groupByKey(Serdes.String(), genericRowSerde);
-
     // Aggregate computations
     final SchemaBuilder aggregateSchema = SchemaBuilder.struct();
 
@@ -212,31 +224,68 @@ public class AggregateNode extends PlanNode {
     final List<Object> resultColumns = IntStream.range(0,
         aggValToValColumnMap.size()).mapToObj(value -> "").collect(Collectors.toList());
 
+    final Map<Integer, KsqlAggregateFunction> aggValToFunctionMap = createAggValToFunctionMap(
+        expressionNames,
+        aggregateArgExpanded,
+        aggregateSchema,
+        resultColumns,
+        functionRegistry);
+
     final Serde<GenericRow> aggValueGenericRowSerde = SerDeUtil.getRowSerDe(streamSourceNode
             .getStructuredDataSource()
             .getKsqlTopic()
             .getKsqlTopicSerDe(),
         aggregateSchema);
 
-    final SchemaKTable schemaKTable = schemaKGroupedStream.aggregate(
-        new KudafInitializer(resultColumns),
-        new KudafAggregator(createAggValToFunctionMap(
-            expressionNames,
-            aggregateArgExpanded,
-            aggregateSchema,
-            resultColumns,
-            functionRegistry),
-            aggValToValColumnMap), getWindowExpression(),
-        aggValueGenericRowSerde, "KSQL_Agg_Query_" + System.currentTimeMillis());
+    final KudafInitializer initializer = new KudafInitializer(resultColumns);
+    final UdafAggregator aggregator;
+    final SchemaKGroupedStream schemaKGroupedStream;
+    if (shouldPreAggregate(ksqlConfig, aggValToFunctionMap)) {
+      final SchemaKStream preAggregated = aggregateArgExpanded.preAggregate(
+          builder,
+          aggregateSchema,
+          initializer,
+          new KudafAggregator(aggValToFunctionMap, aggValToValColumnMap),
+          aggValueGenericRowSerde,
+          "KSQL_PreAgg_Query_" + System.currentTimeMillis(),
+          (Long) ksqlConfig.get(KsqlConfig.KSQL_AGGREGATE_PREAGGREGATION_INTERVAL_MS_CONFIG),
+          (Integer) ksqlConfig.get(KsqlConfig.KSQL_AGGREGATE_PREAGGREGATION_MAX_KEYS_CONFIG));
+      aggregator = new KudafMergeAggregator(aggValToFunctionMap, aggValToValColumnMap);
+      schemaKGroupedStream = preAggregated.groupByKey(Serdes.String(), aggValueGenericRowSerde);
+    } else {
+      final Serde<GenericRow> genericRowSerde =
+          SerDeUtil.getRowSerDe(streamSourceNode.getStructuredDataSource()
+                  .getKsqlTopic()
+                  .getKsqlTopicSerDe(),
+              aggregateArgExpanded.getSchema());
+      aggregator = new KudafAggregator(aggValToFunctionMap, aggValToValColumnMap);
+      schemaKGroupedStream = aggregateArgExpanded.groupByKey(Serdes.String(), genericRowSerde);
+    }
+
+    final String aggStoreName = "KSQL_Agg_Query_" + System.currentTimeMillis();
+    final SchemaKTable schemaKTable;
+    if (shouldAggregateWithPanes(ksqlConfig, aggValToFunctionMap)) {
+      schemaKTable = schemaKGroupedStream.aggregateWithPanes(
+          initializer,
+          aggregator,
+          new KudafMergeAggregator(aggValToFunctionMap, aggValToValColumnMap),
+          (HoppingWindowExpression) getWindowExpression().getKsqlWindowExpression(),
+          aggValueGenericRowSerde, aggStoreName, windowRetentionMs, windowSegments);
+    } else {
+      schemaKTable = schemaKGroupedStream.aggregate(
+          initializer,
+          aggregator, getWindowExpression(),
+          aggValueGenericRowSerde, aggStoreName, windowRetentionMs, windowSegments);
+    }
 
     final Schema aggStageSchema = buildAggregateSchema(schemaKTable, functionRegistry);
 
-    SchemaKTable result = new SchemaKTable(aggStageSchema, schemaKTable.getKtable(),
-        schemaKTable.getKeyField(),
-        schemaKTable.getSourceSchemaKStreams(),
-        schemaKTable.isWindowed(),
-        SchemaKStream.Type.AGGREGATE,
-        functionRegistry);
+    SchemaKTable result;
+    if (aggValToFunctionMap.values().stream().anyMatch(KsqlAggregateFunction::hasIntermediateState)) {
+      result = schemaKTable.mapValues(aggStageSchema, new KudafResultMapper(aggValToFunctionMap));
+    } else {
+      result = schemaKTable.withSchema(aggStageSchema);
+    }
 
 
     if (getHavingExpressions() != null) {
@@ -246,6 +295,32 @@ public class AggregateNode extends PlanNode {
     return result.select(getFinalSelectExpressions());
   }
 
+  /**
+   * Partial aggregates are only combined per key, so windowed aggregations, whose partial
+   * aggregates would need to be re-windowed by their record timestamps, are always computed in a
+   * single phase.
+   */
+  private boolean shouldPreAggregate(final KsqlConfig ksqlConfig,
+                                     final Map<Integer, KsqlAggregateFunction> aggValToFunctionMap) {
+    final Object enabled = ksqlConfig.get(KsqlConfig.KSQL_AGGREGATE_PREAGGREGATION_ENABLE_CONFIG);
+    return enabled != null && (Boolean) enabled
+           && getWindowExpression() == null
+           && aggValToFunctionMap.values().stream().allMatch(KsqlAggregateFunction::isDecomposable);
+  }
+
+  /**
+   * Panes are merged into windows, so every function has to be decomposable.
+   */
+  private boolean shouldAggregateWithPanes(
+      final KsqlConfig ksqlConfig,
+      final Map<Integer, KsqlAggregateFunction> aggValToFunctionMap) {
+    final Object enabled = ksqlConfig.get(KsqlConfig.KSQL_AGGREGATE_HOPPING_PANES_ENABLE_CONFIG);
+    return enabled != null && (Boolean) enabled
+           && getWindowExpression() != null
+           && getWindowExpression().getKsqlWindowExpression() instanceof HoppingWindowExpression
+           && aggValToFunctionMap.values().stream().allMatch(KsqlAggregateFunction::isDecomposable);
+  }
+
   private SchemaKStream aggregateReKey(final SchemaKStream sourceSchemaKStream, final FunctionRegistry functionRegistry) {
     StringBuilder aggregateKeyName = new StringBuilder();
     List<Integer> newKeyIndexes = new ArrayList<>();
@@ -337,13 +412,13 @@ public class AggregateNode extends PlanNode {
                 functionCall
                     .getArguments(), aggregateArgExpanded.getSchema());
         int udafIndex = expressionNames.get(functionCall.getArguments().get(0).toString());
-        KsqlAggregateFunction aggregateFunction = aggregateFunctionInfo.getClass()
-            .getDeclaredConstructor(Integer.class).newInstance(udafIndex);
+        KsqlAggregateFunction aggregateFunction = aggregateFunctionInfo.getInstance(udafIndex,
+            functionCall.getArguments());
         aggValToAggFunctionMap.put(udafIndexInAggSchema++, aggregateFunction);
         resultColumns.add(aggregateFunction.getIntialValue());
 
         aggregateSchema.field("AGG_COL_"
-            + udafIndexInAggSchema, aggregateFunction.getReturnType());
+            + udafIndexInAggSchema, aggregateFunction.getAggregateType());
       }
       return aggValToAggFunctionMap;
     } catch (final Exception e) {
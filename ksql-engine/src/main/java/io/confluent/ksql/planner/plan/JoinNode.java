@@ -19,25 +19,33 @@ package io.confluent.ksql.planner.plan;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.connect.data.Field;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.data.SchemaBuilder;
 import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.JoinWindows;
 
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
+import io.confluent.ksql.GenericRow;
 import io.confluent.ksql.function.FunctionRegistry;
+import io.confluent.ksql.metastore.KsqlTable;
 import io.confluent.ksql.metastore.MetastoreUtil;
+import io.confluent.ksql.metastore.StructuredDataSource;
 import io.confluent.ksql.serde.KsqlTopicSerDe;
 import io.confluent.ksql.structured.SchemaKStream;
 import io.confluent.ksql.structured.SchemaKTable;
 import io.confluent.ksql.util.KafkaTopicClient;
 import io.confluent.ksql.util.KsqlConfig;
+import io.confluent.ksql.util.KsqlConstants;
 import io.confluent.ksql.util.KsqlException;
 import io.confluent.ksql.util.SchemaUtil;
+import io.confluent.ksql.util.SerDeUtil;
 
 public class JoinNode extends PlanNode {
 
@@ -56,6 +64,35 @@ public class JoinNode extends PlanNode {
   private final String leftAlias;
   private final String rightAlias;
   private final Field keyField;
+  private final Optional<Long> withinMs;
+  private final Optional<Long> retentionMs;
+  private final Optional<Integer> tableCacheSize;
+
+  public JoinNode(final PlanNodeId id,
+                  final Type type,
+                  final PlanNode left,
+                  final PlanNode right,
+                  final String leftKeyFieldName,
+                  final String rightKeyFieldName,
+                  final String leftAlias,
+                  final String rightAlias) {
+    this(id, type, left, right, leftKeyFieldName, rightKeyFieldName, leftAlias, rightAlias,
+         Optional.empty(), Optional.empty());
+  }
+
+  public JoinNode(final PlanNodeId id,
+                  final Type type,
+                  final PlanNode left,
+                  final PlanNode right,
+                  final String leftKeyFieldName,
+                  final String rightKeyFieldName,
+                  final String leftAlias,
+                  final String rightAlias,
+                  final Optional<Long> withinMs,
+                  final Optional<Long> retentionMs) {
+    this(id, type, left, right, leftKeyFieldName, rightKeyFieldName, leftAlias, rightAlias,
+         withinMs, retentionMs, Optional.empty());
+  }
 
   public JoinNode(@JsonProperty("id") final PlanNodeId id,
                   @JsonProperty("type") final Type type,
@@ -64,7 +101,10 @@ public class JoinNode extends PlanNode {
                   @JsonProperty("leftKeyFieldName") final String leftKeyFieldName,
                   @JsonProperty("rightKeyFieldName") final String rightKeyFieldName,
                   @JsonProperty("leftAlias") final String leftAlias,
-                  @JsonProperty("rightAlias") final String rightAlias) {
+                  @JsonProperty("rightAlias") final String rightAlias,
+                  @JsonProperty("withinMs") final Optional<Long> withinMs,
+                  @JsonProperty("retentionMs") final Optional<Long> retentionMs,
+                  @JsonProperty("tableCacheSize") final Optional<Integer> tableCacheSize) {
 
     // TODO: Type should be derived.
     super(id);
@@ -75,6 +115,9 @@ public class JoinNode extends PlanNode {
     this.rightKeyFieldName = rightKeyFieldName;
     this.leftAlias = leftAlias;
     this.rightAlias = rightAlias;
+    this.withinMs = withinMs;
+    this.retentionMs = retentionMs;
+    this.tableCacheSize = tableCacheSize;
     this.schema = buildSchema(left, right);
     this.keyField = this.schema.field((leftAlias + "." + leftKeyFieldName));
   }
@@ -147,6 +190,25 @@ public class JoinNode extends PlanNode {
     return type == Type.LEFT;
   }
 
+  /**
+   * @return the WITHIN interval of a stream-stream join, empty for stream-table joins.
+   */
+  public Optional<Long> getWithinMs() {
+    return withinMs;
+  }
+
+  public Optional<Long> getRetentionMs() {
+    return retentionMs;
+  }
+
+  /**
+   * @return the number of deserialized table rows each stream thread caches in front of the
+   *     table store of a stream-table join, empty if table rows are not cached.
+   */
+  public Optional<Integer> getTableCacheSize() {
+    return tableCacheSize;
+  }
+
   @Override
   public SchemaKStream buildStream(final StreamsBuilder builder,
                                    final KsqlConfig ksqlConfig,
@@ -154,6 +216,26 @@ public class JoinNode extends PlanNode {
                                    final MetastoreUtil metastoreUtil,
                                    final FunctionRegistry functionRegistry,
                                    final Map<String, Object> props) {
+    if (tableCacheSize.isPresent() && (withinMs.isPresent() || isBroadcastJoin())) {
+      throw new KsqlException(KsqlConstants.JOIN_CACHE_SIZE
+                              + " only applies to joins of a stream with a partitioned table.");
+    }
+    if (withinMs.isPresent()) {
+      return buildStreamStreamJoin(builder,
+          ksqlConfig,
+          kafkaTopicClient,
+          metastoreUtil,
+          functionRegistry,
+          props);
+    }
+    if (isBroadcastJoin()) {
+      return buildBroadcastJoin(builder,
+          ksqlConfig,
+          kafkaTopicClient,
+          metastoreUtil,
+          functionRegistry,
+          props);
+    }
     if (!isLeftJoin()) {
       throw new KsqlException("Join type is not supported yet: " + getType());
     }
@@ -165,19 +247,200 @@ public class JoinNode extends PlanNode {
         functionRegistry,
         props);
 
-    final SchemaKStream stream = streamForJoin(getLeft().buildStream(builder,
+    final SchemaKStream leftSource = getLeft().buildStream(builder,
         ksqlConfig,
         kafkaTopicClient,
         metastoreUtil,
         functionRegistry,
-        props), getLeftKeyFieldName());
+        props);
+
+    final JoinPartitioning partitioning = JoinPartitioning.plan(kafkaTopicClient,
+        kafkaTopicName(getLeft()),
+        kafkaTopicName(getRight()),
+        needsRekey(leftSource, getLeftKeyFieldName()),
+        false,
+        !table.isWindowed() && table.hasKtable());
+
+    SchemaKStream stream = streamForJoin(leftSource, getLeftKeyFieldName());
+    if (partitioning.isLeftResized()) {
+      stream = stream.repartition();
+    }
+    SchemaKTable joinTable = table;
+    if (partitioning.isRightResized()) {
+      final Serde<GenericRow> valueSerde =
+          SerDeUtil.getRowSerDe(getResultTopicSerde(getRight()), table.getSchema());
+      joinTable = table.repartition(table.getRowCache() == null
+                                    ? valueSerde : table.getRowCache().wrap(valueSerde));
+      joinTable.setRowCache(table.getRowCache());
+    }
 
     final KsqlTopicSerDe joinSerDe = getResultTopicSerde(this);
-    return stream.leftJoin(table,
+    final SchemaKStream joined = stream.leftJoin(joinTable,
         getSchema(),
         getSchema().field(getLeftAlias() + "." + stream.getKeyField().name()),
         joinSerDe);
+    joined.setPlanDetail("Partitioning: " + partitioning
+                         + (table.getRowCache() == null ? ""
+                            : ", table row cache: " + table.getRowCache().getCapacity()
+                              + " rows per stream thread"));
+    return joined;
+  }
+
+  /**
+   * @return true if the right side is a table that is replicated to every instance, so that the
+   *     stream can be joined to it on any column without being repartitioned.
+   */
+  public boolean isBroadcastJoin() {
+    if (!(right instanceof StructuredDataSourceNode)) {
+      return false;
+    }
+    final StructuredDataSource dataSource =
+        ((StructuredDataSourceNode) right).getStructuredDataSource();
+    return dataSource instanceof KsqlTable && ((KsqlTable) dataSource).isBroadcast();
+  }
+
+  private SchemaKStream buildBroadcastJoin(final StreamsBuilder builder,
+                                           final KsqlConfig ksqlConfig,
+                                           final KafkaTopicClient kafkaTopicClient,
+                                           final MetastoreUtil metastoreUtil,
+                                           final FunctionRegistry functionRegistry,
+                                           final Map<String, Object> props) {
+    if (getType() != Type.LEFT && getType() != Type.INNER) {
+      throw new KsqlException("Join type is not supported for broadcast joins: " + getType());
+    }
+    final StructuredDataSourceNode tableNode = (StructuredDataSourceNode) right;
+    final Field tableKey = tableNode.getKeyField();
+    if (!getRightKeyFieldName().equals(SchemaUtil.ROWKEY_NAME)
+        && (tableKey == null || !getRightKeyFieldName().equals(tableKey.name()))) {
+      throw new KsqlException(String.format(
+          "Broadcast joins must be on the key of table %s, but were on %s.",
+          tableNode.getStructuredDataSource().getName(), getRightKeyFieldName()));
+    }
+
+    final SchemaKStream stream = getLeft().buildStream(builder,
+        ksqlConfig,
+        kafkaTopicClient,
+        metastoreUtil,
+        functionRegistry,
+        props);
+
+    final Field joinKey = stream.getKeyField() == null
+        ? null
+        : getSchema().field(getLeftAlias() + "." + stream.getKeyField().name());
+    final String globalStoreName = tableNode.getStructuredDataSource().getName() + "_BROADCAST";
+    tableNode.buildGlobalTable(builder, globalStoreName);
+    final SchemaKStream joined = stream.broadcastJoin(globalStoreName,
+        getSchema(),
+        joinKey,
+        getLeftKeyFieldName(),
+        isLeftJoin());
+    joined.setPlanDetail("Partitioning: broadcast table, stream is not repartitioned");
+    return joined;
+  }
+
+  private SchemaKStream buildStreamStreamJoin(final StreamsBuilder builder,
+                                              final KsqlConfig ksqlConfig,
+                                              final KafkaTopicClient kafkaTopicClient,
+                                              final MetastoreUtil metastoreUtil,
+                                              final FunctionRegistry functionRegistry,
+                                              final Map<String, Object> props) {
+    final SchemaKStream leftSource = getLeft().buildStream(builder,
+        ksqlConfig,
+        kafkaTopicClient,
+        metastoreUtil,
+        functionRegistry,
+        props);
+
+    final SchemaKStream rightSource = getRight().buildStream(builder,
+        ksqlConfig,
+        kafkaTopicClient,
+        metastoreUtil,
+        functionRegistry,
+        props);
+
+    final JoinPartitioning partitioning = JoinPartitioning.plan(kafkaTopicClient,
+        kafkaTopicName(getLeft()),
+        kafkaTopicName(getRight()),
+        needsRekey(leftSource, getLeftKeyFieldName()),
+        needsRekey(rightSource, getRightKeyFieldName()),
+        true);
+
+    SchemaKStream leftStream = streamForJoin(leftSource, getLeftKeyFieldName());
+    if (partitioning.isLeftResized()) {
+      leftStream = leftStream.repartition();
+    }
+    SchemaKStream rightStream = streamForJoin(rightSource, getRightKeyFieldName());
+    if (partitioning.isRightResized()) {
+      rightStream = rightStream.repartition();
+    }
+
+    final JoinWindows joinWindows = joinWindows();
+    final KsqlTopicSerDe joinSerDe = getResultTopicSerde(this);
+    final Field joinKey = getSchema().field(getLeftAlias() + "." + leftStream.getKeyField().name());
+
+    final SchemaKStream joined;
+    switch (getType()) {
+      case INNER:
+        joined = leftStream.join(rightStream, getSchema(), joinKey, joinWindows, joinSerDe);
+        break;
+      case LEFT:
+        joined = leftStream.leftJoin(rightStream, getSchema(), joinKey, joinWindows, joinSerDe);
+        break;
+      case FULL:
+        joined = leftStream.outerJoin(rightStream, getSchema(), joinKey, joinWindows, joinSerDe);
+        break;
+      default:
+        throw new KsqlException("Join type is not supported for stream-stream joins: "
+                                + getType());
+    }
+    joined.setPlanDetail("Partitioning: " + partitioning);
+    return joined;
+  }
+
+  private static String kafkaTopicName(final PlanNode node) {
+    if (!(node instanceof StructuredDataSourceNode)) {
+      return null;
+    }
+    return ((StructuredDataSourceNode) node).getStructuredDataSource().getKsqlTopic()
+        .getKafkaTopicName();
+  }
 
+  private static boolean needsRekey(final SchemaKStream stream, final String keyFieldName) {
+    return stream.getKeyField() == null || !stream.getKeyField().name().equals(keyFieldName);
+  }
+
+  // package private for test
+  JoinWindows joinWindows() {
+    final JoinWindows joinWindows = JoinWindows.of(withinMs.get());
+    if (!retentionMs.isPresent()) {
+      return joinWindows;
+    }
+    if (retentionMs.get() < joinWindows.size()) {
+      throw new KsqlException(String.format(
+          "Join retention of %d ms is shorter than the join window of %d ms.",
+          retentionMs.get(), joinWindows.size()));
+    }
+    return joinWindows.until(retentionMs.get());
+  }
+
+  /**
+   * @return a copy of this join whose windowed join stores keep data for the given time.
+   */
+  public JoinNode withRetentionMs(final long retentionMs) {
+    return new JoinNode(getId(), type, left, right, leftKeyFieldName, rightKeyFieldName,
+                        leftAlias, rightAlias, withinMs, Optional.of(retentionMs),
+                        tableCacheSize);
+  }
+
+  public JoinNode withSources(final PlanNode left, final PlanNode right) {
+    return new JoinNode(getId(), type, left, right, leftKeyFieldName, rightKeyFieldName,
+                        leftAlias, rightAlias, withinMs, retentionMs, tableCacheSize);
+  }
+
+  public JoinNode withTableCacheSize(final int tableCacheSize) {
+    return new JoinNode(getId(), type, left, right, leftKeyFieldName, rightKeyFieldName,
+                        leftAlias, rightAlias, withinMs, retentionMs,
+                        Optional.of(tableCacheSize));
   }
 
   // package private for test
@@ -192,6 +455,9 @@ public class JoinNode extends PlanNode {
     Map<String, Object> joinTableProps = new HashMap<>();
     joinTableProps.putAll(props);
     joinTableProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+    if (tableCacheSize.isPresent()) {
+      joinTableProps.put(KsqlConstants.JOIN_CACHE_SIZE, tableCacheSize.get());
+    }
 
     final SchemaKStream schemaKStream = right.buildStream(builder, ksqlConfig, kafkaTopicClient, metastoreUtil, functionRegistry, joinTableProps);
     if (!(schemaKStream instanceof SchemaKTable)) {
@@ -216,14 +482,13 @@ public class JoinNode extends PlanNode {
     }
   }
 
-  private SchemaKStream streamForJoin(final SchemaKStream stream, final String leftKeyFieldName) {
-    if (stream.getKeyField() == null
-        || !stream.getKeyField().name().equals(leftKeyFieldName)) {
+  private SchemaKStream streamForJoin(final SchemaKStream stream, final String keyFieldName) {
+    if (needsRekey(stream, keyFieldName)) {
       final Field field = SchemaUtil.getFieldByName(stream.getSchema(),
-          leftKeyFieldName).orElseThrow(() -> new KsqlException("couldn't find key field: "
-          + leftKeyFieldName
+          keyFieldName).orElseThrow(() -> new KsqlException("couldn't find key field: "
+          + keyFieldName
           + " in schema:"
-          + schema));
+          + stream.getSchema()));
       return
           stream.selectKey(field);
     }
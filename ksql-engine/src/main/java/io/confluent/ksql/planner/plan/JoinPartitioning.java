@@ -0,0 +1,180 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+
+package io.confluent.ksql.planner.plan;
+
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import io.confluent.ksql.exception.KafkaResponseGetFailedException;
+import io.confluent.ksql.util.KafkaTopicClient;
+
+/**
+ * Decides which side of a join is repartitioned so that both sides are co-partitioned.
+ *
+ * <p>A side that has to be re-keyed on its join column goes through a repartition topic anyway,
+ * and Kafka Streams sizes that topic to match the other side, so such a side is always the one
+ * repartitioned. When neither side is re-keyed but the partition counts differ, the side with
+ * fewer partitions is repartitioned into as many partitions as the other side, as it is likely
+ * the side with less traffic. A side that can't be repartitioned, such as a windowed table, is
+ * never chosen.
+ */
+public class JoinPartitioning {
+
+  private static final Logger log = LoggerFactory.getLogger(JoinPartitioning.class);
+
+  static final int UNKNOWN_PARTITIONS = -1;
+
+  private final int leftPartitions;
+  private final int rightPartitions;
+  private final boolean repartitionLeft;
+  private final boolean repartitionRight;
+  private final boolean leftRekeyed;
+  private final boolean rightRekeyed;
+
+  private JoinPartitioning(final int leftPartitions,
+                           final int rightPartitions,
+                           final boolean repartitionLeft,
+                           final boolean repartitionRight,
+                           final boolean leftRekeyed,
+                           final boolean rightRekeyed) {
+    this.leftPartitions = leftPartitions;
+    this.rightPartitions = rightPartitions;
+    this.repartitionLeft = repartitionLeft;
+    this.repartitionRight = repartitionRight;
+    this.leftRekeyed = leftRekeyed;
+    this.rightRekeyed = rightRekeyed;
+  }
+
+  static JoinPartitioning plan(final KafkaTopicClient kafkaTopicClient,
+                               final String leftTopic,
+                               final String rightTopic,
+                               final boolean leftRekeyed,
+                               final boolean rightRekeyed,
+                               final boolean rightRepartitionable) {
+    final Map<String, TopicDescription> descriptions =
+        describeTopics(kafkaTopicClient, leftTopic, rightTopic);
+    return plan(partitionCount(descriptions, leftTopic),
+                partitionCount(descriptions, rightTopic),
+                leftRekeyed,
+                rightRekeyed,
+                rightRepartitionable);
+  }
+
+  // package private for test
+  static JoinPartitioning plan(final int leftPartitions,
+                               final int rightPartitions,
+                               final boolean leftRekeyed,
+                               final boolean rightRekeyed,
+                               final boolean rightRepartitionable) {
+    boolean repartitionLeft = leftRekeyed;
+    boolean repartitionRight = rightRekeyed;
+    if (!leftRekeyed && !rightRekeyed
+        && leftPartitions != UNKNOWN_PARTITIONS
+        && rightPartitions != UNKNOWN_PARTITIONS
+        && leftPartitions != rightPartitions) {
+      if (rightPartitions < leftPartitions && rightRepartitionable) {
+        repartitionRight = true;
+      } else {
+        repartitionLeft = true;
+      }
+    }
+    return new JoinPartitioning(leftPartitions, rightPartitions, repartitionLeft,
+                                repartitionRight, leftRekeyed, rightRekeyed);
+  }
+
+  private static Map<String, TopicDescription> describeTopics(
+      final KafkaTopicClient kafkaTopicClient,
+      final String leftTopic,
+      final String rightTopic) {
+    if (kafkaTopicClient == null || leftTopic == null || rightTopic == null) {
+      return Collections.emptyMap();
+    }
+    try {
+      final Map<String, TopicDescription> descriptions =
+          kafkaTopicClient.describeTopics(Arrays.asList(leftTopic, rightTopic));
+      return descriptions == null ? Collections.emptyMap() : descriptions;
+    } catch (KafkaResponseGetFailedException e) {
+      log.warn("Could not fetch the partition counts of join topics {} and {}",
+               leftTopic, rightTopic, e);
+      return Collections.emptyMap();
+    }
+  }
+
+  private static int partitionCount(final Map<String, TopicDescription> descriptions,
+                                    final String topic) {
+    final TopicDescription description = descriptions.get(topic);
+    return description == null ? UNKNOWN_PARTITIONS : description.partitions().size();
+  }
+
+  public boolean shouldRepartitionLeft() {
+    return repartitionLeft;
+  }
+
+  public boolean shouldRepartitionRight() {
+    return repartitionRight;
+  }
+
+  /**
+   * @return whether the side is repartitioned only to match the partition count of the other
+   *     side, rather than because it is re-keyed.
+   */
+  public boolean isLeftResized() {
+    return repartitionLeft && !leftRekeyed;
+  }
+
+  public boolean isRightResized() {
+    return repartitionRight && !rightRekeyed;
+  }
+
+  public int getLeftPartitions() {
+    return leftPartitions;
+  }
+
+  public int getRightPartitions() {
+    return rightPartitions;
+  }
+
+  @Override
+  public String toString() {
+    final String partitions = "left: " + describe(leftPartitions)
+                              + ", right: " + describe(rightPartitions);
+    if (!repartitionLeft && !repartitionRight) {
+      return "Co-partitioned (" + partitions + ")";
+    }
+    final StringBuilder decision = new StringBuilder("Repartition ");
+    if (repartitionLeft) {
+      decision.append(leftRekeyed ? "left (re-keyed)" : "left (resized)");
+    }
+    if (repartitionLeft && repartitionRight) {
+      decision.append(" and ");
+    }
+    if (repartitionRight) {
+      decision.append(rightRekeyed ? "right (re-keyed)" : "right (resized)");
+    }
+    return decision.append(" (").append(partitions).append(")").toString();
+  }
+
+  private static String describe(final int partitions) {
+    return partitions == UNKNOWN_PARTITIONS ? "unknown" : partitions + " partitions";
+  }
+}
@@ -30,6 +30,7 @@ import io.confluent.ksql.metastore.MetastoreUtil;
 import io.confluent.ksql.structured.SchemaKStream;
 import io.confluent.ksql.util.KafkaTopicClient;
 import io.confluent.ksql.util.KsqlConfig;
+import io.confluent.ksql.util.RingBufferQueue;
 
 public class KsqlBareOutputNode extends OutputNode {
 
@@ -67,6 +68,6 @@ public class KsqlBareOutputNode extends OutputNode {
         props);
 
     schemaKStream.setOutputNode(this);
-    return schemaKStream.toQueue(getLimit());
+    return schemaKStream.toQueue(getLimit(), RingBufferQueue.forTransientQuery(ksqlConfig));
   }
 }
@@ -19,20 +19,28 @@ package io.confluent.ksql.planner.plan;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import io.confluent.ksql.GenericRow;
 import io.confluent.ksql.ddl.DdlConfig;
 import io.confluent.ksql.function.FunctionRegistry;
 import io.confluent.ksql.metastore.KsqlTopic;
 import io.confluent.ksql.metastore.MetastoreUtil;
+import io.confluent.ksql.parser.tree.HoppingWindowExpression;
+import io.confluent.ksql.parser.tree.KsqlWindowExpression;
+import io.confluent.ksql.parser.tree.TumblingWindowExpression;
+import io.confluent.ksql.parser.tree.WindowExpression;
 import io.confluent.ksql.serde.KsqlTopicSerDe;
 import io.confluent.ksql.serde.avro.KsqlAvroTopicSerDe;
 import io.confluent.ksql.structured.SchemaKStream;
 import io.confluent.ksql.structured.SchemaKTable;
 import io.confluent.ksql.util.KafkaTopicClient;
 import io.confluent.ksql.util.KsqlConfig;
+import io.confluent.ksql.util.KsqlConstants;
 import io.confluent.ksql.util.KsqlException;
+import io.confluent.ksql.util.QueryMetrics;
 import io.confluent.ksql.util.SchemaUtil;
 import io.confluent.ksql.util.SerDeUtil;
 
+import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.connect.data.Field;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.streams.StreamsBuilder;
@@ -116,18 +124,27 @@ public class KsqlStructuredDataOutputNode extends OutputNode {
           ));
     }
 
-    final SchemaKStream result = createOutputStream(schemaKStream,
+    final SchemaKStream result = createOutputStream(builder,
+        schemaKStream,
         outputNodeBuilder,
         functionRegistry,
         outputProperties);
 
     final KsqlStructuredDataOutputNode noRowKey = outputNodeBuilder.build();
+    if (isMaterializedForLookup(result, ksqlConfig)) {
+      materializeForLookup(builder, (SchemaKTable) result, ksqlConfig, rowkeyIndexes,
+                           noRowKey.getSchema());
+    }
     createSinkTopic(noRowKey.getKafkaTopicName(), ksqlConfig, kafkaTopicClient);
+    final Serde<GenericRow> sinkSerde = SerDeUtil.getRowSerDe(
+        noRowKey.getKsqlTopic().getKsqlTopicSerDe(),
+        noRowKey.getSchema());
+    final QueryMetrics queryMetrics = QueryMetrics.from(props);
     result.into(
         noRowKey.getKafkaTopicName(),
-        SerDeUtil.getRowSerDe(
-            noRowKey.getKsqlTopic().getKsqlTopicSerDe(),
-            noRowKey.getSchema()),
+        queryMetrics == null
+        ? sinkSerde
+        : queryMetrics.wrapSink(sinkSerde, !(result instanceof SchemaKTable)),
         rowkeyIndexes
     );
 
@@ -137,14 +154,84 @@ public class KsqlStructuredDataOutputNode extends OutputNode {
     return result;
   }
 
-  private SchemaKStream createOutputStream(final SchemaKStream schemaKStream,
+  /**
+   * @return true if the table this query creates is kept in a state store under the state store
+   *     name of the table, for pull queries to look its rows up in. Tables of session windows
+   *     are not, as their windows are not of a fixed size.
+   */
+  private boolean isMaterializedForLookup(final SchemaKStream result,
+                                          final KsqlConfig ksqlConfig) {
+    if (!Boolean.parseBoolean(
+        String.valueOf(ksqlConfig.get(KsqlConfig.KSQL_PULL_QUERY_ENABLE_CONFIG)))
+        || !(result instanceof SchemaKTable)) {
+      return false;
+    }
+    final SchemaKTable table = (SchemaKTable) result;
+    if (table.isWindowed()) {
+      return getWindowSizeMs(findAggregateNode(getSource())) > 0;
+    }
+    return table.hasKtable();
+  }
+
+  private void materializeForLookup(final StreamsBuilder builder,
+                                    final SchemaKTable table,
+                                    final KsqlConfig ksqlConfig,
+                                    final Set<Integer> rowkeyIndexes,
+                                    final Schema storeSchema) {
+    final String storeName =
+        getId().toString() + ksqlConfig.get(KsqlConfig.KSQL_TABLE_STATESTORE_NAME_SUFFIX_CONFIG);
+    if (!table.isWindowed()) {
+      table.materializeForLookup(storeName, rowkeyIndexes,
+                                 SerDeUtil.getGenericRowJsonSerde(storeSchema));
+      return;
+    }
+    final AggregateNode aggregateNode = findAggregateNode(getSource());
+    table.materializeWindowsForLookup(
+        builder,
+        storeName,
+        rowkeyIndexes,
+        SerDeUtil.getGenericRowJsonSerde(storeSchema),
+        getWindowSizeMs(aggregateNode),
+        aggregateNode.getWindowRetentionMs().orElse(KsqlConstants.defaultWindowRetentionMs),
+        aggregateNode.getWindowSegments().orElse(KsqlConstants.defaultWindowSegments));
+  }
+
+  /**
+   * @return the size of the windows of the aggregation, or 0 if they have no fixed size
+   */
+  private static long getWindowSizeMs(final AggregateNode aggregateNode) {
+    if (aggregateNode == null || aggregateNode.getWindowExpression() == null) {
+      return 0;
+    }
+    final KsqlWindowExpression window =
+        aggregateNode.getWindowExpression().getKsqlWindowExpression();
+    if (window instanceof TumblingWindowExpression) {
+      final TumblingWindowExpression tumbling = (TumblingWindowExpression) window;
+      return tumbling.getSizeUnit().toMillis(tumbling.getSize());
+    }
+    if (window instanceof HoppingWindowExpression) {
+      final HoppingWindowExpression hopping = (HoppingWindowExpression) window;
+      return hopping.getSizeUnit().toMillis(hopping.getSize());
+    }
+    return 0;
+  }
+
+  private SchemaKStream createOutputStream(final StreamsBuilder builder,
+                                           final SchemaKStream schemaKStream,
                                            final KsqlStructuredDataOutputNode.Builder outputNodeBuilder,
                                            final FunctionRegistry functionRegistry,
                                            final Map<String, Object> outputProperties) {
 
+    final boolean emitFinal = Boolean.TRUE.equals(outputProperties.get(KsqlConstants.SINK_EMIT_FINAL));
     if (schemaKStream instanceof SchemaKTable) {
+      if (emitFinal) {
+        return emitFinal(builder, (SchemaKTable) schemaKStream, outputProperties);
+      }
       return schemaKStream;
     }
+    if (emitFinal) {
+      throw new KsqlException("EMIT_FINAL is only supported for windowed aggregations.");
+    }
 
     final SchemaKStream result = new SchemaKStream(getSchema(),
         schemaKStream.getKstream(),
@@ -167,6 +254,44 @@ public class KsqlStructuredDataOutputNode extends OutputNode {
     }
     return result;
   }
+  private SchemaKTable emitFinal(final StreamsBuilder builder,
+                                 final SchemaKTable schemaKTable,
+                                 final Map<String, Object> outputProperties) {
+    final WindowExpression windowExpression = findWindowExpression(getSource());
+    if (windowExpression == null || !schemaKTable.isWindowed()) {
+      throw new KsqlException("EMIT_FINAL is only supported for windowed aggregations.");
+    }
+    final Object gracePeriodMs = outputProperties.get(KsqlConstants.SINK_GRACE_PERIOD_MS);
+    final long closeDelayMs = windowExpression.getKsqlWindowExpression().getWindowUpdateDelayMs()
+        + (gracePeriodMs == null ? 0L : (Long) gracePeriodMs);
+    return schemaKTable.emitFinal(
+        builder,
+        SerDeUtil.getRowSerDe(getTheSourceNode().getStructuredDataSource()
+                                  .getKsqlTopic()
+                                  .getKsqlTopicSerDe(),
+                              schemaKTable.getSchema()),
+        "KSQL_EmitFinal_Query_" + System.currentTimeMillis(),
+        closeDelayMs);
+  }
+
+  private static WindowExpression findWindowExpression(final PlanNode node) {
+    final AggregateNode aggregateNode = findAggregateNode(node);
+    return aggregateNode == null ? null : aggregateNode.getWindowExpression();
+  }
+
+  private static AggregateNode findAggregateNode(final PlanNode node) {
+    if (node instanceof AggregateNode) {
+      return (AggregateNode) node;
+    }
+    for (PlanNode source : node.getSources()) {
+      final AggregateNode aggregateNode = findAggregateNode(source);
+      if (aggregateNode != null) {
+        return aggregateNode;
+      }
+    }
+    return null;
+  }
+
   private void addAvroSchemaToResultTopic(final KsqlStructuredDataOutputNode.Builder builder,
                                           final Schema schema,
                                           final MetastoreUtil metastoreUtil) {
@@ -31,24 +31,33 @@ import io.confluent.ksql.structured.SchemaKStream;
 import io.confluent.ksql.structured.SchemaKTable;
 import io.confluent.ksql.util.KafkaTopicClient;
 import io.confluent.ksql.util.KsqlConfig;
+import io.confluent.ksql.util.KsqlConstants;
+import io.confluent.ksql.util.KsqlException;
+import io.confluent.ksql.util.QueryMetrics;
 import io.confluent.ksql.util.SchemaUtil;
 import io.confluent.ksql.util.SerDeUtil;
+import io.confluent.ksql.util.TableRowCache;
 
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
 import org.apache.kafka.connect.data.Field;
 import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
 import org.apache.kafka.streams.Consumed;
 import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.kstream.GlobalKTable;
 import org.apache.kafka.streams.kstream.KStream;
 import org.apache.kafka.streams.kstream.KTable;
 import org.apache.kafka.streams.kstream.KeyValueMapper;
+import org.apache.kafka.streams.kstream.Materialized;
 import org.apache.kafka.streams.kstream.Serialized;
 import org.apache.kafka.streams.kstream.Windowed;
 import org.apache.kafka.streams.kstream.internals.KStreamImpl;
+import org.apache.kafka.streams.state.KeyValueStore;
 
 import javax.annotation.concurrent.Immutable;
 
@@ -82,28 +91,65 @@ public class StructuredDataSourceNode
   private final WindowedSerde windowedSerde = new WindowedSerde();
   private final StructuredDataSource structuredDataSource;
   private final Schema schema;
+  private final Schema outputSchema;
 
 
   // TODO: pass in the "assignments" and the "outputs" separately
   // TODO: (i.e., get rid if the symbol := symbol idiom)
+  public StructuredDataSourceNode(final PlanNodeId id,
+                                  final StructuredDataSource structuredDataSource,
+                                  Schema schema) {
+    this(id, structuredDataSource, schema, schema);
+  }
+
+  /**
+   * @param schema the schema records are read with
+   * @param outputSchema the columns of schema that are used by the rest of the query, which are
+   *                     the only ones passed on from the source
+   */
   @JsonCreator
   public StructuredDataSourceNode(@JsonProperty("id") final PlanNodeId id,
                                   @JsonProperty("structuredDataSource") final StructuredDataSource structuredDataSource,
-                                  @JsonProperty("schema") Schema schema) {
+                                  @JsonProperty("schema") Schema schema,
+                                  @JsonProperty("outputSchema") Schema outputSchema) {
     super(id);
     Objects.requireNonNull(structuredDataSource, "structuredDataSource can't be null");
     Objects.requireNonNull(schema, "schema can't be null");
+    Objects.requireNonNull(outputSchema, "outputSchema can't be null");
     this.schema = schema;
+    this.outputSchema = outputSchema;
     this.structuredDataSource = structuredDataSource;
   }
 
+  /**
+   * @return this source passing on only the given fields, or this source if those are all of
+   *     its fields. The key field of the source is always kept.
+   */
+  public StructuredDataSourceNode withFields(final List<String> fieldNames) {
+    final SchemaBuilder prunedSchema = SchemaBuilder.struct();
+    for (Field field : schema.fields()) {
+      if (fieldNames.contains(field.name())) {
+        prunedSchema.field(field.name(), field.schema());
+      }
+    }
+    if (prunedSchema.fields().size() == schema.fields().size()) {
+      return this;
+    }
+    return new StructuredDataSourceNode(getId(), structuredDataSource, schema,
+                                        prunedSchema.build());
+  }
+
   public String getTopicName() {
     return structuredDataSource.getTopicName();
   }
 
   @Override
   public Schema getSchema() {
-    return schema;
+    return outputSchema;
+  }
+
+  public boolean isPruned() {
+    return outputSchema != schema;
   }
 
   @Override
@@ -137,39 +183,151 @@ public class StructuredDataSourceNode
       ksqlConfig.put(KsqlConfig.KSQL_TIMESTAMP_COLUMN_INDEX, timestampColumnIndex);
     }
 
-    Serde<GenericRow>
-        genericRowSerde =
-        SerDeUtil.getRowSerDe(getStructuredDataSource()
-                .getKsqlTopic().getKsqlTopicSerDe(),
-            SchemaUtil.removeImplicitRowTimeRowKeyFromSchema(
-                getSchema()));
+    Serde<GenericRow> genericRowSerde = getSourceRowSerde();
+    final QueryMetrics queryMetrics = QueryMetrics.from(props);
 
     if (getDataSourceType()
         == StructuredDataSource.DataSourceType.KTABLE) {
       final KsqlTable table = (KsqlTable) getStructuredDataSource();
 
-      final KTable kTable = createKTable(
-          builder,
-          getAutoOffsetReset(props),
-          table,
-          genericRowSerde,
-          SerDeUtil.getRowSerDe(table.getKsqlTopic().getKsqlTopicSerDe(),
-              getSchema())
-      );
-      return new SchemaKTable(getSchema(), kTable,
+      TableRowCache rowCache = null;
+      if (props.get(KsqlConstants.JOIN_CACHE_SIZE) != null && !table.isWindowed()) {
+        rowCache = new TableRowCache(table.getName(),
+                                     (Integer) props.get(KsqlConstants.JOIN_CACHE_SIZE));
+      }
+
+      final KTable kTable;
+      if (isMaterializedFromSourceTopic()) {
+        final Serde<GenericRow> storeSerde =
+            rowCache == null ? genericRowSerde : rowCache.wrap(genericRowSerde);
+        kTable = createSourceTopicKTable(
+            builder,
+            getAutoOffsetReset(props),
+            table,
+            queryMetrics == null ? storeSerde : queryMetrics.wrapSource(storeSerde),
+            storeSerde);
+      } else {
+        final Serde<GenericRow> genericRowSerdeAfterRead =
+            SerDeUtil.getRowSerDe(table.getKsqlTopic().getKsqlTopicSerDe(), getSchema());
+        kTable = createKTable(
+            builder,
+            getAutoOffsetReset(props),
+            table,
+            queryMetrics == null ? genericRowSerde : queryMetrics.wrapSource(genericRowSerde),
+            rowCache == null ? genericRowSerdeAfterRead : rowCache.wrap(genericRowSerdeAfterRead)
+        );
+      }
+      final SchemaKTable schemaKTable = new SchemaKTable(getSchema(), kTable,
           getKeyField(), new ArrayList<>(),
           table.isWindowed(),
           SchemaKStream.Type.SOURCE, functionRegistry);
+      schemaKTable.setRowCache(rowCache);
+      schemaKTable.setOperatorSampleInterval(operatorSampleInterval(ksqlConfig));
+      schemaKTable.setOperatorProfiled(isOperatorProfiled(ksqlConfig));
+      return schemaKTable;
     }
 
-    return new SchemaKStream(getSchema(),
-        resetRepartitionFlag(builder
+    final SchemaKStream schemaKStream = new SchemaKStream(getSchema(),
+        pruneColumns(resetRepartitionFlag(builder
             .stream(getStructuredDataSource().getKsqlTopic().getKafkaTopicName(),
-                Consumed.with(Serdes.String(), genericRowSerde))
+                Consumed.with(Serdes.String(),
+                              queryMetrics == null
+                              ? genericRowSerde
+                              : queryMetrics.wrapSource(genericRowSerde)))
             .map(nonWindowedMapper))
-            .transformValues(new AddTimestampColumn()),
+            .transformValues(new AddTimestampColumn())),
         getKeyField(), new ArrayList<>(),
         SchemaKStream.Type.SOURCE, functionRegistry);
+    schemaKStream.setOperatorSampleInterval(operatorSampleInterval(ksqlConfig));
+    schemaKStream.setOperatorProfiled(isOperatorProfiled(ksqlConfig));
+    return schemaKStream;
+  }
+
+  private static int operatorSampleInterval(final KsqlConfig ksqlConfig) {
+    return Integer.parseInt(String.valueOf(
+        ksqlConfig.get(KsqlConfig.KSQL_QUERY_OPERATOR_SAMPLE_INTERVAL_CONFIG)));
+  }
+
+  private static boolean isOperatorProfiled(final KsqlConfig ksqlConfig) {
+    return Boolean.parseBoolean(String.valueOf(
+        ksqlConfig.get(KsqlConfig.KSQL_QUERY_OPERATOR_PROFILE_CONFIG)));
+  }
+
+  /**
+   * Drops the columns that are not in the output schema, before anything is repartitioned,
+   * joined or materialized.
+   */
+  private <K> KStream<K, GenericRow> pruneColumns(final KStream<K, GenericRow> stream) {
+    if (!isPruned()) {
+      return stream;
+    }
+    final int[] indexes = outputColumnIndexes();
+    return stream.mapValues(row -> row == null ? null : pruneRow(row, indexes));
+  }
+
+  private int[] outputColumnIndexes() {
+    final int[] indexes = new int[outputSchema.fields().size()];
+    for (int i = 0; i < indexes.length; i++) {
+      indexes[i] = schema.field(outputSchema.fields().get(i).name()).index();
+    }
+    return indexes;
+  }
+
+  private static GenericRow pruneRow(final GenericRow row, final int[] indexes) {
+    final List<Object> columns = new ArrayList<>(indexes.length);
+    for (int index : indexes) {
+      columns.add(row.getColumns().get(index));
+    }
+    return new GenericRow(columns);
+  }
+
+  /**
+   * @return the serde of the rows in the topic of this source, which don't have the implicit
+   *     ROWTIME and ROWKEY columns
+   */
+  public Serde<GenericRow> getSourceRowSerde() {
+    return SerDeUtil.getRowSerDe(getStructuredDataSource().getKsqlTopic().getKsqlTopicSerDe(),
+                                 SchemaUtil.removeImplicitRowTimeRowKeyFromSchema(schema));
+  }
+
+  /**
+   * Turns a row read from the topic of this source into a row of the output schema, the way the
+   * stream built by this node does, for readers of the topic outside of Kafka Streams.
+   */
+  public GenericRow toOutputRow(final Long timestamp, final String key, final GenericRow value) {
+    final List<Object> columns = new ArrayList<>(value.getColumns().size() + 2);
+    columns.add(timestamp);
+    columns.add(key);
+    columns.addAll(value.getColumns());
+    final GenericRow row = new GenericRow(columns);
+    return isPruned() ? pruneRow(row, outputColumnIndexes()) : row;
+  }
+
+  /**
+   * @return the index of the timestamp column in the rows read from the topic, or -1 if the
+   *     source has no timestamp column
+   */
+  public int getTimestampColumnIndex() {
+    return getTimestampField() == null ? -1 : getTimeStampColumnIndex();
+  }
+
+  /**
+   * Materializes this table in full on every instance. Rows are kept as read from the topic,
+   * without the implicit ROWTIME and ROWKEY columns, in the global store named storeName.
+   */
+  public GlobalKTable<String, GenericRow> buildGlobalTable(final StreamsBuilder builder,
+                                                           final String storeName) {
+    final KsqlTable table = (KsqlTable) getStructuredDataSource();
+    if (table.isWindowed()) {
+      throw new KsqlException("Windowed tables can not be broadcast: " + table.getName());
+    }
+    return builder.globalTable(
+        table.getKsqlTopic().getKafkaTopicName(),
+        Materialized.<String, GenericRow, KeyValueStore<Bytes, byte[]>>as(storeName)
+            .withKeySerde(Serdes.String())
+            .withValueSerde(SerDeUtil.getRowSerDe(
+                table.getKsqlTopic().getKsqlTopicSerDe(),
+                SchemaUtil.removeImplicitRowTimeRowKeyFromSchema(schema))));
   }
 
   private Topology.AutoOffsetReset getAutoOffsetReset(Map<String, Object> props) {
@@ -219,24 +377,100 @@ public class StructuredDataSourceNode
     return -1;
   }
 
+  /**
+   * @return true if this table is materialized straight from its source topic, which then also
+   *     serves as the changelog of its state store. The implicit columns are filled in from the
+   *     rows as they are read from the store: ROWKEY from the KEY column, which holds the message
+   *     key, and ROWTIME from the TIMESTAMP column, which the message timestamp was extracted
+   *     from, as the store doesn't keep message timestamps. Windowed tables and tables without a
+   *     KEY or TIMESTAMP column are rebuilt from a stream of their source topic instead, which
+   *     takes both from the message.
+   */
+  public boolean isMaterializedFromSourceTopic() {
+    return getDataSourceType() == StructuredDataSource.DataSourceType.KTABLE
+           && !((KsqlTable) getStructuredDataSource()).isWindowed()
+           && getKeyField() != null
+           && indexOfColumn(getKeyField().name()) >= 0
+           && getTimestampField() != null
+           && getTimeStampColumnIndex() >= 0;
+  }
+
+  private KTable createSourceTopicKTable(final StreamsBuilder builder,
+                                        final Topology.AutoOffsetReset autoOffsetReset,
+                                        final KsqlTable ksqlTable,
+                                        final Serde<GenericRow> consumedSerde,
+                                        final Serde<GenericRow> genericRowSerde) {
+    // the store is left unnamed so that the builder gives each read of the table, in a self join
+    // or in several queries built together, a store of its own
+    final KTable<String, GenericRow> sourceTable = builder.table(
+        ksqlTable.getKsqlTopic().getKafkaTopicName(),
+        Consumed.with(Serdes.String(), consumedSerde).withOffsetResetPolicy(autoOffsetReset),
+        Materialized.<String, GenericRow, KeyValueStore<Bytes, byte[]>>with(
+            Serdes.String(), genericRowSerde));
+
+    // index of each output column in the rows as read, which have no implicit columns
+    final int rowTimeIndex = getTimeStampColumnIndex();
+    final int rowKeyIndex = indexOfColumn(getKeyField().name()) - 2;
+    final int[] indexes = new int[outputSchema.fields().size()];
+    final boolean[] isRowTime = new boolean[indexes.length];
+    final boolean[] isRowKey = new boolean[indexes.length];
+    for (int i = 0; i < indexes.length; i++) {
+      final String name = outputSchema.fields().get(i).name();
+      final String bareName = name.substring(name.indexOf('.') + 1);
+      isRowTime[i] = bareName.equals(SchemaUtil.ROWTIME_NAME);
+      isRowKey[i] = bareName.equals(SchemaUtil.ROWKEY_NAME);
+      indexes[i] = schema.field(name).index() - 2;
+    }
+    return sourceTable.mapValues(row -> {
+      QueryMetrics.startProcessing();
+      final List<Object> columns = new ArrayList<>(indexes.length);
+      for (int i = 0; i < indexes.length; i++) {
+        if (isRowTime[i]) {
+          columns.add(row.getColumns().get(rowTimeIndex));
+        } else if (isRowKey[i]) {
+          final Object key = row.getColumns().get(rowKeyIndex);
+          columns.add(key == null ? null : key.toString());
+        } else {
+          columns.add(row.getColumns().get(indexes[i]));
+        }
+      }
+      return new GenericRow(columns);
+    });
+  }
+
+  /**
+   * @return the index in the schema of the column with the given name, which may or may not be
+   *     qualified by the source alias, or -1 if there is no such column.
+   */
+  private int indexOfColumn(final String columnName) {
+    final String bareName = columnName.substring(columnName.indexOf('.') + 1);
+    for (int i = 2; i < schema.fields().size(); i++) {
+      final String fieldName = schema.fields().get(i).name();
+      if (fieldName.substring(fieldName.indexOf('.') + 1).equals(bareName)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
   private KTable createKTable(StreamsBuilder builder, final Topology.AutoOffsetReset autoOffsetReset,
                               final KsqlTable ksqlTable,
                               final Serde<GenericRow> genericRowSerde,
                               final Serde<GenericRow> genericRowSerdeAfterRead) {
     if (ksqlTable.isWindowed()) {
-      return table(resetRepartitionFlag(builder
+      return table(pruneColumns(resetRepartitionFlag(builder
           .stream(ksqlTable.getKsqlTopic().getKafkaTopicName(),
               Consumed.with(windowedSerde, genericRowSerde)
                   .withOffsetResetPolicy(autoOffsetReset))
           .map(windowedMapper))
-          .transformValues(new AddTimestampColumn()), windowedSerde, genericRowSerdeAfterRead);
+          .transformValues(new AddTimestampColumn())), windowedSerde, genericRowSerdeAfterRead);
     } else {
-      return table(resetRepartitionFlag(
+      return table(pruneColumns(resetRepartitionFlag(
           builder.stream(ksqlTable.getKsqlTopic().getKafkaTopicName(),
               Consumed.with(Serdes.String(), genericRowSerde)
                   .withOffsetResetPolicy(autoOffsetReset))
           .map(nonWindowedMapper))
-              .transformValues(new AddTimestampColumn()),
+              .transformValues(new AddTimestampColumn())),
           Serdes.String(), genericRowSerdeAfterRead);
     }
   }
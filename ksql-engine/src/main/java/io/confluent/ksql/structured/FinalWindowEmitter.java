@@ -0,0 +1,174 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.structured;
+
+import io.confluent.ksql.GenericRow;
+
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.kstream.TransformerSupplier;
+import org.apache.kafka.streams.kstream.Window;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Buffers the updates of a windowed table and forwards only the last result of each window, once
+ * stream time has passed the end of the window by the close delay. Results are buffered in a
+ * persistent, change-logged store keyed by window end, so closed windows are found with a single
+ * range scan and the buffer is bounded by disk rather than memory. Updates for windows that have
+ * already been emitted are dropped.
+ *
+ * <p>The earliest window end in the buffer is tracked, so the buffer is only scanned once stream
+ * time has passed it by the close delay, rather than for every update.
+ */
+public class FinalWindowEmitter implements TransformerSupplier<Windowed<String>, GenericRow,
+    KeyValue<Windowed<String>, GenericRow>> {
+
+  private static final String KEY_FORMAT = "%019d:%019d:%s";
+
+  private final String storeName;
+  private final long closeDelayMs;
+
+  public FinalWindowEmitter(final String storeName, final long closeDelayMs) {
+    this.storeName = storeName;
+    this.closeDelayMs = closeDelayMs;
+  }
+
+  public String getStoreName() {
+    return storeName;
+  }
+
+  @Override
+  public Transformer<Windowed<String>, GenericRow, KeyValue<Windowed<String>, GenericRow>> get() {
+    return new Transformer<Windowed<String>, GenericRow, KeyValue<Windowed<String>, GenericRow>>() {
+      private ProcessorContext context;
+      private KeyValueStore<String, GenericRow> buffer;
+      private long streamTime = -1;
+      // No window in the buffer ends before this, Long.MAX_VALUE if it is empty
+      private long earliestEnd = Long.MAX_VALUE;
+
+      @SuppressWarnings("unchecked")
+      @Override
+      public void init(final ProcessorContext processorContext) {
+        this.context = processorContext;
+        this.buffer = (KeyValueStore<String, GenericRow>) processorContext.getStateStore(storeName);
+        processorContext.schedule(closeDelayMs > 0 ? closeDelayMs : 1000L,
+                                  PunctuationType.STREAM_TIME,
+                                  timestamp -> {
+                                    streamTime = Math.max(streamTime, timestamp);
+                                    if (hasClosedWindows()) {
+                                      emitClosedWindows();
+                                    }
+                                  });
+        // The buffer may have been restored from its changelog
+        earliestEnd = earliestBufferedEnd();
+      }
+
+      @Override
+      public KeyValue<Windowed<String>, GenericRow> transform(final Windowed<String> key,
+                                                              final GenericRow row) {
+        streamTime = Math.max(streamTime, context.timestamp());
+        if (isClosed(key.window().end())) {
+          return null;
+        }
+        final String bufferKey = bufferKey(key);
+        if (row == null) {
+          buffer.delete(bufferKey);
+        } else {
+          buffer.put(bufferKey, row);
+          earliestEnd = Math.min(earliestEnd, key.window().end());
+        }
+        if (hasClosedWindows()) {
+          emitClosedWindows();
+        }
+        return null;
+      }
+
+      @Override
+      public KeyValue<Windowed<String>, GenericRow> punctuate(final long timestamp) {
+        return null;
+      }
+
+      @Override
+      public void close() {
+      }
+
+      private boolean isClosed(final long windowEnd) {
+        return streamTime >= 0 && windowEnd + closeDelayMs <= streamTime;
+      }
+
+      private boolean hasClosedWindows() {
+        return earliestEnd != Long.MAX_VALUE && isClosed(earliestEnd);
+      }
+
+      private void emitClosedWindows() {
+        final long maxClosedEnd = streamTime - closeDelayMs;
+        if (maxClosedEnd < 0) {
+          return;
+        }
+        final List<KeyValue<String, GenericRow>> closed = new ArrayList<>();
+        try (KeyValueIterator<String, GenericRow> iterator =
+                 buffer.range(String.format("%019d", 0), String.format("%019d;", maxClosedEnd))) {
+          while (iterator.hasNext()) {
+            closed.add(iterator.next());
+          }
+        }
+        for (KeyValue<String, GenericRow> entry : closed) {
+          context.forward(windowedKey(entry.key), entry.value);
+          buffer.delete(entry.key);
+        }
+        earliestEnd = earliestBufferedEnd();
+      }
+
+      private long earliestBufferedEnd() {
+        try (KeyValueIterator<String, GenericRow> iterator = buffer.all()) {
+          return iterator.hasNext() ? windowedKey(iterator.next().key).window().end()
+                                    : Long.MAX_VALUE;
+        }
+      }
+    };
+  }
+
+  static String bufferKey(final Windowed<String> key) {
+    return String.format(KEY_FORMAT, key.window().end(), key.window().start(), key.key());
+  }
+
+  static Windowed<String> windowedKey(final String bufferKey) {
+    final String[] parts = bufferKey.split(":", 3);
+    final long end = Long.parseLong(parts[0]);
+    final long start = Long.parseLong(parts[1]);
+    return new Windowed<>(parts[2], new ClosedWindow(start, end));
+  }
+
+  private static final class ClosedWindow extends Window {
+
+    ClosedWindow(final long startMs, final long endMs) {
+      super(startMs, endMs);
+    }
+
+    @Override
+    public boolean overlap(final Window other) {
+      return start() <= other.end() && other.start() <= end();
+    }
+  }
+}
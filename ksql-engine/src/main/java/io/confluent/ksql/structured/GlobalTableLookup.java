@@ -0,0 +1,94 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.structured;
+
+import io.confluent.ksql.GenericRow;
+
+import org.apache.kafka.streams.kstream.KeyValueMapper;
+import org.apache.kafka.streams.kstream.ValueJoiner;
+import org.apache.kafka.streams.kstream.ValueTransformer;
+import org.apache.kafka.streams.kstream.ValueTransformerSupplier;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+
+/**
+ * Joins the rows of a stream to a table that is fully replicated on every instance, by looking
+ * the table up in its global store. Every processor can read a global store, so the stream is
+ * joined where it is, without being re-keyed or repartitioned.
+ *
+ * <p>Unlike the global table join of Kafka Streams, which drops stream records with a null key
+ * before it looks the table up, rows are joined whatever their key, as the table is looked up by
+ * a column of the row. Rows the table has no match for are joined to nulls in a LEFT join, and
+ * become null in an inner join, to be filtered out downstream.
+ */
+public class GlobalTableLookup implements ValueTransformerSupplier<GenericRow, GenericRow> {
+
+  private final String storeName;
+  private final KeyValueMapper<String, GenericRow, String> lookupKey;
+  private final ValueJoiner<GenericRow, GenericRow, GenericRow> joiner;
+  private final boolean isLeftJoin;
+
+  /**
+   * @param storeName the name of the global store of the table
+   * @param lookupKey the key of the table row a stream row joins, null if it joins none
+   */
+  public GlobalTableLookup(final String storeName,
+                           final KeyValueMapper<String, GenericRow, String> lookupKey,
+                           final ValueJoiner<GenericRow, GenericRow, GenericRow> joiner,
+                           final boolean isLeftJoin) {
+    this.storeName = storeName;
+    this.lookupKey = lookupKey;
+    this.joiner = joiner;
+    this.isLeftJoin = isLeftJoin;
+  }
+
+  @Override
+  public ValueTransformer<GenericRow, GenericRow> get() {
+    return new ValueTransformer<GenericRow, GenericRow>() {
+      private ReadOnlyKeyValueStore<String, GenericRow> table;
+
+      @SuppressWarnings("unchecked")
+      @Override
+      public void init(final ProcessorContext processorContext) {
+        this.table =
+            (ReadOnlyKeyValueStore<String, GenericRow>) processorContext.getStateStore(storeName);
+      }
+
+      @Override
+      public GenericRow transform(final GenericRow row) {
+        if (row == null) {
+          return null;
+        }
+        final String key = lookupKey.apply(null, row);
+        final GenericRow tableRow = key == null ? null : table.get(key);
+        if (tableRow == null && !isLeftJoin) {
+          return null;
+        }
+        return joiner.apply(row, tableRow);
+      }
+
+      @Override
+      public GenericRow punctuate(final long timestamp) {
+        return null;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+}
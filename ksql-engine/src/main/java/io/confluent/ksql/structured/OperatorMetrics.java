@@ -0,0 +1,209 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.structured;
+
+import org.apache.kafka.streams.kstream.KeyValueMapper;
+import org.apache.kafka.streams.kstream.Predicate;
+import org.apache.kafka.streams.kstream.ValueJoiner;
+import org.apache.kafka.streams.kstream.ValueMapper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rows in and out of one operator of a query, and the time it spends per row. Every row is
+ * counted, but only one in sampleInterval rows, picked at random, is timed, so that reading the
+ * clock does not slow down the operator it measures. A profiled operator also measures the CPU
+ * time and, where the JVM supports it, the bytes allocated by the stream thread for the timed
+ * rows, which costs a good deal more than reading the clock.
+ */
+public class OperatorMetrics {
+
+  private static final long NOT_SAMPLED = Long.MIN_VALUE;
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+  private static final boolean CPU_TIME_SUPPORTED = THREADS.isCurrentThreadCpuTimeSupported();
+  private static final boolean ALLOCATION_SUPPORTED =
+      THREADS instanceof com.sun.management.ThreadMXBean
+      && ((com.sun.management.ThreadMXBean) THREADS).isThreadAllocatedMemorySupported();
+
+  private final int sampleInterval;
+  private final boolean profiled;
+  private final LongAdder rowsIn = new LongAdder();
+  private final LongAdder rowsOut = new LongAdder();
+  private final LongAdder sampledRows = new LongAdder();
+  private final LongAdder sampledNanos = new LongAdder();
+  private final LongAdder sampledCpuNanos = new LongAdder();
+  private final LongAdder sampledAllocatedBytes = new LongAdder();
+  // CPU time and allocated bytes of the stream thread when the timed row came in
+  private final ThreadLocal<long[]> profileStart = ThreadLocal.withInitial(() -> new long[2]);
+
+  public OperatorMetrics(final int sampleInterval) {
+    this(sampleInterval, false);
+  }
+
+  public OperatorMetrics(final int sampleInterval, final boolean profiled) {
+    if (sampleInterval < 1) {
+      throw new IllegalArgumentException("sampleInterval must be positive: " + sampleInterval);
+    }
+    this.sampleInterval = sampleInterval;
+    this.profiled = profiled;
+  }
+
+  public <K, V> Predicate<K, V> predicate(final Predicate<K, V> predicate) {
+    return (key, value) -> {
+      final long start = begin();
+      final boolean result = predicate.test(key, value);
+      end(start, result);
+      return result;
+    };
+  }
+
+  public <V, R> ValueMapper<V, R> valueMapper(final ValueMapper<V, R> mapper) {
+    return value -> {
+      final long start = begin();
+      final R result = mapper.apply(value);
+      end(start, true);
+      return result;
+    };
+  }
+
+  public <K, V, R> KeyValueMapper<K, V, R> keyValueMapper(final KeyValueMapper<K, V, R> mapper) {
+    return (key, value) -> {
+      final long start = begin();
+      final R result = mapper.apply(key, value);
+      end(start, true);
+      return result;
+    };
+  }
+
+  /**
+   * Joins are counted by the rows they emit; rows of a stream that find nothing to join with
+   * never reach the joiner, so the selectivity of an inner join is not known here.
+   */
+  public <V1, V2, R> ValueJoiner<V1, V2, R> valueJoiner(final ValueJoiner<V1, V2, R> joiner) {
+    return (value1, value2) -> {
+      final long start = begin();
+      final R result = joiner.apply(value1, value2);
+      end(start, true);
+      return result;
+    };
+  }
+
+  private long begin() {
+    rowsIn.increment();
+    if (ThreadLocalRandom.current().nextInt(sampleInterval) != 0) {
+      return NOT_SAMPLED;
+    }
+    if (profiled) {
+      final long[] start = profileStart.get();
+      start[0] = cpuNanos();
+      start[1] = allocatedBytes();
+    }
+    return System.nanoTime();
+  }
+
+  private void end(final long start, final boolean emitted) {
+    if (start != NOT_SAMPLED) {
+      sampledNanos.add(System.nanoTime() - start);
+      if (profiled) {
+        final long[] profile = profileStart.get();
+        sampledCpuNanos.add(cpuNanos() - profile[0]);
+        sampledAllocatedBytes.add(allocatedBytes() - profile[1]);
+      }
+      sampledRows.increment();
+    }
+    if (emitted) {
+      rowsOut.increment();
+    }
+  }
+
+  private static long cpuNanos() {
+    return CPU_TIME_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : 0;
+  }
+
+  private static long allocatedBytes() {
+    return ALLOCATION_SUPPORTED
+           ? ((com.sun.management.ThreadMXBean) THREADS)
+               .getThreadAllocatedBytes(Thread.currentThread().getId())
+           : 0;
+  }
+
+  public long getRowsIn() {
+    return rowsIn.sum();
+  }
+
+  public long getRowsOut() {
+    return rowsOut.sum();
+  }
+
+  /**
+   * @return the fraction of rows in that were passed on, or 1 if no rows came in yet
+   */
+  public double getSelectivity() {
+    final long in = getRowsIn();
+    return in == 0 ? 1 : (double) getRowsOut() / in;
+  }
+
+  /**
+   * @return the average time in nanoseconds taken per timed row, or 0 if none was timed yet
+   */
+  public long getNanosPerRow() {
+    final long sampled = sampledRows.sum();
+    return sampled == 0 ? 0 : sampledNanos.sum() / sampled;
+  }
+
+  /**
+   * @return the average CPU time in nanoseconds taken per timed row, or 0 if this operator is
+   *     not profiled, the JVM cannot measure it or no row was timed yet
+   */
+  public long getCpuNanosPerRow() {
+    final long sampled = sampledRows.sum();
+    return sampled == 0 || !CPU_TIME_SUPPORTED ? 0 : sampledCpuNanos.sum() / sampled;
+  }
+
+  /**
+   * @return the average number of bytes allocated per timed row, or 0 if this operator is not
+   *     profiled, the JVM cannot measure it or no row was timed yet
+   */
+  public long getAllocatedBytesPerRow() {
+    final long sampled = sampledRows.sum();
+    return sampled == 0 || !ALLOCATION_SUPPORTED ? 0 : sampledAllocatedBytes.sum() / sampled;
+  }
+
+  public boolean isProfiled() {
+    return profiled;
+  }
+
+  @Override
+  public String toString() {
+    final String timing = String.format(
+        "Rows in: %d, rows out: %d, selectivity: %.3f, ns/row: %d",
+        getRowsIn(), getRowsOut(), getSelectivity(), getNanosPerRow());
+    final String sampling = sampleInterval == 1
+                            ? " (every row timed)"
+                            : String.format(" (timed 1 in %d rows)", sampleInterval);
+    if (!profiled) {
+      return timing + sampling;
+    }
+    return timing
+           + (CPU_TIME_SUPPORTED ? ", cpu ns/row: " + getCpuNanosPerRow() : "")
+           + (ALLOCATION_SUPPORTED ? ", allocated bytes/row: " + getAllocatedBytesPerRow() : "")
+           + sampling;
+  }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.structured;
+
+import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.function.UdafAggregator;
+
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.kstream.TransformerSupplier;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.kstream.internals.TimeWindow;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.state.WindowStore;
+import org.apache.kafka.streams.state.WindowStoreIterator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Turns the updates of a table of non-overlapping panes into updates of the hopping windows that
+ * contain them. A hopping window of size S advancing by A is the merge of the S / P panes of
+ * size P = gcd(S, A) it covers, so each input record only updates a single pane and the window
+ * results are assembled when a pane update is emitted.
+ *
+ * <p>The windows containing a pane are consecutive, so their results are computed in one pass
+ * over the panes with a two-stack sliding merge, which needs only an associative merge function
+ * and performs an amortized constant number of merges per window.
+ */
+public class PaneWindowAssembler implements TransformerSupplier<Windowed<String>, GenericRow,
+    KeyValue<Windowed<String>, GenericRow>> {
+
+  private final String paneStoreName;
+  private final long sizeMs;
+  private final long advanceMs;
+  private final long paneMs;
+  private final UdafAggregator mergeAggregator;
+
+  public PaneWindowAssembler(final String paneStoreName,
+                             final long sizeMs,
+                             final long advanceMs,
+                             final UdafAggregator mergeAggregator) {
+    this.paneStoreName = paneStoreName;
+    this.sizeMs = sizeMs;
+    this.advanceMs = advanceMs;
+    this.paneMs = paneSize(sizeMs, advanceMs);
+    this.mergeAggregator = mergeAggregator;
+  }
+
+  public static long paneSize(final long sizeMs, final long advanceMs) {
+    long a = sizeMs;
+    long b = advanceMs;
+    while (b != 0) {
+      final long remainder = a % b;
+      a = b;
+      b = remainder;
+    }
+    return a;
+  }
+
+  public String getPaneStoreName() {
+    return paneStoreName;
+  }
+
+  @Override
+  public Transformer<Windowed<String>, GenericRow, KeyValue<Windowed<String>, GenericRow>> get() {
+    return new Transformer<Windowed<String>, GenericRow, KeyValue<Windowed<String>, GenericRow>>() {
+      private ProcessorContext context;
+      private WindowStore<String, GenericRow> paneStore;
+
+      @SuppressWarnings("unchecked")
+      @Override
+      public void init(final ProcessorContext processorContext) {
+        this.context = processorContext;
+        this.paneStore =
+            (WindowStore<String, GenericRow>) processorContext.getStateStore(paneStoreName);
+      }
+
+      @Override
+      public KeyValue<Windowed<String>, GenericRow> transform(final Windowed<String> paneKey,
+                                                              final GenericRow paneRow) {
+        if (paneRow == null) {
+          return null;
+        }
+        final String key = paneKey.key();
+        final long paneStart = paneKey.window().start();
+        final long firstStart =
+            Math.max(0, (Math.floorDiv(paneStart - sizeMs, advanceMs) + 1) * advanceMs);
+        final long lastStart = Math.floorDiv(paneStart, advanceMs) * advanceMs;
+
+        final List<KeyValue<Long, GenericRow>> panes = new ArrayList<>();
+        try (WindowStoreIterator<GenericRow> iterator =
+                 paneStore.fetch(key, firstStart, lastStart + sizeMs - paneMs)) {
+          while (iterator.hasNext()) {
+            panes.add(iterator.next());
+          }
+        }
+
+        final SlidingMerge slidingMerge = new SlidingMerge(key);
+        int next = 0;
+        for (long windowStart = firstStart; windowStart <= lastStart; windowStart += advanceMs) {
+          while (next < panes.size() && panes.get(next).key < windowStart + sizeMs) {
+            slidingMerge.push(panes.get(next).key, panes.get(next).value);
+            next++;
+          }
+          slidingMerge.evictBefore(windowStart);
+          final GenericRow windowRow = slidingMerge.result();
+          if (windowRow != null) {
+            context.forward(
+                new Windowed<>(key, new TimeWindow(windowStart, windowStart + sizeMs)),
+                windowRow);
+          }
+        }
+        return null;
+      }
+
+      @Override
+      public KeyValue<Windowed<String>, GenericRow> punctuate(final long timestamp) {
+        return null;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+  }
+
+  private GenericRow merge(final String key, final GenericRow older, final GenericRow newer) {
+    return mergeAggregator.apply(key, newer, new GenericRow(new ArrayList<>(older.getColumns())));
+  }
+
+  /**
+   * FIFO queue of panes that can return the merge of its contents. Pushed panes are kept on a
+   * back stack with a running merge; when the oldest pane has to be evicted the back stack is
+   * moved to a front stack in which every entry holds the merge of itself and all newer front
+   * entries.
+   */
+  private final class SlidingMerge {
+
+    private final String key;
+    private final List<KeyValue<Long, GenericRow>> back = new ArrayList<>();
+    private final Deque<KeyValue<Long, GenericRow>> front = new ArrayDeque<>();
+    private GenericRow backMerge;
+
+    SlidingMerge(final String key) {
+      this.key = key;
+    }
+
+    void push(final long paneStart, final GenericRow paneRow) {
+      back.add(new KeyValue<>(paneStart, paneRow));
+      backMerge = backMerge == null ? paneRow : merge(key, backMerge, paneRow);
+    }
+
+    void evictBefore(final long windowStart) {
+      while (true) {
+        if (front.isEmpty()) {
+          flip();
+        }
+        if (front.isEmpty() || front.peek().key >= windowStart) {
+          return;
+        }
+        front.pop();
+      }
+    }
+
+    GenericRow result() {
+      if (front.isEmpty()) {
+        return backMerge;
+      }
+      return backMerge == null ? front.peek().value : merge(key, front.peek().value, backMerge);
+    }
+
+    private void flip() {
+      GenericRow suffixMerge = null;
+      for (int i = back.size() - 1; i >= 0; i--) {
+        final KeyValue<Long, GenericRow> pane = back.get(i);
+        suffixMerge = suffixMerge == null ? pane.value : merge(key, pane.value, suffixMerge);
+        front.push(new KeyValue<>(pane.key, suffixMerge));
+      }
+      back.clear();
+      backMerge = null;
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.structured;
+
+import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.function.UdafAggregator;
+
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Initializer;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.kstream.TransformerSupplier;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * First phase of a two-phase aggregation. Rows are folded into a partial aggregate per key in a
+ * local store and the partial aggregates are forwarded downstream, and removed from the store,
+ * every flush interval or as soon as the store holds maxKeys keys. The store is change-logged so
+ * a buffered partial aggregate survives a task migration, behind a cache, so a key that takes
+ * many rows between two commits is written to the changelog once rather than once per row.
+ *
+ * <p>The keys in the store are counted here, as the cache holds them back from the store
+ * underneath, which is what the store counts.
+ */
+public class PreAggregator
+    implements TransformerSupplier<String, GenericRow, KeyValue<String, GenericRow>> {
+
+  private final String storeName;
+  private final Initializer<GenericRow> initializer;
+  private final UdafAggregator aggregator;
+  private final long flushIntervalMs;
+  private final int maxKeys;
+
+  public PreAggregator(final String storeName,
+                       final Initializer<GenericRow> initializer,
+                       final UdafAggregator aggregator,
+                       final long flushIntervalMs,
+                       final int maxKeys) {
+    this.storeName = storeName;
+    this.initializer = initializer;
+    this.aggregator = aggregator;
+    this.flushIntervalMs = flushIntervalMs;
+    this.maxKeys = maxKeys;
+  }
+
+  @Override
+  public Transformer<String, GenericRow, KeyValue<String, GenericRow>> get() {
+    return new Transformer<String, GenericRow, KeyValue<String, GenericRow>>() {
+      private ProcessorContext context;
+      private KeyValueStore<String, GenericRow> store;
+      private int keys;
+
+      @SuppressWarnings("unchecked")
+      @Override
+      public void init(final ProcessorContext processorContext) {
+        this.context = processorContext;
+        this.store = (KeyValueStore<String, GenericRow>) processorContext.getStateStore(storeName);
+        // Partials restored from the changelog are flushed with the rest
+        try (KeyValueIterator<String, GenericRow> iterator = store.all()) {
+          while (iterator.hasNext()) {
+            iterator.next();
+            keys++;
+          }
+        }
+        processorContext.schedule(flushIntervalMs, PunctuationType.WALL_CLOCK_TIME,
+                                  timestamp -> flush());
+      }
+
+      @Override
+      public KeyValue<String, GenericRow> transform(final String key, final GenericRow row) {
+        if (key == null || row == null) {
+          return null;
+        }
+        GenericRow partial = store.get(key);
+        if (partial == null) {
+          partial = initializer.apply();
+          keys++;
+        }
+        store.put(key, aggregator.apply(key, row, partial));
+        if (keys >= maxKeys) {
+          flush();
+        }
+        return null;
+      }
+
+      @Override
+      public KeyValue<String, GenericRow> punctuate(final long timestamp) {
+        return null;
+      }
+
+      @Override
+      public void close() {
+      }
+
+      private void flush() {
+        final List<KeyValue<String, GenericRow>> partials = new ArrayList<>();
+        try (KeyValueIterator<String, GenericRow> iterator = store.all()) {
+          while (iterator.hasNext()) {
+            partials.add(iterator.next());
+          }
+        }
+        for (KeyValue<String, GenericRow> partial : partials) {
+          context.forward(partial.key, partial.value);
+          store.delete(partial.key);
+        }
+        keys = 0;
+      }
+    };
+  }
+}
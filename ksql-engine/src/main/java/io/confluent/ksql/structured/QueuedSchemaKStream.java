@@ -23,6 +23,7 @@ import io.confluent.ksql.planner.plan.OutputNode;
 import io.confluent.ksql.serde.KsqlTopicSerDe;
 import io.confluent.ksql.util.KsqlException;
 import io.confluent.ksql.util.Pair;
+import io.confluent.ksql.util.QueryLimit;
 
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.connect.data.Field;
@@ -34,11 +35,11 @@ import org.apache.kafka.streams.kstream.Windowed;
 
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 public class QueuedSchemaKStream extends SchemaKStream {
 
-  private final BlockingQueue<KeyValue<String, GenericRow>> rowQueue = new LinkedBlockingQueue<>(100);
+  private final BlockingQueue<KeyValue<String, GenericRow>> rowQueue;
+  private final QueryLimit queryLimit;
 
   private QueuedSchemaKStream(final Schema schema,
                               final KStream kstream,
@@ -47,14 +48,18 @@ public class QueuedSchemaKStream extends SchemaKStream {
                               final Type type,
                               final FunctionRegistry functionRegistry,
                               final Optional<Integer> limit,
-                              final OutputNode outputNode) {
+                              final OutputNode outputNode,
+                              final BlockingQueue<KeyValue<String, GenericRow>> rowQueue) {
     super(schema, kstream, keyField, sourceSchemaKStreams, type, functionRegistry);
     setOutputNode(outputNode);
-    kstream.foreach(new QueuedSchemaKStream.QueuePopulator(rowQueue, limit));
+    this.rowQueue = rowQueue;
+    this.queryLimit = QueryLimit.of(limit);
+    kstream.foreach(new QueuedSchemaKStream.QueuePopulator(rowQueue, queryLimit));
   }
 
   QueuedSchemaKStream(SchemaKStream schemaKStream,
-                      Optional<Integer> limit
+                      Optional<Integer> limit,
+                      BlockingQueue<KeyValue<String, GenericRow>> rowQueue
   ) {
     this(
             schemaKStream.schema,
@@ -64,7 +69,8 @@ public class QueuedSchemaKStream extends SchemaKStream {
             Type.SINK,
             schemaKStream.functionRegistry,
             limit,
-            schemaKStream.outputNode()
+            schemaKStream.outputNode(),
+            rowQueue
     );
   }
 
@@ -72,6 +78,10 @@ public class QueuedSchemaKStream extends SchemaKStream {
     return rowQueue;
   }
 
+  public QueryLimit getQueryLimit() {
+    return queryLimit;
+  }
+
   @Override
   public SchemaKStream into(String kafkaTopicName, Serde<GenericRow> topicValueSerDe,
                             Set<Integer> rowkeyIndexes) {
@@ -131,11 +141,10 @@ public class QueuedSchemaKStream extends SchemaKStream {
 
   protected static class QueuePopulator<K> implements ForeachAction<K, GenericRow> {
     private final BlockingQueue<KeyValue<String, GenericRow>> queue;
-    private final Optional<Integer> limit;
-    private int counter = 0;
+    private final QueryLimit limit;
 
     QueuePopulator(BlockingQueue<KeyValue<String, GenericRow>> queue,
-                   Optional<Integer> limit) {
+                   QueryLimit limit) {
       this.queue = queue;
       this.limit = limit;
     }
@@ -143,15 +152,11 @@ public class QueuedSchemaKStream extends SchemaKStream {
     @Override
     public void apply(K key, GenericRow row) {
       try {
-        if (row == null) {
+        // Rows past the LIMIT are dropped until the query is torn down; the reader closes it
+        // once it has read the rows within the limit
+        if (row == null || !limit.tryAdmit()) {
           return;
         }
-        if (limit.isPresent()) {
-          counter++;
-          if (counter > limit.get()) {
-            throw new KsqlException("LIMIT reached for the partition.");
-          }
-        }
         String keyString;
         if (key instanceof Windowed) {
           Windowed windowedKey = (Windowed) key;
@@ -159,7 +164,7 @@ public class QueuedSchemaKStream extends SchemaKStream {
         } else {
           keyString = Objects.toString(key);
         }
-        queue.put(new KeyValue<>(keyString, row));
+        limit.deliver(queue, new KeyValue<>(keyString, row));
       } catch (InterruptedException exception) {
         throw new KsqlException("InterruptedException while enqueueing:" + key);
       }
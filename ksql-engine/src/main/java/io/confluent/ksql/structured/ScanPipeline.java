@@ -0,0 +1,147 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.structured;
+
+import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.function.FunctionRegistry;
+import io.confluent.ksql.metastore.StructuredDataSource;
+import io.confluent.ksql.parser.tree.Expression;
+import io.confluent.ksql.planner.plan.FilterNode;
+import io.confluent.ksql.planner.plan.KsqlBareOutputNode;
+import io.confluent.ksql.planner.plan.PlanNode;
+import io.confluent.ksql.planner.plan.ProjectNode;
+import io.confluent.ksql.planner.plan.StructuredDataSourceNode;
+import io.confluent.ksql.util.GenericRowValueTypeEnforcer;
+import io.confluent.ksql.util.Pair;
+import io.confluent.ksql.util.SchemaUtil;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.streams.kstream.Predicate;
+
+import java.util.Optional;
+
+/**
+ * The filter and projection of a stateless query over a single source, applied to rows read
+ * without Kafka Streams: from the topic of a stream, or from the state store of a table. Only
+ * queries of the form {@code SELECT ... FROM source [WHERE ...] [LIMIT n]} have one.
+ */
+public class ScanPipeline {
+
+  private final StructuredDataSourceNode sourceNode;
+  private final Expression filterExpression;
+  private final Predicate<String, GenericRow> predicate;
+  private final SelectValueMapper projection;
+  private final Schema resultSchema;
+
+  private ScanPipeline(final StructuredDataSourceNode sourceNode,
+                       final Expression filterExpression,
+                       final Predicate<String, GenericRow> predicate,
+                       final SelectValueMapper projection,
+                       final Schema resultSchema) {
+    this.sourceNode = sourceNode;
+    this.filterExpression = filterExpression;
+    this.predicate = predicate;
+    this.projection = projection;
+    this.resultSchema = resultSchema;
+  }
+
+  /**
+   * @return the pipeline of the given transient query, or nothing if the query needs more than
+   *     a filter and projection over one stream
+   */
+  public static Optional<ScanPipeline> of(final PlanNode logicalPlan,
+                                          final FunctionRegistry functionRegistry) {
+    return of(logicalPlan, functionRegistry, StructuredDataSource.DataSourceType.KSTREAM);
+  }
+
+  /**
+   * @return the pipeline of the given pull query, or nothing if the query needs more than a
+   *     filter and projection over one table
+   */
+  public static Optional<ScanPipeline> forTable(final PlanNode logicalPlan,
+                                                final FunctionRegistry functionRegistry) {
+    return of(logicalPlan, functionRegistry, StructuredDataSource.DataSourceType.KTABLE);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Optional<ScanPipeline> of(final PlanNode logicalPlan,
+                                           final FunctionRegistry functionRegistry,
+                                           final StructuredDataSource.DataSourceType sourceType) {
+    if (!(logicalPlan instanceof KsqlBareOutputNode)
+        || !(((KsqlBareOutputNode) logicalPlan).getSource() instanceof ProjectNode)) {
+      return Optional.empty();
+    }
+    final ProjectNode projectNode = (ProjectNode) ((KsqlBareOutputNode) logicalPlan).getSource();
+    FilterNode filterNode = null;
+    PlanNode source = projectNode.getSource();
+    if (source instanceof FilterNode) {
+      filterNode = (FilterNode) source;
+      source = filterNode.getSource();
+    }
+    if (!(source instanceof StructuredDataSourceNode)
+        || ((StructuredDataSourceNode) source).getDataSourceType() != sourceType) {
+      return Optional.empty();
+    }
+    final StructuredDataSourceNode sourceNode = (StructuredDataSourceNode) source;
+    final Schema sourceSchema = sourceNode.getSchema();
+
+    final Predicate<String, GenericRow> predicate = filterNode == null
+        ? null
+        : new SqlPredicate(filterNode.getPredicate(), sourceSchema, false, functionRegistry)
+            .getPredicate();
+    final Pair<Schema, SelectValueMapper> projection =
+        SchemaKStream.createSelectValueMapperAndSchema(
+            sourceSchema,
+            new GenericRowValueTypeEnforcer(sourceSchema),
+            functionRegistry,
+            projectNode.getProjectNameExpressionPairList());
+    return Optional.of(
+        new ScanPipeline(sourceNode, filterNode == null ? null : filterNode.getPredicate(),
+                         predicate, projection.getRight(), projection.getLeft()));
+  }
+
+  public StructuredDataSourceNode getSourceNode() {
+    return sourceNode;
+  }
+
+  /**
+   * @return the WHERE clause of the query, or null if it has none
+   */
+  public Expression getFilterExpression() {
+    return filterExpression;
+  }
+
+  public Schema getResultSchema() {
+    return resultSchema;
+  }
+
+  /**
+   * @return the result row for a row read from the topic, or null if the filter drops it
+   */
+  public GenericRow apply(final Long timestamp, final String key, final GenericRow value) {
+    final GenericRow row = sourceNode.toOutputRow(timestamp, key, value);
+    if (predicate != null && !predicate.test(key, row)) {
+      return null;
+    }
+    return projection.apply(row);
+  }
+
+  public String getExecutionPlan() {
+    return " > [ SCAN ] Schema: " + SchemaUtil.getSchemaDefinitionString(resultSchema) + ".\n"
+           + "   Topic " + sourceNode.getStructuredDataSource().getKsqlTopic().getKafkaTopicName()
+           + " read directly, without a Kafka Streams application.\n";
+  }
+}
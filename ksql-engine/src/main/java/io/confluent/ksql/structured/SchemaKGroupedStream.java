@@ -18,9 +18,11 @@ package io.confluent.ksql.structured;
 
 import io.confluent.ksql.function.FunctionRegistry;
 import io.confluent.ksql.function.UdafAggregator;
+import io.confluent.ksql.parser.tree.HoppingWindowExpression;
 import io.confluent.ksql.parser.tree.KsqlWindowExpression;
 import io.confluent.ksql.parser.tree.WindowExpression;
 import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.util.KsqlConstants;
 import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.common.utils.Bytes;
@@ -28,11 +30,15 @@ import org.apache.kafka.connect.data.Field;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.streams.kstream.Initializer;
 import org.apache.kafka.streams.kstream.KGroupedStream;
+import org.apache.kafka.streams.kstream.KStream;
 import org.apache.kafka.streams.kstream.KTable;
 import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.kstream.TimeWindows;
+import org.apache.kafka.streams.state.Stores;
 import org.apache.kafka.streams.state.WindowStore;
 
 import java.util.List;
+import java.util.Optional;
 
 public class SchemaKGroupedStream {
 
@@ -58,9 +64,17 @@ public class SchemaKGroupedStream {
                                 final UdafAggregator aggregator,
                                 final WindowExpression windowExpression,
                                 final Serde<GenericRow> topicValueSerDe,
-                                final String storeName) {
+                                final String storeName,
+                                final Optional<Long> windowRetentionMs,
+                                final Optional<Integer> windowSegments) {
     final KTable aggKtable;
-    if (windowExpression != null) {
+    if (windowExpression != null
+        && (windowRetentionMs.isPresent() || windowSegments.isPresent())) {
+      aggKtable = windowExpression.getKsqlWindowExpression().applyAggregate(
+          kgroupedStream, initializer, aggregator, storeName, topicValueSerDe,
+          windowRetentionMs.orElse(KsqlConstants.defaultWindowRetentionMs),
+          windowSegments.orElse(KsqlConstants.defaultWindowSegments));
+    } else if (windowExpression != null) {
       final Materialized<String, GenericRow, ?> materialized
           = Materialized.<String, GenericRow, WindowStore<Bytes, byte[]>>as(storeName)
           .withKeySerde(Serdes.String())
@@ -76,4 +90,44 @@ public class SchemaKGroupedStream {
 
   }
 
+  /**
+   * Computes a hopping window aggregation by aggregating each record into a single tumbling pane
+   * and assembling the hopping windows from the panes with mergeAggregator, which must combine
+   * two aggregate rows. Only valid when every aggregate function is decomposable.
+   */
+  @SuppressWarnings("unchecked")
+  public SchemaKTable aggregateWithPanes(final Initializer initializer,
+                                         final UdafAggregator aggregator,
+                                         final UdafAggregator mergeAggregator,
+                                         final HoppingWindowExpression hoppingWindowExpression,
+                                         final Serde<GenericRow> topicValueSerDe,
+                                         final String storeName,
+                                         final Optional<Long> windowRetentionMs,
+                                         final Optional<Integer> windowSegments) {
+    final long sizeMs =
+        hoppingWindowExpression.getSizeUnit().toMillis(hoppingWindowExpression.getSize());
+    final long advanceMs =
+        hoppingWindowExpression.getAdvanceByUnit().toMillis(hoppingWindowExpression.getAdvanceBy());
+    final long paneMs = PaneWindowAssembler.paneSize(sizeMs, advanceMs);
+    final PaneWindowAssembler assembler =
+        new PaneWindowAssembler(storeName, sizeMs, advanceMs, mergeAggregator);
+
+    // Panes have to be kept for at least a window's size to be assembled into windows.
+    final long retentionMs =
+        Math.max(sizeMs, windowRetentionMs.orElse(KsqlConstants.defaultWindowRetentionMs));
+    final KTable paneKtable = kgroupedStream
+        .windowedBy(TimeWindows.of(paneMs).until(retentionMs))
+        .aggregate(initializer, aggregator,
+                   Materialized.<String, GenericRow>as(Stores.persistentWindowStore(
+                       storeName, retentionMs,
+                       windowSegments.orElse(KsqlConstants.defaultWindowSegments), paneMs, false))
+                       .withKeySerde(Serdes.String())
+                       .withValueSerde(topicValueSerDe));
+
+    final KStream windowChangelog = paneKtable.toStream()
+        .transform(assembler, assembler.getPaneStoreName());
+    return SchemaKTable.fromChangelog(schema, windowChangelog, keyField, sourceSchemaKStreams,
+                                      true, SchemaKStream.Type.AGGREGATE, functionRegistry);
+  }
+
 }
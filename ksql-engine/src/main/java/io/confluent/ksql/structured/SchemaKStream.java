@@ -17,6 +17,7 @@
 package io.confluent.ksql.structured;
 
 import io.confluent.ksql.function.FunctionRegistry;
+import io.confluent.ksql.function.UdafAggregator;
 import io.confluent.ksql.parser.tree.Expression;
 import io.confluent.ksql.GenericRow;
 import io.confluent.ksql.planner.plan.OutputNode;
@@ -35,6 +36,9 @@ import org.apache.kafka.connect.data.Field;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.connect.data.SchemaBuilder;
 import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.Initializer;
+import org.apache.kafka.streams.kstream.JoinWindows;
 import org.apache.kafka.streams.kstream.Joined;
 import org.apache.kafka.streams.kstream.KGroupedStream;
 import org.apache.kafka.streams.kstream.KStream;
@@ -42,6 +46,10 @@ import org.apache.kafka.streams.kstream.KeyValueMapper;
 import org.apache.kafka.streams.kstream.Produced;
 import org.apache.kafka.streams.kstream.Serialized;
 import org.apache.kafka.streams.kstream.ValueJoiner;
+import org.apache.kafka.streams.kstream.ValueMapper;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.StoreBuilder;
+import org.apache.kafka.streams.state.Stores;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -49,10 +57,12 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 
 public class SchemaKStream {
   
-  public enum Type { SOURCE, PROJECT, FILTER, AGGREGATE, SINK, REKEY, JOIN, TOSTREAM }
+  public enum Type { SOURCE, PROJECT, FILTER, AGGREGATE, SINK, REKEY, JOIN, TOSTREAM, PREAGGREGATE,
+    EMIT_FINAL, REPARTITION }
 
   protected final Schema schema;
   protected final KStream<String, GenericRow> kstream;
@@ -62,6 +72,10 @@ public class SchemaKStream {
   protected final Type type;
   protected final FunctionRegistry functionRegistry;
   private OutputNode output;
+  private String planDetail;
+  private int operatorSampleInterval;
+  private boolean operatorProfiled;
+  private OperatorMetrics operatorMetrics;
 
   public SchemaKStream(final Schema schema,
                        final KStream<String, GenericRow> kstream,
@@ -76,10 +90,16 @@ public class SchemaKStream {
     this.genericRowValueTypeEnforcer = new GenericRowValueTypeEnforcer(schema);
     this.type = type;
     this.functionRegistry = functionRegistry;
+    if (!sourceSchemaKStreams.isEmpty()) {
+      this.operatorSampleInterval = sourceSchemaKStreams.get(0).operatorSampleInterval;
+      this.operatorProfiled = sourceSchemaKStreams.get(0).operatorProfiled;
+    }
   }
 
-  public QueuedSchemaKStream toQueue(Optional<Integer> limit) {
-    return new QueuedSchemaKStream(this, limit);
+  public QueuedSchemaKStream toQueue(
+      final Optional<Integer> limit,
+      final BlockingQueue<KeyValue<String, GenericRow>> rowQueue) {
+    return new QueuedSchemaKStream(this, limit, rowQueue);
   }
 
   public SchemaKStream into(final String kafkaTopicName,
@@ -105,36 +125,59 @@ public class SchemaKStream {
   @SuppressWarnings("unchecked")
   public SchemaKStream filter(final Expression filterExpression) {
     SqlPredicate predicate = new SqlPredicate(filterExpression, schema, false, functionRegistry);
-    KStream<String, GenericRow> filteredKStream = kstream.filter(predicate.getPredicate());
-    return new SchemaKStream(schema, filteredKStream, keyField, Arrays.asList(this),
-                             Type.FILTER, functionRegistry);
+    final OperatorMetrics metrics = newOperatorMetrics();
+    KStream<String, GenericRow> filteredKStream = kstream.filter(
+        metrics == null ? predicate.getPredicate() : metrics.predicate(predicate.getPredicate()));
+    return withOperatorMetrics(
+        new SchemaKStream(schema, filteredKStream, keyField, Arrays.asList(this),
+                          Type.FILTER, functionRegistry),
+        metrics);
   }
 
   public SchemaKStream select(final Schema selectSchema) {
+    final ValueMapper<GenericRow, GenericRow> projection = row -> {
+      List<Object> newColumns = new ArrayList<>();
+      for (Field schemaField : selectSchema.fields()) {
+        newColumns.add(
+            row.getColumns().get(SchemaUtil.getFieldIndexByName(schema, schemaField.name())));
+      }
+      return new GenericRow(newColumns);
+    };
+    final OperatorMetrics metrics = newOperatorMetrics();
     final KStream<String, GenericRow>
         projectedKStream =
-        kstream.mapValues(row -> {
-          List<Object> newColumns = new ArrayList<>();
-          for (Field schemaField : selectSchema.fields()) {
-            newColumns.add(
-                row.getColumns().get(SchemaUtil.getFieldIndexByName(schema, schemaField.name())));
-          }
-          return new GenericRow(newColumns);
-        });
+        kstream.mapValues(metrics == null ? projection : metrics.valueMapper(projection));
 
-    return new SchemaKStream(selectSchema, projectedKStream, keyField, Collections.singletonList(this),
-                             Type.PROJECT, functionRegistry);
+    return withOperatorMetrics(
+        new SchemaKStream(selectSchema, projectedKStream, keyField,
+                          Collections.singletonList(this), Type.PROJECT, functionRegistry),
+        metrics);
   }
 
   public SchemaKStream select(final List<Pair<String, Expression>> expressionPairList) {
     final Pair<Schema, SelectValueMapper> schemaAndMapper = createSelectValueMapperAndSchema(expressionPairList);
-
-    return new SchemaKStream(schemaAndMapper.left,
-        kstream.mapValues(schemaAndMapper.right), keyField, Collections.singletonList(this),
-                             Type.PROJECT, functionRegistry);
+    final OperatorMetrics metrics = newOperatorMetrics();
+
+    return withOperatorMetrics(
+        new SchemaKStream(schemaAndMapper.left,
+                          kstream.mapValues(metrics == null
+                                            ? schemaAndMapper.right
+                                            : metrics.valueMapper(schemaAndMapper.right)),
+                          keyField, Collections.singletonList(this),
+                          Type.PROJECT, functionRegistry),
+        metrics);
   }
 
   Pair<Schema, SelectValueMapper> createSelectValueMapperAndSchema(final List<Pair<String, Expression>> expressionPairList)  {
+    return createSelectValueMapperAndSchema(schema, genericRowValueTypeEnforcer, functionRegistry,
+                                            expressionPairList);
+  }
+
+  static Pair<Schema, SelectValueMapper> createSelectValueMapperAndSchema(
+      final Schema schema,
+      final GenericRowValueTypeEnforcer genericRowValueTypeEnforcer,
+      final FunctionRegistry functionRegistry,
+      final List<Pair<String, Expression>> expressionPairList) {
     try {
       final CodeGenRunner codeGenRunner = new CodeGenRunner(schema, functionRegistry);
       final SchemaBuilder schemaBuilder = SchemaBuilder.struct();
@@ -159,25 +202,179 @@ public class SchemaKStream {
                                 final Field joinKey,
                                 KsqlTopicSerDe joinSerDe) {
 
+    final OperatorMetrics metrics = newOperatorMetrics();
+    final ValueJoiner<GenericRow, GenericRow, GenericRow> joiner =
+        (leftGenericRow, rightGenericRow) -> {
+          List<Object> columns = new ArrayList<>();
+          columns.addAll(leftGenericRow.getColumns());
+          if (rightGenericRow == null) {
+            for (int i = leftGenericRow.getColumns().size();
+                 i < joinSchema.fields().size(); i++) {
+              columns.add(null);
+            }
+          } else {
+            columns.addAll(rightGenericRow.getColumns());
+          }
+
+          return new GenericRow(columns);
+        };
+    if (!schemaKTable.hasKtable()) {
+      throw new KsqlException("Can't join with a table that is emitted as a changelog stream.");
+    }
     KStream joinedKStream =
         kstream.leftJoin(
-            schemaKTable.getKtable(), (ValueJoiner<GenericRow, GenericRow, GenericRow>) (leftGenericRow, rightGenericRow) -> {
-              List<Object> columns = new ArrayList<>();
-              columns.addAll(leftGenericRow.getColumns());
-              if (rightGenericRow == null) {
-                for (int i = leftGenericRow.getColumns().size();
-                     i < joinSchema.fields().size(); i++) {
-                  columns.add(null);
-                }
-              } else {
-                columns.addAll(rightGenericRow.getColumns());
-              }
+            schemaKTable.getKtable(), metrics == null ? joiner : metrics.valueJoiner(joiner),
+            Joined.with(Serdes.String(), SerDeUtil.getRowSerDe(joinSerDe, this.getSchema()), null));
+
+    return withOperatorMetrics(
+        new SchemaKStream(joinSchema, joinedKStream, joinKey,
+                          Arrays.asList(this, schemaKTable), Type.JOIN, functionRegistry),
+        metrics);
+  }
+
+  /**
+   * Joins this stream to a table that is fully replicated on every instance. The table is
+   * looked up by the value of joinColumn, so the stream needs no re-keying or repartitioning.
+   * Global table rows do not carry the implicit columns, so ROWKEY of the table side is the
+   * lookup key and ROWTIME of the table side is null.
+   *
+   * <p>The table is read from its global store by a {@link GlobalTableLookup} rather than
+   * joined as a GlobalKTable, because Kafka Streams drops stream records with a null key from a
+   * GlobalKTable join, LEFT joins included, and re-keying them would mark the stream for
+   * repartitioning.
+   */
+  public SchemaKStream broadcastJoin(final String globalStoreName,
+                                     final Schema joinSchema,
+                                     final Field joinKey,
+                                     final String joinColumn,
+                                     final boolean isLeftJoin) {
+    final int joinColumnIndex = SchemaUtil.getFieldIndexByName(schema, joinColumn);
+    if (joinColumnIndex < 0) {
+      throw new KsqlException("couldn't find join column: " + joinColumn + " in schema:" + schema);
+    }
+    final int leftSize = schema.fields().size();
+    final int rightSize = joinSchema.fields().size() - leftSize;
+
+    final KeyValueMapper<String, GenericRow, String> lookupKey = (key, row) -> {
+      final Object value = row.getColumns().get(joinColumnIndex);
+      return value == null ? null : value.toString();
+    };
+    final ValueJoiner<GenericRow, GenericRow, GenericRow> joiner = (streamRow, tableRow) -> {
+      List<Object> columns = new ArrayList<>(joinSchema.fields().size());
+      columns.addAll(streamRow.getColumns());
+      if (tableRow == null) {
+        columns.addAll(Collections.nCopies(rightSize, null));
+      } else {
+        columns.add(null);
+        columns.add(lookupKey.apply(null, streamRow));
+        columns.addAll(tableRow.getColumns());
+      }
+      return new GenericRow(columns);
+    };
+
+    final OperatorMetrics metrics = newOperatorMetrics();
+    final ValueJoiner<GenericRow, GenericRow, GenericRow> instrumentedJoiner =
+        metrics == null ? joiner : metrics.valueJoiner(joiner);
+    KStream<String, GenericRow> joinedKStream = kstream
+        .transformValues(
+            new GlobalTableLookup(globalStoreName, lookupKey, instrumentedJoiner, isLeftJoin))
+        .filter((key, row) -> row != null);
+    return withOperatorMetrics(
+        new SchemaKStream(joinSchema, joinedKStream, joinKey,
+                          Collections.singletonList(this), Type.JOIN, functionRegistry),
+        metrics);
+  }
+
+  public SchemaKStream join(final SchemaKStream otherStream,
+                            final Schema joinSchema,
+                            final Field joinKey,
+                            final JoinWindows joinWindows,
+                            final KsqlTopicSerDe joinSerDe) {
+    final OperatorMetrics metrics = newOperatorMetrics();
+    KStream joinedKStream = kstream.join(otherStream.kstream,
+                                         streamJoiner(joinSchema, metrics),
+                                         joinWindows,
+                                         streamJoined(otherStream, joinSerDe));
+    return withOperatorMetrics(
+        new SchemaKStream(joinSchema, joinedKStream, joinKey,
+                          Arrays.asList(this, otherStream), Type.JOIN, functionRegistry),
+        metrics);
+  }
+
+  public SchemaKStream leftJoin(final SchemaKStream otherStream,
+                                final Schema joinSchema,
+                                final Field joinKey,
+                                final JoinWindows joinWindows,
+                                final KsqlTopicSerDe joinSerDe) {
+    final OperatorMetrics metrics = newOperatorMetrics();
+    KStream joinedKStream = kstream.leftJoin(otherStream.kstream,
+                                             streamJoiner(joinSchema, metrics),
+                                             joinWindows,
+                                             streamJoined(otherStream, joinSerDe));
+    return withOperatorMetrics(
+        new SchemaKStream(joinSchema, joinedKStream, joinKey,
+                          Arrays.asList(this, otherStream), Type.JOIN, functionRegistry),
+        metrics);
+  }
+
+  public SchemaKStream outerJoin(final SchemaKStream otherStream,
+                                 final Schema joinSchema,
+                                 final Field joinKey,
+                                 final JoinWindows joinWindows,
+                                 final KsqlTopicSerDe joinSerDe) {
+    final OperatorMetrics metrics = newOperatorMetrics();
+    KStream joinedKStream = kstream.outerJoin(otherStream.kstream,
+                                              streamJoiner(joinSchema, metrics),
+                                              joinWindows,
+                                              streamJoined(otherStream, joinSerDe));
+    return withOperatorMetrics(
+        new SchemaKStream(joinSchema, joinedKStream, joinKey,
+                          Arrays.asList(this, otherStream), Type.JOIN, functionRegistry),
+        metrics);
+  }
+
+  private Joined<String, GenericRow, GenericRow> streamJoined(final SchemaKStream otherStream,
+                                                              final KsqlTopicSerDe joinSerDe) {
+    return Joined.with(Serdes.String(),
+                       SerDeUtil.getRowSerDe(joinSerDe, this.getSchema()),
+                       SerDeUtil.getRowSerDe(joinSerDe, otherStream.getSchema()));
+  }
 
-              return new GenericRow(columns);
-            }, Joined.with(Serdes.String(), SerDeUtil.getRowSerDe(joinSerDe, this.getSchema()), null));
+  /**
+   * Joiner for windowed stream-stream joins, where either side may be missing in a left or
+   * outer join. Missing sides are filled with nulls so the result always matches joinSchema.
+   */
+  private ValueJoiner<GenericRow, GenericRow, GenericRow> streamJoiner(
+      final Schema joinSchema,
+      final OperatorMetrics metrics) {
+    final int leftSize = schema.fields().size();
+    final int rightSize = joinSchema.fields().size() - leftSize;
+    final ValueJoiner<GenericRow, GenericRow, GenericRow> joiner =
+        (leftGenericRow, rightGenericRow) -> {
+          List<Object> columns = new ArrayList<>(joinSchema.fields().size());
+          if (leftGenericRow == null) {
+            columns.addAll(Collections.nCopies(leftSize, null));
+          } else {
+            columns.addAll(leftGenericRow.getColumns());
+          }
+          if (rightGenericRow == null) {
+            columns.addAll(Collections.nCopies(rightSize, null));
+          } else {
+            columns.addAll(rightGenericRow.getColumns());
+          }
+          return new GenericRow(columns);
+        };
+    return metrics == null ? joiner : metrics.valueJoiner(joiner);
+  }
 
-    return new SchemaKStream(joinSchema, joinedKStream, joinKey,
-                             Arrays.asList(this, schemaKTable), Type.JOIN, functionRegistry);
+  /**
+   * @return this stream marked for repartitioning on its current key, so that Kafka Streams
+   *     writes it to a repartition topic sized to match the other side of a following join.
+   */
+  public SchemaKStream repartition() {
+    return new SchemaKStream(schema, kstream.selectKey((key, value) -> key), keyField,
+                             Collections.singletonList(this), Type.REPARTITION,
+                             functionRegistry);
   }
 
   public SchemaKStream selectKey(final Field newKeyField) {
@@ -186,20 +383,61 @@ public class SchemaKStream {
       return this;
     }
 
-    KStream keyedKStream = kstream.selectKey((key, value) -> {
+    final KeyValueMapper<String, GenericRow, String> keySelector = (key, value) -> {
 
       String
           newKey =
           value.getColumns().get(SchemaUtil.getFieldIndexByName(schema, newKeyField.name()))
               .toString();
       return newKey;
-    }).map((KeyValueMapper<String, GenericRow, KeyValue<String, GenericRow>>) (key, row) -> {
+    };
+    final OperatorMetrics metrics = newOperatorMetrics();
+    KStream keyedKStream = kstream.selectKey(
+        metrics == null ? keySelector : metrics.keyValueMapper(keySelector)
+    ).map((KeyValueMapper<String, GenericRow, KeyValue<String, GenericRow>>) (key, row) -> {
       row.getColumns().set(SchemaUtil.ROWKEY_NAME_INDEX, key);
       return new KeyValue<>(key, row);
     });
 
-    return new SchemaKStream(schema, keyedKStream, newKeyField, Collections.singletonList(this),
-                             Type.REKEY, functionRegistry);
+    return withOperatorMetrics(
+        new SchemaKStream(schema, keyedKStream, newKeyField, Collections.singletonList(this),
+                          Type.REKEY, functionRegistry),
+        metrics);
+  }
+
+  /**
+   * Folds the rows of this stream into partial aggregates per key before they are repartitioned.
+   * The resulting stream carries rows in the layout of the aggregate schema, which the final
+   * aggregation combines with the functions' mergers.
+   */
+  public SchemaKStream preAggregate(final StreamsBuilder builder,
+                                    final Schema aggregateSchema,
+                                    final Initializer<GenericRow> initializer,
+                                    final UdafAggregator aggregator,
+                                    final Serde<GenericRow> aggValueSerde,
+                                    final String storeName,
+                                    final long flushIntervalMs,
+                                    final int maxKeys) {
+    builder.addStateStore(preAggregateStoreBuilder(storeName, aggValueSerde));
+    KStream<String, GenericRow> preAggregatedKStream = kstream.transform(
+        new PreAggregator(storeName, initializer, aggregator, flushIntervalMs, maxKeys),
+        storeName);
+    return new SchemaKStream(aggregateSchema, preAggregatedKStream, keyField,
+                             Collections.singletonList(this), Type.PREAGGREGATE,
+                             functionRegistry);
+  }
+
+  /**
+   * @return builder of the store the partial aggregates are folded into: change-logged, so they
+   *     survive a task migration, and cached, so each key is logged once per commit instead of
+   *     once per row, which would send as much to the changelog as the repartition is spared
+   */
+  static StoreBuilder<KeyValueStore<String, GenericRow>> preAggregateStoreBuilder(
+      final String storeName,
+      final Serde<GenericRow> aggValueSerde) {
+    return Stores.keyValueStoreBuilder(
+        Stores.inMemoryKeyValueStore(storeName), Serdes.String(), aggValueSerde)
+        .withCachingEnabled();
   }
 
   public SchemaKGroupedStream groupByKey(final Serde<String> keySerde,
@@ -228,6 +466,12 @@ public class SchemaKStream {
     StringBuilder stringBuilder = new StringBuilder();
     stringBuilder.append(indent + " > [ " + type + " ] Schema: " + SchemaUtil
         .getSchemaDefinitionString(schema) + ".\n");
+    if (planDetail != null) {
+      stringBuilder.append(indent + "   " + planDetail + ".\n");
+    }
+    if (operatorMetrics != null) {
+      stringBuilder.append(indent + "   " + operatorMetrics + ".\n");
+    }
     for (SchemaKStream schemaKStream: sourceSchemaKStreams) {
       stringBuilder.append("\t" + indent + schemaKStream.getExecutionPlan(indent + "\t"));
     }
@@ -241,4 +485,63 @@ public class SchemaKStream {
   public void setOutputNode(final OutputNode output) {
     this.output = output;
   }
+
+  /**
+   * Sets a planner decision that is shown under this node in the execution plan.
+   */
+  public void setPlanDetail(final String planDetail) {
+    this.planDetail = planDetail;
+  }
+
+  /**
+   * Makes the operators added to this stream and to the streams derived from it count their
+   * rows and time one in sampleInterval of them, shown under each node in the execution plan.
+   * A sampleInterval of 0 leaves them uninstrumented.
+   */
+  public void setOperatorSampleInterval(final int sampleInterval) {
+    this.operatorSampleInterval = sampleInterval;
+  }
+
+  /**
+   * Makes the sampled operators added to this stream and to the streams derived from it also
+   * measure the CPU time and allocations of the rows they time.
+   */
+  public void setOperatorProfiled(final boolean profiled) {
+    this.operatorProfiled = profiled;
+  }
+
+  public boolean isOperatorSampled() {
+    return operatorSampleInterval > 0;
+  }
+
+  /**
+   * @return the metrics of the operator that produced this stream, or null if it is not
+   *     instrumented.
+   */
+  public OperatorMetrics getOperatorMetrics() {
+    return operatorMetrics;
+  }
+
+  OperatorMetrics newOperatorMetrics() {
+    return operatorSampleInterval > 0
+           ? new OperatorMetrics(operatorSampleInterval, operatorProfiled)
+           : null;
+  }
+
+  static <T extends SchemaKStream> T withOperatorMetrics(final T schemaKStream,
+                                                         final OperatorMetrics metrics) {
+    schemaKStream.operatorMetrics = metrics;
+    return schemaKStream;
+  }
+
+  /**
+   * @return replacement, which stands in for this stream in the execution plan, instrumented
+   *     as this stream is.
+   */
+  <T extends SchemaKStream> T replacedBy(final T replacement) {
+    replacement.operatorSampleInterval = operatorSampleInterval;
+    replacement.operatorProfiled = operatorProfiled;
+    replacement.operatorMetrics = operatorMetrics;
+    return replacement;
+  }
 }
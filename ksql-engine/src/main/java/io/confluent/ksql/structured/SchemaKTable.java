@@ -19,18 +19,28 @@ package io.confluent.ksql.structured;
 import io.confluent.ksql.function.FunctionRegistry;
 import io.confluent.ksql.parser.tree.Expression;
 import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.util.KsqlException;
 import io.confluent.ksql.util.Pair;
+import io.confluent.ksql.util.TableRowCache;
 import io.confluent.ksql.serde.WindowedSerde;
 import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.utils.Bytes;
 import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.connect.data.Field;
 import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.kstream.KStream;
 import org.apache.kafka.streams.kstream.KTable;
 import org.apache.kafka.streams.kstream.KeyValueMapper;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.kstream.Predicate;
 import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.kstream.Serialized;
+import org.apache.kafka.streams.kstream.ValueMapper;
 import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.Stores;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -38,12 +48,21 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 
+/**
+ * A table is normally backed by a KTable. A table can instead be backed by its changelog stream
+ * when it is assembled by a custom processor, as Kafka Streams can't turn a stream into a KTable
+ * without a repartition; in that case {@link #hasKtable()} is false and {@link #getKtable()}
+ * throws.
+ */
 public class SchemaKTable extends SchemaKStream {
 
 
   private final KTable ktable;
   private final boolean isWindowed;
+  private final FinalWindowEmitter finalWindowEmitter;
+  private TableRowCache rowCache;
 
   public SchemaKTable(final Schema schema,
                       final KTable ktable,
@@ -52,9 +71,164 @@ public class SchemaKTable extends SchemaKStream {
                       boolean isWindowed,
                       Type type,
                       final FunctionRegistry functionRegistry) {
-    super(schema, null, keyField, sourceSchemaKStreams, type, functionRegistry);
+    this(schema, ktable, null, keyField, sourceSchemaKStreams, isWindowed, type, functionRegistry,
+         null);
+  }
+
+  private SchemaKTable(final Schema schema,
+                       final KTable ktable,
+                       final KStream changelog,
+                       final Field keyField,
+                       final List<SchemaKStream> sourceSchemaKStreams,
+                       boolean isWindowed,
+                       Type type,
+                       final FunctionRegistry functionRegistry,
+                       final FinalWindowEmitter finalWindowEmitter) {
+    super(schema, changelog, keyField, sourceSchemaKStreams, type, functionRegistry);
     this.ktable = ktable;
     this.isWindowed = isWindowed;
+    this.finalWindowEmitter = finalWindowEmitter;
+  }
+
+  /**
+   * @return the cache of deserialized rows in front of the store of this table, or null if its
+   *     rows are not cached.
+   */
+  public TableRowCache getRowCache() {
+    return rowCache;
+  }
+
+  public void setRowCache(final TableRowCache rowCache) {
+    this.rowCache = rowCache;
+  }
+
+  static SchemaKTable fromChangelog(final Schema schema,
+                                    final KStream changelog,
+                                    final Field keyField,
+                                    final List<SchemaKStream> sourceSchemaKStreams,
+                                    boolean isWindowed,
+                                    Type type,
+                                    final FunctionRegistry functionRegistry) {
+    return new SchemaKTable(schema, null, changelog, keyField, sourceSchemaKStreams, isWindowed,
+                            type, functionRegistry, null);
+  }
+
+  /**
+   * @return this table with its rows mapped by the given mapper and described by newSchema, in
+   *     place of this table in the execution plan.
+   */
+  @SuppressWarnings("unchecked")
+  public SchemaKTable mapValues(final Schema newSchema,
+                                final ValueMapper<GenericRow, GenericRow> mapper) {
+    if (ktable != null) {
+      return replacedBy(
+          new SchemaKTable(newSchema, ktable.mapValues(mapper), null, keyField,
+                           sourceSchemaKStreams, isWindowed, type, functionRegistry,
+                           finalWindowEmitter));
+    }
+    return replacedBy(
+        new SchemaKTable(newSchema, null,
+                         kstream.mapValues(row -> row == null ? null : mapper.apply(row)),
+                         keyField, sourceSchemaKStreams, isWindowed, type, functionRegistry,
+                         finalWindowEmitter));
+  }
+
+  /**
+   * @return this table described by newSchema, in place of this table in the execution plan.
+   */
+  public SchemaKTable withSchema(final Schema newSchema) {
+    return replacedBy(
+        new SchemaKTable(newSchema, ktable, kstream, keyField, sourceSchemaKStreams,
+                         isWindowed, type, functionRegistry, finalWindowEmitter));
+  }
+
+  /**
+   * Makes the sink of this windowed table receive only the final result of each window, once
+   * stream time has passed the window's end by closeDelayMs.
+   */
+  public SchemaKTable emitFinal(final StreamsBuilder builder,
+                                final Serde<GenericRow> valueSerde,
+                                final String storeName,
+                                final long closeDelayMs) {
+    if (!isWindowed) {
+      throw new KsqlException("Final results can only be emitted for windowed aggregations.");
+    }
+    builder.addStateStore(Stores.keyValueStoreBuilder(
+        Stores.persistentKeyValueStore(storeName), Serdes.String(), valueSerde));
+    return new SchemaKTable(schema, ktable, kstream, keyField, Collections.singletonList(this),
+                            true, Type.EMIT_FINAL, functionRegistry,
+                            new FinalWindowEmitter(storeName, closeDelayMs));
+  }
+
+  /**
+   * Keeps a copy of this table in a state store named storeName that interactive queries can
+   * read, holding each row as it is written to the sink topic, without the columns at
+   * rowkeyIndexes. The table itself is returned unchanged.
+   */
+  @SuppressWarnings("unchecked")
+  public SchemaKTable materializeForLookup(final String storeName,
+                                          final Set<Integer> rowkeyIndexes,
+                                          final Serde<GenericRow> valueSerde) {
+    if (isWindowed || ktable == null) {
+      throw new KsqlException("Only non-windowed tables can be materialized for lookups.");
+    }
+    ktable.mapValues(
+        (ValueMapper<GenericRow, GenericRow>) row -> {
+          final List<Object> columns = new ArrayList<>();
+          for (int i = 0; i < row.getColumns().size(); i++) {
+            if (!rowkeyIndexes.contains(i)) {
+              columns.add(row.getColumns().get(i));
+            }
+          }
+          return new GenericRow(columns);
+        },
+        Materialized.<String, GenericRow, KeyValueStore<Bytes, byte[]>>as(storeName)
+            .withKeySerde(Serdes.String())
+            .withValueSerde(valueSerde));
+    return this;
+  }
+
+  /**
+   * Keeps the windows of this table in a window store named storeName that interactive queries
+   * can fetch the windows of a key in a time range from, holding each row as it is written to
+   * the sink topic. The table itself is returned unchanged.
+   */
+  @SuppressWarnings("unchecked")
+  public SchemaKTable materializeWindowsForLookup(final StreamsBuilder builder,
+                                                  final String storeName,
+                                                  final Set<Integer> rowkeyIndexes,
+                                                  final Serde<GenericRow> valueSerde,
+                                                  final long windowSizeMs,
+                                                  final long retentionMs,
+                                                  final int segments) {
+    if (!isWindowed) {
+      throw new KsqlException("Only windowed tables can be materialized for window lookups.");
+    }
+    // The store keeps its changelog: the writer only sees new updates of the aggregation, so a
+    // store lost on failover or rebalance could not be rebuilt from the aggregation's own state.
+    builder.addStateStore(Stores.windowStoreBuilder(
+        Stores.persistentWindowStore(storeName, Math.max(retentionMs, windowSizeMs), segments,
+                                     windowSizeMs, false),
+        Serdes.String(), valueSerde));
+    getKstream().process(new WindowStoreWriter(storeName, rowkeyIndexes), storeName);
+    return this;
+  }
+
+  /**
+   * @return this table re-materialized from a repartition topic, which Kafka Streams sizes to
+   *     match the stream it is joined with.
+   */
+  @SuppressWarnings("unchecked")
+  public SchemaKTable repartition(final Serde<GenericRow> valueSerde) {
+    if (isWindowed || ktable == null) {
+      throw new KsqlException("Only non-windowed source tables can be repartitioned.");
+    }
+    final KTable repartitioned = ktable.toStream()
+        .selectKey((key, value) -> key)
+        .groupByKey(Serialized.with(Serdes.String(), valueSerde))
+        .reduce((oldValue, newValue) -> newValue);
+    return new SchemaKTable(schema, repartitioned, keyField, Collections.singletonList(this),
+                            false, Type.REPARTITION, functionRegistry);
   }
 
   @Override
@@ -64,7 +238,12 @@ public class SchemaKTable extends SchemaKStream {
 
 
     if (isWindowed) {
-      ktable.toStream()
+      KStream windowedKStream = getKstream();
+      if (finalWindowEmitter != null) {
+        windowedKStream = windowedKStream.transform(finalWindowEmitter,
+                                                    finalWindowEmitter.getStoreName());
+      }
+      windowedKStream
           .map((KeyValueMapper<Windowed<String>, GenericRow, KeyValue<Windowed<String>, GenericRow>>) (key, row) -> {
             if (row == null) {
               return new KeyValue<>(key, null);
@@ -78,7 +257,7 @@ public class SchemaKTable extends SchemaKStream {
             return new KeyValue<>(key, new GenericRow(columns));
           }).to(kafkaTopicName, Produced.with(new WindowedSerde(), topicValueSerDe));
     } else {
-      ktable.toStream()
+      getKstream()
           .map((KeyValueMapper<String, GenericRow, KeyValue<String, GenericRow>>) (key, row) -> {
             if (row == null) {
               return new KeyValue<>(key, null);
@@ -97,39 +276,85 @@ public class SchemaKTable extends SchemaKStream {
   }
 
   @Override
-  public QueuedSchemaKStream toQueue(Optional<Integer> limit) {
-    return new QueuedSchemaKStream(this, limit);
+  public QueuedSchemaKStream toQueue(
+      final Optional<Integer> limit,
+      final BlockingQueue<KeyValue<String, GenericRow>> rowQueue) {
+    return new QueuedSchemaKStream(this, limit, rowQueue);
   }
 
+  @SuppressWarnings("unchecked")
   @Override
   public SchemaKTable filter(final Expression filterExpression)  {
     SqlPredicate predicate = new SqlPredicate(filterExpression, schema, isWindowed,
                                               functionRegistry);
-    KTable filteredKTable = ktable.filter(predicate.getPredicate());
-    return new SchemaKTable(schema, filteredKTable, keyField, Arrays.asList(this), isWindowed,
-                            Type.FILTER, functionRegistry);
+    final OperatorMetrics metrics = newOperatorMetrics();
+    final Predicate rowPredicate =
+        metrics == null ? predicate.getPredicate() : metrics.predicate(predicate.getPredicate());
+    if (ktable == null) {
+      // A filtered out update of a changelog retracts the row, as KTable#filter does.
+      KStream filteredChangelog = kstream.map((key, row) -> new KeyValue<>(
+          key, row != null && rowPredicate.test(key, row) ? row : null));
+      return withOperatorMetrics(
+          fromChangelog(schema, filteredChangelog, keyField, Arrays.asList(this), isWindowed,
+                        Type.FILTER, functionRegistry),
+          metrics);
+    }
+    KTable filteredKTable = ktable.filter(rowPredicate);
+    return withOperatorMetrics(
+        new SchemaKTable(schema, filteredKTable, keyField, Arrays.asList(this), isWindowed,
+                         Type.FILTER, functionRegistry),
+        metrics);
   }
 
   @Override
   public SchemaKTable select(final List<Pair<String, Expression>> expressionPairList) {
 
     final Pair<Schema, SelectValueMapper> schemaAndMapper = createSelectValueMapperAndSchema(expressionPairList);
+    final OperatorMetrics metrics = newOperatorMetrics();
+    final ValueMapper<GenericRow, GenericRow> mapper =
+        metrics == null ? schemaAndMapper.right : metrics.valueMapper(schemaAndMapper.right);
+
+    if (ktable == null) {
+      KStream projectedChangelog = kstream.mapValues(
+          row -> row == null ? null : mapper.apply(row));
+      return withOperatorMetrics(
+          fromChangelog(schemaAndMapper.left, projectedChangelog, keyField,
+                        Collections.singletonList(this), isWindowed, Type.PROJECT,
+                        functionRegistry),
+          metrics);
+    }
 
-    KTable projectedKTable = ktable.mapValues(schemaAndMapper.right);
+    KTable projectedKTable = ktable.mapValues(mapper);
 
-    return new SchemaKTable(schemaAndMapper.left, projectedKTable, keyField,
-        Collections.singletonList(this), isWindowed, Type.PROJECT, functionRegistry);
+    return withOperatorMetrics(
+        new SchemaKTable(schemaAndMapper.left, projectedKTable, keyField,
+            Collections.singletonList(this), isWindowed, Type.PROJECT, functionRegistry),
+        metrics);
   }
 
   @Override
   public KStream getKstream() {
-    return ktable.toStream();
+    return ktable == null ? kstream : ktable.toStream();
   }
 
+  /**
+   * Returns the underlying KTable.
+   *
+   * @throws KsqlException if this table is only backed by a changelog stream; check
+   *     {@link #hasKtable()} first.
+   */
   public KTable getKtable() {
+    if (ktable == null) {
+      throw new KsqlException("This table is emitted as a changelog stream and can't be "
+          + "used where a KTable is required.");
+    }
     return ktable;
   }
 
+  public boolean hasKtable() {
+    return ktable != null;
+  }
+
   public boolean isWindowed() {
     return isWindowed;
   }
@@ -28,6 +28,7 @@ import io.confluent.ksql.parser.tree.Expression;
 import io.confluent.ksql.util.ExpressionMetadata;
 import io.confluent.ksql.util.GenericRowValueTypeEnforcer;
 import io.confluent.ksql.util.Pair;
+import io.confluent.ksql.util.QueryMetrics;
 
 class SelectValueMapper implements ValueMapper<GenericRow, GenericRow> {
   private static Logger log = LoggerFactory.getLogger(SelectValueMapper.class);
@@ -66,6 +67,7 @@ class SelectValueMapper implements ValueMapper<GenericRow, GenericRow> {
         newColumns.add(expressionEvaluators.get(i).getExpressionEvaluator()
             .evaluate(parameterObjects));
       } catch (Exception e) {
+        QueryMetrics.recordExpressionError();
         log.error("Error calculating column with index " + i + " : " +
             expressionPairList.get(i).getLeft(), e);
         newColumns.add(null);
@@ -24,6 +24,7 @@ import io.confluent.ksql.util.ExpressionMetadata;
 import io.confluent.ksql.codegen.CodeGenRunner;
 import io.confluent.ksql.util.GenericRowValueTypeEnforcer;
 import io.confluent.ksql.util.KsqlException;
+import io.confluent.ksql.util.QueryMetrics;
 import io.confluent.ksql.util.SchemaUtil;
 import io.confluent.ksql.codegen.SqlToJavaVisitor;
 import org.apache.kafka.connect.data.Schema;
@@ -124,6 +125,7 @@ public class SqlPredicate {
         boolean result = (Boolean) ee.evaluate(values);
         return result;
       } catch (Exception e) {
+        QueryMetrics.recordExpressionError();
         log.error(e.getMessage(), e);
       }
       log.error("Invalid format: " + key + " : " + row);
@@ -157,6 +159,7 @@ public class SqlPredicate {
         boolean result = (Boolean) ee.evaluate(values);
         return result;
       } catch (Exception e) {
+        QueryMetrics.recordExpressionError();
         log.error(e.getMessage(), e);
       }
       log.error("Invalid format: " + key + " : " + row);
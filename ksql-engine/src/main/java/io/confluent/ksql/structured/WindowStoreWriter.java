@@ -0,0 +1,80 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.structured;
+
+import io.confluent.ksql.GenericRow;
+
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.processor.AbstractProcessor;
+import org.apache.kafka.streams.processor.Processor;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.ProcessorSupplier;
+import org.apache.kafka.streams.state.WindowStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes the updates of a windowed table to a window store keyed by the key of the window and
+ * timestamped with its start, so the windows of a key in a time range can be read with a
+ * single fetch from the segments of the store covering the range. Rows are stored as they are
+ * written to the sink topic, without the columns at rowkeyIndexes.
+ */
+public class WindowStoreWriter implements ProcessorSupplier<Windowed<String>, GenericRow> {
+
+  private final String storeName;
+  private final Set<Integer> rowkeyIndexes;
+
+  public WindowStoreWriter(final String storeName, final Set<Integer> rowkeyIndexes) {
+    this.storeName = storeName;
+    this.rowkeyIndexes = rowkeyIndexes;
+  }
+
+  public String getStoreName() {
+    return storeName;
+  }
+
+  @Override
+  public Processor<Windowed<String>, GenericRow> get() {
+    return new AbstractProcessor<Windowed<String>, GenericRow>() {
+      private WindowStore<String, GenericRow> store;
+
+      @SuppressWarnings("unchecked")
+      @Override
+      public void init(final ProcessorContext processorContext) {
+        super.init(processorContext);
+        this.store = (WindowStore<String, GenericRow>) processorContext.getStateStore(storeName);
+      }
+
+      @Override
+      public void process(final Windowed<String> key, final GenericRow row) {
+        store.put(key.key(), row == null ? null : stripRow(row), key.window().start());
+      }
+    };
+  }
+
+  private GenericRow stripRow(final GenericRow row) {
+    final List<Object> columns = new ArrayList<>(row.getColumns().size());
+    for (int i = 0; i < row.getColumns().size(); i++) {
+      if (!rowkeyIndexes.contains(i)) {
+        columns.add(row.getColumns().get(i));
+      }
+    }
+    return new GenericRow(columns);
+  }
+}
@@ -17,6 +17,8 @@
 package io.confluent.ksql.util;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -29,14 +31,30 @@ public class CleanUpUtil {
   }
 
   public void cleanUpQuery(QueryMetadata queryMetadata) {
-    Set<String> topicSet = kafkaTopicClient.listTopicNames();
-    if (topicSet == null) {
-      return;
-    }
-    List<String> topicsToDeleteList = new ArrayList<>();
-    for (String topicName: topicSet) {
-      if (isInternalTopic(topicName, queryMetadata.getQueryApplicationId())) {
-        topicsToDeleteList.add(topicName);
+    cleanUpQueries(Collections.singleton(queryMetadata.getQueryApplicationId()));
+  }
+
+  public void cleanUpQueries(Collection<String> applicationIds) {
+    cleanUpQueries(applicationIds, Collections.emptySet());
+  }
+
+  /**
+   * Deletes the internal topics of the given applications, and the given internal topics of
+   * applications whose internal topics are known, with a single deletion request. The topics of
+   * the cluster are only listed, once, if there are applications whose topics are not known.
+   */
+  public void cleanUpQueries(Collection<String> applicationIds,
+                             Collection<String> internalTopicNames) {
+    List<String> topicsToDeleteList = new ArrayList<>(internalTopicNames);
+    Set<String> topicSet = applicationIds.isEmpty() ? null : kafkaTopicClient.listTopicNames();
+    if (topicSet != null) {
+      for (String topicName: topicSet) {
+        for (String applicationId : applicationIds) {
+          if (isInternalTopic(topicName, applicationId)) {
+            topicsToDeleteList.add(topicName);
+            break;
+          }
+        }
       }
     }
     if (!topicsToDeleteList.isEmpty()) {
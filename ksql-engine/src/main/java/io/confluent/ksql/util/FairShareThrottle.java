@@ -0,0 +1,115 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Divides a rate, records or bytes per second, fairly among the streams applications of the
+ * persistent queries that run at the same time.
+ *
+ * <p>Each application gets a share of the rate, the rate divided by the number of applications,
+ * which changes as applications start and stop. An application can always read at its share,
+ * so one that reads fast can't take the rate of the others. Past its share, it may read as much
+ * of the rate of the server as the others leave unused: only when the server is at its rate is
+ * an application held to its share.
+ */
+public class FairShareThrottle {
+
+  private final long permitsPerSecond;
+  private final Throttle server;
+  private final Map<String, Share> shares = new HashMap<>();
+
+  public FairShareThrottle(final long permitsPerSecond) {
+    if (permitsPerSecond <= 0) {
+      throw new KsqlException("A throttle needs a positive rate: " + permitsPerSecond);
+    }
+    this.permitsPerSecond = permitsPerSecond;
+    this.server = new Throttle(permitsPerSecond);
+  }
+
+  public long getPermitsPerSecond() {
+    return permitsPerSecond;
+  }
+
+  /**
+   * Gives the application with the given id a share of the rate, and the shares of the others
+   * shrink to make room for it.
+   *
+   * @return the throttle of the share, the one the application already has if it has one
+   */
+  public synchronized Throttle addShare(final String applicationId) {
+    Share share = shares.get(applicationId);
+    if (share == null) {
+      share = new Share(server, permitsPerSecond);
+      shares.put(applicationId, share);
+      divide();
+    }
+    return share;
+  }
+
+  /**
+   * Takes the share of the application with the given id back, and the shares of the others
+   * grow into it.
+   */
+  public synchronized void removeShare(final String applicationId) {
+    if (shares.remove(applicationId) != null && !shares.isEmpty()) {
+      divide();
+    }
+  }
+
+  public synchronized int getShareCount() {
+    return shares.size();
+  }
+
+  private void divide() {
+    final long permitsPerShare = Math.max(1, permitsPerSecond / shares.size());
+    for (Throttle share : shares.values()) {
+      share.setPermitsPerSecond(permitsPerShare);
+    }
+  }
+
+  /**
+   * The throttle of the share of an application, whose rate is the fair share. Permits within
+   * the share are always handed out, and taken from the rate of the server too; permits past it
+   * are handed out while the server has permits to spare, and otherwise at the rate of the share.
+   */
+  private static final class Share extends Throttle {
+
+    private final Throttle server;
+
+    private Share(final Throttle server, final long permitsPerSecond) {
+      super(permitsPerSecond);
+      this.server = server;
+    }
+
+    @Override
+    synchronized long reserve(final long permits, final long nowNanos) {
+      if (waitNanos(nowNanos) == 0) {
+        super.reserve(permits, nowNanos);
+        server.reserve(permits, nowNanos);
+        return 0;
+      }
+      if (server.reserve(permits, nowNanos) == 0) {
+        // Borrowed from what the other applications leave unused, so not charged to the share
+        return 0;
+      }
+      return super.reserve(permits, nowNanos);
+    }
+  }
+}
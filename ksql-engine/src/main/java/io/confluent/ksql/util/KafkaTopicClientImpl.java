@@ -28,6 +28,7 @@ import org.apache.kafka.clients.admin.TopicDescription;
 import org.apache.kafka.common.KafkaFuture;
 import org.apache.kafka.common.Node;
 import org.apache.kafka.common.config.ConfigResource;
+import org.apache.kafka.common.errors.UnknownTopicOrPartitionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -119,6 +120,11 @@ public class KafkaTopicClientImpl implements KafkaTopicClient {
     for (final Map.Entry<String, KafkaFuture<Void>> entry : results.entrySet()) {
       try {
         entry.getValue().get(30, TimeUnit.SECONDS);
+      } catch (ExecutionException e) {
+        // A topic that doesn't exist is as good as deleted
+        if (!(e.getCause() instanceof UnknownTopicOrPartitionException)) {
+          failList.add(entry.getKey());
+        }
       } catch (Exception e) {
         failList.add(entry.getKey());
       }
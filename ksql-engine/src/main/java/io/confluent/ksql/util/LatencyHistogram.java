@@ -0,0 +1,79 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Histogram of latencies in buckets of powers of two microseconds, cheap enough to record every
+ * row: recording takes no locks and allocates nothing. Percentiles are reported as the upper
+ * bound of the bucket they fall in, so they are within a factor of two of the exact value.
+ */
+public class LatencyHistogram {
+
+  private static final int BUCKETS = 32;
+
+  // bucket i counts latencies under 2^i microseconds and, except the first, at least 2^(i-1)
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+  public void record(final long nanos) {
+    final long micros = Math.max(0, nanos) / 1000;
+    final int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    counts.incrementAndGet(bucket);
+    maxNanos.accumulate(nanos);
+  }
+
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return the upper bound in milliseconds of the bucket the percentile falls in, or 0 if
+   *     nothing has been recorded
+   */
+  public double getPercentileMs(final double percentile) {
+    final long[] snapshot = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      count += snapshot[i];
+    }
+    if (count == 0) {
+      return 0;
+    }
+    final long rank = (long) Math.ceil(count * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank && snapshot[i] > 0) {
+        return Math.min((1L << i) / 1000.0, getMaxMs());
+      }
+    }
+    return getMaxMs();
+  }
+
+  public double getMaxMs() {
+    return maxNanos.get() / 1000000.0;
+  }
+}
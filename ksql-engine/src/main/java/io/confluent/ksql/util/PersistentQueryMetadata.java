@@ -22,11 +22,24 @@ import io.confluent.ksql.planner.plan.OutputNode;
 import org.apache.kafka.streams.KafkaStreams;
 
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 
 public class PersistentQueryMetadata extends QueryMetadata {
 
-  private final long id;
+  private static final long RESTART_CLOSE_TIMEOUT_MS = 30000;
 
+  private final long id;
+  private final SharedKafkaStreams sharedKafkaStreams;
+  private final AtomicBoolean gate;
+  private final QueryMetrics queryMetrics;
+  private IntFunction<KafkaStreams> streamsFactory;
+  private StreamsAllocation streamsAllocation;
+  private boolean stopped;
+  // Stream threads to start the query with again after a restart failed, 0 if none did
+  private int recoveryThreads;
 
   public PersistentQueryMetadata(final String statementString,
                                  final KafkaStreams kafkaStreams,
@@ -37,16 +50,232 @@ public class PersistentQueryMetadata extends QueryMetadata {
                                  final String queryApplicationId,
                                  final KafkaTopicClient kafkaTopicClient,
                                  final KsqlConfig ksqlConfig) {
+    this(statementString, kafkaStreams, outputNode, () -> executionPlan, id, dataSourceType,
+         queryApplicationId, kafkaTopicClient, ksqlConfig, new QueryMetrics());
+  }
+
+  public PersistentQueryMetadata(final String statementString,
+                                 final KafkaStreams kafkaStreams,
+                                 final OutputNode outputNode,
+                                 final Supplier<String> executionPlan,
+                                 final long id,
+                                 final DataSource.DataSourceType dataSourceType,
+                                 final String queryApplicationId,
+                                 final KafkaTopicClient kafkaTopicClient,
+                                 final KsqlConfig ksqlConfig,
+                                 final QueryMetrics queryMetrics) {
     super(statementString, kafkaStreams, outputNode, executionPlan, dataSourceType,
           queryApplicationId, kafkaTopicClient, ksqlConfig);
     this.id = id;
+    this.sharedKafkaStreams = null;
+    this.gate = null;
+    this.queryMetrics = queryMetrics;
+  }
 
+  /**
+   * Metadata of a query that runs in the streams application of a shared source group,
+   * behind the given gate.
+   */
+  public PersistentQueryMetadata(final String statementString,
+                                 final SharedKafkaStreams sharedKafkaStreams,
+                                 final AtomicBoolean gate,
+                                 final OutputNode outputNode,
+                                 final Supplier<String> executionPlan,
+                                 final long id,
+                                 final DataSource.DataSourceType dataSourceType,
+                                 final String queryApplicationId,
+                                 final KafkaTopicClient kafkaTopicClient,
+                                 final KsqlConfig ksqlConfig,
+                                 final QueryMetrics queryMetrics) {
+    super(statementString, sharedKafkaStreams.getKafkaStreams(), outputNode, executionPlan,
+          dataSourceType, queryApplicationId, kafkaTopicClient, ksqlConfig);
+    this.id = id;
+    this.sharedKafkaStreams = sharedKafkaStreams;
+    this.gate = gate;
+    this.queryMetrics = queryMetrics;
   }
 
   public long getId() {
     return id;
   }
 
+  public QueryMetrics getQueryMetrics() {
+    return queryMetrics;
+  }
+
+  /**
+   * @return the name the metrics of the query are registered over JMX under
+   */
+  public String getMetricsName() {
+    return metricsName(id);
+  }
+
+  public static String metricsName(final long queryId) {
+    return "query_" + queryId;
+  }
+
+  /**
+   * @return true if the query shares its source, and its streams application, with other
+   *     queries
+   */
+  public boolean isSharingSource() {
+    return sharedKafkaStreams != null;
+  }
+
+  /**
+   * Sets the factory of the streams of the query with a given number of stream threads, which
+   * lets the query be restarted with a different number of them.
+   */
+  public synchronized void setStreamsFactory(final IntFunction<KafkaStreams> streamsFactory) {
+    this.streamsFactory = streamsFactory;
+  }
+
+  /**
+   * Sets the allocation of the stream threads and state store memory of the query from the
+   * budgets of the server, taken when the query is started and given back once it is stopped.
+   * Queries sharing their streams application share the allocation of the application instead.
+   */
+  public synchronized void setStreamsAllocation(final StreamsAllocation streamsAllocation) {
+    this.streamsAllocation = streamsAllocation;
+  }
+
+  /**
+   * @return true if the query can be restarted with a different number of stream threads,
+   *     which queries sharing their streams application can't
+   */
+  public synchronized boolean isRestartable() {
+    return streamsFactory != null && sharedKafkaStreams == null && !stopped
+           && recoveryThreads == 0;
+  }
+
+  /**
+   * Restarts the query with the given number of stream threads. Its streams are closed, which
+   * commits their offsets and keeps their local state, and replaced by streams of the same
+   * application, which pick up where the old ones stopped. The query is not processing in
+   * between, and its partitions are rebalanced between the instances of the application.
+   *
+   * <p>The streams are given half a minute to close, so a thread that doesn't stop can't hold
+   * up the caller for good. Stream threads waiting on the throttles of the query stop waiting
+   * while it closes. Once the old streams are closed the query must run again: if the new
+   * streams can't be built or started, it is started again with the stream threads it had. If
+   * that fails too, or the old streams don't close in time, the query is left to
+   * {@link #recover}, which starts it with the threads it had once its old streams are closed.
+   */
+  public synchronized void restart(final int streamThreads) {
+    if (!isRestartable()) {
+      throw new KsqlException("Query " + id + " can't be restarted.");
+    }
+    final QueryQuota quota = queryMetrics.getQuota();
+    final int previousThreads = quota != null && quota.getStreamThreads() > 0
+        ? quota.getStreamThreads()
+        : streamThreads;
+    final KafkaStreams kafkaStreams = getKafkaStreams();
+    recoveryThreads = previousThreads;
+    setStopping(true);
+    try {
+      kafkaStreams.close(RESTART_CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } finally {
+      setStopping(false);
+    }
+    if (kafkaStreams.state() != KafkaStreams.State.NOT_RUNNING) {
+      throw new KsqlException("Could not stop query " + id + " to restart it, it will be "
+                              + "started again once stopped. Query status is: "
+                              + kafkaStreams.state());
+    }
+    try {
+      startStreams(streamThreads);
+    } catch (RuntimeException e) {
+      try {
+        startStreams(previousThreads);
+      } catch (RuntimeException recoveryError) {
+        e.addSuppressed(recoveryError);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * @return true if a restart of the query failed and it has yet to be started again
+   */
+  public synchronized boolean isRecovering() {
+    return recoveryThreads > 0 && !stopped;
+  }
+
+  /**
+   * Starts the query again with the stream threads it had before a restart that failed, once
+   * the streams it had are closed.
+   *
+   * @return true if the query was started, false if there was nothing to recover or the old
+   *     streams are still closing
+   */
+  public synchronized boolean recover() {
+    if (!isRecovering() || getKafkaStreams().state() != KafkaStreams.State.NOT_RUNNING) {
+      return false;
+    }
+    startStreams(recoveryThreads);
+    return true;
+  }
+
+  private void startStreams(final int streamThreads) {
+    final KafkaStreams streams = streamsFactory.apply(streamThreads);
+    replaceKafkaStreams(streams);
+    try {
+      streams.start();
+    } catch (RuntimeException e) {
+      // Closed, so that the query can be started again with other streams
+      streams.close(RESTART_CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      throw e;
+    }
+    recoveryThreads = 0;
+    final QueryQuota quota = queryMetrics.getQuota();
+    if (quota != null) {
+      quota.setStreamThreads(streamThreads);
+    }
+  }
+
+  @Override
+  public synchronized void start() {
+    queryMetrics.register(getMetricsName());
+    if (sharedKafkaStreams != null) {
+      replaceKafkaStreams(sharedKafkaStreams.start());
+      return;
+    }
+    if (streamsAllocation != null) {
+      replaceKafkaStreams(streamsAllocation.allocate(getKafkaStreams()));
+    }
+    super.start();
+  }
+
+  @Override
+  public synchronized boolean stop() {
+    stopped = true;
+    QueryMetrics.unregister(getMetricsName());
+    if (sharedKafkaStreams != null) {
+      if (!sharedKafkaStreams.leave(gate)) {
+        return false;
+      }
+      replaceKafkaStreams(sharedKafkaStreams.getKafkaStreams());
+    }
+    setStopping(true);
+    try {
+      return super.stop();
+    } finally {
+      if (sharedKafkaStreams != null) {
+        sharedKafkaStreams.release();
+      } else if (streamsAllocation != null) {
+        streamsAllocation.release();
+      }
+    }
+  }
+
+  private void setStopping(final boolean stopping) {
+    final QueryQuota quota = queryMetrics.getSourceQuota();
+    if (quota != null) {
+      quota.setStopping(stopping);
+    }
+  }
+
+  // Not by its streams, which are replaced when the query is restarted
   @Override
   public boolean equals(Object o) {
     if (!(o instanceof PersistentQueryMetadata)) {
@@ -55,11 +284,14 @@ public class PersistentQueryMetadata extends QueryMetadata {
 
     PersistentQueryMetadata that = (PersistentQueryMetadata) o;
 
-    return Objects.equals(this.id, that.id) && super.equals(o);
+    return Objects.equals(this.id, that.id)
+        && Objects.equals(getStatementString(), that.getStatementString())
+        && Objects.equals(getOutputNode(), that.getOutputNode())
+        && Objects.equals(getQueryApplicationId(), that.getQueryApplicationId());
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(id, super.hashCode());
+    return Objects.hash(id, getOutputNode(), getQueryApplicationId());
   }
 }
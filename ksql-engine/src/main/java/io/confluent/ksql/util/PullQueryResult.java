@@ -0,0 +1,102 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import io.confluent.ksql.GenericRow;
+
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.streams.state.HostInfo;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The result of a pull query: either the rows found in the state store of this server, or the
+ * server owning the key looked up, which the query has to be sent to instead. Rows are read from
+ * the store as they are iterated, so the rows of a range scan are never all held in memory.
+ */
+public class PullQueryResult {
+
+  /**
+   * The rows of a pull query, which must be closed to release the store iterator they are read
+   * from.
+   */
+  public interface Rows extends Iterator<GenericRow>, AutoCloseable {
+
+    @Override
+    void close();
+  }
+
+  private final Schema schema;
+  private final Rows rows;
+  private final HostInfo owner;
+
+  private PullQueryResult(final Schema schema,
+                          final Rows rows,
+                          final HostInfo owner) {
+    this.schema = schema;
+    this.rows = rows;
+    this.owner = owner;
+  }
+
+  public static PullQueryResult rows(final Schema schema, final List<GenericRow> rows) {
+    final Iterator<GenericRow> iterator = rows.iterator();
+    return rows(schema, new Rows() {
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public GenericRow next() {
+        return iterator.next();
+      }
+
+      @Override
+      public void close() {
+      }
+    });
+  }
+
+  public static PullQueryResult rows(final Schema schema, final Rows rows) {
+    return new PullQueryResult(Objects.requireNonNull(schema), Objects.requireNonNull(rows), null);
+  }
+
+  public static PullQueryResult ownedBy(final HostInfo owner) {
+    return new PullQueryResult(null, null, Objects.requireNonNull(owner));
+  }
+
+  /**
+   * @return true if the key is owned by another server, which then has to answer the query
+   */
+  public boolean isRemote() {
+    return owner != null;
+  }
+
+  public HostInfo getOwner() {
+    return owner;
+  }
+
+  public Schema getSchema() {
+    return schema;
+  }
+
+  public Rows getRows() {
+    return rows;
+  }
+}
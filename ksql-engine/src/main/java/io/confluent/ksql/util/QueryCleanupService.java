@@ -0,0 +1,151 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Closes queries in the background, so the threads that end them, such as the REST threads of
+ * clients disconnecting from transient queries, don't wait for their streams to shut down. A
+ * bounded pool of workers stops the queries and removes their local state; the internal topics
+ * of the queries stopped meanwhile are deleted together every batch interval. Topics of queries
+ * that know the names of their internal topics are deleted by name; the topics of the cluster
+ * are listed, once per batch rather than once per query, only for queries that don't.
+ */
+public class QueryCleanupService implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(QueryCleanupService.class);
+
+  private static final long SHUTDOWN_TIMEOUT_MS = 30000;
+
+  private final CleanUpUtil cleanUpUtil;
+  private final ExecutorService workers;
+  private final ScheduledExecutorService topicDeleter;
+  private final Queue<String> pendingApplicationIds = new ConcurrentLinkedQueue<>();
+  private final Queue<String> pendingTopicNames = new ConcurrentLinkedQueue<>();
+
+  public QueryCleanupService(final KafkaTopicClient kafkaTopicClient,
+                             final KsqlConfig ksqlConfig) {
+    this(new CleanUpUtil(kafkaTopicClient),
+         (Integer) ksqlConfig.get(KsqlConfig.KSQL_QUERY_CLEANUP_THREADS_CONFIG),
+         (Long) ksqlConfig.get(KsqlConfig.KSQL_QUERY_CLEANUP_BATCH_INTERVAL_MS_CONFIG));
+  }
+
+  QueryCleanupService(final CleanUpUtil cleanUpUtil,
+                      final int threads,
+                      final long batchIntervalMs) {
+    this.cleanUpUtil = cleanUpUtil;
+    this.workers = Executors.newFixedThreadPool(
+        Math.max(1, threads), daemonThreads("ksql-query-cleanup-"));
+    this.topicDeleter =
+        Executors.newSingleThreadScheduledExecutor(daemonThreads("ksql-topic-cleanup-"));
+    topicDeleter.scheduleWithFixedDelay(
+        this::deletePendingTopics, batchIntervalMs, batchIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Closes the query in the background. Once the service is closed, the query is closed on the
+   * calling thread instead.
+   */
+  public void submit(final QueryMetadata queryMetadata) {
+    try {
+      workers.execute(() -> stop(queryMetadata));
+    } catch (RejectedExecutionException e) {
+      queryMetadata.close();
+    }
+  }
+
+  /**
+   * Waits for the queries submitted so far to be closed and deletes their internal topics.
+   */
+  @Override
+  public void close() {
+    workers.shutdown();
+    topicDeleter.shutdown();
+    try {
+      if (!workers.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        log.warn("Timed out waiting for queries to be closed.");
+      }
+      topicDeleter.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    deletePendingTopics();
+  }
+
+  private void stop(final QueryMetadata queryMetadata) {
+    try {
+      if (queryMetadata.stop()) {
+        final Set<String> internalTopicNames = queryMetadata.getInternalTopicNames();
+        if (internalTopicNames == null) {
+          pendingApplicationIds.add(queryMetadata.getQueryApplicationId());
+        } else {
+          pendingTopicNames.addAll(internalTopicNames);
+        }
+      }
+    } catch (RuntimeException e) {
+      log.error("Failed to close query {}", queryMetadata.getQueryApplicationId(), e);
+    }
+  }
+
+  void deletePendingTopics() {
+    final Set<String> applicationIds = new HashSet<>();
+    for (String applicationId = pendingApplicationIds.poll();
+         applicationId != null;
+         applicationId = pendingApplicationIds.poll()) {
+      applicationIds.add(applicationId);
+    }
+    final Set<String> topicNames = new HashSet<>();
+    for (String topicName = pendingTopicNames.poll();
+         topicName != null;
+         topicName = pendingTopicNames.poll()) {
+      topicNames.add(topicName);
+    }
+    if (applicationIds.isEmpty() && topicNames.isEmpty()) {
+      return;
+    }
+    try {
+      cleanUpUtil.cleanUpQueries(applicationIds, topicNames);
+    } catch (RuntimeException e) {
+      log.error("Failed to delete the internal topics of applications {} and topics {}",
+                applicationIds, topicNames, e);
+    }
+  }
+
+  private static ThreadFactory daemonThreads(final String prefix) {
+    final AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      final Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+
+package io.confluent.ksql.util;
+
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * How far a persistent query is behind on its source topics, as of when it was last checked:
+ * the records between the offset the query committed and the end offset of each source
+ * partition, and the age of the oldest of those records.
+ */
+public class QueryLag {
+
+  public static final QueryLag NONE = new QueryLag(Collections.emptyMap(), 0, 0);
+
+  private final Map<TopicPartition, Long> partitionLagRecords;
+  private final long lagMs;
+  private final long checkedTimestamp;
+
+  public QueryLag(final Map<TopicPartition, Long> partitionLagRecords,
+                  final long lagMs,
+                  final long checkedTimestamp) {
+    this.partitionLagRecords = Collections.unmodifiableMap(new HashMap<>(partitionLagRecords));
+    this.lagMs = lagMs;
+    this.checkedTimestamp = checkedTimestamp;
+  }
+
+  /**
+   * @return the records behind in each source partition the query has committed offsets for
+   */
+  public Map<TopicPartition, Long> getPartitionLagRecords() {
+    return partitionLagRecords;
+  }
+
+  public long getLagRecords() {
+    long lagRecords = 0;
+    for (long partitionLag : partitionLagRecords.values()) {
+      lagRecords += partitionLag;
+    }
+    return lagRecords;
+  }
+
+  /**
+   * @return the age of the oldest record the query has yet to commit, 0 if it is caught up
+   */
+  public long getLagMs() {
+    return lagMs;
+  }
+
+  /**
+   * @return when the lag was checked, 0 if it never was
+   */
+  public long getCheckedTimestamp() {
+    return checkedTimestamp;
+  }
+
+  @Override
+  public String toString() {
+    return "QueryLag{lagRecords=" + getLagRecords() + ", lagMs=" + lagMs
+           + ", partitions=" + partitionLagRecords.size() + "}";
+  }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The LIMIT of a transient query, shared by every thread producing its rows, so the query
+ * delivers exactly as many rows as the limit however many partitions and threads it reads with.
+ * A row is counted when it is admitted and reaching the limit is only reported once every
+ * admitted row has been delivered to the queue, so a reader that finds the limit reached and the
+ * queue empty has read every row. An admitted row the queue drops by its overflow policy gives
+ * its admission back, so that a later row takes its place, whether it is the row being delivered
+ * or, under DROP_OLDEST or SAMPLE, a delivered row evicted from the queue to make room for it.
+ */
+public class QueryLimit {
+
+  private static final QueryLimit NONE = new QueryLimit(-1);
+
+  private final long limit;
+  private final AtomicLong admitted = new AtomicLong();
+  private final AtomicLong delivered = new AtomicLong();
+
+  private QueryLimit(final long limit) {
+    this.limit = limit;
+  }
+
+  public static QueryLimit of(final Optional<Integer> limit) {
+    return limit.isPresent() ? new QueryLimit(limit.get()) : NONE;
+  }
+
+  public static QueryLimit none() {
+    return NONE;
+  }
+
+  public boolean isLimited() {
+    return limit >= 0;
+  }
+
+  /**
+   * @return true if the row may be delivered, in which case {@link #delivered()} must be called
+   *     once it has been
+   */
+  public boolean tryAdmit() {
+    if (!isLimited()) {
+      return true;
+    }
+    // rejected rows are not counted, so an admission given back can be taken by a later row
+    long current;
+    do {
+      current = admitted.get();
+      if (current >= limit) {
+        return false;
+      }
+    } while (!admitted.compareAndSet(current, current + 1));
+    return true;
+  }
+
+  /**
+   * Delivers an admitted row to the queue, counting it as delivered only if the queue took it.
+   *
+   * @return true if the queue took the row, false if its overflow policy dropped it
+   */
+  public <E> boolean deliver(final BlockingQueue<E> queue, final E row)
+      throws InterruptedException {
+    final RingBufferQueue.Insertion insertion;
+    if (queue instanceof RingBufferQueue) {
+      insertion = ((RingBufferQueue<E>) queue).insert(row);
+    } else {
+      queue.put(row);
+      insertion = RingBufferQueue.Insertion.ADDED;
+    }
+    switch (insertion) {
+      case ADDED:
+        delivered();
+        return true;
+      case REPLACED_OLDEST:
+        // the row takes the place of the evicted one, which is no longer delivered
+        if (isLimited()) {
+          admitted.decrementAndGet();
+        }
+        return true;
+      case DROPPED:
+      default:
+        if (isLimited()) {
+          admitted.decrementAndGet();
+        }
+        return false;
+    }
+  }
+
+  public void delivered() {
+    if (isLimited()) {
+      delivered.incrementAndGet();
+    }
+  }
+
+  public boolean isReached() {
+    return isLimited() && delivered.get() >= limit;
+  }
+}
@@ -23,18 +23,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
 
 public class QueryMetadata {
 
   private static final Logger log = LoggerFactory.getLogger(QueryMetadata.class);
   private final String statementString;
-  private final KafkaStreams kafkaStreams;
+  private volatile KafkaStreams kafkaStreams;
+  private Thread.UncaughtExceptionHandler uncaughtExceptionHandler;
   private final OutputNode outputNode;
-  private final String executionPlan;
+  private final Supplier<String> executionPlan;
   private final DataSource.DataSourceType dataSourceType;
   private final String queryApplicationId;
   private final KafkaTopicClient kafkaTopicClient;
   private final KsqlConfig ksqlConfig;
+  private volatile Set<String> internalTopicNames;
 
   public QueryMetadata(final String statementString,
                        final KafkaStreams kafkaStreams,
@@ -44,6 +48,22 @@ public class QueryMetadata {
                        final String queryApplicationId,
                        final KafkaTopicClient kafkaTopicClient,
                        final KsqlConfig ksqlConfig) {
+    this(statementString, kafkaStreams, outputNode, () -> executionPlan, dataSourceType,
+         queryApplicationId, kafkaTopicClient, ksqlConfig);
+  }
+
+  /**
+   * Metadata of a query whose execution plan is rendered each time it is asked for, so that it
+   * can show how the query has been running.
+   */
+  public QueryMetadata(final String statementString,
+                       final KafkaStreams kafkaStreams,
+                       final OutputNode outputNode,
+                       final Supplier<String> executionPlan,
+                       final DataSource.DataSourceType dataSourceType,
+                       final String queryApplicationId,
+                       final KafkaTopicClient kafkaTopicClient,
+                       final KsqlConfig ksqlConfig) {
     this.statementString = statementString;
     this.kafkaStreams = kafkaStreams;
     this.outputNode = outputNode;
@@ -67,7 +87,7 @@ public class QueryMetadata {
   }
 
   public String getExecutionPlan() {
-    return executionPlan;
+    return executionPlan.get();
   }
 
   public DataSource.DataSourceType getDataSourceType() {
@@ -78,15 +98,72 @@ public class QueryMetadata {
     return queryApplicationId;
   }
 
+  public void setUncaughtExceptionHandler(final Thread.UncaughtExceptionHandler handler) {
+    this.uncaughtExceptionHandler = handler;
+    kafkaStreams.setUncaughtExceptionHandler(handler);
+  }
+
+  /**
+   * Replaces the streams of the query with the given streams of the same application, which get
+   * the uncaught exception handler of the old ones unless they are already running.
+   */
+  protected void replaceKafkaStreams(final KafkaStreams newKafkaStreams) {
+    if (newKafkaStreams == kafkaStreams) {
+      return;
+    }
+    if (uncaughtExceptionHandler != null
+        && newKafkaStreams.state() == KafkaStreams.State.CREATED) {
+      newKafkaStreams.setUncaughtExceptionHandler(uncaughtExceptionHandler);
+    }
+    this.kafkaStreams = newKafkaStreams;
+  }
+
+  /**
+   * @return the names of the internal topics the query may have created, or null if they are
+   *     not known and have to be found by listing the topics of the cluster
+   */
+  public Set<String> getInternalTopicNames() {
+    return internalTopicNames;
+  }
+
+  public void setInternalTopicNames(final Set<String> internalTopicNames) {
+    this.internalTopicNames = internalTopicNames;
+  }
+
+  public void start() {
+    kafkaStreams.start();
+  }
+
   public void close() {
-    kafkaStreams.close();
+    if (stop()) {
+      kafkaTopicClient.deleteInternalTopics(queryApplicationId);
+    }
+  }
+
+  /**
+   * Stops the query and removes its local state, leaving its internal topics in place, so they
+   * can be deleted together with those of other queries.
+   *
+   * @return true if the query is no longer running and its internal topics can be deleted
+   */
+  public boolean stop() {
+    try {
+      kafkaStreams.close();
+    } finally {
+      try {
+        TableRowCache.unregisterAll(queryApplicationId);
+      } catch (KsqlException e) {
+        log.warn("Could not clean up the table row caches of query with application id: {}",
+                 queryApplicationId, e);
+      }
+    }
     if (kafkaStreams.state() == KafkaStreams.State.NOT_RUNNING) {
       kafkaStreams.cleanUp();
-      kafkaTopicClient.deleteInternalTopics(queryApplicationId);
-    } else {
-      log.error("Could not clean up the query with application id: {}. Query status is: {}",
-                queryApplicationId, kafkaStreams.state());
+      return true;
     }
+    log.error("Could not clean up the query with application id: {}. Query status is: {}",
+              queryApplicationId, kafkaStreams.state());
+    return false;
   }
 
   @Override
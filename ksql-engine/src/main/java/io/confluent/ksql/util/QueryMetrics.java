@@ -0,0 +1,376 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import io.confluent.ksql.GenericRow;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Runtime metrics of a persistent query, collected as its rows pass through the serdes of its
+ * sources and sink rather than from the metrics of its streams application, so they are per
+ * query even when queries share an application.
+ *
+ * <p>Rows are counted in when deserialized and out when serialized to the sink topic. The
+ * processing latency of a row is the time from when the stream thread starts processing a source
+ * row, see {@link #startProcessing()}, to when the output it leads to is serialized. It is only
+ * recorded for queries that write streams: the rows of tables are written when the record cache
+ * is flushed, long after, and not in response to, the source row last processed. Counters are
+ * {@link LongAdder}s and the stream thread of a row is its context, so recording takes no locks.
+ *
+ * <p>The metrics are registered over JMX while the query runs, from when it is started until it
+ * is stopped.
+ *
+ * <p>If the query has a {@link QueryQuota}, its source rows are throttled as they are read. Its
+ * consumer lag is not seen by the serdes, and is set from outside as it is checked.
+ */
+public class QueryMetrics implements QueryMetricsMBean {
+
+  /**
+   * Build property the metrics of the query being built are passed to the plan nodes under.
+   */
+  public static final String PROPERTY = "ksql.query.metrics";
+
+  private static final String JMX_DOMAIN = "io.confluent.ksql";
+  private static final String JMX_TYPE = "QueryMetrics";
+
+  // The query whose source rows the thread last read, for errors raised while processing them
+  private static final ThreadLocal<QueryMetrics> CURRENT = new ThreadLocal<>();
+  private static final ThreadLocal<long[]> PROCESSING_START_NANOS =
+      ThreadLocal.withInitial(() -> new long[1]);
+
+  private final LongAdder messagesIn = new LongAdder();
+  private final LongAdder bytesIn = new LongAdder();
+  private final LongAdder messagesOut = new LongAdder();
+  private final LongAdder deserializationErrors = new LongAdder();
+  private final LongAdder expressionErrors = new LongAdder();
+  private final LatencyHistogram processingLatency = new LatencyHistogram();
+  private final Rate messagesInRate = new Rate(messagesIn);
+  private final Rate messagesOutRate = new Rate(messagesOut);
+  private final Rate bytesInRate = new Rate(bytesIn);
+  private volatile long lastMessageTimestamp;
+  private volatile QueryQuota quota;
+  private volatile QueryLag lag = QueryLag.NONE;
+  private volatile SharedSourceMetrics sharedSource;
+
+  public static QueryMetrics from(final Map<String, Object> props) {
+    return (QueryMetrics) props.get(PROPERTY);
+  }
+
+  /**
+   * Marks the start of the processing of a source row on the calling stream thread, which every
+   * source of a query does as it starts processing a row read from its topic.
+   */
+  public static void startProcessing() {
+    PROCESSING_START_NANOS.get()[0] = System.nanoTime();
+  }
+
+  /**
+   * Sets the query whose rows the calling stream thread is processing, for queries whose source
+   * rows are read once for a group of queries.
+   */
+  public static void setCurrent(final QueryMetrics queryMetrics) {
+    CURRENT.set(queryMetrics);
+  }
+
+  /**
+   * Counts an error evaluating an expression against the query whose rows the calling thread
+   * is processing.
+   */
+  public static void recordExpressionError() {
+    final QueryMetrics current = CURRENT.get();
+    if (current != null) {
+      current.expressionErrors.increment();
+    }
+  }
+
+  public QueryQuota getQuota() {
+    return quota;
+  }
+
+  public void setQuota(final QueryQuota quota) {
+    this.quota = quota;
+  }
+
+  public QueryLag getLag() {
+    return lag;
+  }
+
+  public void setLag(final QueryLag lag) {
+    this.lag = lag;
+  }
+
+  void setSharedSource(final SharedSourceMetrics sharedSource) {
+    this.sharedSource = sharedSource;
+  }
+
+  /**
+   * @return the quota the stream threads wait on as they read the source of the query: that of
+   *     the group if the query reads its source once for a group of queries, its own otherwise
+   */
+  QueryQuota getSourceQuota() {
+    final SharedSourceMetrics sharedSource = this.sharedSource;
+    return sharedSource != null ? sharedSource.getQuota() : quota;
+  }
+
+  /**
+   * @return serde that counts the rows it deserializes, and the rows it fails to, as read by
+   *     this query, and holds them to the quota of the query. If the query reads its source
+   *     once for a group of queries, the serde counts them for every query of the group.
+   */
+  public Serde<GenericRow> wrapSource(final Serde<GenericRow> serde) {
+    if (sharedSource != null) {
+      return sharedSource.wrapSource(serde);
+    }
+    final Deserializer<GenericRow> deserializer = serde.deserializer();
+    return Serdes.serdeFrom(serde.serializer(), new Deserializer<GenericRow>() {
+      @Override
+      public void configure(final Map<String, ?> configs, final boolean isKey) {
+        deserializer.configure(configs, isKey);
+      }
+
+      @Override
+      public GenericRow deserialize(final String topic, final byte[] bytes) {
+        CURRENT.set(QueryMetrics.this);
+        final int size = bytes == null ? 0 : bytes.length;
+        if (quota != null) {
+          quota.acquire(size);
+        }
+        recordSourceRow(size, 0);
+        try {
+          return deserializer.deserialize(topic, bytes);
+        } catch (RuntimeException e) {
+          recordDeserializationError();
+          throw e;
+        }
+      }
+
+      @Override
+      public void close() {
+        deserializer.close();
+      }
+    });
+  }
+
+  void recordSourceRow(final int size, final long throttledNanos) {
+    messagesIn.increment();
+    bytesIn.add(size);
+    lastMessageTimestamp = System.currentTimeMillis();
+    if (throttledNanos > 0 && quota != null) {
+      quota.addThrottledNanos(throttledNanos);
+    }
+  }
+
+  void recordDeserializationError() {
+    deserializationErrors.increment();
+  }
+
+  /**
+   * @param recordsLatency true if each row is serialized while processing the source row it
+   *     results from, so its processing latency can be recorded; false for rows of tables,
+   *     which are serialized as the record cache is flushed
+   * @return serde that counts the rows it serializes, as written by this query, and records
+   *     their processing latency if asked to
+   */
+  public Serde<GenericRow> wrapSink(final Serde<GenericRow> serde, final boolean recordsLatency) {
+    final Serializer<GenericRow> serializer = serde.serializer();
+    return Serdes.serdeFrom(new Serializer<GenericRow>() {
+      @Override
+      public void configure(final Map<String, ?> configs, final boolean isKey) {
+        serializer.configure(configs, isKey);
+      }
+
+      @Override
+      public byte[] serialize(final String topic, final GenericRow row) {
+        messagesOut.increment();
+        // Cleared once used, so a row that doesn't follow a source row isn't timed from it
+        final long[] start = PROCESSING_START_NANOS.get();
+        if (recordsLatency && start[0] != 0) {
+          processingLatency.record(System.nanoTime() - start[0]);
+        }
+        start[0] = 0;
+        return serializer.serialize(topic, row);
+      }
+
+      @Override
+      public void close() {
+        serializer.close();
+      }
+    }, serde.deserializer());
+  }
+
+  @Override
+  public long getMessagesIn() {
+    return messagesIn.sum();
+  }
+
+  @Override
+  public long getMessagesOut() {
+    return messagesOut.sum();
+  }
+
+  @Override
+  public double getMessagesInPerSecond() {
+    return messagesInRate.get();
+  }
+
+  @Override
+  public double getMessagesOutPerSecond() {
+    return messagesOutRate.get();
+  }
+
+  @Override
+  public long getBytesIn() {
+    return bytesIn.sum();
+  }
+
+  @Override
+  public double getBytesInPerSecond() {
+    return bytesInRate.get();
+  }
+
+  @Override
+  public long getThrottledMs() {
+    return quota == null ? 0 : quota.getThrottledMs();
+  }
+
+  @Override
+  public int getStreamThreads() {
+    return quota == null ? 0 : quota.getStreamThreads();
+  }
+
+  @Override
+  public long getStateStoreBytes() {
+    return quota == null ? 0 : quota.getStateStoreBytes();
+  }
+
+  @Override
+  public long getLagRecords() {
+    return lag.getLagRecords();
+  }
+
+  @Override
+  public long getLagMs() {
+    return lag.getLagMs();
+  }
+
+  @Override
+  public long getDeserializationErrors() {
+    return deserializationErrors.sum();
+  }
+
+  @Override
+  public long getExpressionErrors() {
+    return expressionErrors.sum();
+  }
+
+  @Override
+  public long getLastMessageTimestamp() {
+    return lastMessageTimestamp;
+  }
+
+  @Override
+  public double getProcessingLatencyP50Ms() {
+    return processingLatency.getPercentileMs(50);
+  }
+
+  @Override
+  public double getProcessingLatencyP99Ms() {
+    return processingLatency.getPercentileMs(99);
+  }
+
+  @Override
+  public double getProcessingLatencyMaxMs() {
+    return processingLatency.getMaxMs();
+  }
+
+  // The number of rows whose processing latency was recorded
+  long getProcessingLatencyCount() {
+    return processingLatency.getCount();
+  }
+
+  /**
+   * Registers these metrics as an MBean of the query with the given name.
+   */
+  public void register(final String queryName) {
+    try {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      final ObjectName name = objectName(queryName);
+      if (!server.isRegistered(name)) {
+        server.registerMBean(this, name);
+      }
+    } catch (JMException e) {
+      throw new KsqlException("Could not register metrics for query: " + queryName, e);
+    }
+  }
+
+  public static void unregister(final String queryName) {
+    try {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      final ObjectName name = objectName(queryName);
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+    } catch (JMException e) {
+      throw new KsqlException("Could not unregister metrics for query: " + queryName, e);
+    }
+  }
+
+  private static ObjectName objectName(final String queryName) throws JMException {
+    return new ObjectName(JMX_DOMAIN + ":type=" + JMX_TYPE
+                          + ",query=" + ObjectName.quote(queryName));
+  }
+
+  /**
+   * Rate of a counter over the time since it was last read, at least a second ago; reads within
+   * a second of each other get the same rate.
+   */
+  private static final class Rate {
+
+    private static final long MIN_INTERVAL_MS = 1000;
+
+    private final LongAdder counter;
+    private long lastCount;
+    private long lastTimeMs = System.currentTimeMillis();
+    private double rate;
+
+    private Rate(final LongAdder counter) {
+      this.counter = counter;
+    }
+
+    synchronized double get() {
+      final long now = System.currentTimeMillis();
+      if (now - lastTimeMs >= MIN_INTERVAL_MS) {
+        final long count = counter.sum();
+        rate = (count - lastCount) * 1000.0 / (now - lastTimeMs);
+        lastCount = count;
+        lastTimeMs = now;
+      }
+      return rate;
+    }
+  }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+
+package io.confluent.ksql.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resource limits of a persistent query, from the WITH clause of the query or else the
+ * configuration, and what the query currently uses of them.
+ *
+ * <p>The stream threads and state store memory of a query are capped when its streams are
+ * built. Its consume rate is capped as it reads: each source row takes a record and its size in
+ * bytes from the throttles of the query and from its share of the throttles of the server, see
+ * {@link FairShareThrottle}, and the stream thread waits when either is ahead of its rate. The
+ * wait is cut short once the query is stopping, so that it can't hold up closing the streams.
+ *
+ * <p>The wait happens as the row is deserialized, in the stream thread, which does nothing else
+ * meanwhile: Kafka Streams doesn't bound the time between polls, but the thread commits its
+ * offsets and runs its punctuations late, for every task it owns rather than just the one that
+ * read the row. A throttled query therefore commits less often and, on failure, reprocesses
+ * more. Queries that share their source in one application, see {@link SharedSourceMetrics},
+ * share their threads too, so all of them stall while their source is throttled.
+ */
+public class QueryQuota {
+
+  // Longest the stream thread sleeps before it checks whether the query is stopping
+  private static final long MAX_SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final int maxStreamThreads;
+  private final long maxStateStoreBytes;
+  private final List<Throttle> recordThrottles = new ArrayList<>();
+  private final List<Throttle> byteThrottles = new ArrayList<>();
+  private final long maxRecordsPerSecond;
+  private final long maxBytesPerSecond;
+  private final LongAdder throttledNanos = new LongAdder();
+  private volatile Throttle serverRecordThrottle;
+  private volatile Throttle serverByteThrottle;
+  private volatile int streamThreads;
+  private volatile long stateStoreBytes;
+  private volatile boolean stopping;
+
+  public QueryQuota(final int maxStreamThreads,
+                    final long maxRecordsPerSecond,
+                    final long maxBytesPerSecond,
+                    final long maxStateStoreBytes) {
+    this.maxStreamThreads = maxStreamThreads;
+    this.maxRecordsPerSecond = maxRecordsPerSecond;
+    this.maxBytesPerSecond = maxBytesPerSecond;
+    this.maxStateStoreBytes = maxStateStoreBytes;
+    if (maxRecordsPerSecond > 0) {
+      recordThrottles.add(new Throttle(maxRecordsPerSecond));
+    }
+    if (maxBytesPerSecond > 0) {
+      byteThrottles.add(new Throttle(maxBytesPerSecond));
+    }
+  }
+
+  /**
+   * @return the quota of a query with the given WITH clause properties, whose limits default to
+   *     those of the given config
+   */
+  public static QueryQuota of(final KsqlConfig ksqlConfig,
+                              final Map<String, Object> withProperties) {
+    return new QueryQuota(
+        (int) limit(ksqlConfig, withProperties, KsqlConstants.MAX_STREAM_THREADS,
+                    KsqlConfig.KSQL_QUERY_MAX_STREAM_THREADS_CONFIG),
+        limit(ksqlConfig, withProperties, KsqlConstants.MAX_CONSUME_RECORDS_PER_SECOND,
+              KsqlConfig.KSQL_QUERY_MAX_CONSUME_RECORDS_PER_SECOND_CONFIG),
+        limit(ksqlConfig, withProperties, KsqlConstants.MAX_CONSUME_BYTES_PER_SECOND,
+              KsqlConfig.KSQL_QUERY_MAX_CONSUME_BYTES_PER_SECOND_CONFIG),
+        limit(ksqlConfig, withProperties, KsqlConstants.MAX_STATE_STORE_BYTES,
+              KsqlConfig.KSQL_QUERY_MAX_STATE_STORE_BYTES_CONFIG));
+  }
+
+  private static long limit(final KsqlConfig ksqlConfig,
+                            final Map<String, Object> withProperties,
+                            final String property,
+                            final String config) {
+    final Object value = withProperties.get(property);
+    return Long.parseLong(String.valueOf(value != null ? value : ksqlConfig.get(config)));
+  }
+
+  /**
+   * Takes a record of the given size from the throttles of the query and its share of those of
+   * the server, waiting on the calling thread until all of them are free or the query is
+   * stopping.
+   *
+   * @return the nanoseconds waited
+   */
+  public long acquire(final int bytes) {
+    final Throttle serverRecords = serverRecordThrottle;
+    final Throttle serverBytes = serverByteThrottle;
+    if (recordThrottles.isEmpty() && byteThrottles.isEmpty()
+        && serverRecords == null && serverBytes == null) {
+      return 0;
+    }
+    final long now = System.nanoTime();
+    long waitNanos = 0;
+    for (Throttle throttle : recordThrottles) {
+      waitNanos = Math.max(waitNanos, throttle.reserve(1, now));
+    }
+    for (Throttle throttle : byteThrottles) {
+      waitNanos = Math.max(waitNanos, throttle.reserve(bytes, now));
+    }
+    if (serverRecords != null) {
+      waitNanos = Math.max(waitNanos, serverRecords.reserve(1, now));
+    }
+    if (serverBytes != null) {
+      waitNanos = Math.max(waitNanos, serverBytes.reserve(bytes, now));
+    }
+    if (waitNanos <= 0) {
+      return 0;
+    }
+    final long waited = sleep(now + waitNanos);
+    throttledNanos.add(waited);
+    return waited;
+  }
+
+  /**
+   * Sleeps until the given time, in slices, so that the query stopping ends the sleep.
+   *
+   * @return the nanoseconds slept
+   */
+  private long sleep(final long untilNanos) {
+    final long start = System.nanoTime();
+    long remaining = untilNanos - start;
+    try {
+      while (remaining > 0 && !stopping) {
+        TimeUnit.NANOSECONDS.sleep(Math.min(remaining, MAX_SLEEP_NANOS));
+        remaining = untilNanos - System.nanoTime();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * Tells the quota whether the query is stopping, as when it is terminated or restarted, in
+   * which case stream threads waiting on its throttles stop waiting and take no more waits.
+   */
+  public void setStopping(final boolean stopping) {
+    this.stopping = stopping;
+  }
+
+  /**
+   * Sets the shares of the throttles of the server the query reads under while it runs.
+   *
+   * @param serverRecordThrottle the share of the records all queries of the server read, or
+   *     {@code null} for none
+   * @param serverByteThrottle the share of the bytes all queries of the server read, or
+   *     {@code null} for none
+   */
+  public void setServerThrottles(final Throttle serverRecordThrottle,
+                                 final Throttle serverByteThrottle) {
+    this.serverRecordThrottle = serverRecordThrottle;
+    this.serverByteThrottle = serverByteThrottle;
+  }
+
+  /**
+   * Charges the query with time waited on throttles outside of its quota, as for queries whose
+   * source is read once for a group of queries.
+   */
+  void addThrottledNanos(final long nanos) {
+    throttledNanos.add(nanos);
+  }
+
+  /**
+   * @return the stream threads the query may ask for, given it asks for the given number
+   */
+  public int capStreamThreads(final int requestedThreads) {
+    return maxStreamThreads > 0 ? Math.min(requestedThreads, maxStreamThreads)
+                                : requestedThreads;
+  }
+
+  public int getMaxStreamThreads() {
+    return maxStreamThreads;
+  }
+
+  public long getMaxRecordsPerSecond() {
+    return maxRecordsPerSecond;
+  }
+
+  public long getMaxBytesPerSecond() {
+    return maxBytesPerSecond;
+  }
+
+  public long getMaxStateStoreBytes() {
+    return maxStateStoreBytes;
+  }
+
+  /**
+   * @return the total time the stream threads of the query have waited on its throttles
+   */
+  public long getThrottledMs() {
+    return TimeUnit.NANOSECONDS.toMillis(throttledNanos.sum());
+  }
+
+  public int getStreamThreads() {
+    return streamThreads;
+  }
+
+  public void setStreamThreads(final int streamThreads) {
+    this.streamThreads = streamThreads;
+  }
+
+  /**
+   * @return the memory the state stores of the query were given, 0 if they aren't limited
+   */
+  public long getStateStoreBytes() {
+    return stateStoreBytes;
+  }
+
+  public void setStateStoreBytes(final long stateStoreBytes) {
+    this.stateStoreBytes = stateStoreBytes;
+  }
+}
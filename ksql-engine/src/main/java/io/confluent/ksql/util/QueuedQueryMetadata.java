@@ -22,13 +22,33 @@ import io.confluent.ksql.planner.plan.OutputNode;
 
 import org.apache.kafka.streams.KafkaStreams;
 import org.apache.kafka.streams.KeyValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
 
 public class QueuedQueryMetadata extends QueryMetadata {
 
+  private static final Logger log = LoggerFactory.getLogger(QueuedQueryMetadata.class);
+
   private final BlockingQueue<KeyValue<String, GenericRow>> rowQueue;
+  private final QueryLimit queryLimit;
+
+  public QueuedQueryMetadata(
+      final String statementString,
+      final KafkaStreams kafkaStreams,
+      final OutputNode outputNode,
+      final String executionPlan,
+      final BlockingQueue<KeyValue<String, GenericRow>> rowQueue,
+      final DataSource.DataSourceType dataSourceType,
+      final String queryApplicationId,
+      final KafkaTopicClient kafkaTopicClient,
+      final KsqlConfig ksqlConfig
+  ) {
+    this(statementString, kafkaStreams, outputNode, executionPlan, rowQueue, QueryLimit.none(),
+         dataSourceType, queryApplicationId, kafkaTopicClient, ksqlConfig);
+  }
 
   public QueuedQueryMetadata(
       final String statementString,
@@ -36,6 +56,7 @@ public class QueuedQueryMetadata extends QueryMetadata {
       final OutputNode outputNode,
       final String executionPlan,
       final BlockingQueue<KeyValue<String, GenericRow>> rowQueue,
+      final QueryLimit queryLimit,
       final DataSource.DataSourceType dataSourceType,
       final String queryApplicationId,
       final KafkaTopicClient kafkaTopicClient,
@@ -44,12 +65,45 @@ public class QueuedQueryMetadata extends QueryMetadata {
     super(statementString, kafkaStreams, outputNode, executionPlan, dataSourceType,
           queryApplicationId, kafkaTopicClient, ksqlConfig);
     this.rowQueue = rowQueue;
+    this.queryLimit = queryLimit;
   }
 
   public BlockingQueue<KeyValue<String, GenericRow>> getRowQueue() {
     return rowQueue;
   }
 
+  /**
+   * @return true once the query has delivered as many rows as its LIMIT, after which it
+   *     produces no more rows and the reader should close it once the queue is empty
+   */
+  public boolean isLimitReached() {
+    return queryLimit.isReached();
+  }
+
+  /**
+   * @return the number of result rows dropped because the client didn't keep up
+   */
+  public long getDroppedRows() {
+    return rowQueue instanceof RingBufferQueue
+           ? ((RingBufferQueue) rowQueue).getDroppedCount()
+           : 0;
+  }
+
+  @Override
+  public boolean stop() {
+    logDroppedRows();
+    return super.stop();
+  }
+
+  protected void logDroppedRows() {
+    final long droppedRows = getDroppedRows();
+    if (droppedRows > 0) {
+      log.warn("Query {} dropped {} result rows the client didn't read in time ({} overflow "
+               + "policy).", getQueryApplicationId(), droppedRows,
+               ((RingBufferQueue) rowQueue).getOverflowPolicy());
+    }
+  }
+
   @Override
   public boolean equals(Object o) {
     if (!(o instanceof QueuedQueryMetadata)) {
@@ -0,0 +1,342 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue over a ring buffer, that decides by its overflow policy what happens to an
+ * element added while it is full: the producer waits for space, the oldest element is dropped,
+ * the new element is dropped, or only a sample of the new elements replaces the oldest ones.
+ * Dropped elements are counted.
+ *
+ * <p>The result rows of transient queries are buffered in it, so that unless the policy is
+ * BLOCK a client reading slowly can't hold up the stream thread of its query.
+ */
+public class RingBufferQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+  public enum OverflowPolicy {
+    BLOCK, DROP_OLDEST, DROP_NEWEST, SAMPLE
+  }
+
+  /**
+   * What adding an element did: the element was added, it was added in place of the oldest
+   * element, which was dropped, or it was dropped itself.
+   */
+  public enum Insertion {
+    ADDED, REPLACED_OLDEST, DROPPED
+  }
+
+  private final Object[] items;
+  private final OverflowPolicy overflowPolicy;
+  private final int sampleRate;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private final LongAdder dropped = new LongAdder();
+  private int head;
+  private int count;
+  private long overflowed;
+
+  public RingBufferQueue(final int capacity,
+                         final OverflowPolicy overflowPolicy,
+                         final int sampleRate) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+    }
+    if (sampleRate < 1) {
+      throw new IllegalArgumentException("Sample rate must be positive: " + sampleRate);
+    }
+    this.items = new Object[capacity];
+    this.overflowPolicy = overflowPolicy;
+    this.sampleRate = sampleRate;
+  }
+
+  /**
+   * @return a queue sized and with the overflow policy configured for transient query results
+   */
+  public static <E> RingBufferQueue<E> forTransientQuery(final KsqlConfig ksqlConfig) {
+    return new RingBufferQueue<>(
+        (Integer) ksqlConfig.get(KsqlConfig.KSQL_TRANSIENT_QUERY_BUFFER_SIZE_CONFIG),
+        OverflowPolicy.valueOf(
+            ksqlConfig.get(KsqlConfig.KSQL_TRANSIENT_QUERY_BUFFER_OVERFLOW_POLICY_CONFIG)
+                .toString().toUpperCase(Locale.ROOT)),
+        (Integer) ksqlConfig.get(KsqlConfig.KSQL_TRANSIENT_QUERY_BUFFER_SAMPLE_RATE_CONFIG));
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  /**
+   * @return the number of elements dropped because the queue was full
+   */
+  public long getDroppedCount() {
+    return dropped.sum();
+  }
+
+  @Override
+  public void put(final E e) throws InterruptedException {
+    putOrDrop(e);
+  }
+
+  /**
+   * Adds the element as {@link #put} does, waiting for space only under the BLOCK policy.
+   *
+   * @return false if the overflow policy dropped the element instead of adding it
+   */
+  public boolean putOrDrop(final E e) throws InterruptedException {
+    return insert(e) != Insertion.DROPPED;
+  }
+
+  /**
+   * Adds the element as {@link #putOrDrop} does, telling whether the oldest element was dropped
+   * to make room for it, so that a caller counting elements can stop counting that one.
+   */
+  public Insertion insert(final E e) throws InterruptedException {
+    checkNotNull(e);
+    lock.lockInterruptibly();
+    try {
+      if (overflowPolicy == OverflowPolicy.BLOCK) {
+        while (count == items.length) {
+          notFull.await();
+        }
+        enqueue(e);
+        return Insertion.ADDED;
+      }
+      return insertOrOverflow(e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean offer(final E e) {
+    checkNotNull(e);
+    lock.lock();
+    try {
+      if (overflowPolicy == OverflowPolicy.BLOCK) {
+        if (count == items.length) {
+          return false;
+        }
+        enqueue(e);
+        return true;
+      }
+      return insertOrOverflow(e) != Insertion.DROPPED;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean offer(final E e, final long timeout, final TimeUnit unit)
+      throws InterruptedException {
+    checkNotNull(e);
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      if (overflowPolicy != OverflowPolicy.BLOCK) {
+        return insertOrOverflow(e) != Insertion.DROPPED;
+      }
+      while (count == items.length) {
+        if (nanos <= 0) {
+          return false;
+        }
+        nanos = notFull.awaitNanos(nanos);
+      }
+      enqueue(e);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public E take() throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while (count == 0) {
+        notEmpty.await();
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public E poll() {
+    lock.lock();
+    try {
+      return count == 0 ? null : dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (count == 0) {
+        if (nanos <= 0) {
+          return null;
+        }
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E peek() {
+    lock.lock();
+    try {
+      return count == 0 ? null : (E) items[head];
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    lock.lock();
+    try {
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int remainingCapacity() {
+    lock.lock();
+    try {
+      return items.length - count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int drainTo(final Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Moves up to maxElements elements to the given collection under a single acquisition of
+   * the lock, so that a consumer can take what is buffered in one batch.
+   */
+  @Override
+  public int drainTo(final Collection<? super E> c, final int maxElements) {
+    if (c == this) {
+      throw new IllegalArgumentException("Can't drain a queue to itself.");
+    }
+    lock.lock();
+    try {
+      final int drained = Math.min(count, maxElements);
+      for (int i = 0; i < drained; i++) {
+        c.add(dequeue());
+      }
+      return drained;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return an iterator over a snapshot of the elements in the queue
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public Iterator<E> iterator() {
+    lock.lock();
+    try {
+      final List<E> snapshot = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        snapshot.add((E) items[(head + i) % items.length]);
+      }
+      return Collections.unmodifiableList(snapshot).iterator();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Insertion insertOrOverflow(final E e) {
+    if (count < items.length) {
+      enqueue(e);
+      return Insertion.ADDED;
+    }
+    switch (overflowPolicy) {
+      case DROP_NEWEST:
+        dropped.increment();
+        return Insertion.DROPPED;
+      case SAMPLE:
+        if (overflowed++ % sampleRate != 0) {
+          dropped.increment();
+          return Insertion.DROPPED;
+        }
+        dequeue();
+        dropped.increment();
+        enqueue(e);
+        return Insertion.REPLACED_OLDEST;
+      case DROP_OLDEST:
+      default:
+        dequeue();
+        dropped.increment();
+        enqueue(e);
+        return Insertion.REPLACED_OLDEST;
+    }
+  }
+
+  private void enqueue(final E e) {
+    items[(head + count) % items.length] = e;
+    count++;
+    notEmpty.signal();
+  }
+
+  @SuppressWarnings("unchecked")
+  private E dequeue() {
+    final E e = (E) items[head];
+    items[head] = null;
+    head = (head + 1) % items.length;
+    count--;
+    notFull.signal();
+    return e;
+  }
+
+  private static void checkNotNull(final Object e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.physical.TopicScanner;
+import io.confluent.ksql.planner.plan.OutputNode;
+import io.confluent.ksql.serde.DataSource;
+
+import org.apache.kafka.streams.KeyValue;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A transient query that scans the topic of its source directly instead of running a Kafka
+ * Streams application, so it has no {@link org.apache.kafka.streams.KafkaStreams}.
+ */
+public class ScanQueryMetadata extends QueuedQueryMetadata {
+
+  private final TopicScanner scanner;
+
+  public ScanQueryMetadata(
+      final String statementString,
+      final TopicScanner scanner,
+      final OutputNode outputNode,
+      final String executionPlan,
+      final BlockingQueue<KeyValue<String, GenericRow>> rowQueue,
+      final QueryLimit queryLimit,
+      final String queryApplicationId,
+      final KafkaTopicClient kafkaTopicClient,
+      final KsqlConfig ksqlConfig
+  ) {
+    super(statementString, null, outputNode, executionPlan, rowQueue, queryLimit,
+          DataSource.DataSourceType.KSTREAM, queryApplicationId, kafkaTopicClient, ksqlConfig);
+    this.scanner = scanner;
+  }
+
+  @Override
+  public void setUncaughtExceptionHandler(final Thread.UncaughtExceptionHandler handler) {
+    scanner.setUncaughtExceptionHandler(handler);
+  }
+
+  @Override
+  public void start() {
+    scanner.start();
+  }
+
+  /**
+   * Stops the scan; the query has no local state or internal topics to remove.
+   */
+  @Override
+  public boolean stop() {
+    scanner.close();
+    logDroppedRows();
+    return false;
+  }
+}
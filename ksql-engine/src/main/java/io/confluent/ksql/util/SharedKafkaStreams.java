@@ -0,0 +1,99 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import org.apache.kafka.streams.KafkaStreams;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The Kafka Streams application of a group of persistent queries that share their source
+ * stream. Each query has a gate in front of its part of the topology. Terminating a query closes
+ * its gate, and the application itself is closed when the last query of the group leaves. Until
+ * then the application keeps reading the whole stream, with the threads it started with.
+ */
+public class SharedKafkaStreams {
+
+  private final StreamsAllocation allocation;
+  private KafkaStreams kafkaStreams;
+  private int members;
+  private boolean started;
+
+  public SharedKafkaStreams(final KafkaStreams kafkaStreams, final int members) {
+    this(kafkaStreams, members, null);
+  }
+
+  /**
+   * @param allocation the allocation of the resources of the application from the budgets of
+   *     the server, or null if it takes none
+   */
+  public SharedKafkaStreams(final KafkaStreams kafkaStreams,
+                            final int members,
+                            final StreamsAllocation allocation) {
+    this.kafkaStreams = kafkaStreams;
+    this.members = members;
+    this.allocation = allocation;
+  }
+
+  public synchronized KafkaStreams getKafkaStreams() {
+    return kafkaStreams;
+  }
+
+  /**
+   * Starts the application, unless another query of the group already did.
+   *
+   * @return the streams of the application, which are rebuilt if the budgets of the server
+   *     granted less than they were built with
+   */
+  public synchronized KafkaStreams start() {
+    if (!started) {
+      if (allocation != null) {
+        kafkaStreams = allocation.allocate(kafkaStreams);
+      }
+      kafkaStreams.start();
+      started = true;
+    }
+    return kafkaStreams;
+  }
+
+  /**
+   * Gives the resources of the application back to the budgets of the server, once the last
+   * query of the group has stopped it.
+   */
+  public void release() {
+    if (allocation != null) {
+      allocation.release();
+    }
+  }
+
+  /**
+   * Closes the gate of a query leaving the group.
+   *
+   * @return true if it was the last query of the group, so the application should be closed
+   */
+  public synchronized boolean leave(final AtomicBoolean gate) {
+    if (!gate.getAndSet(false)) {
+      return false;
+    }
+    members--;
+    return members == 0;
+  }
+
+  public synchronized int getMembers() {
+    return members;
+  }
+}
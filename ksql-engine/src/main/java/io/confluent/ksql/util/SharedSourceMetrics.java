@@ -0,0 +1,111 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import io.confluent.ksql.GenericRow;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Metrics of the source of a group of persistent queries that read their source stream once,
+ * see {@link SharedKafkaStreams}. Each source row is counted in for every query of the group whose
+ * gate is still open, rather than for the query that happened to be built first.
+ *
+ * <p>The rows are read once for the whole group, so they can't be held to the consume rate quota
+ * of each query: they are held once to the share of the throttles of the server the application
+ * of the group gets, see {@link #getQuota}, and the time waited on them is charged to every
+ * query of the group. Queries with a consume rate quota of their own don't share their source.
+ */
+public class SharedSourceMetrics {
+
+  private final List<Member> members = new CopyOnWriteArrayList<>();
+  private final QueryQuota quota = new QueryQuota(0, 0, 0, 0);
+
+  /**
+   * Adds a query to the group, whose source rows are counted while its gate is open.
+   */
+  public void addMember(final QueryMetrics metrics, final AtomicBoolean gate) {
+    members.add(new Member(metrics, gate));
+    metrics.setSharedSource(this);
+  }
+
+  /**
+   * @return the quota the source rows of the group are read under, which has no limits of its
+   *     own but the share of the throttles of the server its application is given
+   */
+  public QueryQuota getQuota() {
+    return quota;
+  }
+
+  /**
+   * @return serde that counts the rows it deserializes, and the rows it fails to, for every
+   *     query of the group, and holds them to the share of the throttles of the server
+   */
+  Serde<GenericRow> wrapSource(final Serde<GenericRow> serde) {
+    final Deserializer<GenericRow> deserializer = serde.deserializer();
+    return Serdes.serdeFrom(serde.serializer(), new Deserializer<GenericRow>() {
+      @Override
+      public void configure(final Map<String, ?> configs, final boolean isKey) {
+        deserializer.configure(configs, isKey);
+      }
+
+      @Override
+      public GenericRow deserialize(final String topic, final byte[] bytes) {
+        final int size = bytes == null ? 0 : bytes.length;
+        final long throttledNanos = quota.acquire(size);
+        for (Member member : members) {
+          if (member.gate.get()) {
+            member.metrics.recordSourceRow(size, throttledNanos);
+          }
+        }
+        try {
+          return deserializer.deserialize(topic, bytes);
+        } catch (RuntimeException e) {
+          for (Member member : members) {
+            if (member.gate.get()) {
+              member.metrics.recordDeserializationError();
+            }
+          }
+          throw e;
+        }
+      }
+
+      @Override
+      public void close() {
+        deserializer.close();
+      }
+    });
+  }
+
+  private static final class Member {
+
+    private final QueryMetrics metrics;
+    private final AtomicBoolean gate;
+
+    private Member(final QueryMetrics metrics, final AtomicBoolean gate) {
+      this.metrics = metrics;
+      this.gate = gate;
+    }
+  }
+}
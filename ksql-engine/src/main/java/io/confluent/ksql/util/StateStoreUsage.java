@@ -0,0 +1,139 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import org.apache.kafka.streams.StreamsConfig;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * On-disk footprint of the local state stores of a query, summed over the query's tasks. Plain
+ * key-value stores live under each task's rocksdb directory; window and session stores live in a
+ * directory of their own with one sub-directory per live segment.
+ */
+public class StateStoreUsage {
+
+  private static final String KEY_VALUE_STORE_DIR = "rocksdb";
+
+  private final String storeName;
+  private final long sizeBytes;
+  private final int segments;
+
+  public StateStoreUsage(final String storeName, final long sizeBytes, final int segments) {
+    this.storeName = storeName;
+    this.sizeBytes = sizeBytes;
+    this.segments = segments;
+  }
+
+  public String getStoreName() {
+    return storeName;
+  }
+
+  public long getSizeBytes() {
+    return sizeBytes;
+  }
+
+  /**
+   * @return the number of live segments over all tasks, or 0 for a store that is not segmented.
+   */
+  public int getSegments() {
+    return segments;
+  }
+
+  public static List<StateStoreUsage> forQuery(final KsqlConfig ksqlConfig,
+                                               final String queryApplicationId) {
+    final Object stateDir = ksqlConfig.get(StreamsConfig.STATE_DIR_CONFIG);
+    return forApplication(
+        new File(stateDir == null ? "/tmp/kafka-streams" : stateDir.toString()),
+        queryApplicationId);
+  }
+
+  static List<StateStoreUsage> forApplication(final File stateDir,
+                                              final String applicationId) {
+    final Map<String, StateStoreUsage> usages = new TreeMap<>();
+    for (File taskDir : subDirectories(new File(stateDir, applicationId))) {
+      for (File storeDir : subDirectories(taskDir)) {
+        if (storeDir.getName().equals(KEY_VALUE_STORE_DIR)) {
+          for (File keyValueStoreDir : subDirectories(storeDir)) {
+            add(usages, new StateStoreUsage(keyValueStoreDir.getName(), size(keyValueStoreDir), 0));
+          }
+        } else {
+          add(usages, new StateStoreUsage(storeDir.getName(), size(storeDir),
+                                          subDirectories(storeDir).size()));
+        }
+      }
+    }
+    return new ArrayList<>(usages.values());
+  }
+
+  private static void add(final Map<String, StateStoreUsage> usages,
+                          final StateStoreUsage usage) {
+    usages.merge(usage.storeName, usage, (one, two) -> new StateStoreUsage(
+        one.storeName, one.sizeBytes + two.sizeBytes, one.segments + two.segments));
+  }
+
+  private static List<File> subDirectories(final File dir) {
+    final List<File> subDirectories = new ArrayList<>();
+    final File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isDirectory()) {
+          subDirectories.add(file);
+        }
+      }
+    }
+    return subDirectories;
+  }
+
+  private static long size(final File file) {
+    if (file.isFile()) {
+      return file.length();
+    }
+    long size = 0;
+    final File[] files = file.listFiles();
+    if (files != null) {
+      for (File child : files) {
+        size += size(child);
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof StateStoreUsage)) {
+      return false;
+    }
+    StateStoreUsage that = (StateStoreUsage) o;
+    return sizeBytes == that.sizeBytes
+           && segments == that.segments
+           && Objects.equals(storeName, that.storeName);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(storeName, sizeBytes, segments);
+  }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import org.apache.kafka.streams.KafkaStreams;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * The stream threads and state store memory of the streams application of one or more
+ * persistent queries. They are taken from the budgets of the server when the application is
+ * started, not when it is built, and given back once it has been stopped.
+ */
+public class StreamsAllocation {
+
+  private final UnaryOperator<KafkaStreams> allocator;
+  private final Runnable releaser;
+  private boolean allocated;
+
+  /**
+   * @param allocator takes the resources of the given streams from the budgets and returns the
+   *     streams to start, which are new streams if the budgets granted less than the given
+   *     streams were built with
+   * @param releaser gives the resources back to the budgets
+   */
+  public StreamsAllocation(final UnaryOperator<KafkaStreams> allocator,
+                           final Runnable releaser) {
+    this.allocator = allocator;
+    this.releaser = releaser;
+  }
+
+  /**
+   * Takes the resources of the given streams, which have not been started, from the budgets.
+   *
+   * @return the streams to start, the given ones unless they had to be rebuilt with fewer
+   *     resources, in which case the given ones are closed
+   * @throws KsqlException if the budgets are used up
+   */
+  public synchronized KafkaStreams allocate(final KafkaStreams streams) {
+    if (allocated) {
+      return streams;
+    }
+    final KafkaStreams allocatedStreams = allocator.apply(streams);
+    allocated = true;
+    if (allocatedStreams != streams) {
+      streams.close();
+    }
+    return allocatedStreams;
+  }
+
+  /**
+   * Gives the resources back to the budgets, once the streams have been stopped.
+   */
+  public synchronized void release() {
+    if (allocated) {
+      allocated = false;
+      releaser.run();
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+
+package io.confluent.ksql.util;
+
+import io.confluent.ksql.GenericRow;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Bounded LRU cache of deserialized table rows, put in front of the state store of the table side
+ * of a stream-table join so that rows of hot keys are not deserialized again on every lookup.
+ *
+ * <p>Rows are cached by their serialized form, so an update of the table, which stores a new
+ * serialized row, can never be answered from the cache and needs no explicit invalidation. Each
+ * stream thread has a cache of its own, so lookups take no locks. The per-thread caches are held
+ * by the cache rather than in thread locals, so that {@link #unregisterAll(String)} frees them
+ * even if the threads outlive the query.
+ */
+public class TableRowCache implements TableRowCacheMBean {
+
+  private static final String JMX_DOMAIN = "io.confluent.ksql";
+  private static final String JMX_TYPE = "TableRowCache";
+  private static final ConcurrentMap<String, List<TableRowCache>> REGISTERED =
+      new ConcurrentHashMap<>();
+
+  private final String tableName;
+  private final int capacity;
+  private final ConcurrentMap<Long, Map<ByteBuffer, GenericRow>> rows =
+      new ConcurrentHashMap<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  public TableRowCache(final String tableName, final int capacity) {
+    if (capacity <= 0) {
+      throw new KsqlException("Table row cache size must be positive: " + capacity);
+    }
+    this.tableName = tableName;
+    this.capacity = capacity;
+  }
+
+  public String getTableName() {
+    return tableName;
+  }
+
+  @Override
+  public int getCapacity() {
+    return capacity;
+  }
+
+  @Override
+  public long getHits() {
+    return hits.sum();
+  }
+
+  @Override
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  @Override
+  public double getHitRate() {
+    final long hitCount = hits.sum();
+    final long lookups = hitCount + misses.sum();
+    return lookups == 0 ? 0.0 : (double) hitCount / lookups;
+  }
+
+  /**
+   * @return serde that serializes with the given serde and deserializes through this cache.
+   */
+  public Serde<GenericRow> wrap(final Serde<GenericRow> serde) {
+    return Serdes.serdeFrom(serde.serializer(), new CachingDeserializer(serde.deserializer()));
+  }
+
+  GenericRow get(final byte[] bytes, final Deserializer<GenericRow> deserializer,
+                 final String topic) {
+    if (bytes == null) {
+      return null;
+    }
+    final Map<ByteBuffer, GenericRow> threadRows =
+        rows.computeIfAbsent(Thread.currentThread().getId(), id -> newThreadRows());
+    final ByteBuffer key = ByteBuffer.wrap(bytes);
+    GenericRow row = threadRows.get(key);
+    if (row != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+      row = deserializer.deserialize(topic, bytes);
+      if (row != null) {
+        threadRows.put(key, row);
+      }
+    }
+    // the joiner copies the columns it needs, but hand out a copy so that a cached row can
+    // never be changed by a downstream operator
+    return new GenericRow(new ArrayList<>(row.getColumns()));
+  }
+
+  private Map<ByteBuffer, GenericRow> newThreadRows() {
+    return new LinkedHashMap<ByteBuffer, GenericRow>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<ByteBuffer, GenericRow> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Registers this cache as an MBean of the query with the given application id.
+   */
+  public void register(final String queryApplicationId) {
+    REGISTERED.computeIfAbsent(queryApplicationId, id -> new CopyOnWriteArrayList<>()).add(this);
+    try {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      final ObjectName name = objectName(queryApplicationId, tableName);
+      if (!server.isRegistered(name)) {
+        server.registerMBean(this, name);
+      }
+    } catch (JMException e) {
+      throw new KsqlException("Could not register table row cache metrics for query: "
+                              + queryApplicationId, e);
+    }
+  }
+
+  /**
+   * Clears all table row caches of the query with the given application id and unregisters
+   * their MBeans.
+   */
+  public static void unregisterAll(final String queryApplicationId) {
+    final List<TableRowCache> caches = REGISTERED.remove(queryApplicationId);
+    if (caches != null) {
+      caches.forEach(cache -> cache.rows.clear());
+    }
+    try {
+      final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      for (ObjectName name : server.queryNames(objectName(queryApplicationId, "*"), null)) {
+        server.unregisterMBean(name);
+      }
+    } catch (JMException e) {
+      throw new KsqlException("Could not unregister table row cache metrics for query: "
+                              + queryApplicationId, e);
+    }
+  }
+
+  private static ObjectName objectName(final String queryApplicationId, final String tableName)
+      throws JMException {
+    return new ObjectName(JMX_DOMAIN + ":type=" + JMX_TYPE
+                          + ",query=" + ObjectName.quote(queryApplicationId)
+                          + ",table=" + ("*".equals(tableName) ? "*" : ObjectName.quote(tableName)));
+  }
+
+  private class CachingDeserializer implements Deserializer<GenericRow> {
+
+    private final Deserializer<GenericRow> deserializer;
+
+    CachingDeserializer(final Deserializer<GenericRow> deserializer) {
+      this.deserializer = deserializer;
+    }
+
+    @Override
+    public void configure(final Map<String, ?> configs, final boolean isKey) {
+      deserializer.configure(configs, isKey);
+    }
+
+    @Override
+    public GenericRow deserialize(final String topic, final byte[] bytes) {
+      return get(bytes, deserializer, topic);
+    }
+
+    @Override
+    public void close() {
+      deserializer.close();
+    }
+  }
+}
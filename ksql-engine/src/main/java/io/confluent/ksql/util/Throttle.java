@@ -0,0 +1,83 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+
+package io.confluent.ksql.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate at which permits, records or bytes, are taken to a number per second.
+ *
+ * <p>Permits are handed out at a steady rate, with up to a second's worth of them saved up
+ * while they are not taken, so short bursts go through at once. A caller that takes permits
+ * ahead of the rate is told how long to wait until they would have been handed out, so the rate
+ * holds on average however many threads take permits.
+ */
+public class Throttle {
+
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private long permitsPerSecond;
+  private long nextFreeNanos;
+  private boolean started;
+
+  public Throttle(final long permitsPerSecond) {
+    setPermitsPerSecond(permitsPerSecond);
+  }
+
+  public synchronized long getPermitsPerSecond() {
+    return permitsPerSecond;
+  }
+
+  /**
+   * Changes the rate, from the permits taken next on. Permits already taken keep the time they
+   * were handed out at.
+   */
+  synchronized void setPermitsPerSecond(final long permitsPerSecond) {
+    if (permitsPerSecond <= 0) {
+      throw new KsqlException("A throttle needs a positive rate: " + permitsPerSecond);
+    }
+    this.permitsPerSecond = permitsPerSecond;
+  }
+
+  /**
+   * Takes the given number of permits at the given time.
+   *
+   * @return how long the caller has to wait before the permits are free, in nanoseconds
+   */
+  synchronized long reserve(final long permits, final long nowNanos) {
+    nextFreeNanos = nextFreeNanos(nowNanos);
+    started = true;
+    final long waitNanos = Math.max(0, nextFreeNanos - nowNanos);
+    nextFreeNanos += (long) (permits * ((double) NANOS_PER_SECOND / permitsPerSecond));
+    return waitNanos;
+  }
+
+  /**
+   * @return how long a caller taking permits at the given time would have to wait, in
+   *     nanoseconds, without taking any
+   */
+  synchronized long waitNanos(final long nowNanos) {
+    return Math.max(0, nextFreeNanos(nowNanos) - nowNanos);
+  }
+
+  private long nextFreeNanos(final long nowNanos) {
+    // Up to a second's worth of permits not taken in the past can be taken now
+    final long earliestNanos = nowNanos - NANOS_PER_SECOND;
+    return !started || nextFreeNanos - earliestNanos < 0 ? earliestNanos : nextFreeNanos;
+  }
+}
@@ -19,7 +19,13 @@ package io.confluent.ksql.analyzer;
 import io.confluent.ksql.metastore.MetaStore;
 import io.confluent.ksql.parser.KsqlParser;
 import io.confluent.ksql.parser.rewrite.SqlFormatterQueryRewrite;
+import io.confluent.ksql.parser.tree.CreateStreamAsSelect;
+import io.confluent.ksql.parser.tree.Query;
+import io.confluent.ksql.parser.tree.QuerySpecification;
 import io.confluent.ksql.parser.tree.Statement;
+import io.confluent.ksql.parser.tree.Table;
+import io.confluent.ksql.util.KsqlConstants;
+import io.confluent.ksql.util.KsqlException;
 import io.confluent.ksql.util.MetaStoreFixture;
 import org.junit.Assert;
 import org.junit.Before;
@@ -201,4 +207,47 @@ public class AnalyzerTest {
     Assert.assertTrue("testFilterAnalysis failed.", analysis.getWhereExpression().toString().equalsIgnoreCase("(TEST1.COL0 > 20)"));
 
   }
+
+  @Test
+  public void shouldAllowRetentionOnStreamStreamJoinWithin() {
+    final Analysis analysis = analyzeCreateStreamAsSelect(
+        "CREATE STREAM joined WITH (RETENTION=60000) AS SELECT t1.col1, o.itemid "
+        + "FROM test1 t1 JOIN orders o WITHIN 10 SECONDS ON t1.col0 = o.ordertime;");
+
+    Assert.assertEquals(60000L,
+                        analysis.getIntoProperties().get(KsqlConstants.WINDOW_RETENTION_MS));
+  }
+
+  @Test(expected = KsqlException.class)
+  public void shouldRejectRetentionOnStreamTableJoin() {
+    analyzeCreateStreamAsSelect(
+        "CREATE STREAM joined WITH (RETENTION=60000) AS SELECT t1.col1, t2.col1 "
+        + "FROM test1 t1 LEFT JOIN test2 t2 ON t1.col1 = t2.col1;");
+  }
+
+  // Analyzes the query of the statement with its WITH clause as the properties of its sink
+  private Analysis analyzeCreateStreamAsSelect(final String statement) {
+    final CreateStreamAsSelect createStreamAsSelect =
+        (CreateStreamAsSelect) KSQL_PARSER.buildAst(statement, metaStore).get(0);
+    final QuerySpecification querySpecification =
+        (QuerySpecification) createStreamAsSelect.getQuery().getQueryBody();
+    final Table into = new Table(createStreamAsSelect.getName());
+    into.setProperties(createStreamAsSelect.getProperties());
+    final Query query = new Query(
+        createStreamAsSelect.getQuery().getWith(),
+        new QuerySpecification(querySpecification.getSelect(),
+                               into,
+                               querySpecification.getFrom(),
+                               querySpecification.getWindowExpression(),
+                               querySpecification.getWhere(),
+                               querySpecification.getGroupBy(),
+                               querySpecification.getHaving(),
+                               querySpecification.getOrderBy(),
+                               querySpecification.getLimit()),
+        createStreamAsSelect.getQuery().getOrderBy(),
+        createStreamAsSelect.getQuery().getLimit());
+    final Analysis analysis = new Analysis();
+    new Analyzer(analysis, metaStore).process(query, new AnalysisContext(null));
+    return analysis;
+  }
 }
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.function.udaf;
+
+import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.function.KsqlAggregateFunction;
+import io.confluent.ksql.function.udaf.count.CountKudaf;
+import io.confluent.ksql.function.udaf.sum.LongSumKudaf;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class KudafMergeAggregatorTest {
+
+  private final Map<Integer, Integer> aggValToValColumnMap = Collections.singletonMap(0, 0);
+  private final Map<Integer, KsqlAggregateFunction> aggValToFunctionMap = new HashMap<>();
+  private final KudafInitializer initializer = new KudafInitializer(Arrays.asList("", 0L, 0L));
+
+  {
+    aggValToFunctionMap.put(1, new CountKudaf(1));
+    aggValToFunctionMap.put(2, new LongSumKudaf(1));
+  }
+
+  private GenericRow partial(final long... values) {
+    final KudafAggregator aggregator =
+        new KudafAggregator(aggValToFunctionMap, aggValToValColumnMap);
+    GenericRow aggRow = initializer.apply();
+    for (long value : values) {
+      aggRow = aggregator.apply("k", new GenericRow(Arrays.asList("k", value)), aggRow);
+    }
+    return aggRow;
+  }
+
+  @Test
+  public void shouldMergePartialAggregatesIntoAggregate() {
+    final KudafMergeAggregator merger =
+        new KudafMergeAggregator(aggValToFunctionMap, aggValToValColumnMap);
+
+    GenericRow aggRow = initializer.apply();
+    aggRow = merger.apply("k", partial(1, 2), aggRow);
+    aggRow = merger.apply("k", partial(3), aggRow);
+
+    assertThat(aggRow.getColumns(), equalTo(partial(1, 2, 3).getColumns()));
+  }
+}
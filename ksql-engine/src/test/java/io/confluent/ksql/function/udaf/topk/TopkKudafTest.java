@@ -0,0 +1,117 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.function.udaf.topk;
+
+import io.confluent.ksql.parser.tree.Expression;
+import io.confluent.ksql.parser.tree.LongLiteral;
+import io.confluent.ksql.parser.tree.QualifiedName;
+import io.confluent.ksql.parser.tree.QualifiedNameReference;
+import io.confluent.ksql.util.KsqlException;
+import org.apache.kafka.connect.data.Schema;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TopkKudafTest {
+
+  private final TopkKudaf topk = (TopkKudaf) new TopkAggFunctionDeterminer()
+      .getProperAggregateFunction(Arrays.asList(Schema.STRING_SCHEMA))
+      .getInstance(0, args(2));
+
+  private static List<Expression> args(final int k) {
+    return Arrays.asList(new QualifiedNameReference(QualifiedName.of("URL")),
+                         new LongLiteral(String.valueOf(k)));
+  }
+
+  private String aggregate(final String state, final String... values) {
+    return aggregate(topk, state, values);
+  }
+
+  private static String aggregate(final TopkKudaf function,
+                                  final String state,
+                                  final String... values) {
+    String result = state;
+    for (String value : values) {
+      result = function.aggregate(value, result);
+    }
+    return result;
+  }
+
+  @Test
+  public void shouldReturnMostFrequentValuesFirst() {
+    final String state = aggregate(topk.getIntialValue(), "a", "b", "b", "c", "c", "c");
+    assertThat(topk.getResult(state), equalTo(new String[]{"c", "b"}));
+  }
+
+  @Test
+  public void shouldIgnoreNullValues() {
+    final String state = aggregate(topk.getIntialValue(), "a", null);
+    assertThat(topk.getResult(state), equalTo(new String[]{"a"}));
+  }
+
+  @Test
+  public void shouldMergeSessionStates() {
+    final String one = aggregate(topk.getIntialValue(), "a", "a", "b");
+    final String two = aggregate(topk.getIntialValue(), "b", "b", "c");
+    final String merged = topk.getMerger().apply("key", one, two);
+    assertThat(topk.getResult(merged), equalTo(new String[]{"b", "a"}));
+  }
+
+  @Test
+  public void shouldBoundNumberOfTrackedValues() {
+    String state = topk.getIntialValue();
+    for (int i = 0; i < 1000; i++) {
+      state = topk.aggregate("value_" + i, state);
+    }
+    state = aggregate(state, "hot", "hot", "hot");
+    final SpaceSavingSketch sketch = SpaceSavingSketch.decode(state, Schema.STRING_SCHEMA);
+    assertThat(sketch.size(), equalTo(2 * TopkKudaf.COUNTERS_PER_RESULT));
+    assertThat(((Object[]) topk.getResult(state))[0], equalTo("hot"));
+  }
+
+  @Test
+  public void shouldKeepCountsOfStateDecodedOnAnotherInstance() {
+    final String state = aggregate(topk.getIntialValue(), "a", "b", "b", "c", "c", "c");
+    final TopkKudaf other = topk.getInstance(0, args(3));
+    final String updated = aggregate(other, state, "a", "a", "a");
+    assertThat(other.getResult(updated), equalTo(new String[]{"a", "c", "b"}));
+    final SpaceSavingSketch sketch = SpaceSavingSketch.decode(updated, Schema.STRING_SCHEMA);
+    assertThat(sketch.count("a"), equalTo(4L));
+    assertThat(sketch.count("c"), equalTo(3L));
+  }
+
+  @Test
+  public void shouldRoundTripNumericItems() {
+    final TopkKudaf longTopk = (TopkKudaf) new TopkAggFunctionDeterminer()
+        .getProperAggregateFunction(Arrays.asList(Schema.INT64_SCHEMA))
+        .getInstance(0, args(1));
+    String state = longTopk.aggregate(5L, longTopk.getIntialValue());
+    state = longTopk.aggregate(7L, state);
+    state = longTopk.aggregate(7L, state);
+    assertThat(longTopk.getResult(state), equalTo(new Long[]{7L}));
+  }
+
+  @Test(expected = KsqlException.class)
+  public void shouldRejectNonLiteralK() {
+    topk.getInstance(0, Arrays.asList(new QualifiedNameReference(QualifiedName.of("URL")),
+                                      new QualifiedNameReference(QualifiedName.of("K"))));
+  }
+}
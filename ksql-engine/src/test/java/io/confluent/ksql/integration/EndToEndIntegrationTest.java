@@ -129,7 +129,7 @@ public class EndToEndIntegrationTest {
     assertTrue(queries.get(0) instanceof QueuedQueryMetadata);
 
     QueuedQueryMetadata queryMetadata = (QueuedQueryMetadata) queries.get(0);
-    queryMetadata.getKafkaStreams().start();
+    queryMetadata.start();
 
     BlockingQueue<KeyValue<String, GenericRow>> rowQueue = queryMetadata.getRowQueue();
 
@@ -144,7 +144,7 @@ public class EndToEndIntegrationTest {
       }
     }
     assertEquals(expectedUsers, actualUsers);
-    queryMetadata.getKafkaStreams().close();
+    queryMetadata.close();
   }
 
   private void validateSelectFromPageViewsWithSpecificColumn() throws Exception {
@@ -157,7 +157,7 @@ public class EndToEndIntegrationTest {
     assertTrue(queries.get(0) instanceof QueuedQueryMetadata);
 
     QueuedQueryMetadata queryMetadata = (QueuedQueryMetadata) queries.get(0);
-    queryMetadata.getKafkaStreams().start();
+    queryMetadata.start();
 
     BlockingQueue<KeyValue<String, GenericRow>> rowQueue = queryMetadata.getRowQueue();
 
@@ -174,7 +174,7 @@ public class EndToEndIntegrationTest {
     }
 
     assertEquals(expectedPages, actualPages);
-    queryMetadata.getKafkaStreams().close();
+    queryMetadata.close();
   }
 
   private String validateSelectAllFromDerivedStream() throws Exception {
@@ -190,7 +190,7 @@ public class EndToEndIntegrationTest {
     assertTrue(queries.get(0) instanceof QueuedQueryMetadata);
 
     QueuedQueryMetadata queryMetadata = (QueuedQueryMetadata) queries.get(0);
-    queryMetadata.getKafkaStreams().start();
+    queryMetadata.start();
 
     List<KeyValue<String, GenericRow>> results = new ArrayList<>();
     BlockingQueue<KeyValue<String, GenericRow>> rowQueue = queryMetadata.getRowQueue();
@@ -250,7 +250,7 @@ public class EndToEndIntegrationTest {
     assertTrue(queries.get(0) instanceof QueuedQueryMetadata);
 
     QueuedQueryMetadata queryMetadata = (QueuedQueryMetadata) queries.get(0);
-    queryMetadata.getKafkaStreams().start();
+    queryMetadata.start();
 
     BlockingQueue<KeyValue<String, GenericRow>> rowQueue = queryMetadata.getRowQueue();
 
@@ -274,7 +274,7 @@ public class EndToEndIntegrationTest {
     }, 30000, "Could not read data from " + outputStream + " for 30 seconds");
 
     assertEquals(expectedPages, actualPages);
-    queryMetadata.getKafkaStreams().close();
+    queryMetadata.close();
   }
 
   private String createStreamUsingLikeClause(String inputStream) throws Exception {
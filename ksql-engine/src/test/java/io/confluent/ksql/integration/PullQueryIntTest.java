@@ -0,0 +1,168 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.integration;
+
+import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.KsqlEngine;
+import io.confluent.ksql.serde.DataSource;
+import io.confluent.ksql.util.KafkaTopicClient;
+import io.confluent.ksql.util.KafkaTopicClientImpl;
+import io.confluent.ksql.util.KsqlConfig;
+import io.confluent.ksql.util.KsqlException;
+import io.confluent.ksql.util.OrderDataProvider;
+import io.confluent.ksql.util.PersistentQueryMetadata;
+import io.confluent.ksql.util.PullQueryResult;
+import io.confluent.ksql.util.QueryMetadata;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.test.IntegrationTest;
+import org.apache.kafka.test.TestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Runs pull queries against the state stores of tables created by persistent queries running
+ * on an embedded cluster, so that the stores are the ones Kafka Streams really builds.
+ */
+@Category({IntegrationTest.class})
+public class PullQueryIntTest {
+
+  private static final String ORDERS_TOPIC = "PullOrders";
+  private static final long RESULT_TIMEOUT_MS = 60000;
+  private static final long WINDOW_SIZE_MS = 10000;
+
+  private IntegrationTestHarness testHarness;
+  private AdminClient adminClient;
+  private KsqlEngine ksqlEngine;
+  private OrderDataProvider dataProvider;
+
+  @Before
+  public void before() throws Exception {
+    testHarness = new IntegrationTestHarness(DataSource.DataSourceSerDe.JSON.name());
+    testHarness.start();
+    final Map<String, Object> streamsConfig = testHarness.ksqlConfig.getKsqlStreamConfigProps();
+    streamsConfig.put(KsqlConfig.KSQL_PULL_QUERY_ENABLE_CONFIG, true);
+    final KsqlConfig ksqlConfig = new KsqlConfig(streamsConfig);
+    adminClient = AdminClient.create(ksqlConfig.getKsqlAdminClientConfigProps());
+    final KafkaTopicClient topicClient = new KafkaTopicClientImpl(adminClient);
+    ksqlEngine = new KsqlEngine(ksqlConfig, topicClient);
+
+    dataProvider = new OrderDataProvider();
+    testHarness.createTopic(ORDERS_TOPIC);
+    execute("CREATE STREAM ORDERS (ORDERTIME bigint, ORDERID varchar, ITEMID varchar, "
+            + "ORDERUNITS double, PRICEARRAY array<double>, KEYVALUEMAP map<varchar, double>) "
+            + "WITH (kafka_topic='" + ORDERS_TOPIC + "', value_format='JSON');");
+  }
+
+  @After
+  public void after() throws Exception {
+    ksqlEngine.close();
+    adminClient.close();
+    testHarness.stop();
+  }
+
+  @Test
+  public void shouldLookUpKeyInStoreOfTable() throws Exception {
+    testHarness.publishTestData(ORDERS_TOPIC, dataProvider, System.currentTimeMillis());
+    execute("CREATE TABLE ITEM_UNITS AS SELECT ITEMID, SUM(ORDERUNITS) AS UNITS FROM ORDERS "
+            + "GROUP BY ITEMID;");
+
+    final String query = "SELECT ITEMID, UNITS FROM ITEM_UNITS WHERE ROWKEY = 'ITEM_1';";
+    final List<GenericRow> expected =
+        Collections.singletonList(new GenericRow(Arrays.<Object>asList("ITEM_1", 10.0)));
+    TestUtils.waitForCondition(
+        () -> expected.equals(pull(query)),
+        RESULT_TIMEOUT_MS,
+        "didn't read the row of the key from the store within timeout");
+
+    assertThat(pull("SELECT ITEMID, UNITS FROM ITEM_UNITS WHERE ROWKEY = 'NO_SUCH_ITEM';"),
+               equalTo(Collections.<GenericRow>emptyList()));
+  }
+
+  @Test
+  public void shouldFetchAndPageWindowsOfKeyFromWindowStore() throws Exception {
+    // Orders in three consecutive windows
+    final long firstWindowStart =
+        System.currentTimeMillis() / WINDOW_SIZE_MS * WINDOW_SIZE_MS - 3 * WINDOW_SIZE_MS;
+    for (int window = 0; window < 3; window++) {
+      testHarness.publishTestData(ORDERS_TOPIC, dataProvider,
+                                  firstWindowStart + window * WINDOW_SIZE_MS + 1);
+    }
+    execute("CREATE TABLE ITEM_WINDOWS AS SELECT ITEMID, SUM(ORDERUNITS) AS UNITS FROM ORDERS "
+            + "WINDOW TUMBLING (SIZE 10 SECONDS) GROUP BY ITEMID;");
+
+    final String select = "SELECT ROWTIME, ITEMID, UNITS FROM ITEM_WINDOWS WHERE ROWKEY = 'ITEM_1'";
+    final List<GenericRow> allWindows = Arrays.asList(
+        windowRow(firstWindowStart),
+        windowRow(firstWindowStart + WINDOW_SIZE_MS),
+        windowRow(firstWindowStart + 2 * WINDOW_SIZE_MS));
+    TestUtils.waitForCondition(
+        () -> allWindows.equals(pull(select + ";")),
+        RESULT_TIMEOUT_MS,
+        "didn't fetch the windows of the key from the window store within timeout");
+
+    // LIMIT pages through the windows, the next page starting after the last window start
+    assertThat(pull(select + " LIMIT 2;"), equalTo(allWindows.subList(0, 2)));
+    assertThat(pull(select + " AND ROWTIME > " + (firstWindowStart + WINDOW_SIZE_MS) + " LIMIT 2;"),
+               equalTo(allWindows.subList(2, 3)));
+    // A range of window starts fetches only the windows starting in it
+    assertThat(pull(select + " AND ROWTIME >= " + (firstWindowStart + WINDOW_SIZE_MS)
+                    + " AND ROWTIME < " + (firstWindowStart + 2 * WINDOW_SIZE_MS) + ";"),
+               equalTo(allWindows.subList(1, 2)));
+  }
+
+  private static GenericRow windowRow(final long windowStart) {
+    return new GenericRow(Arrays.<Object>asList(windowStart, "ITEM_1", 10.0));
+  }
+
+  /**
+   * Starts the persistent queries of the statement, as the server does.
+   */
+  private void execute(final String statement) throws Exception {
+    for (QueryMetadata query
+        : ksqlEngine.buildMultipleQueries(false, statement, Collections.emptyMap())) {
+      final PersistentQueryMetadata persistentQuery = (PersistentQueryMetadata) query;
+      persistentQuery.start();
+      ksqlEngine.getPersistentQueries().put(persistentQuery.getId(), persistentQuery);
+    }
+  }
+
+  /**
+   * @return the rows of the pull query, or null while the store isn't available yet
+   */
+  private List<GenericRow> pull(final String query) {
+    final PullQueryResult result;
+    try {
+      result = ksqlEngine.executePullQuery(query, true);
+    } catch (KsqlException e) {
+      return null;
+    }
+    final List<GenericRow> rows = new ArrayList<>();
+    try (PullQueryResult.Rows resultRows = result.getRows()) {
+      resultRows.forEachRemaining(rows::add);
+    }
+    return rows;
+  }
+}
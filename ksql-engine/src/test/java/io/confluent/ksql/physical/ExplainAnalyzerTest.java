@@ -0,0 +1,87 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.physical;
+
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ExplainAnalyzerTest {
+
+  @Test
+  public void shouldSumProducerWritesPerTopic() {
+    final Map<MetricName, Metric> metrics = new HashMap<>();
+    addMetric(metrics, "record-send-total", "producer-topic-metrics", "repartition", "p1", 10);
+    addMetric(metrics, "byte-total", "producer-topic-metrics", "repartition", "p1", 1000);
+    addMetric(metrics, "record-send-total", "producer-topic-metrics", "repartition", "p2", 5);
+    addMetric(metrics, "byte-total", "producer-topic-metrics", "repartition", "p2", 500);
+    addMetric(metrics, "record-send-total", "producer-topic-metrics", "changelog", "p1", 3);
+
+    final Map<String, long[]> writes = ExplainAnalyzer.internalTopicWrites(metrics);
+
+    assertThat(writes.size(), equalTo(2));
+    assertThat(writes.get("repartition")[0], equalTo(15L));
+    assertThat(writes.get("repartition")[1], equalTo(1500L));
+    assertThat(writes.get("changelog")[0], equalTo(3L));
+    assertThat(writes.get("changelog")[1], equalTo(0L));
+  }
+
+  @Test
+  public void shouldIgnoreMetricsOfOtherGroups() {
+    final Map<MetricName, Metric> metrics = new HashMap<>();
+    addMetric(metrics, "record-send-total", "producer-metrics", null, "p1", 10);
+    addMetric(metrics, "records-consumed-total", "consumer-fetch-manager-metrics", "source",
+              "c1", 10);
+
+    assertThat(ExplainAnalyzer.internalTopicWrites(metrics).isEmpty(), equalTo(true));
+  }
+
+  private static void addMetric(final Map<MetricName, Metric> metrics,
+                                final String name,
+                                final String group,
+                                final String topic,
+                                final String clientId,
+                                final double value) {
+    final Map<String, String> tags = new HashMap<>();
+    tags.put("client-id", clientId);
+    if (topic != null) {
+      tags.put("topic", topic);
+    }
+    final MetricName metricName = new MetricName(name, group, "", tags);
+    metrics.put(metricName, new Metric() {
+      @Override
+      public MetricName metricName() {
+        return metricName;
+      }
+
+      @Override
+      @Deprecated
+      public double value() {
+        return value;
+      }
+
+      @Override
+      public Object metricValue() {
+        return value;
+      }
+    });
+  }
+}
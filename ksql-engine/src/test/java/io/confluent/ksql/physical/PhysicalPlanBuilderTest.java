@@ -28,7 +28,10 @@ import io.confluent.ksql.util.Pair;
 import io.confluent.ksql.util.QueryMetadata;
 
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.utils.Bytes;
 import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.state.KeyValueStore;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -36,6 +39,7 @@ import org.junit.Test;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -103,4 +107,20 @@ public class PhysicalPlanBuilderTest {
     Assert.assertEquals(lines[5], "\t\t\t\t\t\t\t\t\t\t > [ SOURCE ] Schema: [TEST1.COL0 : INT64 , TEST1.COL1 : STRING , TEST1.COL2 : STRING , TEST1.COL3 : FLOAT64 , TEST1.COL4 : ARRAY , TEST1.COL5 : MAP].");
   }
 
+  @Test
+  public void shouldNameInternalTopicsOfTopology() {
+    final StreamsBuilder streamsBuilder = new StreamsBuilder();
+    streamsBuilder.stream("input")
+        .selectKey((key, value) -> value)
+        .groupByKey()
+        .count(Materialized.<Object, Long, KeyValueStore<Bytes, byte[]>>as("counts"));
+
+    final Set<String> topicNames =
+        PhysicalPlanBuilder.internalTopicNames(streamsBuilder.build(), "app");
+
+    assertThat(topicNames.contains("app-counts-changelog"), equalTo(true));
+    assertThat(topicNames.contains("app-counts-repartition"), equalTo(true));
+    assertThat(topicNames.contains("app-input"), equalTo(false));
+  }
+
 }
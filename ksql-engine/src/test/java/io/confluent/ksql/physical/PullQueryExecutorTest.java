@@ -0,0 +1,171 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.physical;
+
+import io.confluent.ksql.function.FunctionRegistry;
+import io.confluent.ksql.metastore.MetaStore;
+import io.confluent.ksql.metastore.StructuredDataSource;
+import io.confluent.ksql.planner.plan.PlanNode;
+import io.confluent.ksql.structured.LogicalPlanBuilder;
+import io.confluent.ksql.structured.ScanPipeline;
+import io.confluent.ksql.util.KsqlException;
+import io.confluent.ksql.util.MetaStoreFixture;
+import org.apache.kafka.streams.state.HostInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class PullQueryExecutorTest {
+
+  private final FunctionRegistry functionRegistry = new FunctionRegistry();
+  private LogicalPlanBuilder planBuilder;
+  private PullQueryExecutor executor;
+
+  @Before
+  public void before() {
+    final MetaStore metaStore = MetaStoreFixture.getNewMetaStore();
+    // Sources registered by the engine have the implicit ROWTIME and ROWKEY columns
+    for (String name : new String[]{"TEST1", "TEST2"}) {
+      final StructuredDataSource source = metaStore.getSource(name);
+      metaStore.deleteSource(name);
+      metaStore.putSource(source.cloneWithTimeKeyColumns());
+    }
+    planBuilder = new LogicalPlanBuilder(metaStore);
+    executor = new PullQueryExecutor(functionRegistry, null);
+  }
+
+  private PullQueryExecutor.Lookup lookup(final String query) {
+    final PlanNode logicalPlan = planBuilder.buildLogicalPlan(query);
+    return PullQueryExecutor.getLookup(
+        ScanPipeline.forTable(logicalPlan, functionRegistry).get().getFilterExpression());
+  }
+
+  @Test
+  public void shouldGetKeyOfRowKeyLookup() {
+    final PullQueryExecutor.Lookup lookup =
+        lookup("SELECT col0, col1 FROM test2 WHERE ROWKEY = 'key1';");
+    assertThat(lookup.key, equalTo("key1"));
+    assertThat(lookup.windowStartFrom, equalTo(0L));
+    assertThat(lookup.windowStartTo, equalTo(Long.MAX_VALUE));
+    assertThat(lookup.hasWindowStartRange, equalTo(false));
+  }
+
+  @Test
+  public void shouldGetKeyOfReversedRowKeyLookup() {
+    assertThat(lookup("SELECT * FROM test2 WHERE 'key1' = test2.ROWKEY;").key, equalTo("key1"));
+  }
+
+  @Test
+  public void shouldGetWindowStartRangeOfLookup() {
+    final PullQueryExecutor.Lookup lookup = lookup(
+        "SELECT * FROM test2 WHERE ROWKEY = 'key1' AND ROWTIME >= 1000 AND ROWTIME < 2000;");
+    assertThat(lookup.key, equalTo("key1"));
+    assertThat(lookup.windowStartFrom, equalTo(1000L));
+    assertThat(lookup.windowStartTo, equalTo(1999L));
+    assertThat(lookup.hasWindowStartRange, equalTo(true));
+  }
+
+  @Test
+  public void shouldGetWindowStartRangeOfReversedComparisons() {
+    final PullQueryExecutor.Lookup lookup = lookup(
+        "SELECT * FROM test2 WHERE 1000 < ROWTIME AND ROWKEY = 'key1' AND 2000 >= ROWTIME;");
+    assertThat(lookup.windowStartFrom, equalTo(1001L));
+    assertThat(lookup.windowStartTo, equalTo(2000L));
+  }
+
+  @Test
+  public void shouldLookUpWholeNumberKeyAsString() {
+    assertThat(lookup("SELECT * FROM test2 WHERE ROWKEY = 42;").key, equalTo("42"));
+  }
+
+  @Test(expected = KsqlException.class)
+  public void shouldRejectDecimalKey() {
+    lookup("SELECT * FROM test2 WHERE ROWKEY = 4.2;");
+  }
+
+  @Test
+  public void shouldLeaveRangeEmptyInsteadOfOverflowing() {
+    final PullQueryExecutor.Lookup lookup = lookup(
+        "SELECT * FROM test2 WHERE ROWKEY = 'key1' AND ROWTIME > " + Long.MAX_VALUE + ";");
+    assertThat(lookup.windowStartFrom > lookup.windowStartTo, equalTo(true));
+  }
+
+  @Test(expected = KsqlException.class)
+  public void shouldRejectRangeOfKeys() {
+    lookup("SELECT * FROM test2 WHERE ROWKEY > 'key1';");
+  }
+
+  @Test(expected = KsqlException.class)
+  public void shouldRejectFilterOnOtherColumn() {
+    lookup("SELECT * FROM test2 WHERE col1 = 'key1';");
+  }
+
+  @Test(expected = KsqlException.class)
+  public void shouldRejectQueryWithoutFilter() {
+    executor.execute(planBuilder.buildLogicalPlan("SELECT * FROM test2;"),
+                     Collections.emptyList(), true);
+  }
+
+  @Test(expected = KsqlException.class)
+  public void shouldRejectStream() {
+    executor.execute(planBuilder.buildLogicalPlan("SELECT * FROM test1 WHERE ROWKEY = 'key1';"),
+                     Collections.emptyList(), true);
+  }
+
+  @Test(expected = KsqlException.class)
+  public void shouldRejectTableWithoutPersistentQuery() {
+    executor.execute(planBuilder.buildLogicalPlan("SELECT * FROM test2 WHERE ROWKEY = 'key1';"),
+                     Collections.emptyList(), true);
+  }
+
+  @Test
+  public void shouldRejectLimitOnNonWindowedTable() {
+    try {
+      executor.execute(
+          planBuilder.buildLogicalPlan("SELECT * FROM test2 WHERE ROWKEY = 'key1' LIMIT 10;"),
+          Collections.emptyList(), true);
+      fail("Expected LIMIT on a non-windowed table to be rejected");
+    } catch (KsqlException e) {
+      assertThat(e.getMessage(), containsString("LIMIT"));
+    }
+  }
+
+  @Test
+  public void shouldRejectRowTimeOnNonWindowedTable() {
+    try {
+      executor.execute(
+          planBuilder.buildLogicalPlan(
+              "SELECT * FROM test2 WHERE ROWKEY = 'key1' AND ROWTIME >= 1000;"),
+          Collections.emptyList(), true);
+      fail("Expected ROWTIME on a non-windowed table to be rejected");
+    } catch (KsqlException e) {
+      assertThat(e.getMessage(), containsString("ROWTIME"));
+    }
+  }
+
+  @Test
+  public void shouldParseApplicationServer() {
+    assertThat(PullQueryExecutor.parseHostInfo("ksql-1:8088"),
+               equalTo(new HostInfo("ksql-1", 8088)));
+    assertThat(PullQueryExecutor.parseHostInfo(""), nullValue());
+  }
+}
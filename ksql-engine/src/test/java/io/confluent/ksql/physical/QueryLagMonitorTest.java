@@ -0,0 +1,101 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.physical;
+
+import io.confluent.ksql.util.QueryLag;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class QueryLagMonitorTest {
+
+  private static final long THRESHOLD = 1000;
+
+  @Test
+  public void shouldAddThreadWhenLagIsAboveThresholdAndGrowing() {
+    assertThat(QueryLagMonitor.scaledThreads(2, 1, 4, 5000, 4000, THRESHOLD), equalTo(3));
+  }
+
+  @Test
+  public void shouldNotAddThreadWhenLagIsShrinking() {
+    assertThat(QueryLagMonitor.scaledThreads(2, 1, 4, 5000, 6000, THRESHOLD), equalTo(2));
+  }
+
+  @Test
+  public void shouldNotAddThreadBeforeLagWasCheckedTwice() {
+    assertThat(QueryLagMonitor.scaledThreads(2, 1, 4, 5000, -1, THRESHOLD), equalTo(2));
+  }
+
+  @Test
+  public void shouldNotScaleAboveMaxThreads() {
+    assertThat(QueryLagMonitor.scaledThreads(4, 1, 4, 5000, 4000, THRESHOLD), equalTo(4));
+  }
+
+  @Test
+  public void shouldGiveBackThreadOnceCaughtUp() {
+    assertThat(QueryLagMonitor.scaledThreads(3, 1, 4, 50, 4000, THRESHOLD), equalTo(2));
+  }
+
+  @Test
+  public void shouldNotScaleBelowInitialThreads() {
+    assertThat(QueryLagMonitor.scaledThreads(2, 2, 4, 0, 0, THRESHOLD), equalTo(2));
+  }
+
+  @Test
+  public void shouldKeepThreadsWhileLagIsBetweenBounds() {
+    assertThat(QueryLagMonitor.scaledThreads(3, 1, 4, 500, 400, THRESHOLD), equalTo(3));
+  }
+
+  @Test
+  public void shouldCheckLagFromCommittedAndEndOffsets() {
+    final MockConsumer<byte[], byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+    final TopicPartition behind = new TopicPartition("source", 0);
+    final TopicPartition caughtUp = new TopicPartition("source", 1);
+    final List<TopicPartition> partitions = Arrays.asList(behind, caughtUp);
+    consumer.assign(partitions);
+    final Map<TopicPartition, OffsetAndMetadata> committed = new HashMap<>();
+    committed.put(behind, new OffsetAndMetadata(5));
+    committed.put(caughtUp, new OffsetAndMetadata(10));
+    consumer.commitSync(committed);
+    final Map<TopicPartition, Long> endOffsets = new HashMap<>();
+    endOffsets.put(behind, 10L);
+    endOffsets.put(caughtUp, 10L);
+    consumer.updateEndOffsets(endOffsets);
+    final long oldestTimestamp = System.currentTimeMillis() - 60000;
+    consumer.addRecord(new ConsumerRecord<>("source", 0, 5, oldestTimestamp,
+                                            TimestampType.CREATE_TIME, 0L, 0, 0,
+                                            new byte[0], new byte[0]));
+
+    final QueryLag lag = QueryLagMonitor.checkLag(consumer, partitions);
+
+    assertThat(lag.getLagRecords(), equalTo(5L));
+    assertThat(lag.getPartitionLagRecords().get(behind), equalTo(5L));
+    assertThat(lag.getPartitionLagRecords().get(caughtUp), equalTo(0L));
+    assertThat(lag.getLagMs() >= 60000, equalTo(true));
+  }
+}
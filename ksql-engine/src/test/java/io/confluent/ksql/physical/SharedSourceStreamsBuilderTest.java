@@ -0,0 +1,63 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.physical;
+
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.Consumed;
+import org.apache.kafka.streams.TopologyDescription;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SharedSourceStreamsBuilderTest {
+
+  private final SharedSourceStreamsBuilder builder = new SharedSourceStreamsBuilder();
+
+  private void buildQuery(final String sink) {
+    builder.nextQuery(null);
+    builder.stream("pageviews", Consumed.with(Serdes.String(), Serdes.String())).to(sink);
+  }
+
+  private List<TopologyDescription.Node> nodes() {
+    return builder.build().describe().subtopologies().stream()
+        .flatMap(subtopology -> subtopology.nodes().stream())
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void shouldReadTopicOnceForAllQueries() {
+    buildQuery("pageviews_1");
+    buildQuery("pageviews_2");
+    buildQuery("pageviews_3");
+    final long sources = nodes().stream()
+        .filter(node -> node instanceof TopologyDescription.Source)
+        .count();
+    assertThat(sources, equalTo(1L));
+  }
+
+  @Test
+  public void shouldPutEachQueryBehindItsOwnGate() {
+    buildQuery("pageviews_1");
+    buildQuery("pageviews_2");
+    final long gates = nodes().stream()
+        .filter(node -> node.name().startsWith("KSTREAM-FILTER-"))
+        .count();
+    assertThat(gates, equalTo(2L));
+  }
+}
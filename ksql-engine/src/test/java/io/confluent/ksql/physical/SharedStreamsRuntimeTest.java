@@ -0,0 +1,154 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.physical;
+
+import io.confluent.ksql.util.KsqlException;
+import io.confluent.ksql.util.Throttle;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.processor.internals.DefaultKafkaClientSupplier;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SharedStreamsRuntimeTest {
+
+  @Test
+  public void shouldGrantRequestedThreadsWithinBudget() {
+    final SharedStreamsRuntime runtime = new SharedStreamsRuntime(8, false);
+    assertThat(runtime.allocateThreads("query_1", 4), equalTo(4));
+    assertThat(runtime.allocateThreads("query_2", 2), equalTo(2));
+    assertThat(runtime.getAllocatedThreads(), equalTo(6));
+  }
+
+  @Test
+  public void shouldGrantWhatIsLeftOfTheBudget() {
+    final SharedStreamsRuntime runtime = new SharedStreamsRuntime(4, false);
+    runtime.allocateThreads("query_1", 3);
+    assertThat(runtime.allocateThreads("query_2", 4), equalTo(1));
+    assertThat(runtime.getAllocatedThreads(), equalTo(4));
+  }
+
+  @Test(expected = KsqlException.class)
+  public void shouldFailWhenBudgetIsUsedUp() {
+    final SharedStreamsRuntime runtime = new SharedStreamsRuntime(2, false);
+    runtime.allocateThreads("query_1", 2);
+    runtime.allocateThreads("query_2", 1);
+  }
+
+  @Test
+  public void shouldReturnThreadsOfReleasedQueryToBudget() {
+    final SharedStreamsRuntime runtime = new SharedStreamsRuntime(2, false);
+    runtime.allocateThreads("query_1", 2);
+    runtime.release("query_1");
+    assertThat(runtime.allocateThreads("query_2", 2), equalTo(2));
+  }
+
+  @Test
+  public void shouldNotLimitThreadsWithoutBudget() {
+    final SharedStreamsRuntime runtime = new SharedStreamsRuntime(0, false);
+    runtime.allocateThreads("query_1", 100);
+    assertThat(runtime.allocateThreads("query_2", 100), equalTo(100));
+  }
+
+  @Test
+  public void shouldReallocateThreadsWithCurrentThreadsReturnedToBudget() {
+    final SharedStreamsRuntime runtime = new SharedStreamsRuntime(4, false);
+    runtime.allocateThreads("query_1", 2);
+    runtime.allocateThreads("query_2", 1);
+    assertThat(runtime.reallocateThreads("query_1", 4), equalTo(3));
+    assertThat(runtime.getAllocatedThreads(), equalTo(4));
+  }
+
+  @Test
+  public void shouldGrantRequestedStateStoreBytesOrWhatIsLeftOfTheBudget() {
+    final SharedStreamsRuntime runtime = new SharedStreamsRuntime(0, false, 0, 0, 1000);
+    assertThat(runtime.allocateStateStoreBytes("query_1", 600), equalTo(600L));
+    assertThat(runtime.allocateStateStoreBytes("query_2", 600), equalTo(400L));
+    runtime.release("query_1");
+    assertThat(runtime.allocateStateStoreBytes("query_3", 0), equalTo(600L));
+  }
+
+  @Test(expected = KsqlException.class)
+  public void shouldFailWhenStateStoreBudgetIsUsedUp() {
+    final SharedStreamsRuntime runtime = new SharedStreamsRuntime(0, false, 0, 0, 1000);
+    runtime.allocateStateStoreBytes("query_1", 0);
+    runtime.allocateStateStoreBytes("query_2", 100);
+  }
+
+  @Test
+  public void shouldDivideConsumeRateBudgetAmongRunningQueries() {
+    final SharedStreamsRuntime runtime = new SharedStreamsRuntime(0, false, 1000, 0, 0);
+    final Throttle first = runtime.allocateRecordThrottle("query_1");
+    assertThat(first.getPermitsPerSecond(), equalTo(1000L));
+    final Throttle second = runtime.allocateRecordThrottle("query_2");
+    assertThat(first.getPermitsPerSecond(), equalTo(500L));
+    assertThat(second.getPermitsPerSecond(), equalTo(500L));
+    runtime.release("query_1");
+    assertThat(second.getPermitsPerSecond(), equalTo(1000L));
+  }
+
+  @Test
+  public void shouldNotThrottleWithoutConsumeRateBudget() {
+    final SharedStreamsRuntime runtime = new SharedStreamsRuntime(0, false);
+    assertThat(runtime.allocateRecordThrottle("query_1"), nullValue());
+    assertThat(runtime.allocateByteThrottle("query_1"), nullValue());
+  }
+
+  @Test
+  public void shouldUseDefaultClientsWhenProducerIsNotShared() {
+    final SharedStreamsRuntime runtime = new SharedStreamsRuntime(0, false);
+    assertThat(runtime.clientSupplier(Collections.<String, Object>emptyMap()).getClass()
+                   .equals(DefaultKafkaClientSupplier.class), equalTo(true));
+  }
+
+  @Test
+  public void shouldNotShareProducerForExactlyOnceQueries() {
+    final SharedStreamsRuntime runtime = new SharedStreamsRuntime(0, true);
+    assertThat(runtime.clientSupplier(Collections.<String, Object>singletonMap(
+        StreamsConfig.PROCESSING_GUARANTEE_CONFIG, StreamsConfig.EXACTLY_ONCE)).getClass()
+                   .equals(DefaultKafkaClientSupplier.class), equalTo(true));
+  }
+
+  @Test
+  public void shouldShareProducerOnlyBetweenQueriesWithSameProducerConfigs() {
+    final SharedStreamsRuntime runtime = new SharedStreamsRuntime(0, true);
+    try {
+      runtime.clientSupplier(streamsProperties("query_1", 0));
+      runtime.clientSupplier(streamsProperties("query_2", 0));
+      assertThat(runtime.getSharedProducerCount(), equalTo(1));
+      runtime.clientSupplier(streamsProperties("query_3", 100));
+      assertThat(runtime.getSharedProducerCount(), equalTo(2));
+    } finally {
+      runtime.close();
+    }
+  }
+
+  private static Map<String, Object> streamsProperties(final String applicationId,
+                                                       final long lingerMs) {
+    final Map<String, Object> properties = new HashMap<>();
+    properties.put(StreamsConfig.APPLICATION_ID_CONFIG, applicationId);
+    properties.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+    properties.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+    return properties;
+  }
+}
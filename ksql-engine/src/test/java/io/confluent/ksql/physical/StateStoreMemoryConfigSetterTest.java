@@ -0,0 +1,68 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.physical;
+
+import org.junit.Test;
+import org.rocksdb.Options;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class StateStoreMemoryConfigSetterTest {
+
+  private final StateStoreMemoryConfigSetter configSetter = new StateStoreMemoryConfigSetter();
+
+  @Test
+  public void shouldSplitStoreMemoryBetweenCacheAndWriteBuffers() {
+    final Options options = new Options();
+    final Map<String, Object> configs = Collections.singletonMap(
+        StateStoreMemoryConfigSetter.STORE_BYTES_CONFIG, 8 * 1024 * 1024L);
+
+    configSetter.setConfig("store", options, configs);
+
+    assertThat(options.writeBufferSize(), equalTo(2 * 1024 * 1024L));
+    assertThat(options.maxWriteBufferNumber(), equalTo(2));
+    assertThat(options.tableFormatConfigName(), equalTo("BlockBasedTable"));
+    options.close();
+  }
+
+  @Test
+  public void shouldNotShrinkWriteBuffersBelowMinimum() {
+    final Options options = new Options();
+    final Map<String, Object> configs = Collections.singletonMap(
+        StateStoreMemoryConfigSetter.STORE_BYTES_CONFIG, "1024");
+
+    configSetter.setConfig("store", options, configs);
+
+    assertThat(options.writeBufferSize(), equalTo(64 * 1024L));
+    options.close();
+  }
+
+  @Test
+  public void shouldLeaveOptionsAloneWithoutStoreMemory() {
+    final Options options = new Options();
+    final long defaultWriteBufferSize = options.writeBufferSize();
+    final int defaultMaxWriteBufferNumber = options.maxWriteBufferNumber();
+
+    configSetter.setConfig("store", options, Collections.<String, Object>emptyMap());
+
+    assertThat(options.writeBufferSize(), equalTo(defaultWriteBufferSize));
+    assertThat(options.maxWriteBufferNumber(), equalTo(defaultMaxWriteBufferNumber));
+    options.close();
+  }
+}
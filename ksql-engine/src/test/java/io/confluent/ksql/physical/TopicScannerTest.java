@@ -0,0 +1,171 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.physical;
+
+import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.function.FunctionRegistry;
+import io.confluent.ksql.metastore.MetaStore;
+import io.confluent.ksql.metastore.StructuredDataSource;
+import io.confluent.ksql.structured.LogicalPlanBuilder;
+import io.confluent.ksql.structured.ScanPipeline;
+import io.confluent.ksql.util.KsqlException;
+import io.confluent.ksql.util.MetaStoreFixture;
+import io.confluent.ksql.util.QueryLimit;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.streams.KeyValue;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TopicScannerTest {
+
+  private static final String TOPIC = "test1";
+  private static final TopicPartition PARTITION = new TopicPartition(TOPIC, 0);
+
+  private final RecordingConsumer consumer = new RecordingConsumer();
+  private final BlockingQueue<KeyValue<String, GenericRow>> rowQueue =
+      new LinkedBlockingQueue<>();
+  private ScanPipeline pipeline;
+
+  @Before
+  public void before() {
+    final MetaStore metaStore = MetaStoreFixture.getNewMetaStore();
+    final StructuredDataSource test1 = metaStore.getSource("TEST1");
+    metaStore.deleteSource("TEST1");
+    metaStore.putSource(test1.cloneWithTimeKeyColumns());
+    pipeline = ScanPipeline.of(
+        new LogicalPlanBuilder(metaStore)
+            .buildLogicalPlan("SELECT col0 FROM test1 WHERE col0 > 100;"),
+        new FunctionRegistry()).get();
+
+    final Node node = new Node(0, "localhost", 9092);
+    consumer.updatePartitions(TOPIC, Collections.singletonList(
+        new PartitionInfo(TOPIC, 0, node, new Node[]{node}, new Node[]{node})));
+    consumer.updateBeginningOffsets(Collections.singletonMap(PARTITION, 0L));
+    consumer.updateEndOffsets(Collections.singletonMap(PARTITION, 3L));
+  }
+
+  @Test
+  public void shouldScanFromBeginningByDefault() {
+    addRecords("{\"COL0\": 150}");
+
+    scanner("earliest", 1).run();
+
+    assertThat(consumer.seeks, equalTo(Collections.singletonList("beginning")));
+  }
+
+  @Test
+  public void shouldScanFromEndWithLatestOffsetResetInAnyCase() {
+    addRecords("{\"COL0\": 150}");
+
+    scanner("LATEST", 1).run();
+
+    assertThat(consumer.seeks, equalTo(Collections.singletonList("end")));
+  }
+
+  @Test(expected = KsqlException.class)
+  public void shouldRejectOffsetResetNone() {
+    scanner("none", 1);
+  }
+
+  @Test
+  public void shouldSkipRecordsThatFailToDeserialize() {
+    addRecords("{\"COL0\": 150}", "not json", "{\"COL0\": 160}");
+
+    scanner("earliest", 2).run();
+
+    assertThat(scannedCol0s(), equalTo(Arrays.<Object>asList(150L, 160L)));
+  }
+
+  @Test
+  public void shouldStopAtLimitAfterFilteringRows() {
+    addRecords("{\"COL0\": 50}", "{\"COL0\": 150}", "{\"COL0\": 160}", "{\"COL0\": 170}");
+
+    scanner("earliest", 2).run();
+
+    // The filtered out row doesn't count toward the limit, and the last row isn't read
+    assertThat(scannedCol0s(), equalTo(Arrays.<Object>asList(150L, 160L)));
+  }
+
+  private TopicScanner scanner(final String offsetReset, final int limit) {
+    return new TopicScanner(
+        pipeline,
+        Collections.singletonMap(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, offsetReset),
+        rowQueue,
+        QueryLimit.of(Optional.of(limit)),
+        "scan",
+        properties -> consumer);
+  }
+
+  /**
+   * Records can only be added once the scanner has assigned the partition, on its first poll.
+   */
+  private void addRecords(final String... values) {
+    consumer.schedulePollTask(() -> {
+      long offset = 3;
+      for (String value : values) {
+        consumer.addRecord(new ConsumerRecord<>(
+            TOPIC, 0, offset++, "key", value.getBytes(StandardCharsets.UTF_8)));
+      }
+    });
+  }
+
+  private List<Object> scannedCol0s() {
+    final List<Object> col0s = new ArrayList<>();
+    for (KeyValue<String, GenericRow> row : rowQueue) {
+      col0s.add(row.value.getColumns().get(0));
+    }
+    return col0s;
+  }
+
+  private static class RecordingConsumer extends MockConsumer<String, byte[]> {
+
+    private final List<String> seeks = new ArrayList<>();
+
+    RecordingConsumer() {
+      super(OffsetResetStrategy.NONE);
+    }
+
+    @Override
+    public synchronized void seekToBeginning(final Collection<TopicPartition> partitions) {
+      seeks.add("beginning");
+      super.seekToBeginning(partitions);
+    }
+
+    @Override
+    public synchronized void seekToEnd(final Collection<TopicPartition> partitions) {
+      seeks.add("end");
+      super.seekToEnd(partitions);
+    }
+  }
+}
@@ -35,12 +35,15 @@ import io.confluent.ksql.planner.plan.ProjectNode;
 import io.confluent.ksql.planner.plan.StructuredDataSourceNode;
 import io.confluent.ksql.serde.DataSource;
 import io.confluent.ksql.util.MetaStoreFixture;
+import org.apache.kafka.connect.data.Field;
 import org.apache.kafka.connect.data.Schema;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -91,6 +94,16 @@ public class LogicalPlannerTest {
     assertThat(structuredDataSource.getName(), equalTo("TEST2"));
   }
 
+  @Test
+  public void shouldOnlyReadReferencedColumnsIntoTableSource() {
+    PlanNode planNode = buildLogicalPlan("select col1 from TEST2 where col4;");
+    StructuredDataSourceNode sourceNode = planNode.getTheSourceNode();
+    assertThat(sourceNode.getSchema().fields().stream().map(Field::name)
+                   .collect(Collectors.toList()),
+               equalTo(Arrays.asList("TEST2.ROWTIME", "TEST2.ROWKEY", "TEST2.COL0",
+                                     "TEST2.COL1", "TEST2.COL4")));
+  }
+
   @Test
   public void testSimpleQueryLogicalPlan() throws Exception {
     String simpleQuery = "SELECT col0, col2, col3 FROM test1 WHERE col0 > 100;";
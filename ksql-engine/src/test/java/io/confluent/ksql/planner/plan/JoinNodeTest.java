@@ -20,6 +20,7 @@ import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.utils.Utils;
 import org.apache.kafka.connect.data.Field;
 import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
 import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.Topology;
 import org.apache.kafka.streams.TopologyDescription;
@@ -27,18 +28,23 @@ import org.easymock.EasyMock;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import io.confluent.ksql.function.FunctionRegistry;
+import io.confluent.ksql.metastore.KsqlTable;
+import io.confluent.ksql.metastore.KsqlTopic;
 import io.confluent.ksql.metastore.MetaStore;
 import io.confluent.ksql.metastore.MetastoreUtil;
-import io.confluent.ksql.metastore.StructuredDataSource;
 import io.confluent.ksql.serde.WindowedSerde;
+import io.confluent.ksql.serde.json.KsqlJsonTopicSerDe;
 import io.confluent.ksql.structured.LogicalPlanBuilder;
 import io.confluent.ksql.structured.SchemaKStream;
 import io.confluent.ksql.structured.SchemaKTable;
@@ -47,7 +53,6 @@ import io.confluent.ksql.util.KsqlConfig;
 import io.confluent.ksql.util.KsqlException;
 import io.confluent.ksql.util.MetaStoreFixture;
 
-import static io.confluent.ksql.planner.plan.PlanTestUtil.MAP_NODE;
 import static io.confluent.ksql.planner.plan.PlanTestUtil.SOURCE_NODE;
 import static io.confluent.ksql.planner.plan.PlanTestUtil.getNodeByName;
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -74,7 +79,11 @@ public class JoinNodeTest {
   }
 
   private void buildJoinNode(String queryString) {
-    final KsqlBareOutputNode planNode = (KsqlBareOutputNode) new LogicalPlanBuilder(MetaStoreFixture.getNewMetaStore()).buildLogicalPlan(queryString);
+    buildJoinNode(queryString, MetaStoreFixture.getNewMetaStore());
+  }
+
+  private void buildJoinNode(String queryString, MetaStore metaStore) {
+    final KsqlBareOutputNode planNode = (KsqlBareOutputNode) new LogicalPlanBuilder(metaStore).buildLogicalPlan(queryString);
     joinNode = (JoinNode) ((ProjectNode) planNode.getSource()).getSource();
   }
 
@@ -83,7 +92,7 @@ public class JoinNodeTest {
     final TopologyDescription.Source node = (TopologyDescription.Source) getNodeByName(builder.build(), SOURCE_NODE);
     final List<String> successors = node.successors().stream().map(TopologyDescription.Node::name).collect(Collectors.toList());
     assertThat(node.predecessors(), equalTo(Collections.emptySet()));
-    assertThat(successors, equalTo(Collections.singletonList(MAP_NODE)));
+    assertThat(successors, equalTo(Collections.singletonList("KTABLE-SOURCE-0000000001")));
     assertThat(node.topics(), equalTo("[test2]"));
   }
 
@@ -150,27 +159,120 @@ public class JoinNodeTest {
     final Topology topology = builder.build();
     System.out.println(topology.describe());
     final TopologyDescription.Processor leftJoin
-        = (TopologyDescription.Processor) getNodeByName(topology, "KSTREAM-LEFTJOIN-0000000013");
+        = (TopologyDescription.Processor) getNodeByName(topology, "KSTREAM-LEFTJOIN-0000000012");
     final List<String> predecessors = leftJoin.predecessors().stream().map(TopologyDescription.Node::name).collect(Collectors.toList());
-    assertThat(leftJoin.stores(), equalTo(Utils.mkSet("KSTREAM-REDUCE-STATE-STORE-0000000003")));
-    assertThat(predecessors, equalTo(Collections.singletonList("KSTREAM-SOURCE-0000000012")));
+    assertThat(leftJoin.stores(), equalTo(Utils.mkSet("TEST2")));
+    assertThat(predecessors, equalTo(Collections.singletonList("KSTREAM-SOURCE-0000000011")));
   }
 
   @Test
-  public void shouldHaveAllFieldsFromJoinedInputs() {
+  public void shouldOnlyHaveReferencedFieldsFromJoinedInputs() {
+    final Set<String> expected = new HashSet<>(Arrays.asList(
+        "T1.ROWTIME", "T1.ROWKEY", "T1.COL0", "T1.COL1", "T1.COL5",
+        "T2.ROWTIME", "T2.ROWKEY", "T2.COL0", "T2.COL1", "T2.COL2", "T2.COL4"));
+    final Set<String> fields = stream.getSchema().fields().stream().map(Field::name).collect(Collectors.toSet());
+    assertThat(fields, equalTo(expected));
+  }
+
+  @Test
+  public void shouldKeepAllFieldsOfJoinedInputsForSelectStar() {
+    buildJoinNode("SELECT * FROM test1 t1 LEFT JOIN test2 t2 ON t1.col1 = t2.col1;");
     final MetaStore metaStore = MetaStoreFixture.getNewMetaStore();
-    final StructuredDataSource source1
-        = metaStore.getSource("TEST1");
-    final StructuredDataSource source2 = metaStore.getSource("TEST2");
-    final Set<String> expected = source1.getSchema()
+    final Set<String> expected = metaStore.getSource("TEST1").getSchema()
         .fields().stream()
-        .map(field -> "T1."+field.name()).collect(Collectors.toSet());
-
-    expected.addAll(source2.getSchema().fields().stream().map(field -> "T2." + field.name()).collect(Collectors.toSet()));
-    final Set<String> fields = stream.getSchema().fields().stream().map(Field::name).collect(Collectors.toSet());
+        .map(field -> "T1." + field.name()).collect(Collectors.toSet());
+    expected.addAll(metaStore.getSource("TEST2").getSchema().fields().stream()
+                        .map(field -> "T2." + field.name()).collect(Collectors.toSet()));
+    final Set<String> fields = joinNode.getSchema().fields().stream().map(Field::name).collect(Collectors.toSet());
     assertThat(fields, equalTo(expected));
   }
 
+  @Test
+  public void shouldBuildWindowedStreamStreamJoin() {
+    buildJoinNode("SELECT t1.col1, o.itemid FROM test1 t1 JOIN orders o WITHIN 10 SECONDS "
+                  + "ON t1.col0 = o.ordertime;");
+    assertThat(joinNode.getWithinMs(), equalTo(Optional.of(10000L)));
+    stream = buildStream();
+    final List<String> processors = builder.build().describe().subtopologies().stream()
+        .flatMap(subtopology -> subtopology.nodes().stream())
+        .map(TopologyDescription.Node::name)
+        .filter(name -> name.startsWith("KSTREAM-JOINTHIS-")
+                        || name.startsWith("KSTREAM-JOINOTHER-"))
+        .collect(Collectors.toList());
+    assertThat(processors.size(), equalTo(2));
+  }
+
+  @Test
+  public void shouldBoundJoinStoresByRetention() {
+    buildJoinNode("SELECT t1.col1, o.itemid FROM test1 t1 LEFT JOIN orders o WITHIN 10 SECONDS "
+                  + "ON t1.col0 = o.ordertime;");
+    assertThat(joinNode.withRetentionMs(60000L).joinWindows().maintainMs(), equalTo(60000L));
+  }
+
+  @Test(expected = KsqlException.class)
+  public void shouldNotAllowRetentionShorterThanJoinWindow() {
+    buildJoinNode("SELECT t1.col1, o.itemid FROM test1 t1 LEFT JOIN orders o WITHIN 10 SECONDS "
+                  + "ON t1.col0 = o.ordertime;");
+    joinNode.withRetentionMs(1000L).joinWindows();
+  }
+
+  @Test(expected = KsqlException.class)
+  public void shouldNotAllowStreamStreamJoinWithoutWithin() {
+    buildJoinNode("SELECT t1.col1, o.itemid FROM test1 t1 JOIN orders o "
+                  + "ON t1.col0 = o.ordertime;");
+  }
+
+  @Test
+  public void shouldCacheTableRowsWhenJoinCacheSizeIsSet() {
+    joinNode = joinNode.withTableCacheSize(100);
+    stream = buildStream();
+    final SchemaKTable table = (SchemaKTable) stream.getSourceSchemaKStreams().get(1);
+    assertThat(table.getRowCache().getCapacity(), equalTo(100));
+    assertThat(stream.getExecutionPlan("").contains("table row cache: 100 rows"), equalTo(true));
+  }
+
+  @Test
+  public void shouldNotCacheTableRowsByDefault() {
+    final SchemaKTable table = (SchemaKTable) stream.getSourceSchemaKStreams().get(1);
+    assertThat(table.getRowCache(), equalTo(null));
+  }
+
+  @Test(expected = KsqlException.class)
+  public void shouldNotCacheTableRowsOfStreamStreamJoin() {
+    buildJoinNode("SELECT t1.col1, o.itemid FROM test1 t1 LEFT JOIN orders o WITHIN 10 SECONDS "
+                  + "ON t1.col0 = o.ordertime;");
+    joinNode = joinNode.withTableCacheSize(100);
+    buildStream();
+  }
+
+  @Test
+  public void shouldJoinBroadcastTableWithoutRepartitioning() {
+    final MetaStore metaStore = MetaStoreFixture.getNewMetaStore();
+    final Schema usersSchema = SchemaBuilder.struct()
+        .field("USERID", Schema.STRING_SCHEMA)
+        .field("REGION", Schema.STRING_SCHEMA)
+        .build();
+    final KsqlTopic usersTopic = new KsqlTopic("USERS", "users", new KsqlJsonTopicSerDe(null));
+    metaStore.putTopic(usersTopic);
+    metaStore.putSource(new KsqlTable("USERS", usersSchema, usersSchema.field("USERID"), null,
+                                      usersTopic, "USERS_statestore", false, true)
+                            .cloneWithTimeKeyColumns());
+
+    buildJoinNode("SELECT t1.col0, u.region FROM test1 t1 LEFT JOIN users u "
+                  + "ON t1.col1 = u.userid;", metaStore);
+    assertThat(joinNode.isBroadcastJoin(), equalTo(true));
+    stream = buildStream();
+
+    final TopologyDescription description = builder.build().describe();
+    assertThat(description.globalStores().size(), equalTo(1));
+    final List<String> sinks = description.subtopologies().stream()
+        .flatMap(subtopology -> subtopology.nodes().stream())
+        .map(TopologyDescription.Node::name)
+        .filter(name -> name.startsWith("KSTREAM-SINK-"))
+        .collect(Collectors.toList());
+    assertThat(sinks, equalTo(Collections.<String>emptyList()));
+  }
+
   private SchemaKStream buildStream() {
     builder = new StreamsBuilder();
     return joinNode.buildStream(builder,
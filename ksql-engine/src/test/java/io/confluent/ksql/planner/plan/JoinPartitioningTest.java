@@ -0,0 +1,109 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+
+package io.confluent.ksql.planner.plan;
+
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.confluent.ksql.util.KafkaTopicClient;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class JoinPartitioningTest {
+
+  @Test
+  public void shouldNotRepartitionCoPartitionedSides() {
+    final JoinPartitioning partitioning = JoinPartitioning.plan(4, 4, false, false, true);
+    assertThat(partitioning.shouldRepartitionLeft(), equalTo(false));
+    assertThat(partitioning.shouldRepartitionRight(), equalTo(false));
+    assertThat(partitioning.toString(),
+               equalTo("Co-partitioned (left: 4 partitions, right: 4 partitions)"));
+  }
+
+  @Test
+  public void shouldOnlyRepartitionRekeyedSide() {
+    final JoinPartitioning partitioning = JoinPartitioning.plan(8, 4, true, false, true);
+    assertThat(partitioning.shouldRepartitionLeft(), equalTo(true));
+    assertThat(partitioning.isLeftResized(), equalTo(false));
+    assertThat(partitioning.shouldRepartitionRight(), equalTo(false));
+  }
+
+  @Test
+  public void shouldResizeSideWithFewerPartitions() {
+    final JoinPartitioning partitioning = JoinPartitioning.plan(8, 4, false, false, true);
+    assertThat(partitioning.isLeftResized(), equalTo(false));
+    assertThat(partitioning.isRightResized(), equalTo(true));
+    assertThat(partitioning.toString(),
+               equalTo("Repartition right (resized) (left: 8 partitions, right: 4 partitions)"));
+  }
+
+  @Test
+  public void shouldResizeLeftIfRightCannotBeRepartitioned() {
+    final JoinPartitioning partitioning = JoinPartitioning.plan(8, 4, false, false, false);
+    assertThat(partitioning.isLeftResized(), equalTo(true));
+    assertThat(partitioning.isRightResized(), equalTo(false));
+  }
+
+  @Test
+  public void shouldNotResizeWhenPartitionCountsAreUnknown() {
+    final KafkaTopicClient topicClient = EasyMock.createNiceMock(KafkaTopicClient.class);
+    EasyMock.replay(topicClient);
+    final JoinPartitioning partitioning =
+        JoinPartitioning.plan(topicClient, "left", "right", false, false, true);
+    assertThat(partitioning.shouldRepartitionLeft(), equalTo(false));
+    assertThat(partitioning.shouldRepartitionRight(), equalTo(false));
+    assertThat(partitioning.toString(),
+               equalTo("Co-partitioned (left: unknown, right: unknown)"));
+  }
+
+  @Test
+  public void shouldFetchPartitionCountsFromTopicClient() {
+    final KafkaTopicClient topicClient = EasyMock.createNiceMock(KafkaTopicClient.class);
+    final Map<String, TopicDescription> descriptions = new HashMap<>();
+    descriptions.put("left", topicDescription("left", 2));
+    descriptions.put("right", topicDescription("right", 6));
+    EasyMock.expect(topicClient.describeTopics(EasyMock.anyObject())).andReturn(descriptions);
+    EasyMock.replay(topicClient);
+
+    final JoinPartitioning partitioning =
+        JoinPartitioning.plan(topicClient, "left", "right", false, false, true);
+    assertThat(partitioning.getLeftPartitions(), equalTo(2));
+    assertThat(partitioning.getRightPartitions(), equalTo(6));
+    assertThat(partitioning.isLeftResized(), equalTo(true));
+  }
+
+  private static TopicDescription topicDescription(final String topic, final int partitions) {
+    final Node node = new Node(0, "localhost", 9092);
+    final List<TopicPartitionInfo> partitionInfos = new ArrayList<>();
+    for (int i = 0; i < partitions; i++) {
+      partitionInfos.add(new TopicPartitionInfo(i, node, Collections.singletonList(node),
+                                                Collections.singletonList(node)));
+    }
+    return new TopicDescription(topic, false, partitionInfos);
+  }
+}
@@ -27,6 +27,7 @@ import org.junit.Test;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import io.confluent.ksql.function.FunctionRegistry;
@@ -142,4 +143,62 @@ public class StructuredDataSourceNodeTest {
     assertThat(result.getClass(), equalTo(SchemaKTable.class));
   }
 
-}
\ No newline at end of file
+  @Test
+  public void shouldMaterializeKeyedTableFromSourceTopic() {
+    StructuredDataSourceNode node = new StructuredDataSourceNode(
+        new PlanNodeId("0"),
+        new KsqlTable("datasource",
+            schema,
+            schema.field("key"),
+            schema.field("timestamp"),
+            new KsqlTopic("topic2", "topic2",
+                new KsqlJsonTopicSerDe(schema)),
+            "statestore",
+            false),
+        schema);
+    assertThat(node.isMaterializedFromSourceTopic(), equalTo(true));
+    build(node);
+    assertThat(tableSourceStores().size(), equalTo(1));
+    final List<String> nodes = builder.build().describe().subtopologies().stream()
+        .flatMap(subtopology -> subtopology.nodes().stream())
+        .map(TopologyDescription.Node::name)
+        .filter(name -> name.startsWith("KSTREAM-REDUCE-") || name.startsWith("KSTREAM-SINK-"))
+        .collect(Collectors.toList());
+    assertThat(nodes, equalTo(Collections.<String>emptyList()));
+  }
+
+  @Test
+  public void shouldGiveEachReadOfTableFromSourceTopicItsOwnStore() {
+    final StructuredDataSourceNode node = keyedTableNode(schema.field("timestamp"));
+    build(node);
+    build(node);
+    assertThat(tableSourceStores().size(), equalTo(2));
+  }
+
+  @Test
+  public void shouldNotMaterializeTableWithoutTimestampColumnFromSourceTopic() {
+    assertThat(keyedTableNode(null).isMaterializedFromSourceTopic(), equalTo(false));
+  }
+
+  private StructuredDataSourceNode keyedTableNode(final Field timestampField) {
+    return new StructuredDataSourceNode(
+        new PlanNodeId("0"),
+        new KsqlTable("datasource",
+            schema,
+            schema.field("key"),
+            timestampField,
+            new KsqlTopic("topic2", "topic2",
+                new KsqlJsonTopicSerDe(schema)),
+            "statestore",
+            false),
+        schema);
+  }
+
+  private Set<String> tableSourceStores() {
+    return builder.build().describe().subtopologies().stream()
+        .flatMap(subtopology -> subtopology.nodes().stream())
+        .filter(node -> node.name().startsWith("KTABLE-SOURCE-"))
+        .flatMap(node -> ((TopologyDescription.Processor) node).stores().stream())
+        .collect(Collectors.toSet());
+  }
+}
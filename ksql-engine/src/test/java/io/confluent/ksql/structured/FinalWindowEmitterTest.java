@@ -0,0 +1,225 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.structured;
+
+import io.confluent.ksql.GenericRow;
+
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.kstream.internals.TimeWindow;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.StateStore;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class FinalWindowEmitterTest {
+
+  private static final String STORE_NAME = "final";
+  private static final long CLOSE_DELAY_MS = 100;
+
+  private final Buffer buffer = new Buffer();
+  private final ProcessorContext context = EasyMock.createNiceMock(ProcessorContext.class);
+  private final Capture<Windowed<String>> forwardedKeys = Capture.newInstance(CaptureType.ALL);
+  private final Capture<GenericRow> forwardedRows = Capture.newInstance(CaptureType.ALL);
+  private Transformer<Windowed<String>, GenericRow, KeyValue<Windowed<String>, GenericRow>>
+      transformer;
+
+  @Before
+  public void setUp() {
+    EasyMock.expect(context.getStateStore(STORE_NAME)).andReturn(buffer).anyTimes();
+    EasyMock.expect(context.timestamp()).andReturn(500L).andReturn(1200L).andReturn(1300L);
+    context.forward(EasyMock.capture(forwardedKeys), EasyMock.capture(forwardedRows));
+    EasyMock.expectLastCall().anyTimes();
+    EasyMock.replay(context);
+    transformer = new FinalWindowEmitter(STORE_NAME, CLOSE_DELAY_MS).get();
+    transformer.init(context);
+  }
+
+  @Test
+  public void shouldEmitLastResultOfWindowOnceClosed() {
+    transformer.transform(new Windowed<>("k", new TimeWindow(0L, 1000L)), row("first"));
+    assertThat(forwardedKeys.getValues().isEmpty(), equalTo(true));
+    // Nothing can have closed yet, so the buffer isn't scanned
+    assertThat(buffer.rangeScans, equalTo(0));
+
+    transformer.transform(new Windowed<>("k", new TimeWindow(1000L, 2000L)), row("second"));
+
+    assertThat(forwardedKeys.getValues().size(), equalTo(1));
+    assertThat(forwardedKeys.getValue().key(), equalTo("k"));
+    assertThat(forwardedKeys.getValue().window().end(), equalTo(1000L));
+    assertThat(forwardedRows.getValue().getColumns().get(0), equalTo((Object) "first"));
+    assertThat(buffer.entries.size(), equalTo(1));
+    assertThat(buffer.rangeScans, equalTo(1));
+  }
+
+  @Test
+  public void shouldDropLateUpdateOfClosedWindow() {
+    transformer.transform(new Windowed<>("k", new TimeWindow(0L, 1000L)), row("first"));
+    transformer.transform(new Windowed<>("k", new TimeWindow(1000L, 2000L)), row("second"));
+
+    transformer.transform(new Windowed<>("k", new TimeWindow(0L, 1000L)), row("late"));
+
+    assertThat(forwardedKeys.getValues().size(), equalTo(1));
+    assertThat(buffer.entries.size(), equalTo(1));
+    assertThat(buffer.rangeScans, equalTo(1));
+  }
+
+  @Test
+  public void shouldRoundTripWindowedKeyThroughBufferKey() {
+    final Windowed<String> key = new Windowed<>("a:b", new TimeWindow(1000L, 2000L));
+
+    final Windowed<String> decoded =
+        FinalWindowEmitter.windowedKey(FinalWindowEmitter.bufferKey(key));
+
+    assertThat(decoded.key(), equalTo("a:b"));
+    assertThat(decoded.window().start(), equalTo(1000L));
+    assertThat(decoded.window().end(), equalTo(2000L));
+  }
+
+  @Test
+  public void shouldOrderBufferKeysByWindowEnd() {
+    final String earlier = FinalWindowEmitter.bufferKey(
+        new Windowed<>("z", new TimeWindow(900L, 9000L)));
+    final String later = FinalWindowEmitter.bufferKey(
+        new Windowed<>("a", new TimeWindow(10000L, 20000L)));
+
+    assertTrue(earlier.compareTo(later) < 0);
+  }
+
+  private static GenericRow row(final String value) {
+    return new GenericRow(Collections.singletonList(value));
+  }
+
+  private static final class Buffer implements KeyValueStore<String, GenericRow> {
+
+    private final TreeMap<String, GenericRow> entries = new TreeMap<>();
+    private int rangeScans;
+
+    @Override
+    public void put(final String key, final GenericRow value) {
+      entries.put(key, value);
+    }
+
+    @Override
+    public GenericRow putIfAbsent(final String key, final GenericRow value) {
+      return entries.putIfAbsent(key, value);
+    }
+
+    @Override
+    public void putAll(final List<KeyValue<String, GenericRow>> keyValues) {
+      for (KeyValue<String, GenericRow> keyValue : keyValues) {
+        entries.put(keyValue.key, keyValue.value);
+      }
+    }
+
+    @Override
+    public GenericRow delete(final String key) {
+      return entries.remove(key);
+    }
+
+    @Override
+    public GenericRow get(final String key) {
+      return entries.get(key);
+    }
+
+    @Override
+    public KeyValueIterator<String, GenericRow> range(final String from, final String to) {
+      rangeScans++;
+      return iterator(entries.subMap(from, true, to, true));
+    }
+
+    @Override
+    public KeyValueIterator<String, GenericRow> all() {
+      return iterator(entries);
+    }
+
+    @Override
+    public long approximateNumEntries() {
+      return entries.size();
+    }
+
+    @Override
+    public String name() {
+      return STORE_NAME;
+    }
+
+    @Override
+    public void init(final ProcessorContext context, final StateStore root) {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public boolean persistent() {
+      return false;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    private static KeyValueIterator<String, GenericRow> iterator(
+        final Map<String, GenericRow> entries) {
+      final Iterator<Map.Entry<String, GenericRow>> iterator =
+          new TreeMap<>(entries).entrySet().iterator();
+      return new KeyValueIterator<String, GenericRow>() {
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String peekNextKey() {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean hasNext() {
+          return iterator.hasNext();
+        }
+
+        @Override
+        public KeyValue<String, GenericRow> next() {
+          final Map.Entry<String, GenericRow> entry = iterator.next();
+          return new KeyValue<>(entry.getKey(), entry.getValue());
+        }
+      };
+    }
+  }
+}
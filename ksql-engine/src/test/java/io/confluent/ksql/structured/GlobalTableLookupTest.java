@@ -0,0 +1,95 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.structured;
+
+import io.confluent.ksql.GenericRow;
+
+import org.apache.kafka.streams.kstream.ValueJoiner;
+import org.apache.kafka.streams.kstream.ValueTransformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.StateStore;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class GlobalTableLookupTest {
+
+  private static final String STORE_NAME = "USERS_BROADCAST";
+
+  private final ProcessorContext context = EasyMock.createNiceMock(ProcessorContext.class);
+  @SuppressWarnings("unchecked")
+  private final KeyValueStore<String, GenericRow> table =
+      EasyMock.createNiceMock(KeyValueStore.class);
+  private final ValueJoiner<GenericRow, GenericRow, GenericRow> joiner = (streamRow, tableRow) -> {
+    final List<Object> columns = new ArrayList<>(streamRow.getColumns());
+    columns.add(tableRow == null ? null : tableRow.getColumns().get(0));
+    return new GenericRow(columns);
+  };
+
+  @Before
+  public void setUp() {
+    EasyMock.expect(context.getStateStore(STORE_NAME)).andReturn((StateStore) table).anyTimes();
+    EasyMock.expect(table.get("user1")).andReturn(row("west")).anyTimes();
+    EasyMock.replay(context, table);
+  }
+
+  @Test
+  public void shouldJoinMatchingTableRow() {
+    final GenericRow joined = lookup(false).transform(row("o1", "user1"));
+    assertThat(joined.getColumns(), equalTo(Arrays.<Object>asList("o1", "user1", "west")));
+  }
+
+  @Test
+  public void shouldKeepRowWithNullLookupKeyInLeftJoin() {
+    // Stream records with a null message key reach the lookup too, and are kept
+    final GenericRow joined = lookup(true).transform(row("o1", null));
+    assertThat(joined.getColumns(), equalTo(Arrays.<Object>asList("o1", null, null)));
+  }
+
+  @Test
+  public void shouldKeepUnmatchedRowInLeftJoin() {
+    final GenericRow joined = lookup(true).transform(row("o1", "user2"));
+    assertThat(joined.getColumns(), equalTo(Arrays.<Object>asList("o1", "user2", null)));
+  }
+
+  @Test
+  public void shouldDropUnmatchedRowInInnerJoin() {
+    assertThat(lookup(false).transform(row("o1", "user2")), nullValue());
+    assertThat(lookup(false).transform(row("o1", null)), nullValue());
+  }
+
+  private ValueTransformer<GenericRow, GenericRow> lookup(final boolean isLeftJoin) {
+    final ValueTransformer<GenericRow, GenericRow> transformer = new GlobalTableLookup(
+        STORE_NAME,
+        (key, row) -> (String) row.getColumns().get(1),
+        joiner,
+        isLeftJoin).get();
+    transformer.init(context);
+    return transformer;
+  }
+
+  private static GenericRow row(final Object... columns) {
+    return new GenericRow(Arrays.asList(columns));
+  }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.structured;
+
+import org.apache.kafka.streams.kstream.Predicate;
+import org.apache.kafka.streams.kstream.ValueMapper;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class OperatorMetricsTest {
+
+  @Test
+  public void shouldCountRowsPassedByPredicate() {
+    final OperatorMetrics metrics = new OperatorMetrics(1);
+    final Predicate<String, Integer> predicate =
+        metrics.predicate((key, value) -> value % 4 == 0);
+    for (int i = 0; i < 100; i++) {
+      predicate.test("k", i);
+    }
+
+    assertThat(metrics.getRowsIn(), equalTo(100L));
+    assertThat(metrics.getRowsOut(), equalTo(25L));
+    assertThat(metrics.getSelectivity(), equalTo(0.25));
+  }
+
+  @Test
+  public void shouldPassOnEveryMappedRow() {
+    final OperatorMetrics metrics = new OperatorMetrics(5);
+    final ValueMapper<Integer, Integer> mapper = metrics.valueMapper(value -> value * 2);
+    for (int i = 0; i < 10; i++) {
+      assertThat(mapper.apply(i), equalTo(i * 2));
+    }
+
+    assertThat(metrics.getRowsIn(), equalTo(10L));
+    assertThat(metrics.getRowsOut(), equalTo(10L));
+    assertThat(metrics.getSelectivity(), equalTo(1.0));
+  }
+
+  @Test
+  public void shouldReportFullSelectivityBeforeAnyRow() {
+    final OperatorMetrics metrics = new OperatorMetrics(1);
+    assertThat(metrics.getSelectivity(), equalTo(1.0));
+    assertThat(metrics.getNanosPerRow(), equalTo(0L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectNonPositiveSampleInterval() {
+    new OperatorMetrics(0);
+  }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.structured;
+
+import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.function.KsqlAggregateFunction;
+import io.confluent.ksql.function.udaf.KudafMergeAggregator;
+import io.confluent.ksql.function.udaf.count.CountKudaf;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.kstream.Windowed;
+import org.apache.kafka.streams.kstream.internals.TimeWindow;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.state.WindowStore;
+import org.apache.kafka.streams.state.WindowStoreIterator;
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PaneWindowAssemblerTest {
+
+  private static final String STORE_NAME = "panes";
+
+  private final Map<Integer, KsqlAggregateFunction> functions =
+      Collections.singletonMap(1, new CountKudaf(1));
+  private final Map<Integer, Integer> columns = Collections.singletonMap(0, 0);
+
+  @Test
+  public void shouldComputePaneSizeAsGreatestCommonDivisor() {
+    assertThat(PaneWindowAssembler.paneSize(60000, 10000), equalTo(10000L));
+    assertThat(PaneWindowAssembler.paneSize(50000, 20000), equalTo(10000L));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldAssembleEveryWindowContainingUpdatedPane() {
+    final WindowStore<String, GenericRow> store = EasyMock.createMock(WindowStore.class);
+    EasyMock.expect(store.fetch("k", 0L, 40L)).andReturn(iterator(
+        new KeyValue<>(0L, row(1)),
+        new KeyValue<>(10L, row(2)),
+        new KeyValue<>(20L, row(3)),
+        new KeyValue<>(30L, row(4))));
+    final ProcessorContext context = EasyMock.createMock(ProcessorContext.class);
+    EasyMock.expect(context.getStateStore(STORE_NAME)).andReturn(store);
+    final Capture<Windowed<String>> keys = Capture.newInstance(CaptureType.ALL);
+    final Capture<GenericRow> rows = Capture.newInstance(CaptureType.ALL);
+    context.forward(EasyMock.capture(keys), EasyMock.capture(rows));
+    EasyMock.expectLastCall().times(3);
+    EasyMock.replay(store, context);
+
+    final Transformer<Windowed<String>, GenericRow, KeyValue<Windowed<String>, GenericRow>>
+        transformer = new PaneWindowAssembler(
+            STORE_NAME, 30, 10, new KudafMergeAggregator(functions, columns)).get();
+    transformer.init(context);
+    transformer.transform(new Windowed<>("k", new TimeWindow(20, 30)), row(3));
+
+    EasyMock.verify(store, context);
+    assertThat(keys.getValues().get(0).window().start(), equalTo(0L));
+    assertThat(keys.getValues().get(2).window().end(), equalTo(50L));
+    assertThat(rows.getValues().get(0).getColumns().get(1), equalTo(6L));
+    assertThat(rows.getValues().get(1).getColumns().get(1), equalTo(9L));
+    assertThat(rows.getValues().get(2).getColumns().get(1), equalTo(7L));
+  }
+
+  private static GenericRow row(final long count) {
+    return new GenericRow(Arrays.asList("k", count));
+  }
+
+  @SafeVarargs
+  private static WindowStoreIterator<GenericRow> iterator(
+      final KeyValue<Long, GenericRow>... panes) {
+    final Iterator<KeyValue<Long, GenericRow>> iterator = Arrays.asList(panes).iterator();
+    return new WindowStoreIterator<GenericRow>() {
+      @Override
+      public void close() {
+      }
+
+      @Override
+      public Long peekNextKey() {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public KeyValue<Long, GenericRow> next() {
+        return iterator.next();
+      }
+    };
+  }
+}
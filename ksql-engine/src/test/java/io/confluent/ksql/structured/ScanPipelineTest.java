@@ -0,0 +1,89 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.structured;
+
+import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.function.FunctionRegistry;
+import io.confluent.ksql.metastore.MetaStore;
+import io.confluent.ksql.metastore.StructuredDataSource;
+import io.confluent.ksql.planner.plan.PlanNode;
+import io.confluent.ksql.util.MetaStoreFixture;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ScanPipelineTest {
+
+  private final FunctionRegistry functionRegistry = new FunctionRegistry();
+  private LogicalPlanBuilder planBuilder;
+
+  @Before
+  public void before() {
+    final MetaStore metaStore = MetaStoreFixture.getNewMetaStore();
+    // Sources registered by the engine have the implicit ROWTIME and ROWKEY columns
+    final StructuredDataSource test1 = metaStore.getSource("TEST1");
+    metaStore.deleteSource("TEST1");
+    metaStore.putSource(test1.cloneWithTimeKeyColumns());
+    planBuilder = new LogicalPlanBuilder(metaStore);
+  }
+
+  private Optional<ScanPipeline> scanPipeline(final String query) {
+    final PlanNode logicalPlan = planBuilder.buildLogicalPlan(query);
+    return ScanPipeline.of(logicalPlan, functionRegistry);
+  }
+
+  private static GenericRow topicRow(final long col0) {
+    return new GenericRow(Arrays.asList(col0, "one", "two", 1.5, Arrays.asList(2.5),
+                                        Collections.emptyMap()));
+  }
+
+  @Test
+  public void shouldFilterAndProjectRows() {
+    final ScanPipeline pipeline =
+        scanPipeline("SELECT col0, col2, col3 FROM test1 WHERE col0 > 100;").get();
+
+    assertThat(pipeline.apply(1000L, "key", topicRow(150L)).getColumns(),
+               equalTo(Arrays.asList(150L, "two", 1.5)));
+    assertThat(pipeline.apply(1000L, "key", topicRow(50L)), nullValue());
+  }
+
+  @Test
+  public void shouldProjectRowTimeAndRowKey() {
+    final ScanPipeline pipeline = scanPipeline("SELECT rowkey, rowtime, col0 FROM test1;").get();
+
+    assertThat(pipeline.apply(1000L, "key", topicRow(150L)).getColumns(),
+               equalTo(Arrays.asList("key", 1000L, 150L)));
+  }
+
+  @Test
+  public void shouldNotScanAggregateQuery() {
+    assertThat(scanPipeline("SELECT col0, count(*) FROM test1 GROUP BY col0;").isPresent(),
+               equalTo(false));
+  }
+
+  @Test
+  public void shouldNotScanTable() {
+    assertThat(scanPipeline("SELECT col0 FROM test2;").isPresent(), equalTo(false));
+  }
+}
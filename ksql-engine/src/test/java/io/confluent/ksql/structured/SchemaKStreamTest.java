@@ -16,6 +16,7 @@
 
 package io.confluent.ksql.structured;
 
+import io.confluent.ksql.GenericRow;
 import io.confluent.ksql.function.FunctionRegistry;
 import io.confluent.ksql.metastore.KsqlStream;
 import io.confluent.ksql.metastore.MetaStore;
@@ -31,6 +32,10 @@ import org.apache.kafka.connect.data.Schema;
 import org.apache.kafka.streams.Consumed;
 import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.processor.StateStore;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.StoreBuilder;
+import org.apache.kafka.streams.state.internals.WrappedStateStore;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -160,4 +165,42 @@ public class SchemaKStreamTest {
 
   }
 
+  @Test
+  public void shouldInstrumentOperatorsOfSampledStream() throws Exception {
+    String selectQuery = "SELECT col0, col2, col3 FROM test1 WHERE col0 > 100;";
+    PlanNode logicalPlan = planBuilder.buildLogicalPlan(selectQuery);
+    FilterNode filterNode = (FilterNode) logicalPlan.getSources().get(0).getSources().get(0);
+
+    initialSchemaKStream = new SchemaKStream(logicalPlan.getTheSourceNode().getSchema(), kStream,
+                                             ksqlStream.getKeyField(), new ArrayList<>(),
+                                             SchemaKStream.Type.SOURCE, functionRegistry);
+    Assert.assertNull(initialSchemaKStream.filter(filterNode.getPredicate())
+                          .getOperatorMetrics());
+
+    initialSchemaKStream.setOperatorSampleInterval(10);
+    SchemaKStream filteredSchemaKStream = initialSchemaKStream.filter(filterNode.getPredicate());
+
+    Assert.assertTrue(filteredSchemaKStream.isOperatorSampled());
+    Assert.assertNotNull(filteredSchemaKStream.getOperatorMetrics());
+    Assert.assertTrue(filteredSchemaKStream.getExecutionPlan("").contains("Rows in: 0"));
+  }
+
+  @Test
+  public void shouldLogPreAggregateStoreBehindCache() {
+    final StoreBuilder<KeyValueStore<String, GenericRow>> storeBuilder =
+        SchemaKStream.preAggregateStoreBuilder(
+            "pre-aggregate",
+            SerDeUtil.getRowSerDe(ksqlStream.getKsqlTopic().getKsqlTopicSerDe(), null));
+    Assert.assertTrue(storeBuilder.loggingEnabled());
+
+    final List<String> layers = new ArrayList<>();
+    StateStore layer = storeBuilder.build();
+    while (layer instanceof WrappedStateStore) {
+      layers.add(layer.getClass().getSimpleName());
+      layer = ((WrappedStateStore) layer).wrappedStore();
+    }
+    Assert.assertTrue(layers.contains("CachingKeyValueStore"));
+    Assert.assertTrue(layers.contains("ChangeLoggingKeyValueBytesStore"));
+  }
+
 }
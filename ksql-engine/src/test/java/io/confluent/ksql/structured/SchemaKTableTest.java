@@ -23,6 +23,7 @@ import io.confluent.ksql.metastore.MetaStore;
 import io.confluent.ksql.planner.plan.FilterNode;
 import io.confluent.ksql.planner.plan.PlanNode;
 import io.confluent.ksql.planner.plan.ProjectNode;
+import io.confluent.ksql.util.KsqlException;
 import io.confluent.ksql.util.MetaStoreFixture;
 import io.confluent.ksql.util.SerDeUtil;
 import org.apache.kafka.common.serialization.Serdes;
@@ -158,4 +159,31 @@ public class SchemaKTableTest {
                       initialSchemaKTable);
   }
 
+  @Test(expected = KsqlException.class)
+  public void shouldNotEmitFinalResultsForNonWindowedTable() {
+    initialSchemaKTable = new SchemaKTable(ksqlTable.getSchema(),
+                                           kTable,
+                                           ksqlTable.getKeyField(),
+                                           new ArrayList<>(), false,
+                                           SchemaKStream.Type.SOURCE, functionRegistry);
+    initialSchemaKTable.emitFinal(new StreamsBuilder(),
+                                  SerDeUtil.getRowSerDe(ksqlTable.getKsqlTopic()
+                                                            .getKsqlTopicSerDe(), null),
+                                  "emit_final_store",
+                                  0L);
+  }
+
+  @Test
+  public void shouldRejectKtableAccessForChangelogBackedTable() {
+    final SchemaKTable changelogTable = SchemaKTable.fromChangelog(
+        ksqlTable.getSchema(), kTable.toStream(), ksqlTable.getKeyField(), new ArrayList<>(),
+        true, SchemaKStream.Type.AGGREGATE, functionRegistry);
+    Assert.assertFalse(changelogTable.hasKtable());
+    try {
+      changelogTable.getKtable();
+      Assert.fail("Expected KsqlException");
+    } catch (final KsqlException e) {
+      // expected
+    }
+  }
 }
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FairShareThrottleTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  // 10 permits a second, so 5 for each of two applications
+  private final FairShareThrottle throttle = new FairShareThrottle(10);
+  private final Throttle first = throttle.addShare("query_1");
+  private final Throttle second = throttle.addShare("query_2");
+
+  @Test
+  public void shouldDivideRateAmongShares() {
+    assertThat(first.getPermitsPerSecond(), equalTo(5L));
+    assertThat(second.getPermitsPerSecond(), equalTo(5L));
+    throttle.removeShare("query_2");
+    assertThat(first.getPermitsPerSecond(), equalTo(10L));
+  }
+
+  @Test
+  public void shouldLendShareOfIdleApplication() {
+    // The whole second's worth of the server, not just of the share, goes through at once
+    for (int i = 0; i < 11; i++) {
+      assertThat(first.reserve(1, 0), equalTo(0L));
+    }
+    // Past that, the server is at its rate and the application is held to its share
+    assertThat(first.reserve(1, 0), equalTo(SECOND / 5));
+  }
+
+  @Test
+  public void shouldKeepShareOfApplicationWhenServerIsAtItsRate() {
+    for (int i = 0; i < 11; i++) {
+      first.reserve(1, 0);
+    }
+    // The second application still gets its share at once, though the first took the server's
+    for (int i = 0; i < 6; i++) {
+      assertThat(second.reserve(1, 0), equalTo(0L));
+    }
+    assertThat(second.reserve(1, 0), equalTo(SECOND / 5));
+  }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void shouldReportZeroWhenNothingRecorded() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    assertThat(histogram.getCount(), equalTo(0L));
+    assertThat(histogram.getPercentileMs(99), equalTo(0.0));
+    assertThat(histogram.getMaxMs(), equalTo(0.0));
+  }
+
+  @Test
+  public void shouldReportUpperBoundOfPercentileBucket() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 99; i++) {
+      histogram.record(100000L);
+    }
+    histogram.record(50000000L);
+
+    assertThat(histogram.getCount(), equalTo(100L));
+    assertThat(histogram.getPercentileMs(50), equalTo(0.128));
+    assertThat(histogram.getPercentileMs(99), equalTo(0.128));
+    assertThat(histogram.getPercentileMs(100), equalTo(50.0));
+    assertThat(histogram.getMaxMs(), equalTo(50.0));
+  }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import io.confluent.ksql.serde.DataSource;
+import org.apache.kafka.streams.KafkaStreams;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class PersistentQueryMetadataTest {
+
+  private final KafkaStreams oldStreams = EasyMock.createNiceMock(KafkaStreams.class);
+  private final KafkaStreams newStreams = EasyMock.createNiceMock(KafkaStreams.class);
+  private final QueryQuota quota = new QueryQuota(0, 0, 0, 0);
+  // The thread counts the streams factory was asked for
+  private final List<Integer> builtThreads = new ArrayList<>();
+  private PersistentQueryMetadata query;
+
+  @Before
+  public void setUp() {
+    final QueryMetrics queryMetrics = new QueryMetrics();
+    queryMetrics.setQuota(quota);
+    quota.setStreamThreads(2);
+    query = new PersistentQueryMetadata("CREATE STREAM S AS SELECT * FROM T;", oldStreams, null,
+                                        () -> "", 1L, DataSource.DataSourceType.KSTREAM,
+                                        "query_1", null, null, queryMetrics);
+    // A stub factory that can't build streams with more threads than the query had
+    query.setStreamsFactory(threads -> {
+      builtThreads.add(threads);
+      if (threads > 2) {
+        throw new KsqlException("Could not build streams with " + threads + " threads");
+      }
+      return newStreams;
+    });
+    oldStreams.close(EasyMock.anyLong(), EasyMock.eq(TimeUnit.MILLISECONDS));
+    EasyMock.expectLastCall().andReturn(true);
+    newStreams.start();
+    EasyMock.expectLastCall().once();
+  }
+
+  @Test
+  public void shouldStartAgainWithPreviousThreadsWhenRestartFails() {
+    EasyMock.expect(oldStreams.state()).andReturn(KafkaStreams.State.NOT_RUNNING).anyTimes();
+    EasyMock.replay(oldStreams, newStreams);
+
+    try {
+      query.restart(3);
+      fail("Expected the restart to fail");
+    } catch (KsqlException e) {
+      // expected
+    }
+
+    assertThat(builtThreads, equalTo(Arrays.asList(3, 2)));
+    assertThat(query.getKafkaStreams(), sameInstance(newStreams));
+    assertThat(quota.getStreamThreads(), equalTo(2));
+    assertThat(query.isRecovering(), equalTo(false));
+    assertThat(query.isRestartable(), equalTo(true));
+    EasyMock.verify(newStreams);
+  }
+
+  @Test
+  public void shouldRecoverOnceOldStreamsHaveClosedAfterCloseTimedOut() {
+    EasyMock.expect(oldStreams.state())
+        .andReturn(KafkaStreams.State.PENDING_SHUTDOWN).times(3)
+        .andReturn(KafkaStreams.State.NOT_RUNNING).anyTimes();
+    EasyMock.replay(oldStreams, newStreams);
+
+    try {
+      query.restart(2);
+      fail("Expected the restart to fail");
+    } catch (KsqlException e) {
+      // expected
+    }
+    assertThat(query.isRecovering(), equalTo(true));
+    assertThat(query.isRestartable(), equalTo(false));
+
+    // Still closing
+    assertThat(query.recover(), equalTo(false));
+    assertThat(query.recover(), equalTo(true));
+
+    assertThat(builtThreads, equalTo(Arrays.asList(2)));
+    assertThat(query.getKafkaStreams(), sameInstance(newStreams));
+    assertThat(query.isRecovering(), equalTo(false));
+    EasyMock.verify(newStreams);
+  }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import org.easymock.Capture;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.mock;
+import static org.easymock.EasyMock.newCapture;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class QueryCleanupServiceTest {
+
+  private static QueryMetadata stoppedQuery(final String applicationId, final boolean stopped) {
+    return stoppedQuery(applicationId, stopped, null);
+  }
+
+  private static QueryMetadata stoppedQuery(final String applicationId,
+                                            final boolean stopped,
+                                            final Set<String> internalTopicNames) {
+    final QueryMetadata query = mock(QueryMetadata.class);
+    expect(query.stop()).andReturn(stopped);
+    expect(query.getQueryApplicationId()).andReturn(applicationId).anyTimes();
+    expect(query.getInternalTopicNames()).andReturn(internalTopicNames).anyTimes();
+    replay(query);
+    return query;
+  }
+
+  @Test
+  public void shouldDeleteInternalTopicsOfStoppedQueriesWithOneListing() {
+    final KafkaTopicClient topicClient = mock(KafkaTopicClient.class);
+    expect(topicClient.listTopicNames()).andReturn(new HashSet<>(Arrays.asList(
+        "query_1-Aggregate-changelog",
+        "query_2-KSTREAM-repartition",
+        "query_3-Aggregate-changelog",
+        "query_1_output")));
+    final Capture<List<String>> deleted = newCapture();
+    topicClient.deleteTopics(capture(deleted));
+    expectLastCall();
+    replay(topicClient);
+
+    final QueryMetadata query1 = stoppedQuery("query_1", true);
+    final QueryMetadata query2 = stoppedQuery("query_2", true);
+    final QueryMetadata query3 = stoppedQuery("query_3", false);
+    final QueryCleanupService service =
+        new QueryCleanupService(new CleanUpUtil(topicClient), 2, Long.MAX_VALUE);
+    service.submit(query1);
+    service.submit(query2);
+    service.submit(query3);
+    service.close();
+
+    verify(query1, query2, query3, topicClient);
+    assertThat(new HashSet<>(deleted.getValue()), equalTo(new HashSet<>(Arrays.asList(
+        "query_1-Aggregate-changelog", "query_2-KSTREAM-repartition"))));
+  }
+
+  @Test
+  public void shouldDeleteKnownInternalTopicsWithoutListing() {
+    final KafkaTopicClient topicClient = mock(KafkaTopicClient.class);
+    final Capture<List<String>> deleted = newCapture();
+    topicClient.deleteTopics(capture(deleted));
+    expectLastCall();
+    replay(topicClient);
+
+    final QueryMetadata query1 = stoppedQuery(
+        "query_1", true, Collections.singleton("query_1-Aggregate-changelog"));
+    final QueryMetadata query2 = stoppedQuery(
+        "query_2", true, Collections.singleton("query_2-KSTREAM-repartition"));
+    final QueryCleanupService service =
+        new QueryCleanupService(new CleanUpUtil(topicClient), 2, Long.MAX_VALUE);
+    service.submit(query1);
+    service.submit(query2);
+    service.close();
+
+    verify(query1, query2, topicClient);
+    assertThat(new HashSet<>(deleted.getValue()), equalTo(new HashSet<>(Arrays.asList(
+        "query_1-Aggregate-changelog", "query_2-KSTREAM-repartition"))));
+  }
+
+  @Test
+  public void shouldCloseQueryOnCallerOnceClosed() {
+    final KafkaTopicClient topicClient = mock(KafkaTopicClient.class);
+    replay(topicClient);
+    final QueryCleanupService service =
+        new QueryCleanupService(new CleanUpUtil(topicClient), 1, Long.MAX_VALUE);
+    service.close();
+
+    final QueryMetadata query = mock(QueryMetadata.class);
+    query.close();
+    expectLastCall();
+    replay(query);
+    service.submit(query);
+
+    verify(query);
+  }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class QueryLimitTest {
+
+  @Test
+  public void shouldAdmitEveryRowWithoutLimit() {
+    final QueryLimit limit = QueryLimit.of(Optional.empty());
+    for (int i = 0; i < 1000; i++) {
+      assertThat(limit.tryAdmit(), equalTo(true));
+      limit.delivered();
+    }
+    assertThat(limit.isReached(), equalTo(false));
+  }
+
+  @Test
+  public void shouldOnlyBeReachedOnceAdmittedRowsAreDelivered() {
+    final QueryLimit limit = QueryLimit.of(Optional.of(2));
+    assertThat(limit.tryAdmit(), equalTo(true));
+    assertThat(limit.tryAdmit(), equalTo(true));
+    assertThat(limit.tryAdmit(), equalTo(false));
+    limit.delivered();
+    assertThat(limit.isReached(), equalTo(false));
+    limit.delivered();
+    assertThat(limit.isReached(), equalTo(true));
+  }
+
+  @Test
+  public void shouldAdmitExactlyTheLimitAcrossThreads() throws InterruptedException {
+    final QueryLimit limit = QueryLimit.of(Optional.of(100));
+    final AtomicInteger admitted = new AtomicInteger();
+    final List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      threads.add(new Thread(() -> {
+        for (int row = 0; row < 1000; row++) {
+          if (limit.tryAdmit()) {
+            admitted.incrementAndGet();
+            limit.delivered();
+          }
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertThat(admitted.get(), equalTo(100));
+    assertThat(limit.isReached(), equalTo(true));
+  }
+
+  @Test
+  public void shouldGiveAdmissionBackWhenQueueDropsRow() throws InterruptedException {
+    final QueryLimit limit = QueryLimit.of(Optional.of(2));
+    final RingBufferQueue<String> queue =
+        new RingBufferQueue<>(1, RingBufferQueue.OverflowPolicy.DROP_NEWEST, 1);
+    assertThat(limit.tryAdmit(), equalTo(true));
+    assertThat(limit.deliver(queue, "first"), equalTo(true));
+    assertThat(limit.tryAdmit(), equalTo(true));
+    assertThat(limit.deliver(queue, "dropped"), equalTo(false));
+    assertThat(limit.isReached(), equalTo(false));
+    queue.take();
+    assertThat(limit.tryAdmit(), equalTo(true));
+    assertThat(limit.deliver(queue, "second"), equalTo(true));
+    assertThat(limit.isReached(), equalTo(true));
+  }
+
+  @Test
+  public void shouldGiveAdmissionBackWhenQueueEvictsOldestRow() throws InterruptedException {
+    final QueryLimit limit = QueryLimit.of(Optional.of(2));
+    final RingBufferQueue<String> queue =
+        new RingBufferQueue<>(1, RingBufferQueue.OverflowPolicy.DROP_OLDEST, 1);
+    assertThat(limit.tryAdmit(), equalTo(true));
+    assertThat(limit.deliver(queue, "evicted"), equalTo(true));
+    assertThat(limit.tryAdmit(), equalTo(true));
+    assertThat(limit.deliver(queue, "first"), equalTo(true));
+    // only one of the two delivered rows can still be read, so the limit isn't reached
+    assertThat(limit.isReached(), equalTo(false));
+    assertThat(queue.take(), equalTo("first"));
+    assertThat(limit.tryAdmit(), equalTo(true));
+    assertThat(limit.deliver(queue, "second"), equalTo(true));
+    assertThat(limit.isReached(), equalTo(true));
+    assertThat(queue.take(), equalTo("second"));
+    assertThat(limit.tryAdmit(), equalTo(false));
+  }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+
+package io.confluent.ksql.util;
+
+import io.confluent.ksql.GenericRow;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.Serializer;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import javax.management.ObjectName;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class QueryMetricsTest {
+
+  private static final GenericRow ROW = new GenericRow(Collections.singletonList("value"));
+
+  private final QueryMetrics queryMetrics = new QueryMetrics();
+
+  @Test
+  public void shouldCountRowsReadAndWritten() {
+    final Serde<GenericRow> serde = serde();
+    queryMetrics.wrapSource(serde).deserializer().deserialize("in", new byte[10]);
+    queryMetrics.wrapSource(serde).deserializer().deserialize("in", new byte[5]);
+    queryMetrics.wrapSink(serde, true).serializer().serialize("out", ROW);
+
+    assertThat(queryMetrics.getMessagesIn(), equalTo(2L));
+    assertThat(queryMetrics.getBytesIn(), equalTo(15L));
+    assertThat(queryMetrics.getMessagesOut(), equalTo(1L));
+  }
+
+  @Test
+  public void shouldCountDeserializationErrors() {
+    final Serde<GenericRow> serde =
+        Serdes.serdeFrom(new RowSerializer(), new FailingDeserializer());
+    try {
+      queryMetrics.wrapSource(serde).deserializer().deserialize("in", new byte[1]);
+    } catch (KsqlException e) {
+      // expected
+    }
+
+    assertThat(queryMetrics.getDeserializationErrors(), equalTo(1L));
+  }
+
+  @Test
+  public void shouldRecordLatencyOfRowWrittenWhileProcessingSourceRow() {
+    final Serializer<GenericRow> sink = queryMetrics.wrapSink(serde(), true).serializer();
+
+    QueryMetrics.startProcessing();
+    sink.serialize("out", ROW);
+
+    assertThat(queryMetrics.getProcessingLatencyCount(), equalTo(1L));
+  }
+
+  @Test
+  public void shouldTimeRowOnlyFromSourceRowItFollows() {
+    final Serializer<GenericRow> sink = queryMetrics.wrapSink(serde(), true).serializer();
+
+    QueryMetrics.startProcessing();
+    sink.serialize("out", ROW);
+    sink.serialize("out", ROW);
+
+    assertThat(queryMetrics.getMessagesOut(), equalTo(2L));
+    assertThat(queryMetrics.getProcessingLatencyCount(), equalTo(1L));
+  }
+
+  @Test
+  public void shouldNotRecordLatencyOfTableRows() {
+    final Serializer<GenericRow> sink = queryMetrics.wrapSink(serde(), false).serializer();
+
+    QueryMetrics.startProcessing();
+    sink.serialize("out", ROW);
+
+    assertThat(queryMetrics.getMessagesOut(), equalTo(1L));
+    assertThat(queryMetrics.getProcessingLatencyCount(), equalTo(0L));
+  }
+
+  @Test
+  public void shouldCountExpressionErrorsOfCurrentQuery() {
+    QueryMetrics.setCurrent(queryMetrics);
+    QueryMetrics.recordExpressionError();
+    QueryMetrics.setCurrent(null);
+    QueryMetrics.recordExpressionError();
+
+    assertThat(queryMetrics.getExpressionErrors(), equalTo(1L));
+  }
+
+  @Test
+  public void shouldRegisterAndUnregisterMBean() throws Exception {
+    final ObjectName name =
+        new ObjectName("io.confluent.ksql:type=QueryMetrics,query=\"QueryMetricsTest\"");
+
+    queryMetrics.register("QueryMetricsTest");
+    assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name), equalTo(true));
+
+    QueryMetrics.unregister("QueryMetricsTest");
+    assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name), equalTo(false));
+  }
+
+  private static Serde<GenericRow> serde() {
+    return Serdes.serdeFrom(new RowSerializer(), new RowDeserializer());
+  }
+
+  private static final class RowSerializer implements Serializer<GenericRow> {
+
+    @Override
+    public void configure(final Map<String, ?> configs, final boolean isKey) {
+    }
+
+    @Override
+    public byte[] serialize(final String topic, final GenericRow row) {
+      return new byte[1];
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static class RowDeserializer implements Deserializer<GenericRow> {
+
+    @Override
+    public void configure(final Map<String, ?> configs, final boolean isKey) {
+    }
+
+    @Override
+    public GenericRow deserialize(final String topic, final byte[] bytes) {
+      return ROW;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static final class FailingDeserializer extends RowDeserializer {
+
+    @Override
+    public GenericRow deserialize(final String topic, final byte[] bytes) {
+      throw new KsqlException("Could not deserialize row");
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class QueryQuotaTest {
+
+  private final Map<String, Object> configs = new HashMap<>();
+  private final Map<String, Object> withProperties = new HashMap<>();
+
+  @Test
+  public void shouldTakeLimitsFromConfigWithoutWithClause() {
+    configs.put(KsqlConfig.KSQL_QUERY_MAX_STREAM_THREADS_CONFIG, 2);
+    configs.put(KsqlConfig.KSQL_QUERY_MAX_CONSUME_RECORDS_PER_SECOND_CONFIG, 100L);
+    configs.put(KsqlConfig.KSQL_QUERY_MAX_CONSUME_BYTES_PER_SECOND_CONFIG, 1000L);
+    configs.put(KsqlConfig.KSQL_QUERY_MAX_STATE_STORE_BYTES_CONFIG, 4096L);
+
+    final QueryQuota quota = QueryQuota.of(new KsqlConfig(configs), withProperties);
+
+    assertThat(quota.getMaxStreamThreads(), equalTo(2));
+    assertThat(quota.getMaxRecordsPerSecond(), equalTo(100L));
+    assertThat(quota.getMaxBytesPerSecond(), equalTo(1000L));
+    assertThat(quota.getMaxStateStoreBytes(), equalTo(4096L));
+  }
+
+  @Test
+  public void shouldPreferWithClauseOverConfig() {
+    configs.put(KsqlConfig.KSQL_QUERY_MAX_STREAM_THREADS_CONFIG, 2);
+    configs.put(KsqlConfig.KSQL_QUERY_MAX_CONSUME_RECORDS_PER_SECOND_CONFIG, 100L);
+    withProperties.put(KsqlConstants.MAX_STREAM_THREADS, 1);
+    withProperties.put(KsqlConstants.MAX_CONSUME_RECORDS_PER_SECOND, "50");
+
+    final QueryQuota quota = QueryQuota.of(new KsqlConfig(configs), withProperties);
+
+    assertThat(quota.getMaxStreamThreads(), equalTo(1));
+    assertThat(quota.getMaxRecordsPerSecond(), equalTo(50L));
+  }
+
+  @Test
+  public void shouldCapStreamThreadsOnlyWhenLimited() {
+    assertThat(new QueryQuota(2, 0, 0, 0).capStreamThreads(4), equalTo(2));
+    assertThat(new QueryQuota(0, 0, 0, 0).capStreamThreads(4), equalTo(4));
+  }
+
+  @Test
+  public void shouldNotWaitWithoutThrottles() {
+    assertThat(new QueryQuota(0, 0, 0, 0).acquire(100), equalTo(0L));
+  }
+
+  @Test
+  public void shouldStopWaitingOnceQueryIsStopping() throws InterruptedException {
+    // A record a second, so after the first second's worth the next record waits a second
+    final QueryQuota quota = new QueryQuota(0, 1, 0, 0);
+    quota.acquire(0);
+    quota.acquire(0);
+    final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    try {
+      executor.schedule(() -> quota.setStopping(true), 50, TimeUnit.MILLISECONDS);
+      final long waitedNanos = quota.acquire(0);
+      assertTrue("Waited " + waitedNanos + "ns",
+                 waitedNanos < TimeUnit.MILLISECONDS.toNanos(500));
+    } finally {
+      executor.shutdownNow();
+    }
+    // Nor does it wait again while the query is stopping
+    assertTrue(quota.acquire(0) < TimeUnit.MILLISECONDS.toNanos(100));
+  }
+}
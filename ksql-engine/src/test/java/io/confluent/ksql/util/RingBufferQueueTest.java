@@ -0,0 +1,122 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class RingBufferQueueTest {
+
+  private static List<Integer> drain(final RingBufferQueue<Integer> queue) {
+    final List<Integer> drained = new ArrayList<>();
+    queue.drainTo(drained);
+    return drained;
+  }
+
+  private static void putAll(final RingBufferQueue<Integer> queue, final int count)
+      throws InterruptedException {
+    for (int i = 0; i < count; i++) {
+      queue.put(i);
+    }
+  }
+
+  @Test
+  public void shouldReturnElementsInOrderAcrossTheEndOfTheBuffer() throws InterruptedException {
+    final RingBufferQueue<Integer> queue =
+        new RingBufferQueue<>(3, RingBufferQueue.OverflowPolicy.BLOCK, 1);
+    queue.put(1);
+    queue.put(2);
+    assertThat(queue.poll(), equalTo(1));
+    queue.put(3);
+    queue.put(4);
+    assertThat(drain(queue), equalTo(Arrays.asList(2, 3, 4)));
+  }
+
+  @Test
+  public void shouldNotAcceptMoreThanCapacityWhenBlocking() throws InterruptedException {
+    final RingBufferQueue<Integer> queue =
+        new RingBufferQueue<>(2, RingBufferQueue.OverflowPolicy.BLOCK, 1);
+    putAll(queue, 2);
+    assertThat(queue.offer(3), equalTo(false));
+    assertThat(queue.offer(3, 10, TimeUnit.MILLISECONDS), equalTo(false));
+    assertThat(queue.getDroppedCount(), equalTo(0L));
+  }
+
+  @Test
+  public void shouldDropOldestWhenFull() throws InterruptedException {
+    final RingBufferQueue<Integer> queue =
+        new RingBufferQueue<>(3, RingBufferQueue.OverflowPolicy.DROP_OLDEST, 1);
+    putAll(queue, 5);
+    assertThat(drain(queue), equalTo(Arrays.asList(2, 3, 4)));
+    assertThat(queue.getDroppedCount(), equalTo(2L));
+  }
+
+  @Test
+  public void shouldReportWhichElementOverflowDropped() throws InterruptedException {
+    final RingBufferQueue<Integer> oldest =
+        new RingBufferQueue<>(1, RingBufferQueue.OverflowPolicy.DROP_OLDEST, 1);
+    assertThat(oldest.insert(0), equalTo(RingBufferQueue.Insertion.ADDED));
+    assertThat(oldest.insert(1), equalTo(RingBufferQueue.Insertion.REPLACED_OLDEST));
+    final RingBufferQueue<Integer> newest =
+        new RingBufferQueue<>(1, RingBufferQueue.OverflowPolicy.DROP_NEWEST, 1);
+    assertThat(newest.insert(0), equalTo(RingBufferQueue.Insertion.ADDED));
+    assertThat(newest.insert(1), equalTo(RingBufferQueue.Insertion.DROPPED));
+  }
+
+  @Test
+  public void shouldDropNewestWhenFull() throws InterruptedException {
+    final RingBufferQueue<Integer> queue =
+        new RingBufferQueue<>(3, RingBufferQueue.OverflowPolicy.DROP_NEWEST, 1);
+    putAll(queue, 5);
+    assertThat(drain(queue), equalTo(Arrays.asList(0, 1, 2)));
+    assertThat(queue.getDroppedCount(), equalTo(2L));
+  }
+
+  @Test
+  public void shouldKeepSampleOfRowsArrivingWhenFull() throws InterruptedException {
+    final RingBufferQueue<Integer> queue =
+        new RingBufferQueue<>(2, RingBufferQueue.OverflowPolicy.SAMPLE, 3);
+    putAll(queue, 8);
+    // 2 to 7 arrive while full: 2 and 5 are kept in place of the oldest rows
+    assertThat(drain(queue), equalTo(Arrays.asList(2, 5)));
+    assertThat(queue.getDroppedCount(), equalTo(6L));
+  }
+
+  @Test
+  public void shouldDrainUpToMaxElements() throws InterruptedException {
+    final RingBufferQueue<Integer> queue =
+        new RingBufferQueue<>(10, RingBufferQueue.OverflowPolicy.BLOCK, 1);
+    putAll(queue, 5);
+    final List<Integer> batch = new ArrayList<>();
+    assertThat(queue.drainTo(batch, 3), equalTo(3));
+    assertThat(batch, equalTo(Arrays.asList(0, 1, 2)));
+    assertThat(queue.size(), equalTo(2));
+  }
+
+  @Test
+  public void shouldTimeOutPollOnEmptyQueue() throws InterruptedException {
+    final RingBufferQueue<Integer> queue =
+        new RingBufferQueue<>(1, RingBufferQueue.OverflowPolicy.BLOCK, 1);
+    assertThat(queue.poll(10, TimeUnit.MILLISECONDS), nullValue());
+  }
+}
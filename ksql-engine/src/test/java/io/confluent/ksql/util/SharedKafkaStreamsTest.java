@@ -0,0 +1,96 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import org.apache.kafka.streams.KafkaStreams;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.mock;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SharedKafkaStreamsTest {
+
+  @Test
+  public void shouldStartStreamsOnceForAllQueries() {
+    final KafkaStreams kafkaStreams = mock(KafkaStreams.class);
+    kafkaStreams.start();
+    expectLastCall().once();
+    replay(kafkaStreams);
+
+    final SharedKafkaStreams sharedKafkaStreams = new SharedKafkaStreams(kafkaStreams, 2);
+    sharedKafkaStreams.start();
+    sharedKafkaStreams.start();
+
+    verify(kafkaStreams);
+  }
+
+  @Test
+  public void shouldCloseGateOfLeavingQuery() {
+    final SharedKafkaStreams sharedKafkaStreams =
+        new SharedKafkaStreams(mock(KafkaStreams.class), 2);
+    final AtomicBoolean gate = new AtomicBoolean(true);
+
+    assertThat(sharedKafkaStreams.leave(gate), equalTo(false));
+    assertThat(gate.get(), equalTo(false));
+    assertThat(sharedKafkaStreams.getMembers(), equalTo(1));
+  }
+
+  @Test
+  public void shouldBeLastWhenAllQueriesLeft() {
+    final SharedKafkaStreams sharedKafkaStreams =
+        new SharedKafkaStreams(mock(KafkaStreams.class), 2);
+    final AtomicBoolean first = new AtomicBoolean(true);
+    final AtomicBoolean second = new AtomicBoolean(true);
+
+    assertThat(sharedKafkaStreams.leave(first), equalTo(false));
+    assertThat(sharedKafkaStreams.leave(first), equalTo(false));
+    assertThat(sharedKafkaStreams.leave(second), equalTo(true));
+  }
+
+  @Test
+  public void shouldAllocateOnStartAndStartRebuiltStreams() {
+    final KafkaStreams built = mock(KafkaStreams.class);
+    built.close();
+    expectLastCall().once();
+    final KafkaStreams rebuilt = mock(KafkaStreams.class);
+    rebuilt.start();
+    expectLastCall().once();
+    replay(built, rebuilt);
+    final AtomicInteger allocations = new AtomicInteger();
+    final AtomicInteger releases = new AtomicInteger();
+
+    final SharedKafkaStreams sharedKafkaStreams = new SharedKafkaStreams(built, 2,
+        new StreamsAllocation(streams -> {
+          allocations.incrementAndGet();
+          return rebuilt;
+        }, releases::incrementAndGet));
+    assertThat(allocations.get(), equalTo(0));
+    assertThat(sharedKafkaStreams.start() == rebuilt, equalTo(true));
+    sharedKafkaStreams.start();
+    sharedKafkaStreams.release();
+    sharedKafkaStreams.release();
+
+    assertThat(allocations.get(), equalTo(1));
+    assertThat(releases.get(), equalTo(1));
+    verify(built, rebuilt);
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+
+package io.confluent.ksql.util;
+
+import io.confluent.ksql.GenericRow;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.serialization.Serializer;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SharedSourceMetricsTest {
+
+  private final SharedSourceMetrics sharedSourceMetrics = new SharedSourceMetrics();
+  private final QueryMetrics first = new QueryMetrics();
+  private final QueryMetrics second = new QueryMetrics();
+  private final AtomicBoolean firstGate = new AtomicBoolean(true);
+  private final AtomicBoolean secondGate = new AtomicBoolean(true);
+
+  @Test
+  public void shouldCountSourceRowsForEveryQueryOfTheGroup() {
+    sharedSourceMetrics.addMember(first, firstGate);
+    sharedSourceMetrics.addMember(second, secondGate);
+    final Deserializer<GenericRow> deserializer = sourceDeserializer();
+
+    deserializer.deserialize("pageviews", new byte[10]);
+
+    assertThat(first.getMessagesIn(), equalTo(1L));
+    assertThat(second.getMessagesIn(), equalTo(1L));
+    assertThat(second.getBytesIn(), equalTo(10L));
+  }
+
+  @Test
+  public void shouldNotCountSourceRowsForTerminatedQuery() {
+    sharedSourceMetrics.addMember(first, firstGate);
+    sharedSourceMetrics.addMember(second, secondGate);
+    final Deserializer<GenericRow> deserializer = sourceDeserializer();
+
+    firstGate.set(false);
+    deserializer.deserialize("pageviews", new byte[10]);
+
+    assertThat(first.getMessagesIn(), equalTo(0L));
+    assertThat(second.getMessagesIn(), equalTo(1L));
+  }
+
+  // The source is built with the serde of the first query, as by the shared source builder
+  private Deserializer<GenericRow> sourceDeserializer() {
+    return first.wrapSource(Serdes.serdeFrom(new NullSerializer(), new NullDeserializer()))
+        .deserializer();
+  }
+
+  private static final class NullSerializer implements Serializer<GenericRow> {
+
+    @Override
+    public void configure(final Map<String, ?> configs, final boolean isKey) {
+    }
+
+    @Override
+    public byte[] serialize(final String topic, final GenericRow row) {
+      return null;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static final class NullDeserializer implements Deserializer<GenericRow> {
+
+    @Override
+    public void configure(final Map<String, ?> configs, final boolean isKey) {
+    }
+
+    @Override
+    public GenericRow deserialize(final String topic, final byte[] bytes) {
+      return null;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
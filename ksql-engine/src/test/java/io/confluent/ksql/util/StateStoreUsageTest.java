@@ -0,0 +1,65 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+
+package io.confluent.ksql.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class StateStoreUsageTest {
+
+  @Rule
+  public final TemporaryFolder stateDir = new TemporaryFolder();
+
+  @Test
+  public void shouldSumKeyValueAndSegmentedStoresOverTasks() throws IOException {
+    write("app/0_0/rocksdb/KSTREAM-AGGREGATE-STATE-STORE-0000000004/000001.sst", 10);
+    write("app/0_1/rocksdb/KSTREAM-AGGREGATE-STATE-STORE-0000000004/000001.sst", 5);
+    write("app/0_0/KSTREAM-WINDOW-STORE/KSTREAM-WINDOW-STORE.1000/000001.sst", 7);
+    write("app/0_0/KSTREAM-WINDOW-STORE/KSTREAM-WINDOW-STORE.2000/000001.sst", 3);
+    write("app/0_1/KSTREAM-WINDOW-STORE/KSTREAM-WINDOW-STORE.2000/000001.sst", 4);
+    write("app/0_0/.lock", 1);
+
+    assertThat(StateStoreUsage.forApplication(stateDir.getRoot(), "app"), equalTo(Arrays.asList(
+        new StateStoreUsage("KSTREAM-AGGREGATE-STATE-STORE-0000000004", 15, 0),
+        new StateStoreUsage("KSTREAM-WINDOW-STORE", 14, 3))));
+  }
+
+  @Test
+  public void shouldReportNoStoresForUnknownApplication() {
+    assertThat(StateStoreUsage.forApplication(stateDir.getRoot(), "missing"),
+               equalTo(Collections.<StateStoreUsage>emptyList()));
+  }
+
+  private void write(final String path, final int size) throws IOException {
+    final File file = new File(stateDir.getRoot(), path);
+    file.getParentFile().mkdirs();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(new byte[size]);
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+
+package io.confluent.ksql.util;
+
+import io.confluent.ksql.GenericRow;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import javax.management.ObjectName;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class TableRowCacheTest {
+
+  private final Schema schema = SchemaBuilder.struct()
+      .field("ID", Schema.STRING_SCHEMA)
+      .field("REGION", Schema.STRING_SCHEMA)
+      .build();
+  private final Serde<GenericRow> serde = SerDeUtil.getGenericRowJsonSerde(schema);
+  private TableRowCache cache;
+  private Deserializer<GenericRow> deserializer;
+
+  @Before
+  public void before() {
+    cache = new TableRowCache("USERS", 2);
+    deserializer = cache.wrap(serde).deserializer();
+  }
+
+  @Test
+  public void shouldServeRepeatedLookupsFromCache() {
+    final byte[] bytes = serialize("1", "EU");
+    assertThat(deserializer.deserialize("users", bytes).getColumns(),
+               equalTo(Arrays.<Object>asList("1", "EU")));
+    assertThat(deserializer.deserialize("users", bytes.clone()).getColumns(),
+               equalTo(Arrays.<Object>asList("1", "EU")));
+    assertThat(cache.getHits(), equalTo(1L));
+    assertThat(cache.getMisses(), equalTo(1L));
+    assertThat(cache.getHitRate(), equalTo(0.5));
+  }
+
+  @Test
+  public void shouldNotServeUpdatedRowFromCache() {
+    deserializer.deserialize("users", serialize("1", "EU"));
+    assertThat(deserializer.deserialize("users", serialize("1", "US")).getColumns(),
+               equalTo(Arrays.<Object>asList("1", "US")));
+    assertThat(cache.getHits(), equalTo(0L));
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedRows() {
+    final byte[] first = serialize("1", "EU");
+    deserializer.deserialize("users", first);
+    deserializer.deserialize("users", serialize("2", "EU"));
+    deserializer.deserialize("users", serialize("3", "EU"));
+    deserializer.deserialize("users", first);
+    assertThat(cache.getMisses(), equalTo(4L));
+  }
+
+  @Test
+  public void shouldNotLetCallersChangeCachedRows() {
+    final byte[] bytes = serialize("1", "EU");
+    deserializer.deserialize("users", bytes).getColumns().set(1, "US");
+    assertThat(deserializer.deserialize("users", bytes).getColumns().get(1),
+               equalTo((Object) "EU"));
+  }
+
+  @Test
+  public void shouldRegisterAndUnregisterMetricsPerQuery() throws Exception {
+    cache.register("query_1");
+    final ObjectName name =
+        new ObjectName("io.confluent.ksql:type=TableRowCache,query=\"query_1\",table=\"USERS\"");
+    assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name), equalTo(true));
+    TableRowCache.unregisterAll("query_1");
+    assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name), equalTo(false));
+  }
+
+  @Test
+  public void shouldClearCachedRowsWhenQueryIsUnregistered() {
+    final byte[] bytes = serialize("1", "EU");
+    cache.register("query_2");
+    deserializer.deserialize("users", bytes);
+    TableRowCache.unregisterAll("query_2");
+    deserializer.deserialize("users", bytes);
+    assertThat(cache.getMisses(), equalTo(2L));
+  }
+
+  private byte[] serialize(final String id, final String region) {
+    return serde.serializer().serialize("users", new GenericRow(Arrays.<Object>asList(id, region)));
+  }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ThrottleTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  public void shouldLetASecondOfPermitsThroughAtOnce() {
+    final Throttle throttle = new Throttle(10);
+    for (int i = 0; i < 10; i++) {
+      assertThat(throttle.reserve(1, 0), equalTo(0L));
+    }
+  }
+
+  @Test
+  public void shouldWaitForPermitsAheadOfTheRate() {
+    final Throttle throttle = new Throttle(10);
+    throttle.reserve(10, 0);
+    assertThat(throttle.reserve(1, 0), equalTo(0L));
+    assertThat(throttle.reserve(1, 0), equalTo(SECOND / 10));
+    assertThat(throttle.reserve(1, 0), equalTo(2 * SECOND / 10));
+  }
+
+  @Test
+  public void shouldFreePermitsAsTimePasses() {
+    final Throttle throttle = new Throttle(10);
+    throttle.reserve(20, 0);
+    assertThat(throttle.reserve(1, 2 * SECOND), equalTo(0L));
+  }
+
+  @Test
+  public void shouldNotSaveUpMoreThanASecondOfPermits() {
+    final Throttle throttle = new Throttle(10);
+    throttle.reserve(1, 0);
+    throttle.reserve(10, 60 * SECOND);
+    assertThat(throttle.reserve(1, 60 * SECOND), equalTo(0L));
+    assertThat(throttle.reserve(1, 60 * SECOND), equalTo(SECOND / 10));
+  }
+
+  @Test(expected = KsqlException.class)
+  public void shouldRejectNonPositiveRate() {
+    new Throttle(0);
+  }
+}
@@ -27,13 +27,23 @@ public class KsqlTable extends StructuredDataSource {
 
   private final String stateStoreName;
   private final boolean isWindowed;
+  private final boolean isBroadcast;
 
   public KsqlTable(final String datasourceName, final Schema schema, final Field keyField,
                    final Field timestampField,
                    final KsqlTopic ksqlTopic, final String stateStoreName, boolean isWindowed) {
+    this(datasourceName, schema, keyField, timestampField, ksqlTopic, stateStoreName, isWindowed,
+         false);
+  }
+
+  public KsqlTable(final String datasourceName, final Schema schema, final Field keyField,
+                   final Field timestampField,
+                   final KsqlTopic ksqlTopic, final String stateStoreName, boolean isWindowed,
+                   boolean isBroadcast) {
     super(datasourceName, schema, keyField, timestampField, DataSourceType.KTABLE, ksqlTopic);
     this.stateStoreName = stateStoreName;
     this.isWindowed = isWindowed;
+    this.isBroadcast = isBroadcast;
   }
 
   public String getStateStoreName() {
@@ -44,11 +54,19 @@ public class KsqlTable extends StructuredDataSource {
     return isWindowed;
   }
 
+  /**
+   * @return true if joins against this table should read the whole table on every instance
+   *     instead of co-partitioning the joining stream with it.
+   */
+  public boolean isBroadcast() {
+    return isBroadcast;
+  }
+
   @Override
   public StructuredDataSource cloneWithTimeKeyColumns() {
     Schema newSchema = SchemaUtil.addImplicitRowTimeRowKeyToSchema(schema);
     return new KsqlTable(dataSourceName, newSchema, keyField, timestampField, ksqlTopic,
-                         stateStoreName, isWindowed);
+                         stateStoreName, isWindowed, isBroadcast);
   }
 
   @Override
@@ -59,7 +77,7 @@ public class KsqlTable extends StructuredDataSource {
                               + "(INT64).");
     }
     return new KsqlTable(dataSourceName, schema, keyField, newTimestampField.get(), ksqlTopic,
-                         stateStoreName, isWindowed);
+                         stateStoreName, isWindowed, isBroadcast);
   }
 
   @Override
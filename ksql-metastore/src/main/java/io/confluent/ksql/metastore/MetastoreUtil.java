@@ -70,16 +70,20 @@ public class MetastoreUtil {
       if (node.get("iswindowed") != null) {
         isWindowed = node.get("iswindowed").asBoolean();
       }
+      boolean isBroadcast = false;
+      if (node.get("isbroadcast") != null) {
+        isBroadcast = node.get("isbroadcast").asBoolean();
+      }
       // Use the changelog topic name as state store name.
       if (node.get("statestore") == null) {
         return new KsqlTable(name, dataSource, dataSource.field(keyFieldName),
                              dataSource.field(timestampFieldName),
-                             ksqlTopic, ksqlTopic.getName(), isWindowed);
+                             ksqlTopic, ksqlTopic.getName(), isWindowed, isBroadcast);
       }
       String stateStore = node.get("statestore").asText();
       return new KsqlTable(name, dataSource, dataSource.field(keyFieldName),
                            dataSource.field(timestampFieldName),
-          ksqlTopic, stateStore, isWindowed);
+          ksqlTopic, stateStore, isWindowed, isBroadcast);
     }
     throw new KsqlException(String.format("Type not supported: '%s'", type));
   }
@@ -241,6 +245,7 @@ public class MetastoreUtil {
         stringBuilder.append("\t\t\t \"statestore\": \"" + ksqlTable.getStateStoreName()
                              + "\", \n");
         stringBuilder.append("\t\t\t \"iswindowed\": \"" + ksqlTable.isWindowed() + "\", \n");
+        stringBuilder.append("\t\t\t \"isbroadcast\": \"" + ksqlTable.isBroadcast() + "\", \n");
       }
       stringBuilder.append("\t\t\t \"fields\": [\n");
       boolean isFirstField = true;
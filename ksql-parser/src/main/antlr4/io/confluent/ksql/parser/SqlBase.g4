@@ -41,9 +41,9 @@ statement
     | (LIST | SHOW) REGISTERED TOPICS                                       #listRegisteredTopics
     | (LIST | SHOW) STREAMS                                                 #listStreams
     | (LIST | SHOW) TABLES                                                  #listTables
-    | DESCRIBE (qualifiedName | TOPIC qualifiedName)                        #showColumns
+    | DESCRIBE EXTENDED? (qualifiedName | TOPIC qualifiedName)              #showColumns
     | PRINT qualifiedName (FROM BEGINNING)? ((INTERVAL | SAMPLE) number)?   #printTopic
-    | (LIST | SHOW) QUERIES                                                 #listQueries
+    | (LIST | SHOW) QUERIES EXTENDED?                                       #listQueries
     | TERMINATE QUERY? INTEGER_VALUE                                               #terminateQuery
     | SET STRING EQ STRING                                                  #setProperty
     | UNSET STRING                                                          #unsetProperty
@@ -66,6 +66,7 @@ statement
     | DROP TABLE (IF EXISTS)? qualifiedName                                 #dropTable
     | EXPLAIN ANALYZE?
             ('(' explainOption (',' explainOption)* ')')? statement         #explain
+    | EXPLAIN INTEGER_VALUE                                                 #explainQuery
     | EXPORT CATALOG TO STRING                                              #exportCatalog
     | RUN SCRIPT STRING                                                     #runScript
     ;
@@ -194,7 +195,7 @@ selectItem
 relation
     : left=relation
       ( CROSS JOIN right=aliasedRelation
-      | joinType JOIN rightRelation=relation joinCriteria
+      | joinType JOIN rightRelation=relation joinWindow? joinCriteria
       | NATURAL joinType JOIN right=aliasedRelation
       )                                           #joinRelation
     | aliasedRelation                             #relationDefault
@@ -207,6 +208,10 @@ joinType
     | FULL OUTER?
     ;
 
+joinWindow
+    : WITHIN number windowUnit
+    ;
+
 joinCriteria
     : ON booleanExpression
     | USING '(' identifier (',' identifier)* ')'
@@ -428,7 +433,7 @@ nonReserved
     | OVER | PARTITION | RANGE | ROWS | PRECEDING | FOLLOWING | CURRENT | ROW | MAP | ARRAY
     | TINYINT | SMALLINT | INTEGER | DATE | TIME | TIMESTAMP | INTERVAL | ZONE
     | YEAR | MONTH | DAY | HOUR | MINUTE | SECOND
-    | EXPLAIN | ANALYZE | FORMAT | TYPE | TEXT | GRAPHVIZ | LOGICAL | DISTRIBUTED
+    | EXPLAIN | ANALYZE | FORMAT | TYPE | TEXT | GRAPHVIZ | LOGICAL | DISTRIBUTED | EXTENDED
     | TABLESAMPLE | SYSTEM | BERNOULLI | POISSONIZED | USE | TO
     | RESCALED | APPROXIMATE | AT | CONFIDENCE
     | SET | RESET
@@ -443,6 +448,7 @@ nonReserved
     | CALL
     | GRANT | REVOKE | PRIVILEGES | PUBLIC | OPTION
     | SUBSTRING
+    | WITHIN
     ;
 
 normalForm
@@ -459,6 +465,7 @@ ANY: 'ANY';
 DISTINCT: 'DISTINCT';
 WHERE: 'WHERE';
 WINDOW: 'WINDOW';
+WITHIN: 'WITHIN';
 GROUP: 'GROUP';
 BY: 'BY';
 GROUPING: 'GROUPING';
@@ -572,6 +579,7 @@ PUBLIC: 'PUBLIC';
 OPTION: 'OPTION';
 EXPLAIN: 'EXPLAIN';
 ANALYZE: 'ANALYZE';
+EXTENDED: 'EXTENDED';
 FORMAT: 'FORMAT';
 TYPE: 'TYPE';
 TEXT: 'TEXT';
@@ -546,7 +546,8 @@ public class AstBuilder
 
   @Override
   public Node visitListQueries(SqlBaseParser.ListQueriesContext context) {
-    return new ListQueries(Optional.ofNullable(getLocation(context)));
+    return new ListQueries(Optional.ofNullable(getLocation(context)),
+                           context.EXTENDED() != null);
   }
 
   @Override
@@ -555,10 +556,16 @@ public class AstBuilder
                               Long.parseLong(context.INTEGER_VALUE().getText()));
   }
 
+  @Override
+  public Node visitExplainQuery(SqlBaseParser.ExplainQueryContext context) {
+    return new ExplainQuery(getLocation(context),
+                            Long.parseLong(context.INTEGER_VALUE().getText()));
+  }
+
   @Override
   public Node visitShowColumns(SqlBaseParser.ShowColumnsContext context) {
     return new ShowColumns(getLocation(context), getQualifiedName(context.qualifiedName()),
-                           context.TOPIC() != null);
+                           context.TOPIC() != null, context.EXTENDED() != null);
   }
 
   @Override
@@ -705,7 +712,23 @@ public class AstBuilder
       joinType = Join.Type.INNER;
     }
 
-    return new Join(getLocation(context), joinType, left, right, Optional.of(criteria));
+    Optional<WithinExpression> within = Optional.empty();
+    if (context.joinWindow() != null) {
+      within = Optional.of((WithinExpression) visitJoinWindow(context.joinWindow()));
+    }
+
+    return new Join(getLocation(context), joinType, left, right, Optional.of(criteria), within);
+  }
+
+  @Override
+  public Node visitJoinWindow(SqlBaseParser.JoinWindowContext ctx) {
+    String sizeStr = ctx.number().getText();
+    String sizeUnit = ctx.windowUnit().getText();
+    return new WithinExpression(
+        getLocation(ctx),
+        Long.parseLong(sizeStr),
+        WindowExpression.getWindowUnit(sizeUnit.toUpperCase())
+    );
   }
 
   @Override
@@ -1159,10 +1182,10 @@ public class AstBuilder
   @Override
   public Node visitExplain(SqlBaseParser.ExplainContext ctx) {
     Statement statement = (Statement) visit(ctx.statement());
-    // Only simple explain is supported for now.
+    // Only simple explain and explain analyze are supported for now.
     //TODO: Expand to support other parts of EXPLAIN
 
-    Explain explain = new Explain(statement, false, Arrays.asList());
+    Explain explain = new Explain(statement, ctx.ANALYZE() != null, Arrays.asList());
     return explain;
   }
 
@@ -280,6 +280,13 @@ public final class SqlFormatterQueryRewrite {
 
       process(node.getRight(), indent);
 
+      if (node.getWithin().isPresent()) {
+        builder.append(" WITHIN ")
+            .append(node.getWithin().get().getSize())
+            .append(" ")
+            .append(node.getWithin().get().getTimeUnit());
+      }
+
       if (node.getType() != Join.Type.CROSS && node.getType() != Join.Type.IMPLICIT) {
         if (criteria instanceof JoinUsing) {
           JoinUsing using = (JoinUsing) criteria;
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.parser.tree;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+/**
+ * Shows the execution plan of a running persistent query, with the current counts and timings
+ * of its operators if they are instrumented.
+ */
+public class ExplainQuery extends Statement {
+
+  private final long queryId;
+
+  public ExplainQuery(long queryId) {
+    this(Optional.empty(), queryId);
+  }
+
+  public ExplainQuery(NodeLocation location, long queryId) {
+    this(Optional.of(location), queryId);
+  }
+
+  private ExplainQuery(Optional<NodeLocation> location, long queryId) {
+    super(location);
+    this.queryId = queryId;
+  }
+
+  public long getQueryId() {
+    return queryId;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(queryId);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if ((obj == null) || (getClass() != obj.getClass())) {
+      return false;
+    }
+    return queryId == ((ExplainQuery) obj).queryId;
+  }
+
+  @Override
+  public String toString() {
+    return toStringHelper(this)
+        .add("queryId", queryId)
+        .toString();
+  }
+}
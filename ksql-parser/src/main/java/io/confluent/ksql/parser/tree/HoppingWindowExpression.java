@@ -16,6 +16,7 @@
 
 package io.confluent.ksql.parser.tree;
 
+import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.streams.kstream.Initializer;
 import org.apache.kafka.streams.kstream.KGroupedStream;
 import org.apache.kafka.streams.kstream.KTable;
@@ -51,6 +52,22 @@ public class HoppingWindowExpression extends KsqlWindowExpression {
     this.advanceByUnit = advanceByUnit;
   }
 
+  public long getSize() {
+    return size;
+  }
+
+  public TimeUnit getSizeUnit() {
+    return sizeUnit;
+  }
+
+  public long getAdvanceBy() {
+    return advanceBy;
+  }
+
+  public TimeUnit getAdvanceByUnit() {
+    return advanceByUnit;
+  }
+
   @Override
   public String toString() {
     return " HOPPING ( SIZE " + size + " " + sizeUnit + " , ADVANCE BY "
@@ -86,4 +103,20 @@ public class HoppingWindowExpression extends KsqlWindowExpression {
             advanceByUnit.toMillis(advanceBy)))
         .aggregate(initializer, aggregator, materialized);
   }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public KTable applyAggregate(final KGroupedStream groupedStream,
+                               final Initializer initializer,
+                               final UdafAggregator aggregator,
+                               final String storeName,
+                               final Serde<GenericRow> valueSerde,
+                               final long retentionMs,
+                               final int segments) {
+    final long sizeMs = sizeUnit.toMillis(size);
+    return groupedStream.windowedBy(
+        TimeWindows.of(sizeMs).advanceBy(advanceByUnit.toMillis(advanceBy)))
+        .aggregate(initializer, aggregator,
+                   windowStore(storeName, valueSerde, retentionMs, segments, sizeMs));
+  }
 }
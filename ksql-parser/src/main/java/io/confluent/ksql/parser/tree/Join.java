@@ -27,16 +27,26 @@ public class Join
     extends Relation {
 
   public Join(Type type, Relation left, Relation right, Optional<JoinCriteria> criteria) {
-    this(Optional.empty(), type, left, right, criteria);
+    this(Optional.empty(), type, left, right, criteria, Optional.empty());
+  }
+
+  public Join(Type type, Relation left, Relation right, Optional<JoinCriteria> criteria,
+              Optional<WithinExpression> within) {
+    this(Optional.empty(), type, left, right, criteria, within);
   }
 
   public Join(NodeLocation location, Type type, Relation left, Relation right,
               Optional<JoinCriteria> criteria) {
-    this(Optional.of(location), type, left, right, criteria);
+    this(Optional.of(location), type, left, right, criteria, Optional.empty());
+  }
+
+  public Join(NodeLocation location, Type type, Relation left, Relation right,
+              Optional<JoinCriteria> criteria, Optional<WithinExpression> within) {
+    this(Optional.of(location), type, left, right, criteria, within);
   }
 
   private Join(Optional<NodeLocation> location, Type type, Relation left, Relation right,
-               Optional<JoinCriteria> criteria) {
+               Optional<JoinCriteria> criteria, Optional<WithinExpression> within) {
     super(location);
     requireNonNull(left, "left is null");
     requireNonNull(right, "right is null");
@@ -50,6 +60,7 @@ public class Join
     this.left = left;
     this.right = right;
     this.criteria = criteria;
+    this.within = requireNonNull(within, "within is null");
   }
 
   public enum Type {
@@ -60,6 +71,7 @@ public class Join
   private final Relation left;
   private final Relation right;
   private final Optional<JoinCriteria> criteria;
+  private final Optional<WithinExpression> within;
 
   public Type getType() {
     return type;
@@ -77,6 +89,10 @@ public class Join
     return criteria;
   }
 
+  public Optional<WithinExpression> getWithin() {
+    return within;
+  }
+
   @Override
   public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
     return visitor.visitJoin(this, context);
@@ -89,6 +105,7 @@ public class Join
         .add("left", left)
         .add("right", right)
         .add("criteria", criteria)
+        .add("within", within.orElse(null))
         .omitNullValues()
         .toString();
   }
@@ -105,11 +122,12 @@ public class Join
     return (type == join.type)
            && Objects.equals(left, join.left)
            && Objects.equals(right, join.right)
-           && Objects.equals(criteria, join.criteria);
+           && Objects.equals(criteria, join.criteria)
+           && Objects.equals(within, join.within);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(type, left, right, criteria);
+    return Objects.hash(type, left, right, criteria, within);
   }
 }
@@ -16,15 +16,21 @@
 
 package io.confluent.ksql.parser.tree;
 
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
 import org.apache.kafka.streams.kstream.Initializer;
 import org.apache.kafka.streams.kstream.KGroupedStream;
 import org.apache.kafka.streams.kstream.KTable;
 import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.state.Stores;
+import org.apache.kafka.streams.state.WindowStore;
 
 import java.util.Optional;
 
 import io.confluent.ksql.GenericRow;
 import io.confluent.ksql.function.UdafAggregator;
+import io.confluent.ksql.util.KsqlException;
 
 public abstract class KsqlWindowExpression extends Node {
 
@@ -36,4 +42,39 @@ public abstract class KsqlWindowExpression extends Node {
                                         final Initializer initializer,
                                         final UdafAggregator aggregator,
                                         final Materialized<String, GenericRow, ?> materialized);
+
+  /**
+   * Applies the aggregation with a store, and changelog, that keep windows for retentionMs. Time
+   * window stores are split into the given number of segments; session stores ignore it.
+   */
+  public abstract KTable applyAggregate(final KGroupedStream groupedStream,
+                                        final Initializer initializer,
+                                        final UdafAggregator aggregator,
+                                        final String storeName,
+                                        final Serde<GenericRow> valueSerde,
+                                        final long retentionMs,
+                                        final int segments);
+
+  protected static Materialized<String, GenericRow, WindowStore<Bytes, byte[]>> windowStore(
+      final String storeName,
+      final Serde<GenericRow> valueSerde,
+      final long retentionMs,
+      final int segments,
+      final long windowSizeMs) {
+    if (retentionMs < windowSizeMs) {
+      throw new KsqlException("Window retention of " + retentionMs + " ms is shorter than the "
+                              + "window size of " + windowSizeMs + " ms.");
+    }
+    return Materialized.<String, GenericRow>as(
+        Stores.persistentWindowStore(storeName, retentionMs, segments, windowSizeMs, false))
+        .withKeySerde(Serdes.String())
+        .withValueSerde(valueSerde);
+  }
+
+  /**
+   * @return how far stream time may pass the end of a window while records can still update it.
+   */
+  public long getWindowUpdateDelayMs() {
+    return 0;
+  }
 }
@@ -23,13 +23,28 @@ import static com.google.common.base.MoreObjects.toStringHelper;
 
 public class ListQueries extends Statement {
 
+  private final boolean extended;
+
   public ListQueries(Optional<NodeLocation> location) {
+    this(location, false);
+  }
+
+  public ListQueries(Optional<NodeLocation> location, boolean extended) {
     super(location);
+    this.extended = extended;
+  }
+
+  /**
+   * @return true for {@code SHOW QUERIES EXTENDED}, which also shows the runtime metrics of
+   *     each query
+   */
+  public boolean isExtended() {
+    return extended;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash("ShowQueries");
+    return Objects.hash("ShowQueries", extended);
   }
 
   @Override
@@ -40,6 +55,7 @@ public class ListQueries extends Statement {
   @Override
   public String toString() {
     return toStringHelper(this)
+        .add("extended", extended)
         .toString();
   }
 }
@@ -16,11 +16,14 @@
 
 package io.confluent.ksql.parser.tree;
 
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.kstream.Initializer;
 import org.apache.kafka.streams.kstream.KGroupedStream;
 import org.apache.kafka.streams.kstream.KTable;
 import org.apache.kafka.streams.kstream.Materialized;
 import org.apache.kafka.streams.kstream.SessionWindows;
+import org.apache.kafka.streams.state.Stores;
 
 import java.util.Objects;
 import java.util.Optional;
@@ -28,6 +31,7 @@ import java.util.concurrent.TimeUnit;
 
 import io.confluent.ksql.GenericRow;
 import io.confluent.ksql.function.UdafAggregator;
+import io.confluent.ksql.util.KsqlException;
 
 public class SessionWindowExpression extends KsqlWindowExpression {
 
@@ -45,6 +49,12 @@ public class SessionWindowExpression extends KsqlWindowExpression {
     this.sizeUnit = sizeUnit;
   }
 
+  @Override
+  public long getWindowUpdateDelayMs() {
+    // A session stays open, and can be merged with a later one, until the gap has elapsed.
+    return sizeUnit.toMillis(gap);
+  }
+
   @Override
   public String toString() {
     return " SESSION ( " + gap + " " + sizeUnit + " ) ";
@@ -77,4 +87,26 @@ public class SessionWindowExpression extends KsqlWindowExpression {
         .aggregate(initializer, aggregator, aggregator.getMerger(),
             materialized);
   }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public KTable applyAggregate(final KGroupedStream groupedStream,
+                               final Initializer initializer,
+                               final UdafAggregator aggregator,
+                               final String storeName,
+                               final Serde<GenericRow> valueSerde,
+                               final long retentionMs,
+                               final int segments) {
+    final long gapMs = sizeUnit.toMillis(gap);
+    if (retentionMs < gapMs) {
+      throw new KsqlException("Window retention of " + retentionMs + " ms is shorter than the "
+                              + "session inactivity gap of " + gapMs + " ms.");
+    }
+    return groupedStream.windowedBy(SessionWindows.with(gapMs).until(retentionMs))
+        .aggregate(initializer, aggregator, aggregator.getMerger(),
+                   Materialized.<String, GenericRow>as(
+                       Stores.persistentSessionStore(storeName, retentionMs))
+                       .withKeySerde(Serdes.String())
+                       .withValueSerde(valueSerde));
+  }
 }
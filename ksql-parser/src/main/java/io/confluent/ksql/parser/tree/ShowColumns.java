@@ -27,19 +27,27 @@ public class ShowColumns
 
   private final QualifiedName table;
   private final boolean isTopic;
+  private final boolean isExtended;
 
   public ShowColumns(QualifiedName table, boolean isTopic) {
-    this(Optional.empty(), table, isTopic);
+    this(Optional.empty(), table, isTopic, false);
   }
 
   public ShowColumns(NodeLocation location, QualifiedName table, boolean isTopic) {
-    this(Optional.of(location), table, isTopic);
+    this(Optional.of(location), table, isTopic, false);
   }
 
-  private ShowColumns(Optional<NodeLocation> location, QualifiedName table, boolean isTopic) {
+  public ShowColumns(NodeLocation location, QualifiedName table, boolean isTopic,
+                     boolean isExtended) {
+    this(Optional.of(location), table, isTopic, isExtended);
+  }
+
+  private ShowColumns(Optional<NodeLocation> location, QualifiedName table, boolean isTopic,
+                      boolean isExtended) {
     super(location);
     this.table = requireNonNull(table, "table is null");
     this.isTopic = isTopic;
+    this.isExtended = isExtended;
   }
 
   public QualifiedName getTable() {
@@ -50,6 +58,10 @@ public class ShowColumns
     return isTopic;
   }
 
+  public boolean isExtended() {
+    return isExtended;
+  }
+
   @Override
   public <R, C> R accept(AstVisitor<R, C> visitor, C context) {
     return visitor.visitShowColumns(this, context);
@@ -57,7 +69,7 @@ public class ShowColumns
 
   @Override
   public int hashCode() {
-    return Objects.hash(table);
+    return Objects.hash(table, isExtended);
   }
 
   @Override
@@ -69,7 +81,7 @@ public class ShowColumns
       return false;
     }
     ShowColumns o = (ShowColumns) obj;
-    return Objects.equals(table, o.table);
+    return Objects.equals(table, o.table) && isExtended == o.isExtended;
   }
 
   @Override
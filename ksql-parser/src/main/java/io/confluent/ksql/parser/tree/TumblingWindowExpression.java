@@ -16,6 +16,7 @@
 
 package io.confluent.ksql.parser.tree;
 
+import org.apache.kafka.common.serialization.Serde;
 import org.apache.kafka.streams.kstream.Initializer;
 import org.apache.kafka.streams.kstream.KGroupedStream;
 import org.apache.kafka.streams.kstream.KTable;
@@ -45,6 +46,14 @@ public class TumblingWindowExpression extends KsqlWindowExpression {
     this.sizeUnit = sizeUnit;
   }
 
+  public long getSize() {
+    return size;
+  }
+
+  public TimeUnit getSizeUnit() {
+    return sizeUnit;
+  }
+
   @Override
   public String toString() {
     return " TUMBLING ( SIZE " + size + " " + sizeUnit + " ) ";
@@ -77,4 +86,19 @@ public class TumblingWindowExpression extends KsqlWindowExpression {
         .aggregate(initializer, aggregator, materialized);
 
   }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public KTable applyAggregate(final KGroupedStream groupedStream,
+                               final Initializer initializer,
+                               final UdafAggregator aggregator,
+                               final String storeName,
+                               final Serde<GenericRow> valueSerde,
+                               final long retentionMs,
+                               final int segments) {
+    final long sizeMs = sizeUnit.toMillis(size);
+    return groupedStream.windowedBy(TimeWindows.of(sizeMs))
+        .aggregate(initializer, aggregator,
+                   windowStore(storeName, valueSerde, retentionMs, segments, sizeMs));
+  }
 }
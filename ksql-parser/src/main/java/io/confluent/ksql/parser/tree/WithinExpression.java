@@ -0,0 +1,80 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+
+package io.confluent.ksql.parser.tree;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The WITHIN clause of a stream-stream join: records of the two sides join when their
+ * timestamps are at most the given interval apart.
+ */
+public class WithinExpression extends Node {
+
+  private final long size;
+  private final TimeUnit timeUnit;
+
+  public WithinExpression(long size, TimeUnit timeUnit) {
+    this(Optional.empty(), size, timeUnit);
+  }
+
+  public WithinExpression(NodeLocation location, long size, TimeUnit timeUnit) {
+    this(Optional.of(location), size, timeUnit);
+  }
+
+  private WithinExpression(Optional<NodeLocation> location, long size, TimeUnit timeUnit) {
+    super(location);
+    this.size = size;
+    this.timeUnit = timeUnit;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public TimeUnit getTimeUnit() {
+    return timeUnit;
+  }
+
+  public long toMillis() {
+    return timeUnit.toMillis(size);
+  }
+
+  @Override
+  public String toString() {
+    return " WITHIN " + size + " " + timeUnit;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(size, timeUnit);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    WithinExpression withinExpression = (WithinExpression) o;
+    return withinExpression.size == size && withinExpression.timeUnit == timeUnit;
+  }
+}
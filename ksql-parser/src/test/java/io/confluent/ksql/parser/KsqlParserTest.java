@@ -27,6 +27,7 @@ import io.confluent.ksql.parser.tree.CreateTable;
 import io.confluent.ksql.parser.tree.DropStream;
 import io.confluent.ksql.parser.tree.DropTable;
 import io.confluent.ksql.parser.tree.ListProperties;
+import io.confluent.ksql.parser.tree.ListQueries;
 import io.confluent.ksql.parser.tree.ListStreams;
 import io.confluent.ksql.parser.tree.ListTables;
 import io.confluent.ksql.parser.tree.ListTopics;
@@ -36,8 +37,10 @@ import io.confluent.ksql.parser.tree.Query;
 import io.confluent.ksql.parser.tree.QuerySpecification;
 import io.confluent.ksql.parser.tree.Relation;
 import io.confluent.ksql.parser.tree.SetProperty;
+import io.confluent.ksql.parser.tree.ShowColumns;
 import io.confluent.ksql.parser.tree.SingleColumn;
 import io.confluent.ksql.parser.tree.Statement;
+import io.confluent.ksql.parser.tree.WithinExpression;
 import io.confluent.ksql.util.MetaStoreFixture;
 import org.junit.Assert;
 import org.junit.Before;
@@ -45,6 +48,7 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.nullValue;
@@ -261,6 +265,26 @@ public class KsqlParserTest {
     Assert.assertTrue("testLeftJoinWithFilter fails", querySpecification.getWhere().get().toString().equalsIgnoreCase("(T2.COL2 = 'test')"));
   }
 
+  @Test
+  public void shouldParseStreamStreamJoinWithin() throws Exception {
+    String queryStr =
+        "SELECT t1.col1, o.itemid FROM test1 t1 JOIN orders o WITHIN 10 SECONDS ON "
+        + "t1.col0 = o.ordertime;";
+    Query query = (Query) KSQL_PARSER.buildAst(queryStr, metaStore).get(0);
+    Join join = (Join) ((QuerySpecification) query.getQueryBody()).getFrom();
+    assertThat(join.getType(), equalTo(Join.Type.INNER));
+    assertThat(join.getWithin().get(), equalTo(new WithinExpression(10, TimeUnit.SECONDS)));
+  }
+
+  @Test
+  public void shouldAllowWithinAsIdentifier() throws Exception {
+    String queryStr = "SELECT t1.col1 AS within FROM test1 t1;";
+    Query query = (Query) KSQL_PARSER.buildAst(queryStr, metaStore).get(0);
+    SingleColumn column = (SingleColumn) ((QuerySpecification) query.getQueryBody())
+        .getSelect().getSelectItems().get(0);
+    assertThat(column.getAlias().get().toUpperCase(), equalTo("WITHIN"));
+  }
+
   @Test
   public void testSelectAll() throws Exception {
     String queryStr = "SELECT * FROM test1 t1;";
@@ -560,6 +584,32 @@ public class KsqlParserTest {
     Assert.assertTrue(listProperties.toString().equalsIgnoreCase("ListProperties{}"));
   }
 
+  @Test
+  public void testShowQueries() throws Exception {
+    Statement statement = KSQL_PARSER.buildAst("SHOW QUERIES;", metaStore).get(0);
+    Assert.assertTrue(statement instanceof ListQueries);
+    assertThat(((ListQueries) statement).isExtended(), equalTo(false));
+  }
+
+  @Test
+  public void testShowQueriesExtended() throws Exception {
+    Statement statement = KSQL_PARSER.buildAst("SHOW QUERIES EXTENDED;", metaStore).get(0);
+    Assert.assertTrue(statement instanceof ListQueries);
+    assertThat(((ListQueries) statement).isExtended(), equalTo(true));
+  }
+
+  @Test
+  public void testDescribeExtended() throws Exception {
+    Statement statement = KSQL_PARSER.buildAst("DESCRIBE EXTENDED test1;", metaStore).get(0);
+    Assert.assertTrue(statement instanceof ShowColumns);
+    ShowColumns showColumns = (ShowColumns) statement;
+    assertThat(showColumns.isExtended(), equalTo(true));
+    assertThat(showColumns.getTable().toString().toUpperCase(), equalTo("TEST1"));
+
+    statement = KSQL_PARSER.buildAst("DESCRIBE test1;", metaStore).get(0);
+    assertThat(((ShowColumns) statement).isExtended(), equalTo(false));
+  }
+
   @Test
   public void testSetProperties() throws Exception {
     String simpleQuery = "set 'auto.offset.reset'='earliest';";
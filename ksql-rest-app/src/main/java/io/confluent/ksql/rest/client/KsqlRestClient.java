@@ -22,6 +22,7 @@ import io.confluent.ksql.rest.entity.CommandStatuses;
 import io.confluent.ksql.rest.entity.ErrorMessage;
 import io.confluent.ksql.rest.entity.KsqlEntityList;
 import io.confluent.ksql.rest.entity.KsqlRequest;
+import io.confluent.ksql.rest.entity.PullQueryResponse;
 import io.confluent.ksql.rest.entity.SchemaMapper;
 import io.confluent.ksql.rest.entity.ServerInfo;
 import io.confluent.ksql.rest.entity.StreamedRow;
@@ -118,6 +119,19 @@ public class KsqlRestClient implements Closeable, AutoCloseable {
     }
   }
 
+  public RestResponse<PullQueryResponse> makePullQueryRequest(String ksql) {
+    RestResponse<PullQueryResponse> result;
+    KsqlRequest jsonRequest = new KsqlRequest(ksql, localProperties);
+    Response response = makePostRequest("query/pull", jsonRequest);
+    if (response.getStatus() == Response.Status.OK.getStatusCode()) {
+      result = RestResponse.successful(response.readEntity(PullQueryResponse.class));
+    } else {
+      result = RestResponse.erroneous(response.readEntity(ErrorMessage.class));
+    }
+    response.close();
+    return result;
+  }
+
   public RestResponse<InputStream> makePrintTopicRequest(
       String ksql
   ) {
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.rest.entity;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+
+import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.util.SchemaUtil;
+
+import org.apache.kafka.connect.data.Schema;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+@JsonSubTypes({})
+public class PullQueryResponse {
+  private final List<SourceDescription.FieldSchemaInfo> schema;
+  private final List<GenericRow> rows;
+
+  @JsonCreator
+  public PullQueryResponse(
+      @JsonProperty("schema") List<SourceDescription.FieldSchemaInfo> schema,
+      @JsonProperty("rows") List<GenericRow> rows
+  ) {
+    this.schema = schema;
+    this.rows = rows;
+  }
+
+  public PullQueryResponse(Schema schema, List<GenericRow> rows) {
+    this(
+        schema.fields().stream().map(
+            field -> new SourceDescription.FieldSchemaInfo(
+                field.name(), SchemaUtil.getSchemaFieldName(field)))
+            .collect(Collectors.toList()),
+        rows
+    );
+  }
+
+  public List<SourceDescription.FieldSchemaInfo> getSchema() {
+    return schema;
+  }
+
+  public List<GenericRow> getRows() {
+    return rows;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof PullQueryResponse)) {
+      return false;
+    }
+    PullQueryResponse that = (PullQueryResponse) o;
+    return Objects.equals(getSchema(), that.getSchema())
+        && Objects.equals(getRows(), that.getRows());
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(getSchema(), getRows());
+  }
+}
@@ -47,16 +47,23 @@ public class Queries extends KsqlEntity {
     private final String queryString;
     private final String kafkaTopic;
     private final long id;
+    private final QueryMetricsInfo metrics;
 
     @JsonCreator
     public RunningQuery(
         @JsonProperty("queryString") String queryString,
         @JsonProperty("kafkaTopic") String kafkaTopic,
-        @JsonProperty("id") long id
+        @JsonProperty("id") long id,
+        @JsonProperty("metrics") QueryMetricsInfo metrics
     ) {
       this.queryString = queryString;
       this.kafkaTopic = kafkaTopic;
       this.id = id;
+      this.metrics = metrics;
+    }
+
+    public RunningQuery(String queryString, String kafkaTopic, long id) {
+      this(queryString, kafkaTopic, id, null);
     }
 
     public String getQueryString() {
@@ -71,6 +78,13 @@ public class Queries extends KsqlEntity {
       return id;
     }
 
+    /**
+     * @return the runtime metrics of the query, or null unless they were asked for
+     */
+    public QueryMetricsInfo getMetrics() {
+      return metrics;
+    }
+
     @Override
     public boolean equals(Object o) {
       if (this == o) {
@@ -82,12 +96,13 @@ public class Queries extends KsqlEntity {
       RunningQuery that = (RunningQuery) o;
       return getId() == that.getId()
           && Objects.equals(getQueryString(), that.getQueryString())
-          && Objects.equals(getKafkaTopic(), that.getKafkaTopic());
+          && Objects.equals(getKafkaTopic(), that.getKafkaTopic())
+          && Objects.equals(getMetrics(), that.getMetrics());
     }
 
     @Override
     public int hashCode() {
-      return Objects.hash(getQueryString(), getKafkaTopic(), getId());
+      return Objects.hash(getQueryString(), getKafkaTopic(), getId(), getMetrics());
     }
   }
 
@@ -0,0 +1,227 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.rest.entity;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.confluent.ksql.util.QueryLag;
+import io.confluent.ksql.util.QueryMetrics;
+
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Runtime metrics of a persistent query, as shown by {@code SHOW QUERIES EXTENDED} and, for the
+ * queries writing a stream or table, {@code DESCRIBE EXTENDED}, along with what the query
+ * uses of its resource quota and how far it is behind on its sources.
+ */
+public class QueryMetricsInfo {
+  private final long queryId;
+  private final double messagesInPerSecond;
+  private final double messagesOutPerSecond;
+  private final long deserializationErrors;
+  private final long expressionErrors;
+  private final long lastMessageTimestamp;
+  private final double processingLatencyP50Ms;
+  private final double processingLatencyP99Ms;
+  private final double processingLatencyMaxMs;
+  private final double bytesInPerSecond;
+  private final int streamThreads;
+  private final long throttledMs;
+  private final long stateStoreBytes;
+  private final long lagRecords;
+  private final long lagMs;
+  private final Map<String, Long> partitionLagRecords;
+
+  @JsonCreator
+  public QueryMetricsInfo(
+      @JsonProperty("queryId")                long queryId,
+      @JsonProperty("messagesInPerSecond")    double messagesInPerSecond,
+      @JsonProperty("messagesOutPerSecond")   double messagesOutPerSecond,
+      @JsonProperty("deserializationErrors")  long deserializationErrors,
+      @JsonProperty("expressionErrors")       long expressionErrors,
+      @JsonProperty("lastMessageTimestamp")   long lastMessageTimestamp,
+      @JsonProperty("processingLatencyP50Ms") double processingLatencyP50Ms,
+      @JsonProperty("processingLatencyP99Ms") double processingLatencyP99Ms,
+      @JsonProperty("processingLatencyMaxMs") double processingLatencyMaxMs,
+      @JsonProperty("bytesInPerSecond")       double bytesInPerSecond,
+      @JsonProperty("streamThreads")          int streamThreads,
+      @JsonProperty("throttledMs")            long throttledMs,
+      @JsonProperty("stateStoreBytes")        long stateStoreBytes,
+      @JsonProperty("lagRecords")             long lagRecords,
+      @JsonProperty("lagMs")                  long lagMs,
+      @JsonProperty("partitionLagRecords")    Map<String, Long> partitionLagRecords
+  ) {
+    this.queryId = queryId;
+    this.messagesInPerSecond = messagesInPerSecond;
+    this.messagesOutPerSecond = messagesOutPerSecond;
+    this.deserializationErrors = deserializationErrors;
+    this.expressionErrors = expressionErrors;
+    this.lastMessageTimestamp = lastMessageTimestamp;
+    this.processingLatencyP50Ms = processingLatencyP50Ms;
+    this.processingLatencyP99Ms = processingLatencyP99Ms;
+    this.processingLatencyMaxMs = processingLatencyMaxMs;
+    this.bytesInPerSecond = bytesInPerSecond;
+    this.streamThreads = streamThreads;
+    this.throttledMs = throttledMs;
+    this.stateStoreBytes = stateStoreBytes;
+    this.lagRecords = lagRecords;
+    this.lagMs = lagMs;
+    this.partitionLagRecords = partitionLagRecords == null
+                               ? Collections.emptyMap()
+                               : partitionLagRecords;
+  }
+
+  public QueryMetricsInfo(long queryId, QueryMetrics queryMetrics) {
+    this(
+        queryId,
+        queryMetrics.getMessagesInPerSecond(),
+        queryMetrics.getMessagesOutPerSecond(),
+        queryMetrics.getDeserializationErrors(),
+        queryMetrics.getExpressionErrors(),
+        queryMetrics.getLastMessageTimestamp(),
+        queryMetrics.getProcessingLatencyP50Ms(),
+        queryMetrics.getProcessingLatencyP99Ms(),
+        queryMetrics.getProcessingLatencyMaxMs(),
+        queryMetrics.getBytesInPerSecond(),
+        queryMetrics.getStreamThreads(),
+        queryMetrics.getThrottledMs(),
+        queryMetrics.getStateStoreBytes(),
+        queryMetrics.getLagRecords(),
+        queryMetrics.getLagMs(),
+        partitionLagRecords(queryMetrics.getLag())
+    );
+  }
+
+  private static Map<String, Long> partitionLagRecords(QueryLag lag) {
+    Map<String, Long> partitionLagRecords = new HashMap<>();
+    for (Map.Entry<TopicPartition, Long> partitionLag : lag.getPartitionLagRecords().entrySet()) {
+      partitionLagRecords.put(partitionLag.getKey().toString(), partitionLag.getValue());
+    }
+    return partitionLagRecords;
+  }
+
+  public long getQueryId() {
+    return queryId;
+  }
+
+  public double getMessagesInPerSecond() {
+    return messagesInPerSecond;
+  }
+
+  public double getMessagesOutPerSecond() {
+    return messagesOutPerSecond;
+  }
+
+  public long getDeserializationErrors() {
+    return deserializationErrors;
+  }
+
+  public long getExpressionErrors() {
+    return expressionErrors;
+  }
+
+  public long getLastMessageTimestamp() {
+    return lastMessageTimestamp;
+  }
+
+  public double getProcessingLatencyP50Ms() {
+    return processingLatencyP50Ms;
+  }
+
+  public double getProcessingLatencyP99Ms() {
+    return processingLatencyP99Ms;
+  }
+
+  public double getProcessingLatencyMaxMs() {
+    return processingLatencyMaxMs;
+  }
+
+  public double getBytesInPerSecond() {
+    return bytesInPerSecond;
+  }
+
+  public int getStreamThreads() {
+    return streamThreads;
+  }
+
+  public long getThrottledMs() {
+    return throttledMs;
+  }
+
+  public long getStateStoreBytes() {
+    return stateStoreBytes;
+  }
+
+  public long getLagRecords() {
+    return lagRecords;
+  }
+
+  public long getLagMs() {
+    return lagMs;
+  }
+
+  /**
+   * @return the records the query is behind in each source partition, by topic-partition
+   */
+  public Map<String, Long> getPartitionLagRecords() {
+    return partitionLagRecords;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof QueryMetricsInfo)) {
+      return false;
+    }
+    QueryMetricsInfo that = (QueryMetricsInfo) o;
+    return getQueryId() == that.getQueryId()
+           && getMessagesInPerSecond() == that.getMessagesInPerSecond()
+           && getMessagesOutPerSecond() == that.getMessagesOutPerSecond()
+           && getDeserializationErrors() == that.getDeserializationErrors()
+           && getExpressionErrors() == that.getExpressionErrors()
+           && getLastMessageTimestamp() == that.getLastMessageTimestamp()
+           && getProcessingLatencyP50Ms() == that.getProcessingLatencyP50Ms()
+           && getProcessingLatencyP99Ms() == that.getProcessingLatencyP99Ms()
+           && getProcessingLatencyMaxMs() == that.getProcessingLatencyMaxMs()
+           && getBytesInPerSecond() == that.getBytesInPerSecond()
+           && getStreamThreads() == that.getStreamThreads()
+           && getThrottledMs() == that.getThrottledMs()
+           && getStateStoreBytes() == that.getStateStoreBytes()
+           && getLagRecords() == that.getLagRecords()
+           && getLagMs() == that.getLagMs()
+           && Objects.equals(getPartitionLagRecords(), that.getPartitionLagRecords());
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(getQueryId(), getMessagesInPerSecond(), getMessagesOutPerSecond(),
+                        getDeserializationErrors(), getExpressionErrors(),
+                        getLastMessageTimestamp(), getProcessingLatencyP50Ms(),
+                        getProcessingLatencyP99Ms(), getProcessingLatencyMaxMs(),
+                        getBytesInPerSecond(), getStreamThreads(), getThrottledMs(),
+                        getStateStoreBytes(), getLagRecords(), getLagMs(),
+                        getPartitionLagRecords());
+  }
+}
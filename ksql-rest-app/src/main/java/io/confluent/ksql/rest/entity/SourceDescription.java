@@ -27,6 +27,7 @@ import io.confluent.ksql.util.SchemaUtil;
 
 import org.apache.kafka.connect.data.Field;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -41,6 +42,8 @@ public class SourceDescription extends KsqlEntity {
   private final DataSource.DataSourceType type;
   private final String key;
   private final String timestamp;
+  private final List<StateStoreInfo> stateStores;
+  private final List<QueryMetricsInfo> queryMetrics;
 
   @JsonCreator
   public SourceDescription(
@@ -49,7 +52,9 @@ public class SourceDescription extends KsqlEntity {
       @JsonProperty("schema")        List<FieldSchemaInfo> schema,
       @JsonProperty("type")          DataSource.DataSourceType type,
       @JsonProperty("key")           String key,
-      @JsonProperty("timestamp")     String timestamp
+      @JsonProperty("timestamp")     String timestamp,
+      @JsonProperty("stateStores")   List<StateStoreInfo> stateStores,
+      @JsonProperty("queryMetrics")  List<QueryMetricsInfo> queryMetrics
   ) {
     super(statementText);
     this.name = name;
@@ -57,9 +62,32 @@ public class SourceDescription extends KsqlEntity {
     this.type = type;
     this.key = key;
     this.timestamp = timestamp;
+    this.stateStores = stateStores == null ? Collections.emptyList() : stateStores;
+    this.queryMetrics = queryMetrics == null ? Collections.emptyList() : queryMetrics;
+  }
+
+  public SourceDescription(
+      String statementText,
+      String name,
+      List<FieldSchemaInfo> schema,
+      DataSource.DataSourceType type,
+      String key,
+      String timestamp
+  ) {
+    this(statementText, name, schema, type, key, timestamp, Collections.emptyList(),
+         Collections.emptyList());
   }
 
   public SourceDescription(String statementText, StructuredDataSource dataSource) {
+    this(statementText, dataSource, Collections.emptyList(), Collections.emptyList());
+  }
+
+  public SourceDescription(
+      String statementText,
+      StructuredDataSource dataSource,
+      List<StateStoreInfo> stateStores,
+      List<QueryMetricsInfo> queryMetrics
+  ) {
 
     this(
         statementText,
@@ -71,7 +99,9 @@ public class SourceDescription extends KsqlEntity {
             }).collect(Collectors.toList()),
         dataSource.getDataSourceType(),
         Optional.ofNullable(dataSource.getKeyField()).map(Field::name).orElse(null),
-        Optional.ofNullable(dataSource.getTimestampField()).map(Field::name).orElse(null)
+        Optional.ofNullable(dataSource.getTimestampField()).map(Field::name).orElse(null),
+        stateStores,
+        queryMetrics
     );
   }
 
@@ -95,6 +125,17 @@ public class SourceDescription extends KsqlEntity {
     return timestamp;
   }
 
+  public List<StateStoreInfo> getStateStores() {
+    return stateStores;
+  }
+
+  /**
+   * @return the runtime metrics of the queries writing the source, if they were asked for
+   */
+  public List<QueryMetricsInfo> getQueryMetrics() {
+    return queryMetrics;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -108,12 +149,15 @@ public class SourceDescription extends KsqlEntity {
         && Objects.equals(getSchema(), that.getSchema())
         && getType() == that.getType()
         && Objects.equals(getKey(), that.getKey())
-        && Objects.equals(getTimestamp(), that.getTimestamp());
+        && Objects.equals(getTimestamp(), that.getTimestamp())
+        && Objects.equals(getStateStores(), that.getStateStores())
+        && Objects.equals(getQueryMetrics(), that.getQueryMetrics());
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(getName(), getSchema(), getType(), getKey(), getTimestamp());
+    return Objects.hash(getName(), getSchema(), getType(), getKey(), getTimestamp(),
+                        getStateStores(), getQueryMetrics());
   }
 
   public static class FieldSchemaInfo {
@@ -155,4 +199,52 @@ public class SourceDescription extends KsqlEntity {
       return Objects.hash(getName(), getType());
     }
   }
+
+  public static class StateStoreInfo {
+    private final String name;
+    private final long sizeBytes;
+    private final int segments;
+
+    @JsonCreator
+    public StateStoreInfo(
+        @JsonProperty("name")      String name,
+        @JsonProperty("sizeBytes") long sizeBytes,
+        @JsonProperty("segments")  int segments
+    ) {
+      this.name = name;
+      this.sizeBytes = sizeBytes;
+      this.segments = segments;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getSizeBytes() {
+      return sizeBytes;
+    }
+
+    public int getSegments() {
+      return segments;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof StateStoreInfo)) {
+        return false;
+      }
+      StateStoreInfo that = (StateStoreInfo) o;
+      return getSizeBytes() == that.getSizeBytes()
+             && getSegments() == that.getSegments()
+             && Objects.equals(getName(), that.getName());
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(getName(), getSizeBytes(), getSegments());
+    }
+  }
 }
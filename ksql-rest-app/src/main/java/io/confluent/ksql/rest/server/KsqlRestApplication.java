@@ -42,6 +42,7 @@ import io.confluent.ksql.rest.server.computation.CommandStore;
 import io.confluent.ksql.rest.server.computation.StatementExecutor;
 import io.confluent.ksql.rest.server.resources.KsqlExceptionMapper;
 import io.confluent.ksql.rest.server.resources.KsqlResource;
+import io.confluent.ksql.rest.server.resources.PullQueryResource;
 import io.confluent.ksql.rest.server.resources.StatusResource;
 import io.confluent.ksql.rest.server.resources.ServerInfoResource;
 import io.confluent.ksql.rest.server.resources.streaming.StreamedQueryResource;
@@ -68,6 +69,7 @@ import org.glassfish.jersey.servlet.ServletProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.core.Configurable;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -89,6 +91,7 @@ public class KsqlRestApplication extends Application<KsqlRestConfig> {
   private final ServerInfoResource serverInfoResource;
   private final StatusResource statusResource;
   private final StreamedQueryResource streamedQueryResource;
+  private final PullQueryResource pullQueryResource;
   private final KsqlResource ksqlResource;
   private final boolean enableQuickstartPage;
 
@@ -110,6 +113,7 @@ public class KsqlRestApplication extends Application<KsqlRestConfig> {
       ServerInfoResource serverInfoResource,
       StatusResource statusResource,
       StreamedQueryResource streamedQueryResource,
+      PullQueryResource pullQueryResource,
       KsqlResource ksqlResource,
       boolean enableQuickstartPage,
       VersionCheckerAgent versionCheckerAgent
@@ -120,6 +124,7 @@ public class KsqlRestApplication extends Application<KsqlRestConfig> {
     this.serverInfoResource = serverInfoResource;
     this.statusResource = statusResource;
     this.streamedQueryResource = streamedQueryResource;
+    this.pullQueryResource = pullQueryResource;
     this.ksqlResource = ksqlResource;
     this.enableQuickstartPage = enableQuickstartPage;
     this.versionChckerAgent = versionCheckerAgent;
@@ -133,6 +138,7 @@ public class KsqlRestApplication extends Application<KsqlRestConfig> {
     config.register(statusResource);
     config.register(ksqlResource);
     config.register(streamedQueryResource);
+    config.register(pullQueryResource);
     config.register(new KsqlExceptionMapper());
   }
 
@@ -168,6 +174,7 @@ public class KsqlRestApplication extends Application<KsqlRestConfig> {
   @Override
   public void stop() throws Exception {
     ksqlEngine.close();
+    pullQueryResource.close();
     commandRunner.close();
     try {
       commandRunnerThread.join();
@@ -305,7 +312,16 @@ public class KsqlRestApplication extends Application<KsqlRestConfig> {
     StreamedQueryResource streamedQueryResource = new StreamedQueryResource(
         ksqlEngine,
         statementParser,
-        restConfig.getLong(KsqlRestConfig.STREAMED_QUERY_DISCONNECT_CHECK_MS_CONFIG)
+        restConfig.getLong(KsqlRestConfig.STREAMED_QUERY_DISCONNECT_CHECK_MS_CONFIG),
+        restConfig.getInt(KsqlRestConfig.STREAMED_QUERY_BATCH_MAX_ROWS_CONFIG),
+        restConfig.getLong(KsqlRestConfig.STREAMED_QUERY_BATCH_MAX_LATENCY_MS_CONFIG)
+    );
+    ObjectMapper forwardingMapper = new SchemaMapper().registerToObjectMapper(new ObjectMapper());
+    PullQueryResource pullQueryResource = new PullQueryResource(
+        ksqlEngine,
+        ClientBuilder.newBuilder()
+            .register(new JacksonMessageBodyProvider(forwardingMapper))
+            .build()
     );
     KsqlResource ksqlResource = new KsqlResource(
         ksqlEngine,
@@ -323,6 +339,7 @@ public class KsqlRestApplication extends Application<KsqlRestConfig> {
         serverInfoResource,
         statusResource,
         streamedQueryResource,
+        pullQueryResource,
         ksqlResource,
         quickstart,
         versionCheckerAgent
@@ -60,6 +60,33 @@ public class KsqlRestConfig extends RestConfig {
               + "JSON; this helps proactively determine if the connection has been terminated in "
               + "order to avoid keeping the created streams job alive longer than necessary";
 
+  public static final String
+      STREAMED_QUERY_BATCH_MAX_ROWS_CONFIG = "query.stream.batch.max.rows";
+  public static final ConfigDef.Type
+      STREAMED_QUERY_BATCH_MAX_ROWS_TYPE = ConfigDef.Type.INT;
+  public static final Integer
+      STREAMED_QUERY_BATCH_MAX_ROWS_DEFAULT = 500;
+  public static final ConfigDef.Importance
+      STREAMED_QUERY_BATCH_MAX_ROWS_IMPORTANCE = ConfigDef.Importance.LOW;
+  public static final String
+      STREAMED_QUERY_BATCH_MAX_ROWS_DOC =
+          "The most rows of a streamed query written to the response at once, before the "
+              + "response is flushed to the client";
+
+  public static final String
+      STREAMED_QUERY_BATCH_MAX_LATENCY_MS_CONFIG = "query.stream.batch.max.latency.ms";
+  public static final ConfigDef.Type
+      STREAMED_QUERY_BATCH_MAX_LATENCY_MS_TYPE = ConfigDef.Type.LONG;
+  public static final Long
+      STREAMED_QUERY_BATCH_MAX_LATENCY_MS_DEFAULT = 0L;
+  public static final ConfigDef.Importance
+      STREAMED_QUERY_BATCH_MAX_LATENCY_MS_IMPORTANCE = ConfigDef.Importance.LOW;
+  public static final String
+      STREAMED_QUERY_BATCH_MAX_LATENCY_MS_DOC =
+          "How long a row of a streamed query may wait for more rows to be written with it. "
+              + "With 0, rows already buffered are written together but no row waits for more; "
+              + "higher values mean fewer, larger writes to clients of busy queries";
+
   public static final String
       DISTRIBUTED_COMMAND_RESPONSE_TIMEOUT_MS_CONFIG = "command.response.timeout.ms";
   public static final ConfigDef.Type
@@ -88,6 +115,20 @@ public class KsqlRestConfig extends RestConfig {
         STREAMED_QUERY_DISCONNECT_CHECK_MS_DEFAULT,
         STREAMED_QUERY_DISCONNECT_CHECK_MS_IMPORTANCE,
         STREAMED_QUERY_DISCONNECT_CHECK_MS_DOC
+    ).define(
+        STREAMED_QUERY_BATCH_MAX_ROWS_CONFIG,
+        STREAMED_QUERY_BATCH_MAX_ROWS_TYPE,
+        STREAMED_QUERY_BATCH_MAX_ROWS_DEFAULT,
+        ConfigDef.Range.atLeast(1),
+        STREAMED_QUERY_BATCH_MAX_ROWS_IMPORTANCE,
+        STREAMED_QUERY_BATCH_MAX_ROWS_DOC
+    ).define(
+        STREAMED_QUERY_BATCH_MAX_LATENCY_MS_CONFIG,
+        STREAMED_QUERY_BATCH_MAX_LATENCY_MS_TYPE,
+        STREAMED_QUERY_BATCH_MAX_LATENCY_MS_DEFAULT,
+        ConfigDef.Range.atLeast(0),
+        STREAMED_QUERY_BATCH_MAX_LATENCY_MS_IMPORTANCE,
+        STREAMED_QUERY_BATCH_MAX_LATENCY_MS_DOC
     ).define(
         DISTRIBUTED_COMMAND_RESPONSE_TIMEOUT_MS_CONFIG,
         DISTRIBUTED_COMMAND_RESPONSE_TIMEOUT_MS_TYPE,
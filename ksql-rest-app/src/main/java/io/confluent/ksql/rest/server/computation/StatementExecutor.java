@@ -241,7 +241,7 @@ public class StatementExecutor {
       for (QueryMetadata queryMetadata : queryMetadataList) {
         if (queryMetadata instanceof PersistentQueryMetadata) {
           PersistentQueryMetadata persistentQueryMetadata = (PersistentQueryMetadata) queryMetadata;
-          persistentQueryMetadata.getKafkaStreams().start();
+          persistentQueryMetadata.start();
         }
       }
     } else {
@@ -313,7 +313,7 @@ public class StatementExecutor {
         ksqlEngine.terminateQuery(queryId, false);
         return false;
       } else {
-        persistentQueryMetadata.getKafkaStreams().start();
+        persistentQueryMetadata.start();
         return true;
       }
 
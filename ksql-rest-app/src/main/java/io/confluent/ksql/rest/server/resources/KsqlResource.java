@@ -43,6 +43,7 @@ import io.confluent.ksql.parser.tree.DropStream;
 import io.confluent.ksql.parser.tree.DropTable;
 import io.confluent.ksql.parser.tree.DropTopic;
 import io.confluent.ksql.parser.tree.Explain;
+import io.confluent.ksql.parser.tree.ExplainQuery;
 import io.confluent.ksql.parser.tree.ListProperties;
 import io.confluent.ksql.parser.tree.ListQueries;
 import io.confluent.ksql.parser.tree.ListStreams;
@@ -63,6 +64,7 @@ import io.confluent.ksql.rest.entity.KsqlEntityList;
 import io.confluent.ksql.rest.entity.KsqlRequest;
 import io.confluent.ksql.rest.entity.PropertiesList;
 import io.confluent.ksql.rest.entity.Queries;
+import io.confluent.ksql.rest.entity.QueryMetricsInfo;
 import io.confluent.ksql.rest.entity.SourceDescription;
 import io.confluent.ksql.rest.entity.StreamsList;
 import io.confluent.ksql.rest.entity.TablesList;
@@ -77,6 +79,7 @@ import io.confluent.ksql.util.KafkaTopicClient;
 import io.confluent.ksql.util.KsqlException;
 import io.confluent.ksql.util.PersistentQueryMetadata;
 import io.confluent.ksql.util.QueryMetadata;
+import io.confluent.ksql.util.StateStoreUsage;
 
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.misc.Interval;
@@ -189,18 +192,24 @@ public class KsqlResource {
     } else if (statement instanceof ListTables) {
       return listTables(statementText);
     } else if (statement instanceof ListQueries) {
-      return showQueries(statementText);
+      return showQueries(statementText, ((ListQueries) statement).isExtended());
     } else if (statement instanceof ShowColumns) {
       ShowColumns showColumns = (ShowColumns) statement;
       if (showColumns.isTopic()) {
         return describeTopic(statementText, showColumns.getTable().getSuffix());
       }
-      return describe(statementText, showColumns.getTable().getSuffix());
+      return describe(statementText, showColumns.getTable().getSuffix(),
+                      showColumns.isExtended());
     } else if (statement instanceof ListProperties) {
       return listProperties(statementText);
     } else if (statement instanceof Explain) {
       Explain explain = (Explain) statement;
+      if (explain.isAnalyze()) {
+        return explainAnalyze(explain, streamsProperties);
+      }
       return getStatementExecutionPlan(explain, statementText);
+    } else if (statement instanceof ExplainQuery) {
+      return getQueryExecutionPlan(((ExplainQuery) statement).getQueryId());
     } else if (statement instanceof RunScript) {
       return distributeStatement(statementText, statement, streamsProperties);
     }else if (statement instanceof RegisterTopic
@@ -282,7 +291,7 @@ public class KsqlResource {
   }
 
   // Only shows queries running on the current machine, not across the entire cluster
-  private Queries showQueries(String statementText) {
+  private Queries showQueries(String statementText, boolean extended) {
     List<Queries.RunningQuery> runningQueries = new ArrayList<>();
     for (PersistentQueryMetadata persistentQueryMetadata :
         ksqlEngine.getPersistentQueries().values()
@@ -293,7 +302,8 @@ public class KsqlResource {
       runningQueries.add(new Queries.RunningQuery(
           persistentQueryMetadata.getStatementString(),
           ksqlStructuredDataOutputNode.getKafkaTopicName(),
-          persistentQueryMetadata.getId()
+          persistentQueryMetadata.getId(),
+          extended ? queryMetrics(persistentQueryMetadata) : null
       ));
     }
     return new Queries(statementText, runningQueries);
@@ -316,14 +326,61 @@ public class KsqlResource {
     return topicDescription;
   }
 
-  private SourceDescription describe(String statementText, String name) throws KsqlException {
+  private SourceDescription describe(String statementText, String name, boolean extended)
+      throws KsqlException {
 
     StructuredDataSource dataSource = ksqlEngine.getMetaStore().getSource(name);
     if (dataSource == null) {
       throw new KsqlException(String.format("Could not find STREAM/TABLE '%s' in the Metastore",
                                         name));
     }
-    return new SourceDescription(statementText, dataSource);
+    if (!extended) {
+      return new SourceDescription(statementText, dataSource);
+    }
+    return new SourceDescription(statementText, dataSource, stateStores(dataSource),
+                                 queryMetrics(dataSource));
+  }
+
+  // Only covers the queries writing the source that run on the current machine
+  private List<QueryMetricsInfo> queryMetrics(StructuredDataSource dataSource) {
+    List<QueryMetricsInfo> queryMetrics = new ArrayList<>();
+    String kafkaTopicName = dataSource.getKsqlTopic().getKafkaTopicName();
+    for (PersistentQueryMetadata persistentQueryMetadata :
+        ksqlEngine.getPersistentQueries().values()
+    ) {
+      KsqlStructuredDataOutputNode ksqlStructuredDataOutputNode =
+          (KsqlStructuredDataOutputNode) persistentQueryMetadata.getOutputNode();
+      if (kafkaTopicName.equals(ksqlStructuredDataOutputNode.getKafkaTopicName())) {
+        queryMetrics.add(queryMetrics(persistentQueryMetadata));
+      }
+    }
+    return queryMetrics;
+  }
+
+  private QueryMetricsInfo queryMetrics(PersistentQueryMetadata persistentQueryMetadata) {
+    return new QueryMetricsInfo(persistentQueryMetadata.getId(),
+                                persistentQueryMetadata.getQueryMetrics());
+  }
+
+  // Only covers the queries writing the source that run on the current machine
+  private List<SourceDescription.StateStoreInfo> stateStores(StructuredDataSource dataSource) {
+    List<SourceDescription.StateStoreInfo> stateStores = new ArrayList<>();
+    String kafkaTopicName = dataSource.getKsqlTopic().getKafkaTopicName();
+    for (PersistentQueryMetadata persistentQueryMetadata :
+        ksqlEngine.getPersistentQueries().values()
+    ) {
+      KsqlStructuredDataOutputNode ksqlStructuredDataOutputNode =
+          (KsqlStructuredDataOutputNode) persistentQueryMetadata.getOutputNode();
+      if (!kafkaTopicName.equals(ksqlStructuredDataOutputNode.getKafkaTopicName())) {
+        continue;
+      }
+      for (StateStoreUsage usage : StateStoreUsage.forQuery(
+          ksqlEngine.getKsqlConfig(), persistentQueryMetadata.getQueryApplicationId())) {
+        stateStores.add(new SourceDescription.StateStoreInfo(
+            usage.getStoreName(), usage.getSizeBytes(), usage.getSegments()));
+      }
+    }
+    return stateStores;
   }
 
   private PropertiesList listProperties(String statementText) {
@@ -338,6 +395,38 @@ public class KsqlResource {
     return TablesList.fromKsqlTables(statementText, getSpecificSources(KsqlTable.class));
   }
 
+  private ExecutionPlan explainAnalyze(Explain explain, Map<String, Object> streamsProperties)
+      throws KsqlException {
+    Statement statement = explain.getStatement();
+    Query query;
+    if (statement instanceof Query) {
+      query = (Query) statement;
+    } else if (statement instanceof CreateStreamAsSelect) {
+      query = ((CreateStreamAsSelect) statement).getQuery();
+    } else if (statement instanceof CreateTableAsSelect) {
+      query = ((CreateTableAsSelect) statement).getQuery();
+    } else {
+      throw new KsqlException("EXPLAIN ANALYZE is only supported for queries: " + statement);
+    }
+    try {
+      return new ExecutionPlan(ksqlEngine.explainAnalyze(query, streamsProperties));
+    } catch (KsqlException ksqlException) {
+      throw ksqlException;
+    } catch (Throwable t) {
+      throw new KsqlException("Cannot ANALYZE this statement, " + statement, t);
+    }
+  }
+
+  // Only finds queries running on the current machine, not across the entire cluster
+  private ExecutionPlan getQueryExecutionPlan(long queryId) {
+    PersistentQueryMetadata persistentQueryMetadata =
+        ksqlEngine.getPersistentQueries().get(queryId);
+    if (persistentQueryMetadata == null) {
+      throw new KsqlException("No running query with id " + queryId + " was found.");
+    }
+    return new ExecutionPlan(persistentQueryMetadata.getExecutionPlan());
+  }
+
   private ExecutionPlan getStatementExecutionPlan(Explain explain, String statementText)
       throws KsqlException {
     return getStatementExecutionPlan(explain.getStatement(), statementText, Collections.emptyMap());
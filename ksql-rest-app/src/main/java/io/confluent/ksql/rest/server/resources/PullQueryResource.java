@@ -0,0 +1,164 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+
+package io.confluent.ksql.rest.server.resources;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.confluent.ksql.KsqlEngine;
+import io.confluent.ksql.rest.entity.ErrorMessage;
+import io.confluent.ksql.rest.entity.KsqlRequest;
+import io.confluent.ksql.rest.entity.PullQueryResponse;
+import io.confluent.ksql.util.PullQueryResult;
+import org.apache.kafka.streams.state.HostInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Answers pull queries, which look a single key up in a table created by a persistent query and
+ * return its current row, or the rows of its windows, at once, without starting a topology. The
+ * rows are written as they are read from the state store rather than collected first, so a page
+ * of windows never has to fit in memory. A query for a key owned by another server is forwarded
+ * to that server, whose response is copied through.
+ */
+@Path("/query/pull")
+@Produces(MediaType.APPLICATION_JSON)
+public class PullQueryResource {
+  private static final Logger log = LoggerFactory.getLogger(PullQueryResource.class);
+
+  /**
+   * Request property set on queries forwarded to the owner of their key, which answers them
+   * from its own state instead of forwarding them again.
+   */
+  public static final String FORWARDED_PROPERTY = "query.pull.forwarded";
+
+  private final KsqlEngine ksqlEngine;
+  private final Client client;
+  private final ObjectMapper objectMapper;
+
+  public PullQueryResource(KsqlEngine ksqlEngine, Client client) {
+    this.ksqlEngine = ksqlEngine;
+    this.client = client;
+    this.objectMapper = new ObjectMapper().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+  }
+
+  @POST
+  @Consumes(MediaType.APPLICATION_JSON)
+  public Response pullQuery(KsqlRequest request, @Context UriInfo uriInfo) {
+    String ksql = Objects.requireNonNull(request.getKsql(), "\"ksql\" field must be given");
+    Map<String, Object> clientLocalProperties =
+        Optional.ofNullable(request.getStreamsProperties()).orElse(Collections.emptyMap());
+    boolean forwarded =
+        Boolean.parseBoolean(String.valueOf(clientLocalProperties.get(FORWARDED_PROPERTY)));
+
+    PullQueryResult result = ksqlEngine.executePullQuery(ksql, !forwarded);
+    if (result.isRemote()) {
+      String scheme = uriInfo == null ? "http" : uriInfo.getBaseUri().getScheme();
+      return forward(scheme, result.getOwner(), ksql, clientLocalProperties);
+    }
+    return Response.ok(writeRows(result)).build();
+  }
+
+  public void close() {
+    client.close();
+  }
+
+  /**
+   * Writes the rows in the layout of a {@link PullQueryResponse}, closing the rows, and so the
+   * store iterator they are read from, once written or if the client goes away.
+   */
+  private StreamingOutput writeRows(PullQueryResult result) {
+    PullQueryResponse header = new PullQueryResponse(result.getSchema(), Collections.emptyList());
+    return out -> {
+      try (PullQueryResult.Rows rows = result.getRows();
+           JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+        generator.writeStartObject();
+        generator.writeFieldName("schema");
+        objectMapper.writeValue(generator, header.getSchema());
+        generator.writeArrayFieldStart("rows");
+        while (rows.hasNext()) {
+          objectMapper.writeValue(generator, rows.next());
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+      }
+    };
+  }
+
+  private Response forward(
+      String scheme,
+      HostInfo owner,
+      String ksql,
+      Map<String, Object> clientLocalProperties
+  ) {
+    Map<String, Object> properties = new HashMap<>(clientLocalProperties);
+    properties.put(FORWARDED_PROPERTY, true);
+    String ownerAddress = String.format("%s://%s:%d", scheme, owner.host(), owner.port());
+    log.debug("Forwarding pull query '{}' to {}", ksql, ownerAddress);
+
+    Response response = client.target(ownerAddress)
+        .path("query/pull")
+        .request(MediaType.APPLICATION_JSON_TYPE)
+        .post(Entity.json(new KsqlRequest(ksql, properties)));
+    if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+      try {
+        return Response.status(response.getStatus())
+            .type(MediaType.APPLICATION_JSON_TYPE)
+            .entity(response.readEntity(ErrorMessage.class))
+            .build();
+      } finally {
+        response.close();
+      }
+    }
+    StreamingOutput copy = out -> {
+      try (InputStream in = response.readEntity(InputStream.class)) {
+        copy(in, out);
+      } finally {
+        response.close();
+      }
+    };
+    return Response.ok(copy).build();
+  }
+
+  private static void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+  }
+}
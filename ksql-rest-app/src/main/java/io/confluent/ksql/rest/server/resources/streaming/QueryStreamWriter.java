@@ -18,10 +18,12 @@ package io.confluent.ksql.rest.server.resources.streaming;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import io.confluent.ksql.GenericRow;
 import io.confluent.ksql.KsqlEngine;
 import io.confluent.ksql.rest.entity.StreamedRow;
 import io.confluent.ksql.util.KsqlException;
+import io.confluent.ksql.util.QueryCleanupService;
 import io.confluent.ksql.util.QueryMetadata;
 import io.confluent.ksql.util.QueuedQueryMetadata;
 import org.apache.kafka.streams.KeyValue;
@@ -32,8 +34,10 @@ import javax.ws.rs.core.StreamingOutput;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 class QueryStreamWriter implements StreamingOutput {
@@ -41,7 +45,11 @@ class QueryStreamWriter implements StreamingOutput {
   private static final Logger log = LoggerFactory.getLogger(QueryStreamWriter.class);
 
   private final QueuedQueryMetadata queryMetadata;
+  private final QueryCleanupService queryCleanupService;
   private final long disconnectCheckInterval;
+  private final int maxBatchRows;
+  private final long maxBatchLatencyMs;
+  private final boolean compact;
   private final ObjectMapper objectMapper;
   private Throwable streamsException;
 
@@ -49,13 +57,18 @@ class QueryStreamWriter implements StreamingOutput {
   QueryStreamWriter(
       KsqlEngine ksqlEngine,
       long disconnectCheckInterval,
+      int maxBatchRows,
+      long maxBatchLatencyMs,
+      boolean compact,
       String queryString,
       Map<String, Object> overriddenProperties
   )
       throws Exception {
     QueryMetadata queryMetadata =
         ksqlEngine.buildMultipleQueries(true, queryString, overriddenProperties).get(0);
-    this.objectMapper = new ObjectMapper().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    this.objectMapper = new ObjectMapper()
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+        .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     if (!(queryMetadata instanceof QueuedQueryMetadata)) {
       throw new Exception(String.format(
           "Unexpected metadata type: expected QueuedQueryMetadata, found %s instead",
@@ -64,29 +77,49 @@ class QueryStreamWriter implements StreamingOutput {
     }
 
     this.disconnectCheckInterval = disconnectCheckInterval;
+    this.maxBatchRows = maxBatchRows;
+    this.maxBatchLatencyMs = maxBatchLatencyMs;
+    this.compact = compact;
     this.queryMetadata = ((QueuedQueryMetadata) queryMetadata);
+    this.queryCleanupService = ksqlEngine.getQueryCleanupService();
 
-    this.queryMetadata.getKafkaStreams().setUncaughtExceptionHandler(new StreamsExceptionHandler());
-    queryMetadata.getKafkaStreams().start();
+    this.queryMetadata.setUncaughtExceptionHandler(new StreamsExceptionHandler());
+    queryMetadata.start();
   }
 
   @Override
   public void write(OutputStream out) throws IOException {
+    // One generator for the whole response; it buffers the rows of a batch, and only flushing it
+    // writes them to the connection
+    final JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+    generator.setRootValueSeparator(null);
     try {
+      final BlockingQueue<KeyValue<String, GenericRow>> rowQueue = queryMetadata.getRowQueue();
+      final List<KeyValue<String, GenericRow>> rows = new ArrayList<>(maxBatchRows);
       while (true) {
 
-        KeyValue<String, GenericRow> value = queryMetadata.getRowQueue().poll(disconnectCheckInterval, TimeUnit.MILLISECONDS);
+        KeyValue<String, GenericRow> value = rowQueue.poll(disconnectCheckInterval, TimeUnit.MILLISECONDS);
         if (value != null) {
-          write(out, value.value);
+          rows.add(value);
+          fillBatch(rowQueue, rows);
+          for (KeyValue<String, GenericRow> row : rows) {
+            write(generator, row.value);
+          }
+          generator.flush();
+          rows.clear();
         } else {
           // If no new rows have been written, the user may have terminated the connection without
           // us knowing. Check by trying to write a single newline.
-          out.write("\n".getBytes(StandardCharsets.UTF_8));
-          out.flush();
+          generator.writeRaw('\n');
+          generator.flush();
         }
         if (streamsException != null) {
           throw streamsException;
         }
+        if (queryMetadata.isLimitReached() && rowQueue.isEmpty()) {
+          // Every row within the LIMIT has been written; end the response now
+          return;
+        }
       }
     } catch (EOFException exception) {
       // The user has terminated the connection; we can stop writing
@@ -97,24 +130,54 @@ class QueryStreamWriter implements StreamingOutput {
       log.warn("Interrupted while writing to connection stream");
     } catch (Throwable exception) {
       log.error("Exception occurred while writing to connection stream: ", exception);
-      out.write("\n".getBytes(StandardCharsets.UTF_8));
+      generator.writeRaw('\n');
       if (exception.getCause() instanceof KsqlException) {
-        objectMapper.writeValue(out, new StreamedRow(exception.getCause()));
+        objectMapper.writeValue(generator, new StreamedRow(exception.getCause()));
       } else {
-        objectMapper.writeValue(out, new StreamedRow(exception));
+        objectMapper.writeValue(generator, new StreamedRow(exception));
       }
-      out.write("\n".getBytes(StandardCharsets.UTF_8));
-      out.flush();
+      generator.writeRaw('\n');
+      generator.flush();
 
     } finally {
-      queryMetadata.close();
+      // The response ends without waiting for the query to shut down
+      queryCleanupService.submit(queryMetadata);
     }
   }
 
-  void write(OutputStream output, GenericRow row) throws IOException {
-    objectMapper.writeValue(output, new StreamedRow(row));
-    output.write("\n".getBytes(StandardCharsets.UTF_8));
-    output.flush();
+  /**
+   * Adds what is buffered to the batch, waiting up to the max batch latency for more rows until
+   * the batch is full.
+   */
+  private void fillBatch(final BlockingQueue<KeyValue<String, GenericRow>> rowQueue,
+                         final List<KeyValue<String, GenericRow>> rows)
+      throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + maxBatchLatencyMs;
+    while (rows.size() < maxBatchRows) {
+      rowQueue.drainTo(rows, maxBatchRows - rows.size());
+      final long remaining = deadline - System.currentTimeMillis();
+      if (rows.size() >= maxBatchRows || remaining <= 0) {
+        return;
+      }
+      final KeyValue<String, GenericRow> next = rowQueue.poll(remaining, TimeUnit.MILLISECONDS);
+      if (next == null) {
+        return;
+      }
+      rows.add(next);
+    }
+  }
+
+  /**
+   * Writes a row as a StreamedRow object or, in compact format, as an array of its column values,
+   * followed by a newline.
+   */
+  void write(JsonGenerator generator, GenericRow row) throws IOException {
+    if (compact) {
+      objectMapper.writeValue(generator, row.getColumns());
+    } else {
+      objectMapper.writeValue(generator, new StreamedRow(row));
+    }
+    generator.writeRaw('\n');
   }
 
   private class StreamsExceptionHandler implements Thread.UncaughtExceptionHandler {
@@ -124,4 +187,4 @@ class QueryStreamWriter implements StreamingOutput {
       streamsException = exception;
     }
   }
-}
\ No newline at end of file
+}
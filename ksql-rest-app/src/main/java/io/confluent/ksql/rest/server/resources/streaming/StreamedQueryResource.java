@@ -23,7 +23,9 @@ import io.confluent.ksql.parser.tree.PrintTopic;
 import io.confluent.ksql.parser.tree.Query;
 import io.confluent.ksql.parser.tree.Statement;
 import io.confluent.ksql.rest.entity.KsqlRequest;
+import io.confluent.ksql.rest.server.KsqlRestConfig;
 import io.confluent.ksql.rest.server.StatementParser;
+import io.confluent.ksql.util.KsqlException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +36,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -43,18 +46,43 @@ import java.util.Optional;
 public class StreamedQueryResource {
   private static final Logger log = LoggerFactory.getLogger(StreamedQueryResource.class);
 
+  /**
+   * Request property choosing how the rows of a query are streamed: {@link #FORMAT_OBJECT}, the
+   * default, writes each row as a StreamedRow object and {@link #FORMAT_COMPACT} writes each row
+   * as a plain array of its column values.
+   */
+  public static final String FORMAT_PROPERTY = "query.stream.format";
+  public static final String FORMAT_OBJECT = "object";
+  public static final String FORMAT_COMPACT = "compact";
+
   private final KsqlEngine ksqlEngine;
   private final StatementParser statementParser;
   private final long disconnectCheckInterval;
+  private final int maxBatchRows;
+  private final long maxBatchLatencyMs;
 
   public StreamedQueryResource(
       KsqlEngine ksqlEngine,
       StatementParser statementParser,
       long disconnectCheckInterval
+  ) {
+    this(ksqlEngine, statementParser, disconnectCheckInterval,
+         KsqlRestConfig.STREAMED_QUERY_BATCH_MAX_ROWS_DEFAULT,
+         KsqlRestConfig.STREAMED_QUERY_BATCH_MAX_LATENCY_MS_DEFAULT);
+  }
+
+  public StreamedQueryResource(
+      KsqlEngine ksqlEngine,
+      StatementParser statementParser,
+      long disconnectCheckInterval,
+      int maxBatchRows,
+      long maxBatchLatencyMs
   ) {
     this.ksqlEngine = ksqlEngine;
     this.statementParser = statementParser;
     this.disconnectCheckInterval = disconnectCheckInterval;
+    this.maxBatchRows = maxBatchRows;
+    this.maxBatchLatencyMs = maxBatchLatencyMs;
   }
 
   @POST
@@ -66,8 +94,17 @@ public class StreamedQueryResource {
     Statement statement = statementParser.parseSingleStatement(ksql);
 
     if (statement instanceof Query) {
-      QueryStreamWriter queryStreamWriter =
-          new QueryStreamWriter(ksqlEngine, disconnectCheckInterval, ksql, clientLocalProperties);
+      Map<String, Object> queryProperties = new HashMap<>(clientLocalProperties);
+      boolean compact = isCompactFormat(queryProperties.remove(FORMAT_PROPERTY));
+      QueryStreamWriter queryStreamWriter = new QueryStreamWriter(
+          ksqlEngine,
+          disconnectCheckInterval,
+          maxBatchRows,
+          maxBatchLatencyMs,
+          compact,
+          ksql,
+          queryProperties
+      );
       log.info("Streaming query '{}'", ksql);
       return Response.ok().entity(queryStreamWriter).build();
 
@@ -82,6 +119,18 @@ public class StreamedQueryResource {
     }
   }
 
+  private static boolean isCompactFormat(Object format) {
+    if (format == null || FORMAT_OBJECT.equalsIgnoreCase(format.toString())) {
+      return false;
+    }
+    if (FORMAT_COMPACT.equalsIgnoreCase(format.toString())) {
+      return true;
+    }
+    throw new KsqlException(String.format(
+        "Unknown value for %s: '%s'. Expected '%s' or '%s'.",
+        FORMAT_PROPERTY, format, FORMAT_OBJECT, FORMAT_COMPACT));
+  }
+
   private TopicStreamWriter getTopicStreamWriter(final Map<String, Object> clientLocalProperties, final PrintTopic printTopic) {
     String topicName = printTopic.getTopic().toString();
     Long interval =
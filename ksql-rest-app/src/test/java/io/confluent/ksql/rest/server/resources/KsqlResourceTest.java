@@ -30,6 +30,7 @@ import io.confluent.ksql.parser.tree.ListQueries;
 import io.confluent.ksql.parser.tree.ListRegisteredTopics;
 import io.confluent.ksql.parser.tree.ListStreams;
 import io.confluent.ksql.parser.tree.ListTables;
+import io.confluent.ksql.parser.tree.NodeLocation;
 import io.confluent.ksql.parser.tree.QualifiedName;
 import io.confluent.ksql.parser.tree.RegisterTopic;
 import io.confluent.ksql.parser.tree.ShowColumns;
@@ -53,6 +54,8 @@ import io.confluent.ksql.rest.server.StatementParser;
 import io.confluent.ksql.rest.server.computation.*;
 import io.confluent.ksql.serde.json.KsqlJsonTopicSerDe;
 import io.confluent.ksql.util.KsqlConfig;
+import io.confluent.ksql.util.PersistentQueryMetadata;
+import io.confluent.ksql.util.QueryMetadata;
 import org.apache.commons.lang3.concurrent.ConcurrentUtils;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
@@ -326,6 +329,74 @@ public class KsqlResourceTest {
     assertEquals(0, testQueries.size());
   }
 
+  @Test
+  public void testShowQueriesExtended() throws Exception {
+    KsqlResource testResource = TestKsqlResourceUtil.get();
+    final long queryId = buildQuery(
+        testResource, "CREATE STREAM S3 AS SELECT * FROM test_stream WHERE S2_F2 > 69;");
+    final String ksqlString = "SHOW QUERIES EXTENDED;";
+    final ListQueries ksqlStatement = new ListQueries(Optional.empty(), true);
+
+    Queries queries = makeSingleRequest(
+        testResource,
+        ksqlString,
+        ksqlStatement,
+        Collections.emptyMap(),
+        Queries.class
+    );
+    List<Queries.RunningQuery> testQueries = queries.getQueries();
+
+    assertEquals(1, testQueries.size());
+    assertEquals(queryId, testQueries.get(0).getId());
+    assertEquals(queryId, testQueries.get(0).getMetrics().getQueryId());
+    assertEquals(0, testQueries.get(0).getMetrics().getDeserializationErrors());
+  }
+
+  @Test
+  public void testShowQueriesWithoutMetricsUnlessExtended() throws Exception {
+    KsqlResource testResource = TestKsqlResourceUtil.get();
+    buildQuery(testResource, "CREATE STREAM S3 AS SELECT * FROM test_stream WHERE S2_F2 > 69;");
+
+    Queries queries = makeSingleRequest(
+        testResource,
+        "SHOW QUERIES;",
+        new ListQueries(Optional.empty()),
+        Collections.emptyMap(),
+        Queries.class
+    );
+
+    assertEquals(1, queries.getQueries().size());
+    assertEquals(null, queries.getQueries().get(0).getMetrics());
+  }
+
+  @Test
+  public void testDescribeExtendedStatement() throws Exception {
+    KsqlResource testResource = TestKsqlResourceUtil.get();
+    final long queryId = buildQuery(
+        testResource, "CREATE STREAM S3 AS SELECT * FROM test_stream WHERE S2_F2 > 69;");
+    final String ksqlString = "DESCRIBE EXTENDED S3;";
+    final ShowColumns ksqlStatement =
+        new ShowColumns(new NodeLocation(1, 1), QualifiedName.of("S3"), false, true);
+
+    SourceDescription testDescription = makeSingleRequest(
+        testResource,
+        ksqlString,
+        ksqlStatement,
+        Collections.emptyMap(),
+        SourceDescription.class
+    );
+
+    assertEquals(1, testDescription.getQueryMetrics().size());
+    assertEquals(queryId, testDescription.getQueryMetrics().get(0).getQueryId());
+  }
+
+  private static long buildQuery(final KsqlResource testResource, final String queryString)
+      throws Exception {
+    final List<QueryMetadata> queries = testResource.getKsqlEngine()
+        .buildMultipleQueries(false, queryString, Collections.emptyMap());
+    return ((PersistentQueryMetadata) queries.get(0)).getId();
+  }
+
   @Test
   public void testDescribeStatement() throws Exception {
     KsqlResource testResource = TestKsqlResourceUtil.get();
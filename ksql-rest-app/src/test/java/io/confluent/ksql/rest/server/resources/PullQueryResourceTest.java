@@ -0,0 +1,96 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.rest.server.resources;
+
+import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.KsqlEngine;
+import io.confluent.ksql.rest.entity.KsqlRequest;
+import io.confluent.ksql.util.PullQueryResult;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.streams.state.HostInfo;
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PullQueryResourceTest {
+
+  private static final String QUERY = "SELECT * FROM users WHERE ROWKEY = 'user1';";
+
+  private final KsqlEngine ksqlEngine = EasyMock.createMock(KsqlEngine.class);
+  private final Client client = EasyMock.createMock(Client.class);
+
+  @Test
+  public void shouldForwardQueryForKeyOwnedByAnotherServer() {
+    EasyMock.expect(ksqlEngine.executePullQuery(QUERY, true))
+        .andReturn(PullQueryResult.ownedBy(new HostInfo("ksql-2", 8088)));
+    final WebTarget target = EasyMock.createMock(WebTarget.class);
+    final Invocation.Builder invocation = EasyMock.createMock(Invocation.Builder.class);
+    final Response ownerResponse = EasyMock.createNiceMock(Response.class);
+    final Capture<Entity<?>> forwarded = Capture.newInstance();
+    EasyMock.expect(client.target("http://ksql-2:8088")).andReturn(target);
+    EasyMock.expect(target.path("query/pull")).andReturn(target);
+    EasyMock.expect(target.request(MediaType.APPLICATION_JSON_TYPE)).andReturn(invocation);
+    EasyMock.expect(invocation.post(EasyMock.capture(forwarded))).andReturn(ownerResponse);
+    EasyMock.expect(ownerResponse.getStatus()).andReturn(Response.Status.OK.getStatusCode());
+    EasyMock.replay(ksqlEngine, client, target, invocation, ownerResponse);
+
+    final Response response = new PullQueryResource(ksqlEngine, client)
+        .pullQuery(new KsqlRequest(QUERY, Collections.emptyMap()), null);
+
+    assertThat(response.getStatus(), equalTo(Response.Status.OK.getStatusCode()));
+    // The owner is told the query was forwarded, so that it answers it instead of routing it
+    final KsqlRequest request = (KsqlRequest) forwarded.getValue().getEntity();
+    assertThat(request.getKsql(), equalTo(QUERY));
+    assertThat(request.getStreamsProperties().get(PullQueryResource.FORWARDED_PROPERTY),
+               equalTo((Object) true));
+    EasyMock.verify(ksqlEngine, client, target, invocation);
+  }
+
+  @Test
+  public void shouldAnswerForwardedQueryLocally() throws Exception {
+    final Schema schema = SchemaBuilder.struct().field("USERID", Schema.STRING_SCHEMA).build();
+    EasyMock.expect(ksqlEngine.executePullQuery(QUERY, false)).andReturn(PullQueryResult.rows(
+        schema, Collections.singletonList(new GenericRow(Arrays.<Object>asList("user1")))));
+    EasyMock.replay(ksqlEngine, client);
+
+    final Response response = new PullQueryResource(ksqlEngine, client).pullQuery(
+        new KsqlRequest(QUERY,
+                        Collections.singletonMap(PullQueryResource.FORWARDED_PROPERTY, true)),
+        null);
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ((StreamingOutput) response.getEntity()).write(out);
+    assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8),
+               containsString("\"rows\":[{\"columns\":[\"user1\"]}]"));
+    EasyMock.verify(ksqlEngine, client);
+  }
+}
@@ -29,6 +29,8 @@ import io.confluent.ksql.rest.server.resources.streaming.StreamedQueryResource;
 import io.confluent.ksql.util.KafkaTopicClient;
 import io.confluent.ksql.util.KafkaTopicClientImpl;
 import io.confluent.ksql.util.KsqlConfig;
+import io.confluent.ksql.util.KsqlException;
+import io.confluent.ksql.util.QueryCleanupService;
 import io.confluent.ksql.util.QueuedQueryMetadata;
 import org.apache.kafka.connect.data.SchemaBuilder;
 import org.apache.kafka.streams.KafkaStreams;
@@ -114,6 +116,9 @@ public class StreamedQueryResourceTest {
     KsqlEngine mockKsqlEngine = mock(KsqlEngine.class);
     KafkaTopicClient mockKafkaTopicClient = mock(KafkaTopicClientImpl.class);
     expect(mockKsqlEngine.getTopicClient()).andReturn(mockKafkaTopicClient);
+    final QueryCleanupService queryCleanupService =
+        new QueryCleanupService(mockKafkaTopicClient, new KsqlConfig(Collections.emptyMap()));
+    expect(mockKsqlEngine.getQueryCleanupService()).andReturn(queryCleanupService);
 
     final QueuedQueryMetadata queuedQueryMetadata =
         new QueuedQueryMetadata(queryString, mockKafkaStreams, mockOutputNode, "",
@@ -177,7 +182,9 @@ public class StreamedQueryResourceTest {
     rowQueuePopulatorThread.interrupt();
     rowQueuePopulatorThread.join();
 
-    // Definitely want to make sure that the Kafka Streams instance has been closed and cleaned up
+    // Definitely want to make sure that the Kafka Streams instance has been closed and cleaned up,
+    // which happens in the background
+    queryCleanupService.close();
     verify(mockKafkaStreams);
 
     // If one of the other threads has somehow managed to throw an exception without breaking things up until this
@@ -188,6 +195,21 @@ public class StreamedQueryResourceTest {
     }
   }
 
+  @Test(expected = KsqlException.class)
+  public void shouldRejectUnknownStreamFormat() throws Exception {
+    final String queryString = "SELECT * FROM test_stream;";
+    KsqlEngine mockKsqlEngine = mock(KsqlEngine.class);
+    StatementParser mockStatementParser = mock(StatementParser.class);
+    expect(mockStatementParser.parseSingleStatement(queryString)).andReturn(mock(Query.class));
+    replay(mockKsqlEngine, mockStatementParser);
+
+    StreamedQueryResource testResource =
+        new StreamedQueryResource(mockKsqlEngine, mockStatementParser, 1000);
+    testResource.streamQuery(new KsqlRequest(
+        queryString,
+        Collections.singletonMap(StreamedQueryResource.FORMAT_PROPERTY, "csv")));
+  }
+
   // Have to mimic the behavior of the OutputStream that's usually passed to the QueryStreamWriter class's write()
   // method, which is to throw an EOFException if any write attempts are made after the connection has terminated
   private static class EOFPipedOutputStream extends PipedOutputStream {
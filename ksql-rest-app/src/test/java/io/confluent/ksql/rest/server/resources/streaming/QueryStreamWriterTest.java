@@ -0,0 +1,130 @@
+/**
+ * Copyright 2017 Confluent Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ **/
+
+package io.confluent.ksql.rest.server.resources.streaming;
+
+import io.confluent.ksql.GenericRow;
+import io.confluent.ksql.KsqlEngine;
+import io.confluent.ksql.planner.plan.OutputNode;
+import io.confluent.ksql.serde.DataSource;
+import io.confluent.ksql.util.KafkaTopicClient;
+import io.confluent.ksql.util.KsqlConfig;
+import io.confluent.ksql.util.QueryCleanupService;
+import io.confluent.ksql.util.QueryLimit;
+import io.confluent.ksql.util.QueuedQueryMetadata;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.KeyValue;
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class QueryStreamWriterTest {
+
+  private static final String QUERY = "SELECT * FROM test_stream LIMIT 3;";
+
+  @Test
+  public void shouldWriteRowsAsColumnArraysInCompactFormat() throws Exception {
+    final FlushRecordingOutputStream out = new FlushRecordingOutputStream();
+    writer(rows(3), 10, true).write(out);
+    assertThat(out.toString(StandardCharsets.UTF_8.name()),
+               equalTo("[0,\"row0\"]\n[1,\"row1\"]\n[2,\"row2\"]\n"));
+  }
+
+  @Test
+  public void shouldWriteRowsAsStreamedRowsInStandardFormat() throws Exception {
+    final FlushRecordingOutputStream out = new FlushRecordingOutputStream();
+    writer(rows(3), 10, false).write(out);
+    assertThat(out.toString(StandardCharsets.UTF_8.name()),
+               equalTo("{\"row\":{\"columns\":[0,\"row0\"]},\"errorMessage\":null}\n"
+                       + "{\"row\":{\"columns\":[1,\"row1\"]},\"errorMessage\":null}\n"
+                       + "{\"row\":{\"columns\":[2,\"row2\"]},\"errorMessage\":null}\n"));
+  }
+
+  @Test
+  public void shouldFlushBufferedRowsInBatchesOfMaxBatchRows() throws Exception {
+    final FlushRecordingOutputStream out = new FlushRecordingOutputStream();
+    writer(rows(3), 2, true).write(out);
+    // The first two rows go out in one flush, the last one in the next
+    assertThat(out.flushes, equalTo(Arrays.asList(
+        "[0,\"row0\"]\n[1,\"row1\"]\n",
+        "[0,\"row0\"]\n[1,\"row1\"]\n[2,\"row2\"]\n")));
+  }
+
+  private static QueryStreamWriter writer(final BlockingQueue<KeyValue<String, GenericRow>> queue,
+                                          final int maxBatchRows,
+                                          final boolean compact) throws Exception {
+    // Every row was delivered within the limit, so the writer ends once it has written them
+    final QueryLimit limit = QueryLimit.of(Optional.of(queue.size()));
+    for (int i = 0; i < queue.size(); i++) {
+      limit.tryAdmit();
+      limit.delivered();
+    }
+    final KafkaStreams kafkaStreams = EasyMock.createNiceMock(KafkaStreams.class);
+    final OutputNode outputNode = EasyMock.createNiceMock(OutputNode.class);
+    final KafkaTopicClient topicClient = EasyMock.createNiceMock(KafkaTopicClient.class);
+    final QueryCleanupService cleanupService = EasyMock.createNiceMock(QueryCleanupService.class);
+    final QueuedQueryMetadata queryMetadata = new QueuedQueryMetadata(
+        QUERY,
+        kafkaStreams,
+        outputNode,
+        "",
+        queue,
+        limit,
+        DataSource.DataSourceType.KSTREAM,
+        "",
+        topicClient,
+        new KsqlConfig(Collections.emptyMap()));
+    final KsqlEngine ksqlEngine = EasyMock.createNiceMock(KsqlEngine.class);
+    EasyMock.expect(ksqlEngine.buildMultipleQueries(true, QUERY, Collections.emptyMap()))
+        .andReturn(Collections.singletonList(queryMetadata));
+    EasyMock.expect(ksqlEngine.getQueryCleanupService()).andReturn(cleanupService);
+    EasyMock.replay(ksqlEngine, kafkaStreams, outputNode, topicClient, cleanupService);
+    return new QueryStreamWriter(
+        ksqlEngine, 1000, maxBatchRows, 0, compact, QUERY, Collections.emptyMap());
+  }
+
+  private static BlockingQueue<KeyValue<String, GenericRow>> rows(final int count) {
+    final BlockingQueue<KeyValue<String, GenericRow>> queue = new LinkedBlockingQueue<>();
+    for (int i = 0; i < count; i++) {
+      queue.add(new KeyValue<>(Integer.toString(i),
+                               new GenericRow(Arrays.<Object>asList(i, "row" + i))));
+    }
+    return queue;
+  }
+
+  /**
+   * Records what had been written at each flush, as only a flush sends rows to the client.
+   */
+  private static class FlushRecordingOutputStream extends ByteArrayOutputStream {
+
+    private final List<String> flushes = new ArrayList<>();
+
+    @Override
+    public void flush() {
+      flushes.add(new String(toByteArray(), StandardCharsets.UTF_8));
+    }
+  }
+}